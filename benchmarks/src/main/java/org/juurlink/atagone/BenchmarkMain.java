@@ -0,0 +1,33 @@
+package org.juurlink.atagone;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the GC profiler, so every result comes with its allocation rate. Takes the usual JMH options; when
+ * a profiler is given, it replaces the GC profiler.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers() ||
+            options.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        final ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (options.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
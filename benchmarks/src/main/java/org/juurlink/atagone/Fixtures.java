@@ -0,0 +1,44 @@
+package org.juurlink.atagone;
+
+import org.juurlink.atagone.utils.IOUtils;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recorded thermostat replies and portal pages.
+ */
+final class Fixtures {
+
+    /**
+     * Reply of the thermostat to a retrieve message with the control and report sections.
+     */
+    static final String RETRIEVE_REPLY = "retrieve_reply.json";
+    /**
+     * Reply of the thermostat to an update message.
+     */
+    static final String UPDATE_REPLY = "update_reply.json";
+    /**
+     * Portal latest report (diagnostics) page.
+     */
+    static final String LATEST_REPORT = "latest_report.html";
+    /**
+     * Portal device control reply.
+     */
+    static final String DEVICE_CONTROL = "device_control.json";
+
+    private Fixtures() {
+    }
+
+    @Nonnull
+    static String load(@Nonnull final String name) throws IOException {
+        try (InputStream stream = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (stream == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.juurlink.atagone;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.HTMLUtils;
+import org.juurlink.atagone.utils.JSONFields;
+import org.juurlink.atagone.utils.JSONUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.juurlink.atagone.domain.DiagnosticField.*;
+
+/**
+ * Reading the values from thermostat replies and portal pages, once per poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+
+    /**
+     * Fields read from the retrieve reply by name.
+     */
+    private static final DiagnosticField[] REPLY_FIELDS = replyFields();
+
+    private String retrieveReply;
+    private String updateReply;
+    private String latestReport;
+    private String deviceControl;
+
+    @Setup
+    public void setUp() throws IOException {
+        retrieveReply = Fixtures.load(Fixtures.RETRIEVE_REPLY);
+        updateReply = Fixtures.load(Fixtures.UPDATE_REPLY);
+        latestReport = Fixtures.load(Fixtures.LATEST_REPORT);
+        deviceControl = Fixtures.load(Fixtures.DEVICE_CONTROL);
+    }
+
+    /**
+     * One regular expression scan over the reply per field.
+     */
+    @Benchmark
+    public void retrieveReplyRegexPerField(final Blackhole blackhole) {
+        for (DiagnosticField field : REPLY_FIELDS) {
+            blackhole.consume(JSONUtils.getJSONValueByName(retrieveReply, javaType(field), field.getJsonName()));
+        }
+    }
+
+    /**
+     * Build the field table only.
+     */
+    @Benchmark
+    public JSONFields retrieveReplyParse() {
+        return JSONFields.parse(retrieveReply);
+    }
+
+    /**
+     * Build the field table and fill the diagnostics, as the local connector does.
+     */
+    @Benchmark
+    public Diagnostics retrieveReplyParseAndRead() {
+        final JSONFields fields = JSONFields.parse(retrieveReply);
+        final Diagnostics.Builder diagnostics = Diagnostics.builder(REPLY_FIELDS);
+        for (DiagnosticField field : REPLY_FIELDS) {
+            AtagOneLocalConnector.readField(fields, field, diagnostics);
+        }
+        return diagnostics.build();
+    }
+
+    @Benchmark
+    public Integer updateReplyRegex() {
+        return JSONUtils.getJSONValueByName(updateReply, Integer.class, "acc_status");
+    }
+
+    @Benchmark
+    public Integer updateReplyParse() {
+        return JSONFields.parse(updateReply).getInteger("acc_status");
+    }
+
+    /**
+     * One regular expression scan over the portal latest report page per label, as the remote connector did before.
+     */
+    @Benchmark
+    public Diagnostics latestReportRegexPerLabel() {
+        final Diagnostics.Builder diagnostics = Diagnostics.builder(DiagnosticField.values());
+        diagnostics.text(DEVICE_ALIAS, HTMLUtils.getValueByLabel(latestReport, String.class, "Apparaat alias", "Device alias"));
+        diagnostics.text(LATEST_REPORT_TIME,
+            HTMLUtils.getValueByLabel(latestReport, String.class, "Laatste rapportagetijd", "Latest report time"));
+        diagnostics.text(CONNECTED_TO, HTMLUtils.getValueByLabel(latestReport, String.class, "Verbonden met", "Connected to"));
+        diagnostics.number(BURNING_HOURS,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Branduren", "Burning hours"));
+        diagnostics.text(BOILER_HEATING_FOR,
+            HTMLUtils.getValueByLabel(latestReport, String.class, "Ketel in bedrijf voor", "Boiler heating for"));
+        diagnostics.flag(FLAME_STATUS, HTMLUtils.getValueByLabel(latestReport, Boolean.class, "Brander status", "Flame status"));
+        diagnostics.number(ROOM_TEMPERATURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Kamertemperatuur", "Room temperature"));
+        diagnostics.number(OUTSIDE_TEMPERATURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Buitentemperatuur", "Outside temperature"));
+        diagnostics.number(DHW_SETPOINT,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Setpoint warmwater", "DHW setpoint"));
+        diagnostics.number(DHW_WATER_TEMPERATURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Warmwatertemperatuur", "DHW water temperature"));
+        diagnostics.number(CH_SETPOINT, HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "Setpoint cv", "CH setpoint"));
+        diagnostics.number(CH_WATER_TEMPERATURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "CV-aanvoertemperatuur", "CH water temperature"));
+        diagnostics.number(CH_WATER_PRESSURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "CV-waterdruk", "CH water pressure"));
+        diagnostics.number(CH_RETURN_TEMPERATURE,
+            HTMLUtils.getValueByLabel(latestReport, BigDecimal.class, "CV retourtemperatuur", "CH return temperature"));
+        return diagnostics.build();
+    }
+
+    /**
+     * Walk the portal latest report page once, as the remote connector does.
+     */
+    @Benchmark
+    public Diagnostics latestReportScrape() {
+        final Diagnostics.Builder diagnostics = Diagnostics.builder(DiagnosticField.values());
+        AtagOneRemoteConnector.readLatestReport(latestReport, diagnostics);
+        return diagnostics.build();
+    }
+
+    @Benchmark
+    public void deviceControlRegex(final Blackhole blackhole) {
+        blackhole.consume(JSONUtils.getJSONValueByName(deviceControl, String.class, "targetTemp"));
+        blackhole.consume(JSONUtils.getJSONValueByName(deviceControl, String.class, "currentMode"));
+        blackhole.consume(JSONUtils.getJSONValueByName(deviceControl, Boolean.class, "vacationPlanned"));
+    }
+
+    @Benchmark
+    public void deviceControlParse(final Blackhole blackhole) {
+        final JSONFields fields = JSONFields.parse(deviceControl);
+        blackhole.consume(fields.getString("targetTemp"));
+        blackhole.consume(fields.getString("currentMode"));
+        blackhole.consume(fields.getBoolean("vacationPlanned"));
+    }
+
+    private static DiagnosticField[] replyFields() {
+        final List<DiagnosticField> fields = new ArrayList<>();
+        for (DiagnosticField field : DiagnosticField.values()) {
+            if (field.getJsonName() != null) {
+                fields.add(field);
+            }
+        }
+        return fields.toArray(new DiagnosticField[0]);
+    }
+
+    private static Class<?> javaType(final DiagnosticField field) {
+        switch (field.getType()) {
+            case DECIMAL:
+                return BigDecimal.class;
+            case INTEGER:
+                return Integer.class;
+            case BOOLEAN:
+                return Boolean.class;
+            default:
+                return String.class;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.juurlink.atagone;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.domain.FORMAT;
+import org.juurlink.atagone.utils.ByteSequence;
+import org.juurlink.atagone.utils.JSONFields;
+import org.juurlink.atagone.utils.JSONUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building request payloads and writing the output, once per poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    // Not final, so the payloads cannot be folded into constants.
+    private String macAddress = "6C-42-98-B6-B2-90";
+    private int info = 9;
+    private float targetTemperature = 20.5f;
+
+    private MessageTemplates messages;
+    private Diagnostics diagnostics;
+    private Map<String, Object> diagnosticsMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        messages = new MessageTemplates(macAddress, "benchmark atag-one API");
+        final JSONFields fields = JSONFields.parse(Fixtures.load(Fixtures.RETRIEVE_REPLY));
+        final Diagnostics.Builder builder = Diagnostics.builder(DiagnosticField.values());
+        for (DiagnosticField field : DiagnosticField.values()) {
+            if (field.getJsonName() != null) {
+                AtagOneLocalConnector.readField(fields, field, builder);
+            }
+        }
+        diagnostics = builder.build();
+        diagnosticsMap = diagnostics.toMap();
+    }
+
+    @Benchmark
+    public String retrieveMessage() {
+        return createRetrieveMessage(macAddress, info);
+    }
+
+    @Benchmark
+    public String updateMessage() {
+        return createUpdateMessage(macAddress, targetTemperature);
+    }
+
+    @Benchmark
+    public ByteSequence retrieveMessageTemplate() {
+        return messages.retrieve(info);
+    }
+
+    @Benchmark
+    public ByteSequence updateMessageTemplate() {
+        return messages.update(targetTemperature);
+    }
+
+    @Benchmark
+    public String toJSON() {
+        return JSONUtils.toJSON(diagnosticsMap);
+    }
+
+    @Benchmark
+    public String formatJson() {
+        return AtagOneApp.formatDiagnostics(diagnostics, FORMAT.JSON);
+    }
+
+    @Benchmark
+    public String formatCsv() {
+        return AtagOneApp.formatDiagnostics(diagnostics, FORMAT.CSV);
+    }
+
+    /**
+     * Retrieve message as the connector built it before the templates, for comparison.
+     */
+    private static String createRetrieveMessage(final String macAddress, final int info) {
+        return "{\"retrieve_message\":{" +
+            "\"seqnr\":0," +
+            "\"account_auth\":{" +
+            "\"user_account\":\"\"," +
+            "\"mac_address\":\"" + macAddress + "\"}," +
+            "\"info\":" + info + "}}\n";
+    }
+
+    /**
+     * Update message as the connector built it before the templates, for comparison.
+     */
+    private static String createUpdateMessage(final String macAddress, final float targetTemperature) {
+        return "{\"update_message\":{" +
+            "\"seqnr\":0," +
+            "\"account_auth\":{" +
+            "\"user_account\":\"\"," +
+            "\"mac_address\":\"" + macAddress + "\"}," +
+            "\"control\":{" +
+            "\"ch_mode_temp\":" + targetTemperature +
+            "}}}\n";
+    }
+}
@@ -0,0 +1,516 @@
+package org.juurlink.atagone;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.DeviceInfo;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.exceptions.AtagSearchErrorException;
+import org.juurlink.atagone.utils.AsyncHttpClient;
+import org.juurlink.atagone.utils.DeviceThreads;
+import org.juurlink.atagone.utils.JSONFields;
+import org.juurlink.atagone.utils.MetricsRegistry;
+import org.juurlink.atagone.utils.NetworkUtils;
+import org.juurlink.atagone.utils.PageContent;
+import org.juurlink.atagone.utils.PairingStore;
+import org.juurlink.atagone.utils.RequestMetrics;
+import org.juurlink.atagone.utils.RetryPolicy;
+import org.juurlink.atagone.utils.RetryStatistics;
+import org.juurlink.atagone.utils.RetryTracker;
+import org.juurlink.atagone.utils.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import static org.juurlink.atagone.domain.DiagnosticField.ROOM_TEMPERATURE;
+
+/**
+ * Non-blocking connector to an ATAG One thermostat in the local network.
+ * <p/>
+ * Same requests as {@link AtagOneLocalConnector}, but every operation returns at once with a future. Requests use
+ * non-blocking I/O and retries and pair attempts are scheduled instead of sleeping, so no thread waits for a thermostat; the
+ * few threads of one {@link AsyncHttpClient} can serve any number of thermostats. Continuations of the futures run on those
+ * threads and must not block; the pairing store reads and writes its file on threads of its own.
+ */
+@Log
+@SuppressWarnings("HttpUrlsUsage")
+public class AsyncAtagOneConnector {
+
+    /**
+     * Time between looks at the discovery registry while searching.
+     */
+    private static final long DISCOVERY_POLL_MS = 500;
+
+    private static final String RESPONSE_ACC_STATUS = "acc_status";
+
+    /**
+     * Runs the file I/O of the pairing store, away from the threads of the HTTP client.
+     */
+    private static final Executor PAIRING_STORE_EXECUTOR = DeviceThreads.newThreadPerTaskExecutor("atag-one-pairing-store-");
+
+    /**
+     * Hostname and MAC address of running machine.
+     */
+    private final DeviceInfo computerInfo;
+
+    /**
+     * Request payloads for this computer.
+     */
+    private final MessageTemplates messages;
+
+    /**
+     * Version string for the request header.
+     */
+    private final String versionString;
+
+    /**
+     * ATAG One Device ID and IP address. Will have a value when thermostat found.
+     */
+    @Getter
+    @Nullable
+    private volatile AtagOneInfo selectedDevice;
+
+    /**
+     * When true, then skip the auth request during login.
+     */
+    private final boolean skipAuthRequest;
+
+    private final AsyncHttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * When to send a failed request again.
+     */
+    private final RetryTracker retryTracker;
+
+    /**
+     * Pairings accepted earlier, so login can skip the pair request.
+     */
+    private final PairingStore pairingStore = PairingStore.getDefault();
+
+    /**
+     * True when login skipped the pair request because of a stored pairing.
+     */
+    private volatile boolean pairedFromStore;
+
+    /**
+     * Key of the pairing in the store, fixed at login.
+     *
+     * @see AtagOneLocalConnector#getPairingKey(AtagOneInfo)
+     */
+    @Nullable
+    private volatile String pairingKey;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    /**
+     * Construct connector on the shared client.
+     *
+     * @param configuration Configuration for device host-name
+     * @throws java.net.UnknownHostException when configures host-name is invalid
+     * @throws IOException                   when error getting local device address
+     */
+    public AsyncAtagOneConnector(final @Nonnull @NonNull Configuration configuration) throws IOException {
+        this(configuration, NetworkUtils.getDeviceInfo(), null, AsyncHttpClient.getDefault());
+    }
+
+    /**
+     * Construct connector for a known thermostat, without looking up the local device info again.
+     *
+     * @param configuration   Configuration for device host-name, MAC override, version and retry policy
+     * @param localDeviceInfo Hostname, IP - and MAC address of this computer
+     * @param device          Thermostat to connect to; when null, the configured host-name is used or the thermostat is searched
+     * @param httpClient      Client for the requests, its scheduler runs the retries
+     * @throws java.net.UnknownHostException when configures host-name is invalid
+     */
+    public AsyncAtagOneConnector(final @Nonnull @NonNull Configuration configuration,
+                                 final @Nonnull @NonNull DeviceInfo localDeviceInfo,
+                                 final @Nullable AtagOneInfo device,
+                                 final @Nonnull @NonNull AsyncHttpClient httpClient) throws UnknownHostException {
+
+        this.httpClient = httpClient;
+        this.scheduler = httpClient.getScheduler();
+        versionString = configuration.getVersion() != null ? configuration.getVersion().toString() : "";
+        val retryPolicy = configuration.getRetryPolicy();
+        retryTracker = new RetryTracker(retryPolicy != null ? retryPolicy : RetryPolicy.defaults());
+        skipAuthRequest = configuration.isSkipAuthRequest();
+
+        val hostName = configuration.getHostName();
+        if (device != null) {
+            selectedDevice = device;
+        } else if (StringUtils.isNotBlank(hostName)) {
+            selectedDevice = AtagOneInfo.builder().deviceAddress(InetAddress.getByName(hostName)).build();
+        }
+
+        DeviceInfo deviceInfo = localDeviceInfo;
+        if (StringUtils.isNotBlank(configuration.getMac())) {
+            // Override MAC address with configured mac.
+            deviceInfo = DeviceInfo.builder()
+                .ip(deviceInfo.getIp())
+                .name(deviceInfo.getName())
+                .mac(configuration.getMac())
+                .build();
+        }
+        computerInfo = deviceInfo;
+        messages = new MessageTemplates(deviceInfo.getMac(), AtagOneLocalConnector.getDeviceName(deviceInfo));
+    }
+
+    /**
+     * Find the thermostat in the local network and get authorization to connect to it.
+     *
+     * @return Completes when authorized
+     */
+    @Nonnull
+    public CompletableFuture<Void> loginAsync() {
+        val device = selectedDevice;
+        val found = device != null ? CompletableFuture.completedFuture(device) : searchOnesAsync();
+
+        return found.thenCompose(thermostat -> {
+            if (thermostat == null) {
+                return failed(new AtagSearchErrorException("Cannot find " + AtagOneApp.THERMOSTAT_NAME + " thermostat in local network."));
+            }
+            selectedDevice = thermostat;
+            log.fine("Thermostat address is: " + thermostat.getDeviceAddress().getHostAddress());
+
+            val key = AtagOneLocalConnector.getPairingKey(thermostat);
+            pairingKey = key;
+            if (skipAuthRequest) {
+                log.fine("Skip authorization process as requested.");
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.supplyAsync(() -> pairingStore.getAccepted(key, computerInfo.getMac()),
+                PAIRING_STORE_EXECUTOR).thenCompose(pairing -> {
+                if (pairing != null) {
+                    // Paired before; a request that is not authorized starts the authorization process after all.
+                    log.fine("Skip authorization process, access granted before.");
+                    pairedFromStore = true;
+                    return CompletableFuture.completedFuture(null);
+                }
+                return requestAuthorizationAsync();
+            });
+        });
+    }
+
+    /**
+     * Get all diagnostics for selected device.
+     *
+     * @return Diagnostic info; completes with an IllegalArgumentException when no device selected
+     */
+    @Nonnull
+    public CompletableFuture<Diagnostics> getDiagnosticsAsync() {
+        return getDiagnosticsAsync(DiagnosticField.values());
+    }
+
+    /**
+     * Get diagnostics of the given fields only, see {@link AtagOneLocalConnector#readDiagnostics(DiagnosticField...)}.
+     *
+     * @param fields Fields to read, fields not known locally are ignored
+     * @return Diagnostic info, with the given fields in layout sequence
+     */
+    @Nonnull
+    public CompletableFuture<Diagnostics> getDiagnosticsAsync(@Nonnull @NonNull final DiagnosticField... fields) {
+        val device = selectedDevice;
+        if (device == null) {
+            return failed(new IllegalArgumentException("No device selected, cannot get diagnostics."));
+        }
+
+        val macAddress = computerInfo.getMac();
+        val layout = AtagOneLocalConnector.selectLayout(fields);
+        val jsonPayload = messages.retrieve(AtagOneLocalConnector.getInfo(layout));
+
+        return executeAuthorizedRequestAsync(getUrl(device, "/retrieve"), jsonPayload).thenApply(reply -> {
+            updateSelectedDevice(reply.getFields());
+            return AtagOneLocalConnector.toDiagnostics(layout, reply, device.getDeviceAddress(), macAddress);
+        });
+    }
+
+    /**
+     * Set temperature.
+     *
+     * @param targetTemperature Target temperature, between 4 and 27 (inclusive) and round by a half
+     * @return Current room temperature
+     */
+    @Nonnull
+    public CompletableFuture<BigDecimal> setTemperatureAsync(@Nonnull @NonNull final BigDecimal targetTemperature) {
+        return updateControlAsync(ControlUpdate.builder().chModeTemp(targetTemperature).build()).thenCompose(roomTemperature -> {
+            if (roomTemperature != null) {
+                return CompletableFuture.completedFuture(roomTemperature);
+            }
+            // Reply without room temperature, read just that.
+            return getDiagnosticsAsync(ROOM_TEMPERATURE).thenApply(diagnostics -> diagnostics.getDecimal(ROOM_TEMPERATURE));
+        });
+    }
+
+    /**
+     * Change control values in one update message, see {@link AtagOneLocalConnector#updateControl(ControlUpdate)}.
+     *
+     * @param update Values to change
+     * @return Room temperature from the reply, or null when the reply does not have it
+     */
+    @Nonnull
+    public CompletableFuture<BigDecimal> updateControlAsync(@Nonnull @NonNull final ControlUpdate update) {
+        val device = selectedDevice;
+        if (device == null) {
+            return failed(new IllegalArgumentException("No device selected, cannot update control values."));
+        }
+
+        final CharSequence jsonPayload;
+        try {
+            jsonPayload = messages.update(AtagOneLocalConnector.getControlValues(update));
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+        return executeAuthorizedRequestAsync(getUrl(device, "/update"), jsonPayload).thenApply(reply -> {
+            updateSelectedDevice(reply.getFields());
+            return reply.getFields().getBigDecimal(AtagOneConnectorInterface.JSON_ROOM_TEMP);
+        });
+    }
+
+    /**
+     * Get all info from the thermostat.
+     *
+     * @return Raw response from thermostat
+     */
+    @Nonnull
+    public CompletableFuture<String> dumpAsync() {
+        val device = selectedDevice;
+        if (device == null) {
+            return failed(new IllegalArgumentException("No device selected, cannot get diagnostics."));
+        }
+
+        val jsonPayload = messages.retrieve(AtagOneLocalConnector.MESSAGE_INFO_ALL);
+        return executeAuthorizedRequestAsync(getUrl(device, "/retrieve"), jsonPayload).thenApply(reply -> {
+            updateSelectedDevice(reply.getFields());
+            return reply.getContent().toString();
+        });
+    }
+
+    /**
+     * @return Retry counters
+     */
+    @Nonnull
+    public RetryStatistics getRetryStatistics() {
+        return retryTracker.getStatistics();
+    }
+
+    /**
+     * @return URL of a request to the thermostat
+     */
+    @Nonnull
+    protected String getUrl(@Nonnull final AtagOneInfo device, @Nonnull final String path) {
+        return "http://" + device.getDeviceAddress().getHostAddress() + ":" + AtagOneLocalConnector.HTTP_CLIENT_PORT + path;
+    }
+
+    /**
+     * Wait for the first thermostat in the registry of the discovery service, by looking at it every now and then.
+     *
+     * @return Thermostat, or null when none found in time
+     */
+    @Nonnull
+    protected CompletableFuture<AtagOneInfo> searchOnesAsync() {
+        final DiscoveryService discoveryService;
+        try {
+            discoveryService = DiscoveryService.getDefault();
+        } catch (IOException e) {
+            return failed(e);
+        }
+        if (discoveryService.getDevices().isEmpty()) {
+            log.fine("Try to find the " + AtagOneApp.THERMOSTAT_NAME + " in the local network for " +
+                AtagOneLocalConnector.MAX_LISTEN_TIMEOUT_SECONDS + " seconds.");
+        }
+
+        val result = new CompletableFuture<AtagOneInfo>();
+        val startNanos = System.nanoTime();
+        result.whenComplete((device, throwable) -> metrics.histogram(MetricsRegistry.DISCOVERY_DURATION).recordSince(startNanos));
+        val endTimeMs = System.currentTimeMillis() + AtagOneLocalConnector.MAX_LISTEN_TIMEOUT_SECONDS * 1000L;
+        pollDiscovery(discoveryService, endTimeMs, result);
+        return result;
+    }
+
+    private void pollDiscovery(final DiscoveryService discoveryService, final long endTimeMs,
+                               final CompletableFuture<AtagOneInfo> result) {
+        val known = discoveryService.getDevices();
+        if (!known.isEmpty()) {
+            val deviceFound = known.get(0).toAtagOneInfo();
+            log.fine(AtagOneApp.THERMOSTAT_NAME + " found in local network: " + deviceFound);
+            result.complete(deviceFound);
+        } else if (System.currentTimeMillis() >= endTimeMs) {
+            result.complete(null);
+        } else {
+            scheduler.schedule(() -> pollDiscovery(discoveryService, endTimeMs, result), DISCOVERY_POLL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Start authorization proces; request permission, ask again until access is granted or the number of attempts is used.
+     */
+    @Nonnull
+    protected CompletableFuture<Void> requestAuthorizationAsync() {
+        val device = selectedDevice;
+        if (device == null) {
+            return failed(new IllegalArgumentException("No device selected, cannot request authorization."));
+        }
+
+        val pairUrl = getUrl(device, "/pair_message");
+        log.fine("POST pair_message: URL=" + pairUrl);
+        val deviceName = AtagOneLocalConnector.getDeviceName(computerInfo);
+
+        val pairAttempts = metrics.counter(MetricsRegistry.PAIR_ATTEMPTS, MetricsRegistry.LABEL_DEVICE,
+            device.getDeviceAddress().getHostAddress());
+        if (pairingKey == null) {
+            pairingKey = AtagOneLocalConnector.getPairingKey(device);
+        }
+        val key = pairingKey;
+        val result = new CompletableFuture<Integer>();
+        pair(pairUrl, deviceName, pairAttempts, 1, result);
+        return result.thenCompose(accStatus -> {
+            val pairing = AtagOneLocalConnector.createPairing(key, computerInfo.getMac(), accStatus);
+            return CompletableFuture.runAsync(() -> pairingStore.put(pairing), PAIRING_STORE_EXECUTOR);
+        });
+    }
+
+    /**
+     * @param result Completes with the accStatus when access is granted
+     */
+    private void pair(final String pairUrl, final String deviceName, final LongAdder pairAttempts, final int attempt,
+                      final CompletableFuture<Integer> result) {
+
+        pairAttempts.increment();
+        // Every attempt is a new message, with its own sequence number.
+        executeRequestAsync(pairUrl, messages.pair()).whenComplete((pageContent, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+                return;
+            }
+            try {
+                val accStatus = AtagOneLocalConnector.getPairStatus(pageContent.getContent());
+                if (accStatus != PairingStore.ACC_STATUS_ACCEPTED && attempt < AtagOneLocalConnector.MAX_AUTH_RETRIES) {
+                    AtagOneLocalConnector.printPairingInstructions(deviceName);
+                    scheduler.schedule(() -> pair(pairUrl, deviceName, pairAttempts, attempt + 1, result),
+                        AtagOneLocalConnector.SLEEP_BETWEEN_AUTH_REQUESTS_MS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+
+                AtagOneLocalConnector.assertAuthorized(accStatus);
+
+                log.fine("Access granted; accStatus == " + accStatus);
+                result.complete(accStatus);
+
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Execute request and test the response for authorization errors. When login skipped the authorization process because of
+     * a stored pairing and the thermostat no longer accepts it, the pairing is forgotten, the authorization process is run and
+     * the request is executed once more.
+     */
+    @Nonnull
+    protected CompletableFuture<AtagOneLocalConnector.Reply> executeAuthorizedRequestAsync(final String url,
+                                                                                           final CharSequence jsonPayload) {
+        return executeRequestAsync(url, jsonPayload).thenCompose(pageContent -> {
+            val parseStartNanos = System.nanoTime();
+            val fields = JSONFields.parse(pageContent.getContent());
+            RequestMetrics.of(metrics, url).getParseDuration().recordSince(parseStartNanos);
+            val accStatus = fields.getInteger(RESPONSE_ACC_STATUS);
+
+            if (AtagOneLocalConnector.isPairingRejected(pairedFromStore, accStatus)) {
+                pairedFromStore = false;
+                val key = pairingKey;
+                return CompletableFuture.runAsync(() -> pairingStore.remove(key), PAIRING_STORE_EXECUTOR)
+                    .thenCompose(ignored -> requestAuthorizationAsync())
+                    .thenCompose(ignored -> executeAuthorizedRequestAsync(url, jsonPayload));
+            }
+
+            try {
+                AtagOneLocalConnector.assertAuthorized(accStatus);
+            } catch (IOException e) {
+                return failed(e);
+            }
+            return CompletableFuture.completedFuture(new AtagOneLocalConnector.Reply(pageContent.getHeaders(), pageContent.getContent(), fields));
+        });
+    }
+
+    /**
+     * Execute request, in case of empty response or connection error, try again as the retry policy allows. The retry is
+     * scheduled after the delay, no thread waits for it.
+     *
+     * @return Response; completes with the last IOException when the retry policy gives up
+     */
+    @Nonnull
+    protected CompletableFuture<PageContent> executeRequestAsync(final String url, final CharSequence jsonPayload) {
+        val result = new CompletableFuture<PageContent>();
+        attempt(url, jsonPayload, retryTracker.start(RequestMetrics.of(metrics, url)), result);
+        return result;
+    }
+
+    private void attempt(final String url, final CharSequence jsonPayload, final RetryTracker.Attempts attempts,
+                         final CompletableFuture<PageContent> result) {
+
+        val attemptStartNanos = System.nanoTime();
+        httpClient.post(url, jsonPayload, versionString).whenComplete((pageContent, throwable) -> {
+            attempts.getMetrics().getDuration().recordSince(attemptStartNanos);
+            IOException error = null;
+            if (throwable == null) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("POST Response\n" + pageContent);
+                }
+                if (StringUtils.isNotBlank(pageContent.getContent())) {
+                    result.complete(pageContent);
+                    return;
+                }
+            } else {
+                val cause = unwrap(throwable);
+                if (!(cause instanceof IOException)) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                error = (IOException) cause;
+            }
+
+            val delayMs = attempts.failed(error);
+            if (delayMs < 0) {
+                result.completeExceptionally(error != null ? error : new IOException("Empty response"));
+                return;
+            }
+            scheduler.schedule(() -> attempt(url, jsonPayload, attempts, result), delayMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Update selected device when device id is empty.
+     */
+    private void updateSelectedDevice(final JSONFields fields) {
+        selectedDevice = AtagOneLocalConnector.withDeviceId(selectedDevice, fields);
+    }
+
+    @Nonnull
+    private static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    @Nonnull
+    private static <T> CompletableFuture<T> failed(final Throwable e) {
+        val result = new CompletableFuture<T>();
+        result.completeExceptionally(e);
+        return result;
+    }
+}
@@ -10,40 +10,45 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
 import org.juurlink.atagone.domain.FORMAT;
 import org.juurlink.atagone.domain.Version;
 import org.juurlink.atagone.exceptions.AccessDeniedException;
 import org.juurlink.atagone.exceptions.AtagPageErrorException;
 import org.juurlink.atagone.exceptions.AtagSearchErrorException;
+import org.juurlink.atagone.utils.DeltaEncoder;
+import org.juurlink.atagone.utils.HistoryStore;
+import org.juurlink.atagone.utils.IOUtils;
 import org.juurlink.atagone.utils.JSONUtils;
+import org.juurlink.atagone.utils.JmxMetricsReporter;
+import org.juurlink.atagone.utils.MetricsRegistry;
 import org.juurlink.atagone.utils.StringUtils;
+import org.juurlink.atagone.utils.TextMetricsReporter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_BOILER_HEATING_FOR;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_CH_RETURN_TEMPERATURE;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_CH_SETPOINT;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_CH_WATER_PRESSURE;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_CH_WATER_TEMPERATURE;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_FLAME_STATUS;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_OUTSIDE_TEMPERATURE;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_ROOM_TEMPERATURE;
-import static org.juurlink.atagone.AtagOneConnectorInterface.VALUE_TARGET_TEMPERATURE;
+import static org.juurlink.atagone.domain.DiagnosticField.*;
+
 
 /**
  * ATAG ONE Portal API.
@@ -68,6 +73,26 @@ public class AtagOneApp {
     private static final String OPTION_SKIP_AUTH_REQUEST = "skip-auth-request";
     private static final String OPTION_DUMP = "dump";
     private static final String OPTION_MAC = "mac";
+    private static final String OPTION_DAEMON = "daemon";
+    private static final String OPTION_INTERVAL = "interval";
+    private static final String OPTION_OUTPUT_FILE = "output-file";
+    private static final String OPTION_SERVER = "server";
+    private static final String OPTION_FIELDS = "fields";
+    private static final String OPTION_HISTORY = "history";
+    private static final String OPTION_SHOW_HISTORY = "show-history";
+    private static final String OPTION_MAX_AGE = "max-age";
+    private static final String OPTION_METRICS = "metrics";
+    private static final String OPTION_EXPORTER = "exporter";
+
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+    private static final int DEFAULT_MAX_AGE_SECONDS = 10;
+
+    /**
+     * Values printed in CSV output, in sequence; followed by flame status and boiler heating for.
+     */
+    private static final DiagnosticField[] CSV_FIELDS = {
+        ROOM_TEMPERATURE, OUTSIDE_TEMPERATURE, CH_WATER_PRESSURE, CH_WATER_TEMPERATURE, CH_RETURN_TEMPERATURE, TARGET_TEMPERATURE, CH_SETPOINT
+    };
 
     private static final String PROPERTY_NAME_MAVEN_APPLICATION_VERSION = "applicationVersion";
     private static final String PROPERTY_NAME_MAVEN_BUILD_DATE = "buildDate";
@@ -86,8 +111,17 @@ public class AtagOneApp {
         if (configuration.isDebug()) {
             configureLogger();
         }
+        if (configuration.isMetrics()) {
+            startMetrics();
+        }
 
         try {
+            // Print stored samples; no thermostat needed.
+            if (configuration.getShowHistory() > 0) {
+                printHistory(configuration);
+                return;
+            }
+
             // Initialize ATAG ONE connector; Either Local or Remote.
             val atagOneConnector = new AtagOneConnectorFactory().getInstance(configuration);
 
@@ -106,42 +140,26 @@ public class AtagOneApp {
                 // Dump all.
                 System.out.println(atagOneConnector.dump());
 
+            } else if (configuration.isDaemon()) {
+
+                // Keep the session and poll until stopped.
+                runDaemon(atagOneConnector, configuration);
+
+            } else if (configuration.getServerPort() > 0) {
+
+                // Keep the session and serve the state to HTTP clients until stopped.
+                runGateway(atagOneConnector, configuration);
+
+            } else if (configuration.getExporterPort() > 0) {
+
+                // Keep the session, poll and serve the samples to scrapers until stopped.
+                runExporter(atagOneConnector, configuration);
+
             } else {
                 // Get diagnostics.
-                Map<String, Object> diagnostics = atagOneConnector.getDiagnostics();
-
-                if (configuration.getFormat() == FORMAT.CSV) {
-
-                    // Convert flame status to 0 or 1 (boolean).
-                    val flameStatus = diagnostics.get(VALUE_FLAME_STATUS);
-                    val newFlameStatus = Boolean.TRUE.equals(flameStatus) ? 1 : 0;
-                    diagnostics.put("newFlameStatus", newFlameStatus);
-
-                    // Instead of null, print string '-' for boiler heating for.
-                    val boilerHeating = diagnostics.get(VALUE_BOILER_HEATING_FOR);
-                    diagnostics.put("newBoilerHeating", StringUtils.defaultString(boilerHeating, "-"));
-
-                    // Print a list of CSV values.
-                    printValues(diagnostics,
-                        VALUE_ROOM_TEMPERATURE,
-                        VALUE_OUTSIDE_TEMPERATURE,
-                        VALUE_CH_WATER_PRESSURE,
-                        VALUE_CH_WATER_TEMPERATURE,
-                        VALUE_CH_RETURN_TEMPERATURE,
-                        VALUE_TARGET_TEMPERATURE,
-                        VALUE_CH_SETPOINT,
-                        "newFlameStatus",
-                        "newBoilerHeating");
-
-                } else {
-                    // Convert Boolean to "On" "Off" Strings.
-                    if (diagnostics.containsKey(VALUE_FLAME_STATUS)) {
-                        diagnostics.put(VALUE_FLAME_STATUS, (Boolean) diagnostics.get(VALUE_FLAME_STATUS) ? "On" : "Off");
-                    }
-
-                    // Print diagnostics as JSON and keep the sequence.
-                    System.out.println(JSONUtils.toJSON(diagnostics));
-                }
+                val fields = configuration.getFields();
+                val diagnostics = fields != null ? atagOneConnector.readDiagnostics(fields) : atagOneConnector.readDiagnostics();
+                System.out.print(formatDiagnostics(diagnostics, configuration.getFormat()));
             }
             System.out.println();
 
@@ -189,18 +207,170 @@ public class AtagOneApp {
     }
 
     /**
-     * Print values from map in given sequence.
+     * Format diagnostics as CSV values or as JSON; the delta format gives a keyframe.
+     *
+     * @param diagnostics Diagnostics to format
+     * @param format      Output format, JSON when null
+     * @return Formatted diagnostics
+     */
+    @Nonnull
+    protected static String formatDiagnostics(@Nonnull @NonNull final Diagnostics diagnostics, @Nullable final FORMAT format) {
+
+        if (format == FORMAT.CSV) {
+            // Print a list of CSV values.
+            val result = new StringBuilder();
+            for (DiagnosticField field : CSV_FIELDS) {
+                result.append(diagnostics.getValue(field)).append(' ');
+            }
+
+            // Convert flame status to 0 or 1 (boolean).
+            result.append(diagnostics.isFlameOn() ? 1 : 0).append(' ');
+
+            // Instead of null, print string '-' for boiler heating for.
+            result.append(StringUtils.defaultString(diagnostics.getText(BOILER_HEATING_FOR), "-")).append(' ');
+            return result.toString();
+        }
+
+        // A single sample is a keyframe.
+        if (format == FORMAT.DELTA) {
+            return formatValues(DeltaEncoder.keyframe(diagnostics));
+        }
+        return formatValues(diagnostics.toMap());
+    }
+
+    /**
+     * Format diagnostic values as JSON.
+     *
+     * @param values Values in output sequence, flame status is converted to "On" or "Off"
+     * @return Formatted values
+     */
+    @Nonnull
+    protected static String formatValues(@Nonnull @NonNull final Map<String, Object> values) {
+        // Convert Boolean to "On" "Off" Strings.
+        val flameStatus = values.get(FLAME_STATUS.getKey());
+        if (flameStatus instanceof Boolean) {
+            values.put(FLAME_STATUS.getKey(), (Boolean) flameStatus ? "On" : "Off");
+        }
+
+        // Print diagnostics as JSON and keep the sequence.
+        return JSONUtils.toJSON(values) + System.lineSeparator();
+    }
+
+    /**
+     * Poll diagnostics at a fixed rate and write every sample to standard out or to the configured output file, until the
+     * process is stopped.
+     *
+     * @param connector     Logged in connector
+     * @param configuration Interval, output format and output file
+     */
+    protected static void runDaemon(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                                    @Nonnull @NonNull final Configuration configuration) throws IOException, InterruptedException {
+
+        val outputFile = configuration.getOutputFile();
+        val out = outputFile != null ?
+            new PrintStream(new FileOutputStream(outputFile, true), true, AtagOneConnectorInterface.ENCODING_UTF_8) :
+            System.out;
+        val format = configuration.getFormat();
+
+        val historyStore = configuration.isHistory() ? HistoryStore.getDefault() : null;
+
+        val deltaEncoder = format == FORMAT.DELTA ? new DeltaEncoder() : null;
+
+        val fields = configuration.getFields() != null ? configuration.getFields() : new DiagnosticField[0];
+        val poller = new DiagnosticsPoller(connector, configuration.getInterval(), fields, diagnostics -> {
+            out.print(deltaEncoder != null ? formatValues(deltaEncoder.encode(diagnostics)) : formatDiagnostics(diagnostics, format));
+            out.println();
+            out.flush();
+
+            if (historyStore != null) {
+                try {
+                    historyStore.append(diagnostics);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Cannot store sample in history: " + e.getMessage(), e);
+                }
+            }
+        });
+
+        // Stop polling and write the history to disk on Ctrl-C or kill.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            poller.close();
+            IOUtils.closeQuietly(historyStore);
+        }));
+
+        try {
+            poller.start();
+            poller.awaitTermination();
+        } finally {
+            if (out != System.out) {
+                IOUtils.closeQuietly(out);
+            }
+            IOUtils.closeQuietly(historyStore);
+        }
+    }
+
+    /**
+     * Print the samples in the history of all thermostats.
      *
-     * @param diagnostics Key value map
-     * @param keys        List of keys of values to print; the sequence is preserved
+     * @param configuration Number of hours and output format
      */
-    protected static void printValues(@Nonnull @NonNull final Map<String, Object> diagnostics, final String... keys) {
-        for (String key : keys) {
-            System.out.print(diagnostics.get(key));
-            System.out.print(" ");
+    protected static void printHistory(@Nonnull @NonNull final Configuration configuration) throws IOException {
+        val until = System.currentTimeMillis();
+        val from = until - TimeUnit.HOURS.toMillis(configuration.getShowHistory());
+        try (HistoryStore historyStore = HistoryStore.getDefault()) {
+            for (String device : historyStore.getDevices()) {
+                for (Diagnostics diagnostics : historyStore.read(device, from, until)) {
+                    System.out.print(formatDiagnostics(diagnostics, configuration.getFormat()));
+                    System.out.println();
+                }
+            }
         }
     }
 
+    /**
+     * Serve the thermostat state over HTTP until the process is stopped.
+     *
+     * @param connector     Logged in connector
+     * @param configuration Server port and max age
+     */
+    protected static void runGateway(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                                     @Nonnull @NonNull final Configuration configuration) throws IOException, InterruptedException {
+
+        val gateway = new AtagOneGateway(connector, new InetSocketAddress(configuration.getServerPort()),
+            TimeUnit.SECONDS.toMillis(configuration.getMaxAge()));
+
+        // Stop serving on Ctrl-C or kill.
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::close));
+
+        gateway.start();
+        System.out.println("Serving " + THERMOSTAT_NAME + " state on http://localhost:" + gateway.getAddress().getPort() + "/diagnostics");
+        gateway.awaitTermination();
+    }
+
+    /**
+     * Poll diagnostics at a fixed rate and serve the latest sample in OpenMetrics text format until the process is stopped.
+     *
+     * @param connector     Logged in connector
+     * @param configuration Exporter port, interval and fields
+     */
+    protected static void runExporter(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                                      @Nonnull @NonNull final Configuration configuration) throws IOException, InterruptedException {
+
+        val exporter = new OpenMetricsExporter();
+        val fields = configuration.getFields() != null ? configuration.getFields() : new DiagnosticField[0];
+        val poller = new DiagnosticsPoller(connector, configuration.getInterval(), fields, exporter::update);
+
+        // Stop polling and serving on Ctrl-C or kill.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            poller.close();
+            exporter.close();
+        }));
+
+        exporter.start(new InetSocketAddress(configuration.getExporterPort()));
+        System.out.println("Serving " + THERMOSTAT_NAME + " metrics on http://localhost:" + exporter.getAddress().getPort() + "/metrics");
+        poller.start();
+        exporter.awaitTermination();
+    }
+
     /**
      * Parse command line options and exit in case of error.
      *
@@ -216,7 +386,9 @@ public class AtagOneApp {
         options.addOption("p", OPTION_PASSWORD, true, "User Portal password.");
         options.addOption("h", OPTION_HELP, false, "Print this help message.");
         options.addOption("d", OPTION_DEBUG, false, "Print debugging information.");
-        options.addOption("o", OPTION_OUTPUT, true, "Output format; json [default] or csv.");
+        options.addOption("o", OPTION_OUTPUT, true, "Output format; json [default], csv or delta. " +
+            "Delta prints only the values changed since the previous sample in daemon mode, with all values every " +
+            DeltaEncoder.DEFAULT_KEYFRAME_INTERVAL + " samples.");
         options.addOption("s", OPTION_SET, true,
             "Set temperature in degrees celsius between " + TEMPERATURE_MIN + " and " + TEMPERATURE_MAX + " inclusive.");
         options.addOption("v", OPTION_VERSION, false, "Version info and build timestamp.");
@@ -225,6 +397,27 @@ public class AtagOneApp {
         options.addOption(null, OPTION_DUMP, false,
             "Request all info and dump the complete response from the thermostat. Only supported for local thermostats.");
         options.addOption(null, OPTION_MAC, true, "Option to override hardware address (mac address) for authentication.");
+        options.addOption(null, OPTION_DAEMON, false,
+            "Keep running, login once and print the diagnostics every interval seconds until stopped.");
+        options.addOption(null, OPTION_INTERVAL, true,
+            "Number of seconds between two samples in daemon or exporter mode, default " + DEFAULT_INTERVAL_SECONDS + ".");
+        options.addOption(null, OPTION_OUTPUT_FILE, true, "Append the samples to this file instead of printing them in daemon mode.");
+        options.addOption(null, OPTION_FIELDS, true,
+            "Comma separated keys of the fields to read, for example roomTemperature,flameStatus. Only the needed info is " +
+                "requested from a local thermostat.");
+        options.addOption(null, OPTION_HISTORY, false,
+            "Also store the samples in the history in the state directory (~/.atag-one/history) in daemon mode.");
+        options.addOption(null, OPTION_SHOW_HISTORY, true,
+            "Print the samples of this number of hours stored in the history, without connecting to the thermostat.");
+        options.addOption(null, OPTION_SERVER, true,
+            "Keep running, login once and serve GET /diagnostics, GET /dump and POST /setpoint over HTTP on this port.");
+        options.addOption(null, OPTION_MAX_AGE, true,
+            "Max age in seconds of the state served in server mode, default " + DEFAULT_MAX_AGE_SECONDS + ".");
+        options.addOption(null, OPTION_METRICS, false,
+            "Publish request latencies and retry counts over JMX and print them to standard error when stopped.");
+        options.addOption(null, OPTION_EXPORTER, true,
+            "Keep running, login once, poll every interval seconds and serve the latest values in OpenMetrics format on " +
+                "GET /metrics on this port, for Prometheus.");
 
         try {
             CommandLineParser parser = new DefaultParser();
@@ -240,6 +433,16 @@ public class AtagOneApp {
             val skipAuthRequest = cmd.hasOption(OPTION_SKIP_AUTH_REQUEST);
             val dump = cmd.hasOption(OPTION_DUMP);
             val mac = cmd.getOptionValue(OPTION_MAC);
+            val daemon = cmd.hasOption(OPTION_DAEMON);
+            val intervalString = cmd.getOptionValue(OPTION_INTERVAL);
+            val outputFile = cmd.getOptionValue(OPTION_OUTPUT_FILE);
+            val serverPortString = cmd.getOptionValue(OPTION_SERVER);
+            val fieldsString = cmd.getOptionValue(OPTION_FIELDS);
+            val history = cmd.hasOption(OPTION_HISTORY);
+            val showHistoryString = cmd.getOptionValue(OPTION_SHOW_HISTORY);
+            val maxAgeString = cmd.getOptionValue(OPTION_MAX_AGE);
+            val metrics = cmd.hasOption(OPTION_METRICS);
+            val exporterPortString = cmd.getOptionValue(OPTION_EXPORTER);
             // Remaining arguments
             val hostName = cmd.getArgs() != null && cmd.getArgs().length > 0 ? cmd.getArgs()[0] : null;
 
@@ -272,6 +475,146 @@ public class AtagOneApp {
                 System.exit(1);
             }
 
+            // Daemon mode only polls diagnostics.
+            if (daemon && (hasTemperature || dump)) {
+                System.err.println("The daemon option cannot be combined with the set or dump option.");
+                System.err.println();
+
+                showCommandLineHelp(options);
+                System.exit(1);
+            }
+
+            // Server mode serves diagnostics, dump and set requests itself.
+            if (serverPortString != null && (hasTemperature || dump || daemon)) {
+                System.err.println("The server option cannot be combined with the set, dump or daemon option.");
+                System.err.println();
+
+                showCommandLineHelp(options);
+                System.exit(1);
+            }
+
+            // Exporter mode polls and serves the samples itself.
+            if (exporterPortString != null && (hasTemperature || dump || daemon || serverPortString != null)) {
+                System.err.println("The exporter option cannot be combined with the set, dump, daemon or server option.");
+                System.err.println();
+
+                showCommandLineHelp(options);
+                System.exit(1);
+            }
+
+            DiagnosticField[] fields = null;
+            if (StringUtils.isNotBlank(fieldsString)) {
+                val keys = fieldsString.split(",");
+                fields = new DiagnosticField[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    fields[i] = DiagnosticField.byKey(keys[i].trim());
+                    if (fields[i] == null) {
+                        System.err.println("Unknown field '" + keys[i].trim() + "'.");
+                        System.out.println("Valid fields: " + Arrays.toString(getFieldKeys()) + ".");
+                        System.out.println();
+
+                        showCommandLineHelp(options);
+                        System.exit(1);
+                    }
+                }
+            }
+
+            // History is written by the daemon.
+            if (history && !daemon) {
+                System.err.println("The history option requires the daemon option.");
+                System.err.println();
+
+                showCommandLineHelp(options);
+                System.exit(1);
+            }
+
+            int showHistory = 0;
+            if (showHistoryString != null) {
+                try {
+                    showHistory = Integer.parseInt(showHistoryString.trim());
+                } catch (NumberFormatException e) {
+                    showHistory = 0;
+                }
+                if (showHistory <= 0) {
+                    System.err.println("Show history has to be a positive number of hours.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+                if (hasTemperature || dump || daemon || serverPortString != null || exporterPortString != null) {
+                    System.err.println("The show history option cannot be combined with the set, dump, daemon, server or exporter option.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+            }
+
+            int serverPort = 0;
+            if (serverPortString != null) {
+                try {
+                    serverPort = Integer.parseInt(serverPortString.trim());
+                } catch (NumberFormatException e) {
+                    serverPort = 0;
+                }
+                if (serverPort <= 0 || serverPort > 65535) {
+                    System.err.println("Server port has to be a number between 1 and 65535.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+            }
+
+            int exporterPort = 0;
+            if (exporterPortString != null) {
+                try {
+                    exporterPort = Integer.parseInt(exporterPortString.trim());
+                } catch (NumberFormatException e) {
+                    exporterPort = 0;
+                }
+                if (exporterPort <= 0 || exporterPort > 65535) {
+                    System.err.println("Exporter port has to be a number between 1 and 65535.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+            }
+
+            int maxAge = DEFAULT_MAX_AGE_SECONDS;
+            if (StringUtils.isNotBlank(maxAgeString)) {
+                try {
+                    maxAge = Integer.parseInt(maxAgeString.trim());
+                } catch (NumberFormatException e) {
+                    maxAge = -1;
+                }
+                if (maxAge < 0) {
+                    System.err.println("Max age has to be zero or a positive number of seconds.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+            }
+
+            int interval = DEFAULT_INTERVAL_SECONDS;
+            if (StringUtils.isNotBlank(intervalString)) {
+                try {
+                    interval = Integer.parseInt(intervalString.trim());
+                } catch (NumberFormatException e) {
+                    interval = 0;
+                }
+                if (interval <= 0) {
+                    System.err.println("Interval has to be a positive number of seconds.");
+                    System.err.println();
+
+                    showCommandLineHelp(options);
+                    System.exit(1);
+                }
+            }
+
             if (hasTemperature) {
                 if (StringUtils.isBlank(temperatureString)) {
                     System.err.println("No temperature specified. Please set setpoint temperature.");
@@ -321,6 +664,16 @@ public class AtagOneApp {
                 .skipAuthRequest(skipAuthRequest)
                 .dump(dump)
                 .mac(mac)
+                .daemon(daemon)
+                .interval(interval)
+                .outputFile(outputFile)
+                .fields(fields)
+                .history(history)
+                .metrics(metrics)
+                .showHistory(showHistory)
+                .serverPort(serverPort)
+                .exporterPort(exporterPort)
+                .maxAge(maxAge)
                 .version(versionInfo)
                 .build();
 
@@ -337,6 +690,19 @@ public class AtagOneApp {
         throw new IllegalStateException("Program should have been exited");
     }
 
+    /**
+     * @return Keys of all diagnostic fields
+     */
+    @Nonnull
+    private static String[] getFieldKeys() {
+        val fields = DiagnosticField.values();
+        val keys = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            keys[i] = fields[i].getKey();
+        }
+        return keys;
+    }
+
     /**
      * Display atag-one program version info and build timestamp.
      */
@@ -390,6 +756,20 @@ public class AtagOneApp {
         System.out.println(result);
     }
 
+    /**
+     * Publish the metrics over JMX and print them to standard error when the application stops.
+     */
+    protected static void startMetrics() {
+        val registry = MetricsRegistry.getDefault();
+        try {
+            new JmxMetricsReporter(registry).report();
+        } catch (IOException e) {
+            log.log(Level.WARNING, e.getMessage(), e);
+        }
+        val textReporter = new TextMetricsReporter(registry, System.err);
+        Runtime.getRuntime().addShutdownHook(new Thread(textReporter::report, EXECUTABLE_NAME + "-metrics"));
+    }
+
     /**
      * Configure logging.
      */
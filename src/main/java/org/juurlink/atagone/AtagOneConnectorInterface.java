@@ -7,6 +7,10 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+
 /**
  * ATAG One remote or local connector.
  */
@@ -43,13 +47,35 @@ public interface AtagOneConnectorInterface {
      */
     void login() throws IOException;
 
+    /**
+     * Get diagnostic data.
+     *
+     * @return Diagnostic data
+     */
+    @Nonnull
+    Diagnostics readDiagnostics() throws IOException;
+
+    /**
+     * Get diagnostic data of the given fields. Connectors that can, request and convert less data; the default reads all.
+     *
+     * @param fields Fields needed
+     * @return Diagnostic data, at least the given fields when available
+     */
+    @Nonnull
+    default Diagnostics readDiagnostics(@Nonnull DiagnosticField... fields) throws IOException {
+        return readDiagnostics();
+    }
+
     /**
      * Get MAP of diagnostic data.
      *
      * @return Diagnostic data
+     * @see #readDiagnostics()
      */
     @Nonnull
-    Map<String, Object> getDiagnostics() throws IOException;
+    default Map<String, Object> getDiagnostics() throws IOException {
+        return readDiagnostics().toMap();
+    }
 
     /**
      * Set temperature.
@@ -60,8 +86,29 @@ public interface AtagOneConnectorInterface {
     @Nullable
     BigDecimal setTemperature(BigDecimal temperature) throws IOException;
 
+    /**
+     * Change control values in one request. Connectors that cannot, only support the room temperature setpoint.
+     *
+     * @param update Values to change
+     * @return Current room temperature or null when temperature unknown
+     * @throws UnsupportedOperationException When other values than the setpoint are set and the connector cannot change them
+     */
+    @Nullable
+    default BigDecimal updateControl(@Nonnull ControlUpdate update) throws IOException {
+        if (!update.isSetpointOnly()) {
+            throw new UnsupportedOperationException("Connector can only change the room temperature setpoint.");
+        }
+        return setTemperature(update.getChModeTemp());
+    }
+
     /**
      * Get all info from the thermostat and dump the response.
      */
     String dump() throws IOException;
+
+    /**
+     * Abort a request in progress on another thread. Connectors that cannot, do nothing.
+     */
+    default void abort() {
+    }
 }
@@ -0,0 +1,307 @@
+package org.juurlink.atagone;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.domain.FORMAT;
+import org.juurlink.atagone.utils.IOUtils;
+import org.juurlink.atagone.utils.JSONFields;
+import org.juurlink.atagone.utils.JSONUtils;
+import org.juurlink.atagone.utils.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Small HTTP server that shares one thermostat session between many clients.
+ * <p/>
+ * <ul>
+ * <li>GET /diagnostics; diagnostics as JSON, or as CSV with query parameter format=csv</li>
+ * <li>GET /dump; complete thermostat response, local operation only</li>
+ * <li>POST /setpoint; set target temperature, the body is a number or {"temperature":20.5}</li>
+ * </ul>
+ * Reads are answered from the last result when not older than the max age, so the thermostat sees at most one read per max
+ * age, however many clients there are. Concurrent clients that find the result outdated wait for one read, see
+ * {@link CoalescingConnector}.
+ */
+@Log
+public class AtagOneGateway implements Closeable {
+
+    private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+    private static final String CONTENT_TYPE_TEXT = "text/plain; charset=UTF-8";
+
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+    private static final int STATUS_BAD_GATEWAY = 502;
+
+    private static final int THREADS = 4;
+
+    /**
+     * Cached response of the thermostat.
+     */
+    @Value
+    private static class Snapshot<T> {
+        @Nonnull
+        T value;
+        long timestamp;
+    }
+
+    private final CoalescingConnector connector;
+    private final long maxAgeMs;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Lets concurrent clients wait for one dump.
+     */
+    private final ReentrantLock dumpLock = new ReentrantLock();
+
+    @Nullable
+    private volatile Snapshot<String> dump;
+
+    /**
+     * Create gateway, call {@link #start()} to accept requests.
+     *
+     * @param connector Logged in connector
+     * @param address   Address and port to listen on
+     * @param maxAgeMs  Max age of the snapshot served to clients
+     * @throws IOException When the port cannot be bound
+     */
+    public AtagOneGateway(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                          @Nonnull @NonNull final InetSocketAddress address,
+                          final long maxAgeMs) throws IOException {
+        if (maxAgeMs < 0) {
+            throw new IllegalArgumentException("Max age cannot be negative, but is " + maxAgeMs + ".");
+        }
+        this.connector = new CoalescingConnector(connector, maxAgeMs);
+        this.maxAgeMs = maxAgeMs;
+
+        val threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, AtagOneApp.EXECUTABLE_NAME + "-gateway-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/diagnostics", exchange -> handle(exchange, "GET", this::getDiagnostics));
+        this.server.createContext("/dump", exchange -> handle(exchange, "GET", this::getDump));
+        this.server.createContext("/setpoint", exchange -> handle(exchange, "POST", this::setSetpoint));
+        this.server.createContext("/", exchange -> respond(exchange, STATUS_NOT_FOUND, CONTENT_TYPE_TEXT, "Not found"));
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    public void start() {
+        server.start();
+        log.fine("Gateway listening on " + getAddress() + ", max age " + maxAgeMs + " ms.");
+    }
+
+    /**
+     * @return Address and port the gateway listens on
+     */
+    @Nonnull
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Wait until the gateway is closed.
+     *
+     * @throws InterruptedException When interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop accepting requests; requests in progress get one second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        stopped.countDown();
+    }
+
+    /**
+     * @return Diagnostics, from the last read when not older than the max age
+     */
+    @Nonnull
+    protected Diagnostics readDiagnostics() throws IOException {
+        return connector.readDiagnostics();
+    }
+
+    @Nonnull
+    private String readDump() throws IOException {
+        val current = dump;
+        if (isFresh(current)) {
+            return current.getValue();
+        }
+        dumpLock.lock();
+        try {
+            val latest = dump;
+            if (isFresh(latest)) {
+                return latest.getValue();
+            }
+            val value = connector.dump();
+            dump = new Snapshot<>(value, System.currentTimeMillis());
+            return value;
+        } finally {
+            dumpLock.unlock();
+        }
+    }
+
+    private boolean isFresh(@Nullable final Snapshot<?> snapshot) {
+        return snapshot != null && System.currentTimeMillis() - snapshot.getTimestamp() <= maxAgeMs;
+    }
+
+    private void getDiagnostics(final HttpExchange exchange) throws IOException {
+        val value = readDiagnostics();
+        val format = "csv".equalsIgnoreCase(getQueryParameter(exchange, "format")) ? FORMAT.CSV : FORMAT.JSON;
+        val body = AtagOneApp.formatDiagnostics(value, format);
+        respond(exchange, STATUS_OK, format == FORMAT.CSV ? CONTENT_TYPE_TEXT : CONTENT_TYPE_JSON, body);
+    }
+
+    private void getDump(final HttpExchange exchange) throws IOException {
+        respond(exchange, STATUS_OK, CONTENT_TYPE_JSON, readDump());
+    }
+
+    private void setSetpoint(final HttpExchange exchange) throws IOException {
+        val temperature = parseTemperature(exchange);
+        if (temperature == null) {
+            respond(exchange, STATUS_BAD_REQUEST, CONTENT_TYPE_TEXT,
+                "Temperature required; post a number, {\"temperature\":20.5} or use query parameter temperature.");
+            return;
+        }
+
+        try {
+            AtagOneLocalConnector.getControlValues(ControlUpdate.builder().chModeTemp(temperature).build());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, STATUS_BAD_REQUEST, CONTENT_TYPE_TEXT, e.getMessage());
+            return;
+        }
+
+        // Next read shows the new setpoint.
+        val roomTemperature = connector.setTemperature(temperature);
+
+        val result = new LinkedHashMap<String, Object>();
+        result.put("targetTemperature", temperature);
+        result.put("roomTemperature", roomTemperature);
+        respond(exchange, STATUS_OK, CONTENT_TYPE_JSON, JSONUtils.toJSON(result) + System.lineSeparator());
+    }
+
+    @Nullable
+    private BigDecimal parseTemperature(final HttpExchange exchange) throws IOException {
+        String value = getQueryParameter(exchange, "temperature");
+        if (value == null) {
+            val body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8).trim();
+            if (body.startsWith("{")) {
+                return JSONFields.parse(body).getBigDecimal("temperature");
+            }
+            value = body;
+        }
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String getQueryParameter(final HttpExchange exchange, final String name) throws IOException {
+        val query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            val separator = parameter.indexOf('=');
+            val key = separator >= 0 ? parameter.substring(0, separator) : parameter;
+            if (name.equals(URLDecoder.decode(key, AtagOneConnectorInterface.ENCODING_UTF_8))) {
+                return separator >= 0 ? URLDecoder.decode(parameter.substring(separator + 1), AtagOneConnectorInterface.ENCODING_UTF_8) : "";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Handles one request.
+     */
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(final HttpExchange exchange, final String method, final Handler handler) {
+        try {
+            if (!method.equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                respond(exchange, STATUS_METHOD_NOT_ALLOWED, CONTENT_TYPE_TEXT, "Method not allowed, use " + method);
+                return;
+            }
+            handler.handle(exchange);
+
+        } catch (IllegalArgumentException e) {
+            // Request that cannot be parsed.
+            respondQuietly(exchange, STATUS_BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            // Unexpected reply of the thermostat.
+            log.log(Level.WARNING, "Error communicating with " + AtagOneApp.THERMOSTAT_NAME + ": " + e.getMessage(), e);
+            respondQuietly(exchange, STATUS_BAD_GATEWAY, e.toString());
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Error communicating with " + AtagOneApp.THERMOSTAT_NAME + ": " + e.getMessage(), e);
+            respondQuietly(exchange, STATUS_BAD_GATEWAY, e.toString());
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Error handling " + exchange.getRequestURI() + ": " + e.getMessage(), e);
+            respondQuietly(exchange, STATUS_INTERNAL_SERVER_ERROR, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respondQuietly(final HttpExchange exchange, final int status, @Nullable final String message) {
+        try {
+            respond(exchange, status, CONTENT_TYPE_TEXT, StringUtils.defaultString(message, "Error"));
+        } catch (IOException e) {
+            log.fine("Cannot send error response: " + e);
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String contentType, final String body) throws IOException {
+        val bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        log.finest(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + status);
+    }
+}
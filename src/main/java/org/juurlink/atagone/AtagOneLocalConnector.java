@@ -3,6 +3,7 @@ package org.juurlink.atagone;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.java.Log;
 import lombok.val;
 import org.juurlink.atagone.domain.*;
@@ -14,30 +15,42 @@ import org.juurlink.atagone.utils.PageContent;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.InetAddress;
-import java.util.LinkedHashMap;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import static org.juurlink.atagone.domain.DiagnosticField.*;
 
 /**
  * Connect to ATAG One thermostat in local network.
  */
 @Log
 @SuppressWarnings("HttpUrlsUsage")
-public class AtagOneLocalConnector implements AtagOneConnectorInterface {
+public class AtagOneLocalConnector implements AtagOneConnectorInterface, Closeable {
 
-    private static final int MAX_LISTEN_TIMEOUT_SECONDS = 60;
+    static final int MAX_LISTEN_TIMEOUT_SECONDS = 60;
 
     /**
      * Max number of times to wait for thermostat authorization.
      */
-    private static final int MAX_AUTH_RETRIES = 15;
+    static final int MAX_AUTH_RETRIES = 15;
 
     /**
      * Time to wait between auth requests.
      */
-    private static final int SLEEP_BETWEEN_AUTH_REQUESTS_MS = 5000;
+    static final int SLEEP_BETWEEN_AUTH_REQUESTS_MS = 5000;
 
     private static final int MESSAGE_INFO_CONTROL = 1;
     private static final int MESSAGE_INFO_SCHEDULES = 2;
@@ -48,22 +61,75 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
     private static final int MESSAGE_INFO_REPORT_DETAILS = 64;
 
     /**
-     * UDP port the thermostat sends its messages to.
+     * All info sections, for a dump.
      */
-    private static final int UDP_BROADCAST_PORT = 11000;
+    static final int MESSAGE_INFO_ALL = MESSAGE_INFO_CONTROL + MESSAGE_INFO_SCHEDULES + MESSAGE_INFO_CONFIGURATION +
+        MESSAGE_INFO_REPORT + MESSAGE_INFO_STATUS + MESSAGE_INFO_WIFI_SCAN + MESSAGE_INFO_REPORT_DETAILS;
+
     /**
      * Client port the thermostat listens on.
      */
-    private static final int HTTP_CLIENT_PORT = 10000;
-    private static final int SLEEP_BETWEEN_FAILURE_MS = 2000;
+    static final int HTTP_CLIENT_PORT = 10000;
 
     private static final String RESPONSE_ACC_STATUS = "acc_status";
 
+    /**
+     * Domestic hot water setpoint range of the thermostat, in degrees celsius.
+     */
+    static final int DHW_SETPOINT_MIN = 40;
+    static final int DHW_SETPOINT_MAX = 65;
+
+    /**
+     * Heating modes: manual, auto, vacation, extend and fireplace.
+     */
+    private static final Set<Integer> CH_MODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)));
+
+    /**
+     * Diagnostic fields reported by the local connector, in sequence.
+     */
+    private static final DiagnosticField[] LAYOUT = {
+        DEVICE_IP, DEVICE_ID, LATEST_REPORT_TIME, BURNING_HOURS, ROOM_TEMPERATURE, OUTSIDE_TEMPERATURE, DHW_SETPOINT,
+        DHW_WATER_TEMPERATURE, CH_SETPOINT, CH_WATER_TEMPERATURE, CH_WATER_PRESSURE, CH_RETURN_TEMPERATURE, TARGET_TEMPERATURE,
+        DEVICE_STATUS, CONNECTION_STATUS, DEVICE_ERRORS, BOILER_ERRORS, DBG_OUTSIDE_TEMP, PCB_TEMP, DHW_WATER_TEMP, DHW_WATER_PRES,
+        BOILER_STATUS, BOILER_CONFIG, CH_TIME_TO_TEMP, POWER_CONS, RSSI, CURRENT, VOLTAGE, RESETS, MEMORY_ALLOCATION, CH_STATUS,
+        CH_CONTROL_MODE, CH_MODE, CH_MODE_DURATION, CH_MODE_TEMP, DHW_STATUS, DHW_MODE, WEATHER_TEMP, WEATHER_STATUS,
+        VACATION_DURATION, EXTEND_DURATION, FIREPLACE_DURATION, FLAME_STATUS, ATAG_ONE_VERSION, MAC_ADDRESS
+    };
+
+    /**
+     * Info bit of the reply section with the value of each field; 0 for the status section, which is always included, and for
+     * fields not read from the reply.
+     */
+    private static final Map<DiagnosticField, Integer> INFO = new EnumMap<>(DiagnosticField.class);
+
+    static {
+        for (DiagnosticField field : LAYOUT) {
+            INFO.put(field, 0);
+        }
+        for (DiagnosticField field : new DiagnosticField[]{LATEST_REPORT_TIME, BURNING_HOURS, ROOM_TEMPERATURE,
+            OUTSIDE_TEMPERATURE, DHW_WATER_TEMPERATURE, CH_SETPOINT, CH_WATER_TEMPERATURE, CH_WATER_PRESSURE, CH_RETURN_TEMPERATURE,
+            TARGET_TEMPERATURE, DEVICE_ERRORS, BOILER_ERRORS, DBG_OUTSIDE_TEMP, PCB_TEMP, DHW_WATER_TEMP, DHW_WATER_PRES,
+            BOILER_STATUS, BOILER_CONFIG, CH_TIME_TO_TEMP, POWER_CONS, RSSI, CURRENT, VOLTAGE, RESETS, MEMORY_ALLOCATION,
+            FLAME_STATUS}) {
+            INFO.put(field, MESSAGE_INFO_REPORT);
+        }
+        for (DiagnosticField field : new DiagnosticField[]{DHW_SETPOINT, CH_STATUS, CH_CONTROL_MODE, CH_MODE, CH_MODE_DURATION,
+            CH_MODE_TEMP, DHW_STATUS, DHW_MODE, WEATHER_TEMP, WEATHER_STATUS, VACATION_DURATION, EXTEND_DURATION,
+            FIREPLACE_DURATION}) {
+            INFO.put(field, MESSAGE_INFO_CONTROL);
+        }
+    }
+
     /**
      * Hostname and MAC address of running machine.
      */
     private final DeviceInfo computerInfo;
 
+    /**
+     * Request payloads for this computer.
+     */
+    private final MessageTemplates messages;
+
     /**
      * API version info.
      */
@@ -82,6 +148,34 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
      */
     private final boolean skipAuthRequest;
 
+    /**
+     * Keeps the connection to the thermostat open between requests.
+     */
+    private final KeepAliveHttpClient httpClient = new KeepAliveHttpClient();
+
+    /**
+     * When to send a failed request again.
+     */
+    private final RetryTracker retryTracker;
+
+    /**
+     * Pairings accepted earlier, so login can skip the pair request.
+     */
+    private final PairingStore pairingStore = PairingStore.getDefault();
+
+    /**
+     * True when login skipped the pair request because of a stored pairing.
+     */
+    private boolean pairedFromStore;
+
+    /**
+     * Key of the pairing in the store, fixed at login so the pairing is stored and removed under the key it was found by.
+     */
+    @Nullable
+    private String pairingKey;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
     /**
      * Construct ATAG One connector.
      *
@@ -102,24 +196,44 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
      */
     @SuppressWarnings("unused")
     public AtagOneLocalConnector(final @Nonnull @NonNull Configuration configuration) throws IOException {
+        // Local computer's MAC address (Is used to communicate with the thermostat).
+        this(configuration, NetworkUtils.getDeviceInfo(), null);
+    }
+
+    /**
+     * Construct ATAG One connector for a known thermostat, without looking up the local device info again.
+     * Used to connect to more than one thermostat from the same computer.
+     *
+     * @param configuration   Configuration for device host-name, MAC override and version
+     * @param localDeviceInfo Hostname, IP - and MAC address of this computer
+     * @param device          Thermostat to connect to; when null, the configured host-name is used or the thermostat is searched
+     * @throws java.net.UnknownHostException when configures host-name is invalid
+     */
+    public AtagOneLocalConnector(final @Nonnull @NonNull Configuration configuration,
+                                 final @Nonnull @NonNull DeviceInfo localDeviceInfo,
+                                 final @Nullable AtagOneInfo device) throws UnknownHostException {
         log.fine(String.format("Instantiate %s local connector", AtagOneApp.THERMOSTAT_NAME));
 
         versionInfo = configuration.getVersion();
+        val retryPolicy = configuration.getRetryPolicy();
+        retryTracker = new RetryTracker(retryPolicy != null ? retryPolicy : RetryPolicy.defaults());
 
         // Skip auth request?
         skipAuthRequest = configuration.isSkipAuthRequest();
 
         // Host-name for thermostat configured?
         val hostName = configuration.getHostName();
-        if (StringUtils.isNotBlank(hostName)) {
+        if (device != null) {
+            selectedDevice = device;
+
+        } else if (StringUtils.isNotBlank(hostName)) {
 
             // The host-name is set, so we can skip discovery during login process.
             val deviceAddress = InetAddress.getByName(hostName);
             selectedDevice = AtagOneInfo.builder().deviceAddress(deviceAddress).build();
         }
 
-        // Local computer's MAC address (Is used to communicate with the thermostat).
-        DeviceInfo deviceInfo = NetworkUtils.getDeviceInfo();
+        DeviceInfo deviceInfo = localDeviceInfo;
         if (StringUtils.isNotBlank(configuration.getMac())) {
             // Override MAC address with configured mac.
             deviceInfo = DeviceInfo.builder()
@@ -129,6 +243,7 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
                 .build();
         }
         computerInfo = deviceInfo;
+        messages = new MessageTemplates(deviceInfo.getMac(), getDeviceName(deviceInfo));
     }
 
     /**
@@ -149,11 +264,16 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
             log.fine("Thermostat address is: " + selectedDevice.getDeviceAddress().getHostAddress());
         }
 
-        if (!skipAuthRequest) {
+        pairingKey = getPairingKey(selectedDevice);
+        if (skipAuthRequest) {
+            log.fine("Skip authorization process as requested.");
+        } else if (pairingStore.getAccepted(pairingKey, computerInfo.getMac()) != null) {
+            // Paired before; a request that is not authorized starts the authorization process after all.
+            log.fine("Skip authorization process, access granted before.");
+            pairedFromStore = true;
+        } else {
             // Start authorization proces.
             requestAuthorizationFromThermostat();
-        } else {
-            log.fine("Skip authorization process as requested.");
         }
     }
 
@@ -166,61 +286,72 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
     @Override
     @Nullable
     public BigDecimal setTemperature(final BigDecimal targetTemperature) throws IOException {
+        val roomTemperature = updateControl(ControlUpdate.builder().chModeTemp(targetTemperature).build());
+        if (roomTemperature != null) {
+            return roomTemperature;
+        }
+        // Reply without room temperature, read just that.
+        return readDiagnostics(ROOM_TEMPERATURE).getDecimal(ROOM_TEMPERATURE);
+    }
+
+    /**
+     * Change control values in one update message.
+     *
+     * @param update Values to change; the setpoint is rounded by a half and must be between 4 and 27 (inclusive)
+     * @return Room temperature from the reply, or null when the reply does not have it
+     */
+    @Override
+    @Nullable
+    public BigDecimal updateControl(@Nonnull @NonNull final ControlUpdate update) throws IOException {
 
         if (selectedDevice == null) {
-            throw new IllegalArgumentException("No device selected, cannot set temperature.");
+            throw new IllegalArgumentException("No device selected, cannot update control values.");
         }
 
         if (computerInfo == null) {
-            throw new IllegalArgumentException("Cannot determine MAC address of computer, cannot set temperature.");
+            throw new IllegalArgumentException("Cannot determine MAC address of computer, cannot update control values.");
         }
 
-        // Discard the precision and round by half.
-        float roundedTemperature = NumberUtils.roundHalf(targetTemperature.floatValue());
-        if (roundedTemperature < AtagOneApp.TEMPERATURE_MIN || roundedTemperature > AtagOneApp.TEMPERATURE_MAX) {
-            throw new IllegalArgumentException(
-                "Device temperature out of bounds: " + roundedTemperature + ". Needs to be between " + AtagOneApp.TEMPERATURE_MIN +
-                    " (inclusive) and " + AtagOneApp.TEMPERATURE_MAX + " (inclusive)");
-        }
+        val jsonPayload = messages.update(getControlValues(update));
 
         val messageUrl = "http://" + selectedDevice.getDeviceAddress().getHostAddress() + ":" + HTTP_CLIENT_PORT + "/update";
-        log.fine("POST retrieve: URL=" + messageUrl);
-
-        // Get computer MAC address.
-        val macAddress = computerInfo.getMac();
-
-        val jsonPayload = "{\"update_message\":{" +
-            "\"seqnr\":0," +
-            "\"account_auth\":{" +
-            "\"user_account\":\"\"," +
-            "\"mac_address\":\"" + macAddress + "\"}," +
-            "\"control\":{" +
-            "\"ch_mode_temp\":" + roundedTemperature +
-            "}}}\n";
-        val response = executeRequest(messageUrl, jsonPayload, versionInfo).getContent();
+        log.fine("POST update: URL=" + messageUrl);
 
         // Response:
         // { "update_reply":{ "seqnr":0,"status":{"device_id":"6808-1401-3109_15-30-001-123","device_status":16385,"connection_status":23,"date_time":503527795},"acc_status":2} }
-        val accStatus = JSONUtils.getJSONValueByName(response, Integer.class, RESPONSE_ACC_STATUS);
-        assertAuthorized(accStatus);
-
-        // Update Device ID?
-        updateSelectedDevice(response);
-
-        // Get and return current room temperature.
-        return (BigDecimal) getDiagnostics().get(VALUE_ROOM_TEMPERATURE);
+        return executeAuthorizedRequest(messageUrl, jsonPayload, reply -> {
+            // Update Device ID?
+            updateSelectedDevice(reply.getFields());
+            return reply.getFields().getBigDecimal(JSON_ROOM_TEMP);
+        });
     }
 
     /**
      * Get all diagnostics for selected device.
      *
-     * @return Map of diagnostic info
+     * @return Diagnostic info
+     * @throws IOException              in case of connection error
+     * @throws IllegalArgumentException when no device selected
+     */
+    @Nonnull
+    @Override
+    public Diagnostics readDiagnostics()
+        throws IOException, IllegalArgumentException {
+        return readDiagnostics(LAYOUT);
+    }
+
+    /**
+     * Get diagnostics of the given fields only. Only the reply sections with these fields are requested and only these fields
+     * are converted; for example room temperature and flame status need the report section only.
+     *
+     * @param fields Fields to read, fields not known locally are ignored
+     * @return Diagnostic info, with the given fields in layout sequence
      * @throws IOException              in case of connection error
      * @throws IllegalArgumentException when no device selected
      */
     @Nonnull
     @Override
-    public Map<String, Object> getDiagnostics()
+    public Diagnostics readDiagnostics(@Nonnull @NonNull final DiagnosticField... fields)
         throws IOException, IllegalArgumentException {
 
         if (selectedDevice == null) {
@@ -237,147 +368,24 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
         // Get computer MAC address.
         val macAddress = computerInfo.getMac();
 
-        // {"retrieve_message":{"seqnr":0,"account_auth":{"user_account":"email@gmail.com","mac_address":"6C:42:98:B6:B2:90"},"info":15}}
-        val info = MESSAGE_INFO_CONTROL + MESSAGE_INFO_REPORT;
-        val jsonPayload = "{\"retrieve_message\":{" +
-            "\"seqnr\":0," +
-            "\"account_auth\":{" +
-            "\"user_account\":\"\"," +
-            "\"mac_address\":\"" + macAddress + "\"}," +
-            "\"info\":" + info + "}}\n";
-
-        // Sometimes the response is empty, try multiple times.
-        val pageContent = executeRequest(messageUrl, jsonPayload, versionInfo);
-        val response = pageContent.getContent();
-
-        // Try to get Atag ONE device version from response header.
-        val versionHeaders = pageContent.getHeaders().get("X-One-Ver");
-        val atagOneVersion = versionHeaders != null && versionHeaders.size() > 0 ? versionHeaders.get(0) : "Unknown";
-
-        // Test accStatus response.
-        val accStatus = JSONUtils.getJSONValueByName(response, Integer.class, RESPONSE_ACC_STATUS);
-        assertAuthorized(accStatus);
+        val layout = selectLayout(fields);
+        val info = getInfo(layout);
+        val jsonPayload = messages.retrieve(info);
 
-		/*
-        { "retrieve_reply":{ "seqnr":0,
+        // Walk the response once in its buffer, the values asked for are read from the field table.
+        val deviceAddress = selectedDevice.getDeviceAddress();
+        val diagnostics = executeAuthorizedRequest(messageUrl, jsonPayload, reply -> {
+            val result = toDiagnostics(layout, reply, deviceAddress, macAddress);
 
-		"status":{
-		"device_id":"6808-1401-3109_15-30-001-123",
-		"device_status":16385,
-		"connection_status":23,
-		"date_time":503187998},
+            // Update Device ID?
+            updateSelectedDevice(reply.getFields());
 
-		"report":{
-		"report_time":503187998,
-		"burning_hours":257.09,
-		"device_errors":"",
-		"boiler_errors":"",
-		"room_temp":20.6,
-		"outside_temp":5.1,
-		"dbg_outside_temp":22.3,
-		"pcb_temp":25.0,
-		"ch_setpoint":28.1,
-		"dhw_water_temp":33.6,
-		"ch_water_temp":32.8,
-		"dhw_water_pres":0.0,
-		"ch_water_pres":1.5,
-		"ch_return_temp":33.2,
-		"boiler_status":770,
-		"boiler_config":772,
-		"ch_time_to_temp":0,
-		"shown_set_temp":20.5,
-		"power_cons":0,
-		"rssi":26,
-		"current":-155,
-		"voltage":3846,
-		"resets":11,
-		"memory_allocation":2800},
-
-		"control": {
-		"ch_status":13,
-		"ch_control_mode":0,
-		"ch_mode":1,
-		"ch_mode_duration":0,
-		"ch_mode_temp":20.5,
-		"dhw_temp_setp":60.0,
-		"dhw_status":5,
-		"dhw_mode":1,
-		"dhw_mode_temp":60.0,
-		"weather_temp":5.1,
-		"weather_status":9,
-		"vacation_duration":0,
-		"extend_duration":0,
-		"fireplace_duration":10800
-		} ,
-		"acc_status":2} }
-		 */
-
-        val values = new LinkedHashMap<String, Object>();
-
-        values.put(VALUE_DEVICE_IP, selectedDevice.getDeviceAddress().getHostAddress());
-        values.put(VALUE_DEVICE_ID, JSONUtils.getJSONValueByName(response, String.class, "device_id"));
-        // VALUE_DEVICE_ALIAS; Locally unknown
-        val reportTime = JSONUtils.getJSONValueByName(response, Integer.class, "report_time");
-        if (reportTime != null) {
-            val dateObject = CalendarUtils.toDateObject(reportTime);
-            values.put(VALUE_LATEST_REPORT_TIME, CalendarUtils.formatDate(dateObject));
+            return result;
+        });
+        if (diagnostics == null) {
+            throw new IllegalStateException("No diagnostics converted.");
         }
-        // VALUE_CONNECTED_TO
-        values.put(VALUE_BURNING_HOURS, JSONUtils.getJSONValueByName(response, BigDecimal.class, "burning_hours"));
-        values.put(VALUE_ROOM_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "room_temp"));
-        values.put(VALUE_OUTSIDE_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "outside_temp"));
-        values.put(VALUE_DHW_SETPOINT, JSONUtils.getJSONValueByName(response, BigDecimal.class, "dhw_temp_setp"));
-        values.put(VALUE_DHW_WATER_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "dhw_water_temp"));
-        values.put(VALUE_CH_SETPOINT, JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_setpoint"));
-        values.put(VALUE_CH_WATER_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_water_temp"));
-        values.put(VALUE_CH_WATER_PRESSURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_water_pres"));
-        values.put(VALUE_CH_RETURN_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_return_temp"));
-        values.put(VALUE_TARGET_TEMPERATURE, JSONUtils.getJSONValueByName(response, BigDecimal.class, "shown_set_temp"));
-
-        // Values only local available.
-        val boilerStatus = JSONUtils.getJSONValueByName(response, Integer.class, "boiler_status");
-        values.put("deviceStatus", JSONUtils.getJSONValueByName(response, Integer.class, "device_status"));
-        values.put("connectionStatus", JSONUtils.getJSONValueByName(response, Integer.class, "connection_status"));
-        values.put("deviceErrors", JSONUtils.getJSONValueByName(response, String.class, "device_errors"));
-        values.put("boilerErrors", JSONUtils.getJSONValueByName(response, String.class, "boiler_errors"));
-        values.put("dbgOutsideTemp", JSONUtils.getJSONValueByName(response, BigDecimal.class, "dbg_outside_temp"));
-        values.put("pcbTemp", JSONUtils.getJSONValueByName(response, BigDecimal.class, "pcb_temp"));
-        values.put("dhwWaterTemp", JSONUtils.getJSONValueByName(response, BigDecimal.class, "dhw_water_temp"));
-        values.put("dhwWaterPres", JSONUtils.getJSONValueByName(response, BigDecimal.class, "dhw_water_pres"));
-        values.put("boilerStatus", boilerStatus);
-        values.put("boilerConfig", JSONUtils.getJSONValueByName(response, Integer.class, "boiler_config"));
-        values.put("chTimeToTemp", JSONUtils.getJSONValueByName(response, Integer.class, "ch_time_to_temp"));
-        values.put("powerCons", JSONUtils.getJSONValueByName(response, Integer.class, "power_cons"));
-        values.put("rssi", JSONUtils.getJSONValueByName(response, Integer.class, "rssi"));
-        values.put("current", JSONUtils.getJSONValueByName(response, Integer.class, "current"));
-        values.put("voltage", JSONUtils.getJSONValueByName(response, Integer.class, "voltage"));
-        values.put("resets", JSONUtils.getJSONValueByName(response, Integer.class, "resets"));
-        values.put("memoryAllocation", JSONUtils.getJSONValueByName(response, Integer.class, "memory_allocation"));
-        values.put("chStatus", JSONUtils.getJSONValueByName(response, Integer.class, "ch_status"));
-        values.put("chControl_mode", JSONUtils.getJSONValueByName(response, Integer.class, "ch_control_mode"));
-        values.put("chMode", JSONUtils.getJSONValueByName(response, Integer.class, "ch_mode"));
-        values.put("chModeDuration", JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_mode_duration"));
-        values.put("chModeTemp", JSONUtils.getJSONValueByName(response, BigDecimal.class, "ch_mode_temp"));
-        values.put("dhwStatus", JSONUtils.getJSONValueByName(response, Integer.class, "dhw_status"));
-        values.put("dhwMode", JSONUtils.getJSONValueByName(response, Integer.class, "dhw_mode"));
-        values.put("weatherTemp", JSONUtils.getJSONValueByName(response, BigDecimal.class, "weather_temp"));
-        values.put("weatherStatus", JSONUtils.getJSONValueByName(response, Integer.class, "weather_status"));
-        values.put("vacationDuration", JSONUtils.getJSONValueByName(response, Integer.class, "vacation_duration"));
-        values.put("extendDuration", JSONUtils.getJSONValueByName(response, Integer.class, "extend_duration"));
-        values.put("fireplaceDuration", JSONUtils.getJSONValueByName(response, Integer.class, "fireplace_duration"));
-
-        // Get "flameStatus" from boilerStatus bit 3.
-        if (boilerStatus != null) {
-            values.put(VALUE_FLAME_STATUS, (boilerStatus & 8) == 8 ? Boolean.TRUE : Boolean.FALSE);
-        }
-
-        values.put("atagOneVersion", atagOneVersion);
-        values.put("macAddress", macAddress);
-
-        // Update Device ID?
-        updateSelectedDevice(response);
-
-        return values;
+        return diagnostics;
     }
 
     /**
@@ -402,85 +410,69 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
         val messageUrl = "http://" + selectedDevice.getDeviceAddress().getHostAddress() + ":" + HTTP_CLIENT_PORT + "/retrieve";
         log.fine("POST retrieve: URL=" + messageUrl);
 
-        // Get computer MAC address.
-        val macAddress = computerInfo.getMac();
+        val jsonPayload = messages.retrieve(MESSAGE_INFO_ALL);
 
-        val info = MESSAGE_INFO_CONTROL +
-                MESSAGE_INFO_SCHEDULES +
-                MESSAGE_INFO_CONFIGURATION +
-                MESSAGE_INFO_REPORT +
-                MESSAGE_INFO_STATUS +
-                MESSAGE_INFO_WIFI_SCAN +
-                MESSAGE_INFO_REPORT_DETAILS;
-        val jsonPayload = "{\"retrieve_message\":{" +
-                "\"seqnr\":0," +
-                "\"account_auth\":{" +
-                "\"user_account\":\"\"," +
-                "\"mac_address\":\"" + macAddress + "\"}," +
-                "\"info\":" + info + "}}\n";
+        val content = executeAuthorizedRequest(messageUrl, jsonPayload, reply -> {
+            // Update Device ID?
+            updateSelectedDevice(reply.getFields());
 
-        // Sometimes the response is empty, try multiple times.
-        val response = executeRequest(messageUrl, jsonPayload, versionInfo).getContent();
+            return reply.getContent().toString();
+        });
+        return content != null ? content : "";
+    }
 
-        // Test accStatus response.
-        val accStatus = JSONUtils.getJSONValueByName(response, Integer.class, RESPONSE_ACC_STATUS);
-        assertAuthorized(accStatus);
+    /**
+     * @return Connection reuse statistics of the connection to the thermostat
+     */
+    @Nonnull
+    public ConnectionStatistics getConnectionStatistics() {
+        return httpClient.getStatistics();
+    }
 
-        // Update Device ID?
-        updateSelectedDevice(response);
+    /**
+     * Close the connection to the thermostat. The connector reconnects on the next request.
+     */
+    @Override
+    public void close() {
+        log.fine("Close connection; " + httpClient.getStatistics() + ", " + getRetryStatistics());
+        httpClient.close();
+    }
 
-        return response;
+    /**
+     * Abort a request in progress on another thread, by closing its connection.
+     */
+    @Override
+    public void abort() {
+        log.fine("Abort connection to " + (selectedDevice != null ? selectedDevice.getDeviceAddress().getHostAddress() : "thermostat"));
+        httpClient.abort();
     }
 
     /**
-     * Search for thermostat in the local network.
+     * Search for thermostat in the local network. Thermostats already seen by the discovery service are returned immediately,
+     * otherwise wait for the first broadcast.
      *
      * @return Info about the thermostat found, or null when noting found
      */
     @Nullable
+    @SneakyThrows(InterruptedException.class)
     protected AtagOneInfo searchOnes() throws IOException {
 
-        log.fine("Try to find the " + AtagOneApp.THERMOSTAT_NAME + " in the local network for " + MAX_LISTEN_TIMEOUT_SECONDS + " seconds.");
-
-        val messageTag = "ONE ";
-
-        UdpMessage udpMessage;
-        int maxRetriesAfterTechnicalError = 3;
-        while (true) {
-            try {
-                udpMessage = NetworkUtils.getUdpBroadcastMessage(UDP_BROADCAST_PORT, MAX_LISTEN_TIMEOUT_SECONDS, messageTag);
-
-                log.finest("UDP message successful received: " + udpMessage);
-
-                // No technical errors occurred, stop listening.
-                break;
-
-            } catch (IOException e) {
-                maxRetriesAfterTechnicalError--;
-                if (maxRetriesAfterTechnicalError <= 0) {
-                    throw e;
-                }
-
-                log.fine("Error receiving UDP message: " + e.getMessage() + ". \nRetry " + maxRetriesAfterTechnicalError + " more times.");
-            }
+        val discoveryService = DiscoveryService.getDefault();
+        if (discoveryService.getDevices().isEmpty()) {
+            log.fine("Try to find the " + AtagOneApp.THERMOSTAT_NAME + " in the local network for " + MAX_LISTEN_TIMEOUT_SECONDS + " seconds.");
         }
 
-        if (udpMessage != null) {
-            // We received a message that matches our tag.
-            val deviceId = udpMessage.getMessage().split(" ")[1];
-            val deviceFound = AtagOneInfo.builder()
-                .deviceAddress(udpMessage.getSenderAddress())
-                .deviceId(deviceId)
-                .build();
-
-            // Device found in local network.
-            log.fine(AtagOneApp.THERMOSTAT_NAME + " found in local network: " + deviceFound);
-
-            return deviceFound;
+        val startNanos = System.nanoTime();
+        val discovered = discoveryService.awaitDevice(MAX_LISTEN_TIMEOUT_SECONDS * 1000L);
+        metrics.histogram(MetricsRegistry.DISCOVERY_DURATION).recordSince(startNanos);
+        if (discovered == null) {
+            // No thermostat found.
+            return null;
         }
 
-        // No thermostat found.
-        return null;
+        val deviceFound = discovered.toAtagOneInfo();
+        log.fine(AtagOneApp.THERMOSTAT_NAME + " found in local network: " + deviceFound);
+        return deviceFound;
     }
 
     /**
@@ -500,46 +492,31 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
         val pairUrl = "http://" + selectedDevice.getDeviceAddress().getHostAddress() + ":" + HTTP_CLIENT_PORT + "/pair_message";
         log.fine("POST pair_message: URL=" + pairUrl);
 
-        // Get the local (short) hostname.
-        String shortName = computerInfo.getName();
-        if (shortName.contains(".")) {
-            shortName = shortName.split("\\.")[0];
-        }
-
         val macAddress = computerInfo.getMac();
-        val deviceName = shortName + " " + AtagOneApp.EXECUTABLE_NAME + " API";
-
-        String jsonPayload = "{\"pair_message\":{\"seqnr\":0," +
-            "\"account_auth\":{" +
-            "\"user_account\":\"\"," +
-            "\"mac_address\":\"" + macAddress + "\"}," +
-            "\"accounts\":" +
-            "{\"entries\":[{" +
-            "\"user_account\":\"\"," +
-            "\"mac_address\":\"" + macAddress + "\"," +
-            "\"device_name\":\"" + deviceName + "\"," +
-            "\"account_type\":0}]}}}";
-
-        log.finest("POST payload:\n" + jsonPayload);
+        val deviceName = getDeviceName(computerInfo);
+        if (pairingKey == null) {
+            pairingKey = getPairingKey(selectedDevice);
+        }
 
         // 1 = Pending
         // 2 = Accepted
         // 3 = Denied
         Integer accStatus = null;
+        val pairAttempts = metrics.counter(MetricsRegistry.PAIR_ATTEMPTS, MetricsRegistry.LABEL_DEVICE,
+            selectedDevice.getDeviceAddress().getHostAddress());
         for (int i = 0; i < MAX_AUTH_RETRIES; i++) {
+            pairAttempts.increment();
+
+            // Every attempt is a new message, with its own sequence number.
+            val jsonPayload = messages.pair();
+            log.finest("POST payload:\n" + jsonPayload);
 
             // Sometimes the response is empty, try multiple times.
-            val response = executeRequest(pairUrl, jsonPayload, versionInfo).getContent();
+            accStatus = getPairStatus(executeRequest(pairUrl, jsonPayload, versionInfo).getContent());
 
-            accStatus = JSONUtils.getJSONValueByName(response, Integer.class, RESPONSE_ACC_STATUS);
-            if (accStatus == null) {
-                throw new IllegalStateException("Error during pair request. '" + RESPONSE_ACC_STATUS + "' is null.");
-            }
             // Wait and try again within x seconds.
-            if (accStatus != 2) {
-                System.out.println("Access not yet granted. Please press the Yes button on the '" + deviceName + "' to grant access. \n" +
-                    "By pressing the Yes button you prove that you have physical access to the thermostat. \n" +
-                    "This is only an one time action per device.");
+            if (accStatus != PairingStore.ACC_STATUS_ACCEPTED) {
+                printPairingInstructions(deviceName);
                 Thread.sleep(SLEEP_BETWEEN_AUTH_REQUESTS_MS);
             } else {
                 break;
@@ -550,10 +527,60 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
         assertAuthorized(accStatus);
 
         log.fine("Access granted; accStatus == " + accStatus);
+        pairingStore.put(createPairing(pairingKey, macAddress, accStatus));
     }
 
     /**
-     * Execute request, in case of empty response or connection error, try multiple times.
+     * Execute request and test the response for authorization errors. When login skipped the authorization process because of
+     * a stored pairing and the thermostat no longer accepts it, the pairing is forgotten, the authorization process is run and
+     * the request is executed once more.
+     * <p/>
+     * The handler reads the reply while the response is still in its pooled buffer; nothing is copied except the values it
+     * reads.
+     *
+     * @param url         URL to connect
+     * @param jsonPayload Payload JSON message
+     * @param handler     Reads the reply; the reply is not valid anymore after the handler returns
+     * @return Result of the handler
+     * @throws NotAuthorizedException When user did not approve authorization request
+     * @throws AccessDeniedException  When user denied authorization request
+     */
+    @Nullable
+    protected <T> T executeAuthorizedRequest(final String url, final CharSequence jsonPayload, final ReplyHandler<T> handler)
+        throws IOException {
+
+        val parseDuration = RequestMetrics.of(metrics, url).getParseDuration();
+        val pairingRejected = new boolean[1];
+
+        // Sometimes the response is empty, try multiple times.
+        val result = executeRequest(url, jsonPayload, versionInfo, (headers, body) -> {
+            val parseStartNanos = System.nanoTime();
+            val fields = JSONFields.parse(body);
+            parseDuration.recordSince(parseStartNanos);
+            val accStatus = fields.getInteger(RESPONSE_ACC_STATUS);
+
+            if (isPairingRejected(pairedFromStore, accStatus)) {
+                pairingRejected[0] = true;
+                return null;
+            }
+
+            // Test accStatus response.
+            assertAuthorized(accStatus);
+
+            return handler.handle(new Reply(headers, body, fields));
+        });
+
+        if (pairingRejected[0]) {
+            pairedFromStore = false;
+            pairingStore.remove(pairingKey);
+            requestAuthorizationFromThermostat();
+            return executeAuthorizedRequest(url, jsonPayload, handler);
+        }
+        return result;
+    }
+
+    /**
+     * Execute request, in case of empty response or connection error, try again as the retry policy allows.
      *
      * @param url         URL to connect
      * @param jsonPayload Payload JSON message
@@ -561,45 +588,89 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
      * @return Response
      */
     @Nonnull
+    protected PageContent executeRequest(final String url, final CharSequence jsonPayload, final Version versionInfo) throws IOException {
+        val pageContent = executeRequest(url, jsonPayload, versionInfo, (headers, body) -> PageContent.builder()
+            .content(body.toString())
+            .headers(Collections.unmodifiableMap(headers))
+            .build());
+        if (pageContent == null) {
+            throw new IllegalStateException("No page content.");
+        }
+        return pageContent;
+    }
+
+    /**
+     * Execute request, in case of empty response or connection error, try again as the retry policy allows. The handler reads
+     * the response while it is in its pooled buffer.
+     *
+     * @param url         URL to connect
+     * @param jsonPayload Payload JSON message
+     * @param versionInfo Version info, will be included in request header
+     * @param handler     Reads a response that is not empty; the body is only valid until the handler returns
+     * @return Result of the handler
+     */
+    @Nullable
     @SneakyThrows(InterruptedException.class)
-    protected PageContent executeRequest(final String url, final String jsonPayload, final Version versionInfo) throws IOException {
+    protected <T> T executeRequest(final String url, final CharSequence jsonPayload, final Version versionInfo,
+                                   final KeepAliveHttpClient.BodyHandler<T> handler) throws IOException {
 
         // Create version string for header.
         val versionString = versionInfo != null ? versionInfo.toString() : "";
 
-        // Sometimes the response is empty, try multiple times.
-        int maxRetries = 10;
-        PageContent response = null;
-        while (response == null && maxRetries > 0) {
-            maxRetries--;
+        val attempts = retryTracker.start(RequestMetrics.of(metrics, url));
+        val requestMetrics = attempts.getMetrics();
+        val received = new boolean[1];
+        val empty = new boolean[1];
+        while (true) {
+            IOException error = null;
+            val attemptStartNanos = System.nanoTime();
             try {
-                PageContent pageContent = NetworkUtils.getPostPageContent(url, jsonPayload, versionString);
-                log.fine("POST Response\n" + pageContent);
-
-                if (StringUtils.isNotBlank(pageContent.getContent())) {
-                    response = pageContent;
+                received[0] = false;
+                empty[0] = false;
+                val result = httpClient.post(url, jsonPayload, versionString, (headers, body) -> {
+                    received[0] = true;
+                    requestMetrics.getDuration().recordSince(attemptStartNanos);
+                    // Only decode the body for the log when it is logged.
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("POST Response\n" + body);
+                    }
+                    if (body.isBlank()) {
+                        empty[0] = true;
+                        return null;
+                    }
+                    return handler.handle(headers, body);
+                });
+
+                if (!empty[0]) {
+                    return result;
                 }
 
             } catch (IOException e) {
-                if (maxRetries > 0) {
-                    log.fine(e.toString());
-                } else {
-                    // Tried n times.
+                // Thrown by the handler; the response arrived, so this is no reason to try again.
+                if (received[0]) {
                     throw e;
                 }
+                requestMetrics.getDuration().recordSince(attemptStartNanos);
+                error = e;
             }
 
-            if (response == null && maxRetries > 0) {
-                log.fine("Empty response, try again.");
-                Thread.sleep(SLEEP_BETWEEN_FAILURE_MS);
+            val delayMs = attempts.failed(error);
+            if (delayMs < 0) {
+                if (error != null) {
+                    throw error;
+                }
+                throw new IOException("Empty response");
             }
+            Thread.sleep(delayMs);
         }
+    }
 
-        // Cannot happen, just for sure.
-        if (response == null) {
-            throw new IllegalStateException("Empty response");
-        }
-        return response;
+    /**
+     * @return Retry counters
+     */
+    @Nonnull
+    public RetryStatistics getRetryStatistics() {
+        return retryTracker.getStatistics();
     }
 
     /**
@@ -609,7 +680,7 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
      * @throws NotAuthorizedException When user did not approve authorization request
      * @throws AccessDeniedException  When user denied authorization request
      */
-    protected void assertAuthorized(@Nullable final Integer accStatus) throws NotAuthorizedException, AccessDeniedException {
+    protected static void assertAuthorized(@Nullable final Integer accStatus) throws NotAuthorizedException, AccessDeniedException {
 
         if (accStatus == null) {
             throw new IllegalStateException("Response '" + RESPONSE_ACC_STATUS + "' is null.");
@@ -634,21 +705,348 @@ public class AtagOneLocalConnector implements AtagOneConnectorInterface {
         throw new IllegalStateException("Unknown '" + RESPONSE_ACC_STATUS + "', expecting 1, 2 or 3, but is " + accStatus + ".");
     }
 
+    /**
+     * @return Name of this computer as shown on the thermostat
+     */
+    @Nonnull
+    protected static String getDeviceName(@Nonnull final DeviceInfo computerInfo) {
+        // Get the local (short) hostname.
+        String shortName = computerInfo.getName();
+        if (shortName.contains(".")) {
+            shortName = shortName.split("\\.")[0];
+        }
+        return shortName + " " + AtagOneApp.EXECUTABLE_NAME + " API";
+    }
+
+    /**
+     * Check the control values to send.
+     *
+     * @return Values by the field they change, the setpoint rounded by a half
+     * @throws IllegalArgumentException When nothing to change or a value is out of bounds
+     */
+    @Nonnull
+    static Map<DiagnosticField, Number> getControlValues(@Nonnull final ControlUpdate update) {
+        val values = update.getValues();
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("No control values to update.");
+        }
+        for (Map.Entry<DiagnosticField, Number> entry : values.entrySet()) {
+            val value = entry.getValue();
+            switch (entry.getKey()) {
+                case CH_MODE_TEMP:
+                    // Discard the precision and round by half.
+                    float roundedTemperature = NumberUtils.roundHalf(value.floatValue());
+                    if (roundedTemperature < AtagOneApp.TEMPERATURE_MIN || roundedTemperature > AtagOneApp.TEMPERATURE_MAX) {
+                        throw new IllegalArgumentException(
+                            "Device temperature out of bounds: " + roundedTemperature + ". Needs to be between " +
+                                AtagOneApp.TEMPERATURE_MIN + " (inclusive) and " + AtagOneApp.TEMPERATURE_MAX + " (inclusive)");
+                    }
+                    entry.setValue(roundedTemperature);
+                    break;
+                case DHW_SETPOINT:
+                    if (value.doubleValue() < DHW_SETPOINT_MIN || value.doubleValue() > DHW_SETPOINT_MAX) {
+                        throw new IllegalArgumentException(
+                            "Hot water setpoint out of bounds: " + value + ". Needs to be between " +
+                                DHW_SETPOINT_MIN + " (inclusive) and " + DHW_SETPOINT_MAX + " (inclusive)");
+                    }
+                    break;
+                case CH_MODE:
+                    if (!CH_MODES.contains(value.intValue())) {
+                        throw new IllegalArgumentException("Unknown heating mode: " + value + ". Needs to be one of " + CH_MODES);
+                    }
+                    break;
+                default:
+                    if (value.doubleValue() < 0) {
+                        throw new IllegalArgumentException(entry.getKey().getKey() + " cannot be negative, but is " + value + ".");
+                    }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Ask the user to grant access on the thermostat.
+     */
+    protected static void printPairingInstructions(@Nonnull final String deviceName) {
+        System.out.println("Access not yet granted. Please press the Yes button on the '" + deviceName + "' to grant access. \n" +
+            "By pressing the Yes button you prove that you have physical access to the thermostat. \n" +
+            "This is only an one time action per device.");
+    }
+
+    /**
+     * Key to store the pairing of a thermostat by. A connector keeps the key it logged in with; the device id that a reply may
+     * add later does not change it, otherwise the pairing found at login would stay behind when it is replaced.
+     *
+     * @return Device id of the selected thermostat, or its address when the device id is not known yet
+     */
+    @Nonnull
+    static String getPairingKey(@Nullable final AtagOneInfo device) {
+        if (device == null) {
+            throw new IllegalArgumentException("No device selected.");
+        }
+        val deviceId = device.getDeviceId();
+        return deviceId != null ? deviceId : device.getDeviceAddress().getHostAddress();
+    }
+
+    /**
+     * @return True when the reply to a request shows that a stored pairing is not accepted anymore
+     */
+    static boolean isPairingRejected(final boolean pairedFromStore, @Nullable final Integer accStatus) {
+        if (pairedFromStore && accStatus != null && (accStatus == 1 || accStatus == 3)) {
+            log.fine("Stored pairing not accepted anymore; accStatus == " + accStatus + ". Start authorization process.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param response Reply to a pair request
+     * @return accStatus; 1 = Pending, 2 = Accepted, 3 = Denied
+     */
+    static int getPairStatus(@Nonnull final CharSequence response) {
+        val accStatus = JSONFields.parse(response).getInteger(RESPONSE_ACC_STATUS);
+        if (accStatus == null) {
+            throw new IllegalStateException("Error during pair request. '" + RESPONSE_ACC_STATUS + "' is null.");
+        }
+        return accStatus;
+    }
+
+    /**
+     * @return Pairing to store after access is granted
+     */
+    @Nonnull
+    static Pairing createPairing(@Nonnull final String device, @Nonnull final String mac, final int accStatus) {
+        return Pairing.builder()
+            .device(device)
+            .mac(mac)
+            .accStatus(accStatus)
+            .timestamp(System.currentTimeMillis())
+            .build();
+    }
+
+    /**
+     * @return Fields known locally, in the sequence of the full layout
+     */
+    @Nonnull
+    protected static DiagnosticField[] selectLayout(@Nonnull final DiagnosticField... fields) {
+        val requested = EnumSet.noneOf(DiagnosticField.class);
+        Collections.addAll(requested, fields);
+        val layout = new ArrayList<DiagnosticField>(requested.size());
+        for (DiagnosticField field : LAYOUT) {
+            if (requested.contains(field)) {
+                layout.add(field);
+            }
+        }
+        return layout.toArray(new DiagnosticField[0]);
+    }
+
+    /**
+     * @return Info bitmask of the reply sections with the values of the fields
+     */
+    protected static int getInfo(@Nonnull final DiagnosticField... fields) {
+        int info = 0;
+        for (DiagnosticField field : fields) {
+            info |= INFO.getOrDefault(field, 0);
+        }
+        // The status section comes with every section; ask for the smallest.
+        return info != 0 ? info : MESSAGE_INFO_CONTROL;
+    }
+
+    /**
+     * Convert reply of a retrieve message.
+     *
+     * @param layout        Fields to convert
+     * @param reply         Reply with the report and control sections of the fields
+     * @param deviceAddress Address of the thermostat
+     * @param macAddress    MAC address of this computer
+     * @return Diagnostic info
+     */
+    @Nonnull
+    protected static Diagnostics toDiagnostics(@Nonnull final DiagnosticField[] layout, @Nonnull final Reply reply,
+                                               @Nonnull final InetAddress deviceAddress, @Nonnull final String macAddress) {
+        val replyFields = reply.getFields();
+
+        // Try to get Atag ONE device version from response header.
+        val versionHeaders = reply.getHeaders().get("X-One-Ver");
+        val atagOneVersion = versionHeaders != null && versionHeaders.size() > 0 ? versionHeaders.get(0) : "Unknown";
+
+		/*
+        { "retrieve_reply":{ "seqnr":0,
+
+		"status":{
+		"device_id":"6808-1401-3109_15-30-001-123",
+		"device_status":16385,
+		"connection_status":23,
+		"date_time":503187998},
+
+		"report":{
+		"report_time":503187998,
+		"burning_hours":257.09,
+		"device_errors":"",
+		"boiler_errors":"",
+		"room_temp":20.6,
+		"outside_temp":5.1,
+		"dbg_outside_temp":22.3,
+		"pcb_temp":25.0,
+		"ch_setpoint":28.1,
+		"dhw_water_temp":33.6,
+		"ch_water_temp":32.8,
+		"dhw_water_pres":0.0,
+		"ch_water_pres":1.5,
+		"ch_return_temp":33.2,
+		"boiler_status":770,
+		"boiler_config":772,
+		"ch_time_to_temp":0,
+		"shown_set_temp":20.5,
+		"power_cons":0,
+		"rssi":26,
+		"current":-155,
+		"voltage":3846,
+		"resets":11,
+		"memory_allocation":2800},
+
+		"control": {
+		"ch_status":13,
+		"ch_control_mode":0,
+		"ch_mode":1,
+		"ch_mode_duration":0,
+		"ch_mode_temp":20.5,
+		"dhw_temp_setp":60.0,
+		"dhw_status":5,
+		"dhw_mode":1,
+		"dhw_mode_temp":60.0,
+		"weather_temp":5.1,
+		"weather_status":9,
+		"vacation_duration":0,
+		"extend_duration":0,
+		"fireplace_duration":10800
+		} ,
+		"acc_status":2} }
+		 */
+
+        val diagnostics = Diagnostics.builder(layout);
+        for (DiagnosticField field : layout) {
+            switch (field) {
+                case DEVICE_IP:
+                    diagnostics.text(DEVICE_IP, deviceAddress.getHostAddress());
+                    break;
+                case LATEST_REPORT_TIME:
+                    val reportTime = replyFields.getInteger("report_time");
+                    if (reportTime != null) {
+                        val dateObject = CalendarUtils.toDateObject(reportTime);
+                        diagnostics.text(LATEST_REPORT_TIME, CalendarUtils.formatDate(dateObject));
+                    }
+                    break;
+                case FLAME_STATUS:
+                    // Get "flameStatus" from boilerStatus bit 3.
+                    val boilerStatus = replyFields.getInteger(BOILER_STATUS.getJsonName());
+                    if (boilerStatus != null) {
+                        diagnostics.flag(FLAME_STATUS, (boilerStatus & 8) == 8);
+                    }
+                    break;
+                case ATAG_ONE_VERSION:
+                    diagnostics.text(ATAG_ONE_VERSION, atagOneVersion);
+                    break;
+                case MAC_ADDRESS:
+                    diagnostics.text(MAC_ADDRESS, macAddress);
+                    break;
+                default:
+                    readField(replyFields, field, diagnostics);
+            }
+        }
+        // VALUE_DEVICE_ALIAS; Locally unknown
+        // VALUE_CONNECTED_TO
+
+        return diagnostics.build();
+    }
+
+    /**
+     * Copy value of field from parsed response, when the field is available in the response.
+     *
+     * @param fields      Parsed REST response
+     * @param field       Field to copy
+     * @param diagnostics Diagnostics to fill
+     */
+    protected static void readField(final JSONFields fields, final DiagnosticField field, final Diagnostics.Builder diagnostics) {
+        val name = field.getJsonName();
+        if (name == null) {
+            return;
+        }
+        switch (field.getType()) {
+            case TEXT:
+                diagnostics.text(field, fields.getString(name));
+                break;
+            case DECIMAL:
+                // With the scale of the text, so it is printed as the thermostat wrote it.
+                val decimal = fields.getDouble(name, Double.NaN);
+                if (!Double.isNaN(decimal)) {
+                    diagnostics.number(field, decimal, fields.getScale(name));
+                }
+                break;
+            case INTEGER:
+                diagnostics.number(field, fields.getInteger(name));
+                break;
+            default:
+                val value = fields.getDouble(name, Double.NaN);
+                if (!Double.isNaN(value)) {
+                    diagnostics.number(field, value);
+                }
+        }
+    }
+
     /**
      * Update selected device when device id is empty.
      *
-     * @param response RAW REST response
-     */
-    protected void updateSelectedDevice(final String response) {
-        if (selectedDevice != null && StringUtils.isBlank(selectedDevice.getDeviceId())) {
-            val deviceId = JSONUtils.getJSONValueByName(response, String.class, "device_id");
-            selectedDevice = AtagOneInfo.builder()
-                .deviceAddress(selectedDevice.getDeviceAddress())
-                .deviceId(deviceId)
-                .build();
+     * @param fields Parsed REST response
+     */
+    protected void updateSelectedDevice(final JSONFields fields) {
+        selectedDevice = withDeviceId(selectedDevice, fields);
+    }
 
-            log.fine("Updated DeviceID because it was empty: " + deviceId);
+    /**
+     * @param device Thermostat, or null
+     * @param fields Parsed REST response
+     * @return Thermostat with the device id of the response when its device id is empty, otherwise the thermostat itself
+     */
+    @Nullable
+    static AtagOneInfo withDeviceId(@Nullable final AtagOneInfo device, final JSONFields fields) {
+        if (device == null || StringUtils.isNotBlank(device.getDeviceId())) {
+            return device;
         }
+        val deviceId = fields.getString("device_id");
+        log.fine("Updated DeviceID because it was empty: " + deviceId);
+        return AtagOneInfo.builder()
+            .deviceAddress(device.getDeviceAddress())
+            .deviceId(deviceId)
+            .build();
     }
 
+    /**
+     * Reads the reply of an authorized request.
+     */
+    protected interface ReplyHandler<T> {
+
+        /**
+         * @param reply Reply; its content is only valid until this method returns
+         * @return Result of the request
+         */
+        @Nullable
+        T handle(@Nonnull Reply reply) throws IOException;
+    }
+
+    /**
+     * Response of an authorized request.
+     */
+    @Value
+    protected static class Reply {
+        @Nonnull
+        Map<String, List<String>> headers;
+        /**
+         * Raw response, a String or a view of the pooled response buffer.
+         */
+        @Nonnull
+        CharSequence content;
+        @Nonnull
+        JSONFields fields;
+    }
 }
@@ -4,21 +4,32 @@ import lombok.NonNull;
 import lombok.extern.java.Log;
 import lombok.val;
 import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
 import org.juurlink.atagone.domain.PortalCredentials;
+import org.juurlink.atagone.domain.PortalSession;
+import org.juurlink.atagone.exceptions.SessionExpiredException;
+import org.juurlink.atagone.utils.HTMLFields;
 import org.juurlink.atagone.utils.HTMLUtils;
-import org.juurlink.atagone.utils.JSONUtils;
+import org.juurlink.atagone.utils.JSONFields;
+import org.juurlink.atagone.utils.MetricsRegistry;
 import org.juurlink.atagone.utils.NetworkUtils;
 import org.juurlink.atagone.utils.NumberUtils;
+import org.juurlink.atagone.utils.PortalSessionStore;
+import org.juurlink.atagone.utils.RequestMetrics;
 import org.juurlink.atagone.utils.StringUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.HttpCookie;
+import java.net.URI;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.Map;
+
+import static org.juurlink.atagone.domain.DiagnosticField.*;
 
 /**
  * Connect to ATAG One thermostat through ATAG One (internet) portal.
@@ -33,8 +44,32 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
     private static final String URL_DIAGNOSTICS = "https://portal.atag-one.com/Device/LatestReport";
     private static final String URL_UPDATE_DEVICE_CONTROL = "https://portal.atag-one.com/Home/UpdateDeviceControl/?deviceId={0}";
     private static final String URL_DEVICE_SET_SETPOINT = "https://portal.atag-one.com/Home/DeviceSetSetpoint";
+    private static final URI URI_PORTAL = URI.create("https://portal.atag-one.com/");
+
+    /**
+     * Max time a stored session is used by later runs. The portal sends a session cookie without expiry, so the real lifetime is
+     * not known; when the portal rejects the session earlier, the connector logs in again.
+     */
+    private static final long SESSION_MAX_AGE_MS = 60 * 60 * 1000L;
+
+    /**
+     * Diagnostic fields reported by the remote connector, in sequence.
+     */
+    private static final DiagnosticField[] LAYOUT = {
+        DEVICE_ID, DEVICE_ALIAS, LATEST_REPORT_TIME, CONNECTED_TO, BURNING_HOURS, BOILER_HEATING_FOR, FLAME_STATUS, ROOM_TEMPERATURE,
+        OUTSIDE_TEMPERATURE, DHW_SETPOINT, DHW_WATER_TEMPERATURE, CH_SETPOINT, CH_WATER_TEMPERATURE, CH_WATER_PRESSURE,
+        CH_RETURN_TEMPERATURE, TARGET_TEMPERATURE, CURRENT_MODE, VACATION_PLANNED
+    };
+
+    /**
+     * Call to the portal that needs a logged in session.
+     */
+    private interface PortalCall<T> {
+        T call() throws IOException;
+    }
 
     private final PortalCredentials portalCredentials;
+    private final PortalSessionStore sessionStore;
 
     @Nullable
     private final String versionString;
@@ -46,9 +81,25 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
     private String selectedDeviceId;
 
     /**
-     * Construct ATAG One connector to remote device.
+     * Last request verification token received for the logged in session, null when a new one must be requested.
+     */
+    @Nullable
+    private String requestVerificationToken;
+
+    /**
+     * Construct ATAG One connector to remote device, the session is kept in the state directory.
      */
     public AtagOneRemoteConnector(@Nonnull @NonNull final Configuration configuration) {
+        this(configuration, PortalSessionStore.getDefault());
+    }
+
+    /**
+     * Construct ATAG One connector to remote device.
+     *
+     * @param configuration Configuration
+     * @param sessionStore  Keeps the logged in session between runs
+     */
+    public AtagOneRemoteConnector(@Nonnull @NonNull final Configuration configuration, @Nonnull @NonNull final PortalSessionStore sessionStore) {
 
         log.fine("Instantiate " + AtagOneApp.THERMOSTAT_NAME + " remote connector");
 
@@ -58,21 +109,45 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
             .emailAddress(configuration.getEmail())
             .password(configuration.getPassword())
             .build();
+        this.sessionStore = sessionStore;
     }
 
     /**
      * Login ATAG ONE portal and select first Device found.
+     * <p/>
+     * A session stored by an earlier run is used without logging in; when the portal does not accept it anymore, the next request
+     * logs in again.
      *
      * @throws IOException in case connecting to remote device failed
      * @throws IllegalStateException in case connecting succeeded but no device is found
      */
     public void login() throws IOException, IllegalStateException {
 
-        log.fine("Login at " + THERMOSTAT_NAME + " portal.");
         if (StringUtils.isBlank(portalCredentials.getEmailAddress()) || StringUtils.isBlank(portalCredentials.getPassword())) {
             throw new IllegalStateException("Both 'emailAddress' and 'password' are required.");
         }
 
+        val session = sessionStore.get(portalCredentials.getEmailAddress(), System.currentTimeMillis());
+        if (session != null) {
+            log.fine("Reuse " + THERMOSTAT_NAME + " portal session.");
+            val cookieStore = NetworkUtils.getCookieStore();
+            for (HttpCookie cookie : session.getCookies()) {
+                cookieStore.add(URI_PORTAL, cookie);
+            }
+            selectedDeviceId = session.getDeviceId();
+            requestVerificationToken = session.getRequestVerificationToken();
+            return;
+        }
+
+        loginPortal();
+    }
+
+    /**
+     * Login ATAG ONE portal, select first Device found and store the session.
+     */
+    private void loginPortal() throws IOException, IllegalStateException {
+
+        log.fine("Login at " + THERMOSTAT_NAME + " portal.");
         log.fine("POST authentication data: " + URL_LOGIN);
 
         // We need a session (cookie) and a verification token, get them first.
@@ -90,46 +165,94 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
         if (StringUtils.isBlank(selectedDeviceId)) {
             throw new IllegalStateException("No Device ID found, cannot continue.");
         }
+
+        // The page after login has a token for the logged in session.
+        this.requestVerificationToken = HTMLUtils.extractRequestVerificationToken(html);
+        storeSession();
+    }
+
+    /**
+     * Store the current session for later runs.
+     */
+    private void storeSession() {
+        if (StringUtils.isBlank(selectedDeviceId)) {
+            return;
+        }
+        val now = System.currentTimeMillis();
+        sessionStore.put(PortalSession.builder()
+            .emailAddress(portalCredentials.getEmailAddress())
+            .deviceId(selectedDeviceId)
+            .requestVerificationToken(requestVerificationToken)
+            .cookies(NetworkUtils.getCookieStore().get(URI_PORTAL))
+            .expires(now + SESSION_MAX_AGE_MS)
+            .build(), now);
+    }
+
+    /**
+     * Call the portal, log in again and retry once when the session has expired.
+     */
+    private <T> T withSession(@Nonnull final PortalCall<T> call) throws IOException {
+        try {
+            return call.call();
+        } catch (SessionExpiredException e) {
+            log.fine("Portal session expired, login again.");
+            sessionStore.remove();
+            val cookieStore = NetworkUtils.getCookieStore();
+            for (HttpCookie cookie : cookieStore.get(URI_PORTAL)) {
+                cookieStore.remove(URI_PORTAL, cookie);
+            }
+            requestVerificationToken = null;
+            loginPortal();
+            return call.call();
+        }
+    }
+
+    /**
+     * @throws SessionExpiredException When the portal answered with its login page
+     */
+    @Nonnull
+    private static String assertLoggedIn(@Nonnull final String html) throws SessionExpiredException {
+        if (HTMLUtils.isLoginPage(html)) {
+            throw new SessionExpiredException("Not logged in at " + THERMOSTAT_NAME + " portal.");
+        }
+        return html;
     }
 
     /**
      * Get all diagnostics for selected device.
      *
-     * @return Map of diagnostic info
+     * @return Diagnostic info
      * @throws IOException              in case of connection error
      * @throws IllegalArgumentException when no device selected
      */
     @Nonnull
-    public Map<String, Object> getDiagnostics() throws IOException, IllegalArgumentException {
+    @Override
+    public Diagnostics readDiagnostics() throws IOException, IllegalArgumentException {
 
         if (StringUtils.isBlank(selectedDeviceId)) {
             throw new IllegalArgumentException("No Device selected, cannot get diagnostics.");
         }
+        return withSession(this::readDiagnosticsPages);
+    }
+
+    @Nonnull
+    private Diagnostics readDiagnosticsPages() throws IOException {
 
         val diagnosticsUrl = URL_DIAGNOSTICS + "?deviceId=" + URLEncoder.encode(selectedDeviceId, ENCODING_UTF_8);
         log.fine("GET diagnostics: URL=" + diagnosticsUrl);
 
         // HTTP(S) Connect.
-        val html = NetworkUtils.getPageContent(diagnosticsUrl, versionString);
+        val html = assertLoggedIn(NetworkUtils.getPageContent(diagnosticsUrl, versionString));
         log.fine("GET diagnostics: Response HTML\n" + html);
 
         // Scrape values from HTML page.
-        val values = new LinkedHashMap<String, Object>();
-        values.put(VALUE_DEVICE_ID, selectedDeviceId);
-        values.put(VALUE_DEVICE_ALIAS, HTMLUtils.getValueByLabel(html, String.class, "Apparaat alias", "Device alias"));
-        values.put(VALUE_LATEST_REPORT_TIME, HTMLUtils.getValueByLabel(html, String.class, "Laatste rapportagetijd", "Latest report time"));
-        values.put(VALUE_CONNECTED_TO, HTMLUtils.getValueByLabel(html, String.class, "Verbonden met", "Connected to"));
-        values.put(VALUE_BURNING_HOURS, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Branduren", "Burning hours"));
-        values.put(VALUE_BOILER_HEATING_FOR, HTMLUtils.getValueByLabel(html, String.class, "Ketel in bedrijf voor", "Boiler heating for"));
-        values.put(VALUE_FLAME_STATUS, HTMLUtils.getValueByLabel(html, Boolean.class, "Brander status", "Flame status"));
-        values.put(VALUE_ROOM_TEMPERATURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Kamertemperatuur", "Room temperature"));
-        values.put(VALUE_OUTSIDE_TEMPERATURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Buitentemperatuur", "Outside temperature"));
-        values.put(VALUE_DHW_SETPOINT, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Setpoint warmwater", "DHW setpoint"));
-        values.put(VALUE_DHW_WATER_TEMPERATURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Warmwatertemperatuur", "DHW water temperature"));
-        values.put(VALUE_CH_SETPOINT, HTMLUtils.getValueByLabel(html, BigDecimal.class, "Setpoint cv", "CH setpoint"));
-        values.put(VALUE_CH_WATER_TEMPERATURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "CV-aanvoertemperatuur", "CH water temperature"));
-        values.put(VALUE_CH_WATER_PRESSURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "CV-waterdruk", "CH water pressure"));
-        values.put(VALUE_CH_RETURN_TEMPERATURE, HTMLUtils.getValueByLabel(html, BigDecimal.class, "CV retourtemperatuur", "CH return temperature"));
+        val diagnostics = Diagnostics.builder(LAYOUT);
+        diagnostics.text(DEVICE_ID, selectedDeviceId);
+        val parseStartNanos = System.nanoTime();
+        readLatestReport(html, diagnostics);
+        MetricsRegistry.getDefault()
+            .histogram(MetricsRegistry.PARSE_DURATION, MetricsRegistry.LABEL_ENDPOINT, RequestMetrics.getEndpoint(URI.create(URL_DIAGNOSTICS)))
+            .recordSince(parseStartNanos);
 
         // We have to do an extra call to get the target temperature.
         // {"isHeating":false,"targetTemp":"17.0","currentTemp":"16.9","vacationPlanned":false,"currentMode":"manual"}
@@ -137,16 +260,42 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
         log.fine("GET deviceControl: URL=" + deviceControlUrl);
 
         // HTTP(S) Connect.
-        val html2 = NetworkUtils.getPageContent(deviceControlUrl, versionString);
+        val html2 = assertLoggedIn(NetworkUtils.getPageContent(deviceControlUrl, versionString));
         log.fine("GET deviceControl: Response HTML\n" + html2);
 
-        val targetTemp = JSONUtils.getJSONValueByName(html2, String.class, "targetTemp");
+        val deviceControl = JSONFields.parse(html2);
+        val targetTemp = deviceControl.getString("targetTemp");
         val targetTempNumber = new BigDecimal(targetTemp != null ? targetTemp : "0");
-        values.put(VALUE_TARGET_TEMPERATURE, targetTempNumber);
-        values.put(VALUE_CURRENT_MODE, JSONUtils.getJSONValueByName(html2, String.class, "currentMode"));
-        values.put(VALUE_VACATION_PLANNED, JSONUtils.getJSONValueByName(html2, Boolean.class, "vacationPlanned"));
+        diagnostics.number(TARGET_TEMPERATURE, targetTempNumber);
+        diagnostics.text(CURRENT_MODE, deviceControl.getString("currentMode"));
+        diagnostics.flag(VACATION_PLANNED, deviceControl.getBoolean("vacationPlanned"));
 
-        return values;
+        return diagnostics.build();
+    }
+
+    /**
+     * Scrape the values from the latest report page.
+     *
+     * @param html        Latest report HTML page
+     * @param diagnostics Receives the values
+     */
+    protected static void readLatestReport(@Nonnull @NonNull final String html, @Nonnull @NonNull final Diagnostics.Builder diagnostics) {
+        // Walk the page once, all values are read from the label table.
+        val fields = HTMLFields.parse(html);
+        diagnostics.text(DEVICE_ALIAS, fields.getString("Apparaat alias", "Device alias"));
+        diagnostics.text(LATEST_REPORT_TIME, fields.getString("Laatste rapportagetijd", "Latest report time"));
+        diagnostics.text(CONNECTED_TO, fields.getString("Verbonden met", "Connected to"));
+        diagnostics.number(BURNING_HOURS, fields.getBigDecimal("Branduren", "Burning hours"));
+        diagnostics.text(BOILER_HEATING_FOR, fields.getString("Ketel in bedrijf voor", "Boiler heating for"));
+        diagnostics.flag(FLAME_STATUS, fields.getBoolean("Brander status", "Flame status"));
+        diagnostics.number(ROOM_TEMPERATURE, fields.getBigDecimal("Kamertemperatuur", "Room temperature"));
+        diagnostics.number(OUTSIDE_TEMPERATURE, fields.getBigDecimal("Buitentemperatuur", "Outside temperature"));
+        diagnostics.number(DHW_SETPOINT, fields.getBigDecimal("Setpoint warmwater", "DHW setpoint"));
+        diagnostics.number(DHW_WATER_TEMPERATURE, fields.getBigDecimal("Warmwatertemperatuur", "DHW water temperature"));
+        diagnostics.number(CH_SETPOINT, fields.getBigDecimal("Setpoint cv", "CH setpoint"));
+        diagnostics.number(CH_WATER_TEMPERATURE, fields.getBigDecimal("CV-aanvoertemperatuur", "CH water temperature"));
+        diagnostics.number(CH_WATER_PRESSURE, fields.getBigDecimal("CV-waterdruk", "CH water pressure"));
+        diagnostics.number(CH_RETURN_TEMPERATURE, fields.getBigDecimal("CV retourtemperatuur", "CH return temperature"));
     }
 
     /**
@@ -168,9 +317,40 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
         if (StringUtils.isBlank(selectedDeviceId)) {
             throw new IllegalArgumentException("No Device selected, cannot get diagnostics.");
         }
+        return withSession(() -> setSetpoint(roundedTemperature));
+    }
 
-        // Get updated request verification token first.
-        val requestVerificationToken = getRequestVerificationToken(URL_DEVICE_HOME);
+    /**
+     * Set target temperature, with the token of the session when available.
+     */
+    private BigDecimal setSetpoint(final float roundedTemperature) throws IOException, IllegalStateException {
+        val storedToken = requestVerificationToken;
+        if (storedToken == null) {
+            return postSetpoint(roundedTemperature, refreshRequestVerificationToken());
+        }
+        try {
+            return postSetpoint(roundedTemperature, storedToken);
+        } catch (SessionExpiredException e) {
+            throw e;
+        } catch (IOException | IllegalStateException e) {
+            // Token not accepted anymore, try once more with a new one; setting the same temperature twice does no harm.
+            log.fine("Set target temperature with stored token failed, get a new token: " + e.getMessage());
+            return postSetpoint(roundedTemperature, refreshRequestVerificationToken());
+        }
+    }
+
+    /**
+     * Get new request verification token from the device home page and store it with the session.
+     */
+    @Nonnull
+    private String refreshRequestVerificationToken() throws IOException, IllegalStateException {
+        requestVerificationToken = getRequestVerificationToken(URL_DEVICE_HOME);
+        storeSession();
+        return requestVerificationToken;
+    }
+
+    private BigDecimal postSetpoint(final float roundedTemperature, @Nonnull final String requestVerificationToken)
+        throws IOException, IllegalStateException {
 
         // https://portal.atag-one.com/Home/DeviceSetSetpoint/6808-1401-3109_15-30-001-544?temperature=18.5
         val newUrl = URL_DEVICE_SET_SETPOINT + "/" + selectedDeviceId + "?temperature=" + roundedTemperature;
@@ -181,8 +361,8 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
 
         // Response contains current temperature.
         // {\"ch_control_mode\":0,\"temp_influenced\":false,\"room_temp\":18.0,\"ch_mode_temp\":18.2,\"is_heating\":true,\"vacationPlanned\":false,\"temp_increment\":null,\"round_half\":false,\"schedule_base_temp\":null,\"outside_temp\":null}
-        val html = NetworkUtils.getPostPageContent(newUrl, params, versionString);
-        val roomTemperature = JSONUtils.getJSONValueByName(html, BigDecimal.class, JSON_ROOM_TEMP);
+        val html = assertLoggedIn(NetworkUtils.getPostPageContent(newUrl, params, versionString));
+        val roomTemperature = JSONFields.parse(html).getBigDecimal(JSON_ROOM_TEMP);
         if (roomTemperature != null) {
             // Ok.
             return roomTemperature;
@@ -213,6 +393,10 @@ public class AtagOneRemoteConnector implements AtagOneConnectorInterface {
         // Try to replace device id, ignore when no replace string available.
         val newUrl = url.replace("{0}", StringUtils.defaultString(selectedDeviceId));
         val html = NetworkUtils.getPageContent(newUrl, versionString);
+        if (!URL_LOGIN.equals(url)) {
+            // Do not take the token of the login form.
+            assertLoggedIn(html);
+        }
 
         // Get request verification.
         val requestVerificationToken = HTMLUtils.extractRequestVerificationToken(html);
@@ -0,0 +1,229 @@
+package org.juurlink.atagone;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Connector that lets concurrent callers share one request to the thermostat.
+ * <p/>
+ * When {@link #readDiagnostics()} is called while another read is in progress, the caller waits for that read and gets the
+ * same result instead of sending a request of its own. With a time to live, callers shortly after a read get its result too.
+ * This caps the load on the thermostat, whatever the number of callers. A setpoint change invalidates the result.
+ */
+@Log
+public class CoalescingConnector implements AtagOneConnectorInterface, Closeable {
+
+    private final AtagOneConnectorInterface delegate;
+    private final long timeToLiveNanos;
+
+    /**
+     * Read in progress, or null.
+     */
+    private final AtomicReference<CompletableFuture<Diagnostics>> inFlight = new AtomicReference<>();
+
+    /**
+     * Incremented on every setpoint change; a read that started before the change is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+
+    @Nullable
+    private volatile Diagnostics latest;
+    private volatile long latestTime;
+
+    /**
+     * Share reads in progress only.
+     *
+     * @param delegate Connector that talks to the thermostat
+     */
+    public CoalescingConnector(@Nonnull @NonNull final AtagOneConnectorInterface delegate) {
+        this(delegate, 0);
+    }
+
+    /**
+     * @param delegate     Connector that talks to the thermostat
+     * @param timeToLiveMs Time a result is returned to later callers, 0 to share reads in progress only
+     */
+    public CoalescingConnector(@Nonnull @NonNull final AtagOneConnectorInterface delegate, final long timeToLiveMs) {
+        if (timeToLiveMs < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative, but is " + timeToLiveMs + ".");
+        }
+        this.delegate = delegate;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMs);
+    }
+
+    @Override
+    public void login() throws IOException {
+        delegate.login();
+    }
+
+    /**
+     * Get diagnostic data; from the read in progress or from a result within the time to live when available.
+     */
+    @Nonnull
+    @Override
+    public Diagnostics readDiagnostics() throws IOException {
+        requests.incrementAndGet();
+
+        val cached = latest;
+        if (cached != null && timeToLiveNanos > 0 && System.nanoTime() - latestTime <= timeToLiveNanos) {
+            return cached;
+        }
+
+        val flight = new CompletableFuture<Diagnostics>();
+        while (true) {
+            val current = inFlight.get();
+            if (current != null) {
+                return await(current);
+            }
+            if (inFlight.compareAndSet(null, flight)) {
+                break;
+            }
+        }
+
+        // This caller reads for all callers.
+        val startGeneration = generation.get();
+        try {
+            reads.incrementAndGet();
+            val diagnostics = delegate.readDiagnostics();
+            if (timeToLiveNanos > 0 && generation.get() == startGeneration) {
+                latestTime = System.nanoTime();
+                latest = diagnostics;
+            }
+            flight.complete(diagnostics);
+            return diagnostics;
+
+        } catch (Throwable e) {
+            // Also errors and undeclared exceptions, otherwise the waiting callers wait forever.
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.compareAndSet(flight, null);
+        }
+    }
+
+    /**
+     * Get diagnostic data of the given fields; not shared, the result differs per set of fields.
+     */
+    @Nonnull
+    @Override
+    public Diagnostics readDiagnostics(@Nonnull @NonNull final DiagnosticField... fields) throws IOException {
+        requests.incrementAndGet();
+        reads.incrementAndGet();
+        return delegate.readDiagnostics(fields);
+    }
+
+    /**
+     * Set temperature; the next read gets the diagnostics from the thermostat.
+     */
+    @Nullable
+    @Override
+    public BigDecimal setTemperature(final BigDecimal temperature) throws IOException {
+        try {
+            return delegate.setTemperature(temperature);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Change control values; the next read gets the diagnostics from the thermostat.
+     */
+    @Nullable
+    @Override
+    public BigDecimal updateControl(@Nonnull @NonNull final ControlUpdate update) throws IOException {
+        try {
+            return delegate.updateControl(update);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Forget the result and the read in progress; both may have started before the change. The read still completes for
+     * the callers that joined it.
+     */
+    private void invalidate() {
+        generation.incrementAndGet();
+        latest = null;
+        inFlight.set(null);
+    }
+
+    @Override
+    public String dump() throws IOException {
+        return delegate.dump();
+    }
+
+    @Override
+    public void abort() {
+        delegate.abort();
+    }
+
+    /**
+     * @return Number of read calls
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return Number of reads sent to the thermostat
+     */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * Close the connector that talks to the thermostat.
+     */
+    @Override
+    public void close() {
+        log.fine("Diagnostics requests: " + requests.get() + ", thermostat reads: " + reads.get());
+        if (delegate instanceof Closeable) {
+            IOUtils.closeQuietly((Closeable) delegate);
+        }
+    }
+
+    @Nonnull
+    private static Diagnostics await(final CompletableFuture<Diagnostics> flight) throws IOException {
+        try {
+            return flight.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for diagnostics");
+
+        } catch (ExecutionException e) {
+            val cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.juurlink.atagone;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Poll diagnostics of one logged in connector at a fixed rate.
+ * <p/>
+ * The connector keeps its session (thermostat address, device info and authorization) between samples, so every sample costs
+ * just one request.
+ */
+@Log
+public class DiagnosticsPoller implements Closeable {
+
+    /**
+     * Receives the samples, called from the poller thread.
+     */
+    public interface Listener {
+
+        /**
+         * New sample received.
+         */
+        void onSample(@Nonnull Diagnostics diagnostics);
+
+        /**
+         * Sample failed, the poller keeps polling.
+         */
+        default void onError(@Nonnull Exception e) {
+            log.log(Level.WARNING, "Error polling diagnostics: " + e.getMessage(), e);
+        }
+    }
+
+    private final AtagOneConnectorInterface connector;
+    private final Listener listener;
+    private final long intervalSeconds;
+    private final DiagnosticField[] fields;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Create poller, call {@link #start()} to start polling.
+     *
+     * @param connector       Logged in connector
+     * @param intervalSeconds Number of seconds between the start of two samples
+     * @param listener        Receives the samples
+     */
+    public DiagnosticsPoller(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                             final long intervalSeconds,
+                             @Nonnull @NonNull final Listener listener) {
+        this(connector, intervalSeconds, new DiagnosticField[0], listener);
+    }
+
+    /**
+     * Create poller that reads the given fields only, call {@link #start()} to start polling.
+     *
+     * @param connector       Logged in connector
+     * @param intervalSeconds Number of seconds between the start of two samples
+     * @param fields          Fields to read, all fields when empty
+     * @param listener        Receives the samples
+     * @see AtagOneConnectorInterface#readDiagnostics(DiagnosticField...)
+     */
+    public DiagnosticsPoller(@Nonnull @NonNull final AtagOneConnectorInterface connector,
+                             final long intervalSeconds,
+                             @Nonnull @NonNull final DiagnosticField[] fields,
+                             @Nonnull @NonNull final Listener listener) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Poll interval should be at least one second, but is " + intervalSeconds + ".");
+        }
+        this.connector = connector;
+        this.intervalSeconds = intervalSeconds;
+        this.fields = fields.clone();
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, AtagOneApp.EXECUTABLE_NAME + "-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start polling, the first sample is taken immediately.
+     */
+    public void start() {
+        log.fine("Poll diagnostics every " + intervalSeconds + " seconds.");
+        // A slow sample delays the next one, samples never overlap.
+        executor.scheduleAtFixedRate(this::poll, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Wait until the poller is closed.
+     *
+     * @throws InterruptedException When interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            log.finest("Poller still running.");
+        }
+    }
+
+    /**
+     * Stop polling; a sample in progress is allowed to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Take one sample, never throws so the schedule is never cancelled.
+     */
+    protected void poll() {
+        try {
+            listener.onSample(fields.length > 0 ? connector.readDiagnostics(fields) : connector.readDiagnostics());
+        } catch (Exception e) {
+            listener.onError(e);
+        } catch (Throwable e) {
+            // Thrown, it would cancel all later samples without a trace.
+            log.log(Level.SEVERE, "Error polling diagnostics, the poller keeps polling: " + e, e);
+        }
+    }
+}
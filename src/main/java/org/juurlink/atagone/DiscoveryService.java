@@ -0,0 +1,243 @@
+package org.juurlink.atagone;
+
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.DiscoveredDevice;
+import org.juurlink.atagone.utils.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Listen for thermostat broadcasts in the background and keep a registry of all thermostats seen.
+ * <p/>
+ * Every ATAG One in the network segment broadcasts a "ONE &lt;device id&gt;" message on UDP port 11000 every few seconds. The
+ * service keeps the socket open, so a connector can take the address from the registry instead of waiting for the next
+ * broadcast.
+ */
+@Log
+public class DiscoveryService implements Closeable {
+
+    /**
+     * UDP port the thermostat sends its messages to.
+     */
+    public static final int UDP_BROADCAST_PORT = 11000;
+
+    private static final String MESSAGE_TAG = "ONE ";
+
+    /**
+     * ATAG One message size is 37 bytes, allow a bit more.
+     */
+    private static final int MAX_MESSAGE_SIZE = 64;
+
+    /**
+     * Guards the default instance.
+     */
+    private static final ReentrantLock DEFAULT_LOCK = new ReentrantLock();
+
+    @Nullable
+    private static DiscoveryService defaultInstance;
+
+    private final Map<String, DiscoveredDevice> devices = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition deviceSeen = lock.newCondition();
+    private final DatagramSocket datagramSocket;
+    private volatile boolean closed;
+
+    /**
+     * Bind the port and start listening.
+     *
+     * @param port UDP port to listen on, 0 for any free port
+     * @throws IOException When the port cannot be bound
+     */
+    public DiscoveryService(final int port) throws IOException {
+        val socket = new DatagramSocket(null);
+        try {
+            // Allow other programs listening for the same broadcasts.
+            socket.setReuseAddress(true);
+            socket.setBroadcast(true);
+            socket.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            IOUtils.closeQuietly(socket);
+            throw e;
+        }
+        this.datagramSocket = socket;
+        val listenerThread = new Thread(this::listen, AtagOneApp.EXECUTABLE_NAME + "-discovery");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        log.fine("Listen for " + AtagOneApp.THERMOSTAT_NAME + " broadcasts on UDP port " + socket.getLocalPort());
+    }
+
+    /**
+     * Get the service shared by all connectors in this process, listening on {@link #UDP_BROADCAST_PORT}. It is started on first
+     * use and runs until the process ends.
+     *
+     * @throws IOException When the port cannot be bound
+     */
+    @Nonnull
+    public static DiscoveryService getDefault() throws IOException {
+        DEFAULT_LOCK.lock();
+        try {
+            if (defaultInstance == null || defaultInstance.closed) {
+                defaultInstance = new DiscoveryService(UDP_BROADCAST_PORT);
+            }
+            return defaultInstance;
+        } finally {
+            DEFAULT_LOCK.unlock();
+        }
+    }
+
+    /**
+     * @return Port the service listens on
+     */
+    public int getPort() {
+        return datagramSocket.getLocalPort();
+    }
+
+    /**
+     * @return All thermostats seen, longest known first
+     */
+    @Nonnull
+    public List<DiscoveredDevice> getDevices() {
+        val result = new ArrayList<DiscoveredDevice>(devices.values());
+        result.sort(Comparator.comparingLong(DiscoveredDevice::getFirstSeen));
+        return result;
+    }
+
+    /**
+     * @param maxAgeMs Max time since the latest broadcast
+     * @return Thermostats seen recently, longest known first
+     */
+    @Nonnull
+    public List<DiscoveredDevice> getDevices(final long maxAgeMs) {
+        val oldest = System.currentTimeMillis() - maxAgeMs;
+        val result = getDevices();
+        result.removeIf(device -> device.getLastSeen() < oldest);
+        return result;
+    }
+
+    /**
+     * @return Thermostat with given device id, or null when not seen
+     */
+    @Nullable
+    public DiscoveredDevice getDevice(@Nonnull final String deviceId) {
+        return devices.get(deviceId);
+    }
+
+    /**
+     * Get the longest known thermostat; wait for a broadcast when none has been seen yet.
+     *
+     * @param timeoutMs Max time to wait
+     * @return Thermostat or null when none seen before the timeout
+     * @throws InterruptedException When interrupted while waiting
+     */
+    @Nullable
+    public DiscoveredDevice awaitDevice(final long timeoutMs) throws InterruptedException {
+        val endTimeMs = System.currentTimeMillis() + timeoutMs;
+        lock.lock();
+        try {
+            while (true) {
+                val known = getDevices();
+                if (!known.isEmpty()) {
+                    return known.get(0);
+                }
+                val remainingMs = endTimeMs - System.currentTimeMillis();
+                if (remainingMs <= 0 || closed) {
+                    return null;
+                }
+                deviceSeen.await(remainingMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop listening, the registry stays available.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        IOUtils.closeQuietly(datagramSocket);
+        signalDeviceSeen();
+    }
+
+    private void listen() {
+        val receiveData = new byte[MAX_MESSAGE_SIZE];
+        val datagramPacket = new DatagramPacket(receiveData, receiveData.length);
+        while (!closed) {
+            try {
+                datagramPacket.setLength(receiveData.length);
+                datagramSocket.receive(datagramPacket);
+                val message = new String(receiveData, 0, datagramPacket.getLength(), StandardCharsets.UTF_8);
+                register(datagramPacket.getAddress(), message);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.log(Level.WARNING, "Error receiving UDP message: " + e.getMessage(), e);
+                }
+            }
+        }
+        log.fine("Stopped listening for " + AtagOneApp.THERMOSTAT_NAME + " broadcasts.");
+    }
+
+    /**
+     * Add or refresh thermostat in registry.
+     *
+     * @param senderAddress Address of the thermostat
+     * @param message       Broadcast message, "ONE " followed by the device id and possibly more tokens or padding
+     */
+    protected void register(@Nonnull final InetAddress senderAddress, @Nonnull final String message) {
+        if (!message.startsWith(MESSAGE_TAG)) {
+            return;
+        }
+        // First token only; like trim(), every control character or space ends it.
+        val rest = message.substring(MESSAGE_TAG.length()).trim();
+        int end = 0;
+        while (end < rest.length() && rest.charAt(end) > ' ') {
+            end++;
+        }
+        val deviceId = rest.substring(0, end);
+        if (deviceId.isEmpty()) {
+            return;
+        }
+
+        val now = System.currentTimeMillis();
+        val previous = devices.get(deviceId);
+        devices.put(deviceId, DiscoveredDevice.builder()
+            .deviceId(deviceId)
+            .deviceAddress(senderAddress)
+            .firstSeen(previous != null ? previous.getFirstSeen() : now)
+            .lastSeen(now)
+            .build());
+
+        if (previous == null || !previous.getDeviceAddress().equals(senderAddress)) {
+            log.fine(AtagOneApp.THERMOSTAT_NAME + " found in local network: " + deviceId + " at " + senderAddress.getHostAddress());
+            signalDeviceSeen();
+        }
+    }
+
+    private void signalDeviceSeen() {
+        lock.lock();
+        try {
+            deviceSeen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.juurlink.atagone;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.DeviceInfo;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.DeviceThreads;
+import org.juurlink.atagone.utils.IOUtils;
+import org.juurlink.atagone.utils.NetworkUtils;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Poll a fleet of thermostats, with one thread and one blocking local connector per thermostat.
+ * <p/>
+ * Every thread logs in and then polls its thermostat at a fixed rate until the runner is closed; a slow or unreachable
+ * thermostat only delays itself. Run from the multi-release jar on Java 21 or later, the threads are virtual threads, so the
+ * number of thermostats is not bounded by a thread pool; see {@link DeviceThreads}.
+ */
+@Log
+public class FleetRunner implements Closeable {
+
+    /**
+     * Receives the samples, called from the thread of the thermostat; concurrently for different thermostats.
+     */
+    public interface Listener {
+
+        /**
+         * New sample received.
+         */
+        void onSample(@Nonnull AtagOneInfo device, @Nonnull Diagnostics diagnostics);
+
+        /**
+         * Login or sample failed, the thread tries again in the next interval.
+         */
+        default void onError(@Nonnull AtagOneInfo device, @Nonnull Exception e) {
+            log.log(Level.WARNING, "Error polling thermostat " + device.getDeviceAddress().getHostAddress() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private final List<AtagOneInfo> devices;
+    private final List<AtagOneConnectorInterface> connectors;
+    private final long intervalMs;
+    private final Listener listener;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * Create runner, call {@link #start()} to start polling.
+     *
+     * @param configuration Shared configuration; MAC override, version, retry policy and skip-auth-request
+     * @param devices       Thermostats to poll
+     * @param intervalMs    Time between the start of two samples of a thermostat
+     * @param listener      Receives the samples
+     * @throws IOException When error getting local device address
+     */
+    public FleetRunner(@Nonnull @NonNull final Configuration configuration,
+                       @Nonnull @NonNull final List<AtagOneInfo> devices,
+                       final long intervalMs,
+                       @Nonnull @NonNull final Listener listener) throws IOException {
+        this(devices, createConnectors(configuration, devices), intervalMs, listener);
+    }
+
+    /**
+     * @param connectors Connector of every thermostat, in the same sequence
+     */
+    FleetRunner(@Nonnull @NonNull final List<AtagOneInfo> devices,
+                @Nonnull @NonNull final List<? extends AtagOneConnectorInterface> connectors,
+                final long intervalMs,
+                @Nonnull @NonNull final Listener listener) {
+        if (devices.isEmpty()) {
+            throw new IllegalArgumentException("No thermostats to poll.");
+        }
+        if (connectors.size() != devices.size()) {
+            throw new IllegalArgumentException("Expected " + devices.size() + " connectors, but got " + connectors.size() + ".");
+        }
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Poll interval should be positive, but is " + intervalMs + ".");
+        }
+        this.devices = Collections.unmodifiableList(new ArrayList<>(devices));
+        this.connectors = Collections.unmodifiableList(new ArrayList<>(connectors));
+        this.intervalMs = intervalMs;
+        this.listener = listener;
+        this.executor = DeviceThreads.newThreadPerTaskExecutor(AtagOneApp.EXECUTABLE_NAME + "-fleet-");
+    }
+
+    @Nonnull
+    private static List<AtagOneLocalConnector> createConnectors(final Configuration configuration,
+                                                                final List<AtagOneInfo> devices) throws IOException {
+
+        // Lookup local device info only once for all connectors.
+        final DeviceInfo localDeviceInfo = NetworkUtils.getDeviceInfo();
+        val connectors = new ArrayList<AtagOneLocalConnector>(devices.size());
+        for (AtagOneInfo device : devices) {
+            connectors.add(new AtagOneLocalConnector(configuration, localDeviceInfo, device));
+        }
+        return connectors;
+    }
+
+    /**
+     * Start one thread per thermostat, the first samples are taken immediately.
+     */
+    public void start() {
+        log.fine("Poll " + connectors.size() + " thermostats every " + intervalMs + " ms on " +
+            (DeviceThreads.isVirtual() ? "virtual" : "platform") + " threads.");
+        for (int i = 0; i < connectors.size(); i++) {
+            val device = devices.get(i);
+            val connector = connectors.get(i);
+            executor.execute(() -> run(device, connector));
+        }
+    }
+
+    /**
+     * Wait until the runner is closed.
+     *
+     * @throws InterruptedException When interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            log.finest("Fleet still running.");
+        }
+    }
+
+    /**
+     * Stop polling and close all connections; a request in progress fails.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        for (AtagOneConnectorInterface connector : connectors) {
+            connector.abort();
+            if (connector instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) connector);
+            }
+        }
+    }
+
+    /**
+     * Poll one thermostat until closed.
+     */
+    private void run(final AtagOneInfo device, final AtagOneConnectorInterface connector) {
+        boolean loggedIn = false;
+        long nextStartMs = System.currentTimeMillis();
+        while (!closed) {
+            try {
+                if (!loggedIn) {
+                    connector.login();
+                    loggedIn = true;
+                }
+                val diagnostics = connector.readDiagnostics();
+                listener.onSample(device, diagnostics);
+
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                listener.onError(device, e);
+            }
+
+            // Fixed rate; skip samples missed by a slow thermostat.
+            val now = System.currentTimeMillis();
+            nextStartMs += intervalMs;
+            if (nextStartMs < now) {
+                nextStartMs = now + intervalMs - (now - nextStartMs) % intervalMs;
+            }
+            try {
+                Thread.sleep(nextStartMs - now);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
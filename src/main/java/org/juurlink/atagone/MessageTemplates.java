@@ -0,0 +1,144 @@
+package org.juurlink.atagone;
+
+import lombok.NonNull;
+import lombok.val;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.utils.ByteSequence;
+import org.juurlink.atagone.utils.PayloadTemplate;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request payloads of one connector. The MAC address and device name do not change during a session, so the messages are
+ * rendered from templates made once; only the sequence number and the values asked for are written per request.
+ * <p/>
+ * Every message gets the next sequence number; a retry of the same request sends the same message again.
+ */
+class MessageTemplates {
+
+    private final String accountAuth;
+    private final PayloadTemplate retrieve;
+    private final PayloadTemplate pair;
+
+    /**
+     * Update templates by the fields they change, as bits by field ordinal; made on first use.
+     */
+    private final ConcurrentMap<Long, PayloadTemplate> updates = new ConcurrentHashMap<>();
+    private final AtomicInteger seqnr = new AtomicInteger();
+
+    /**
+     * @param macAddress MAC address of this computer
+     * @param deviceName Name of this computer as shown on the thermostat
+     */
+    MessageTemplates(@Nonnull @NonNull final String macAddress, @Nonnull @NonNull final String deviceName) {
+        accountAuth = "\"account_auth\":{" +
+            "\"user_account\":\"\"," +
+            "\"mac_address\":\"" + macAddress + "\"},";
+
+        // {"retrieve_message":{"seqnr":0,"account_auth":{"user_account":"","mac_address":"6C:42:98:B6:B2:90"},"info":15}}
+        retrieve = PayloadTemplate.builder()
+            .text("{\"retrieve_message\":{\"seqnr\":").number(0)
+            .text("," + accountAuth + "\"info\":").number(0)
+            .text("}}\n")
+            .build();
+
+        // Requests access for this computer; the thermostat asks the user to confirm.
+        pair = PayloadTemplate.builder()
+            .text("{\"pair_message\":{\"seqnr\":").number(0)
+            .text("," + accountAuth +
+                "\"accounts\":" +
+                "{\"entries\":[{" +
+                "\"user_account\":\"\"," +
+                "\"mac_address\":\"" + macAddress + "\"," +
+                "\"device_name\":\"" + deviceName + "\"," +
+                "\"account_type\":0}]}}}")
+            .build();
+    }
+
+    /**
+     * Create retrieve message.
+     *
+     * @param info Bitmask of the info sections to retrieve
+     */
+    @Nonnull
+    ByteSequence retrieve(final int info) {
+        return retrieve.render(nextSeqnr(), info);
+    }
+
+    /**
+     * Create update message to set the target temperature.
+     *
+     * @param targetTemperature Target temperature, rounded by a half
+     */
+    @Nonnull
+    ByteSequence update(final float targetTemperature) {
+        return update(Collections.singletonMap(DiagnosticField.CH_MODE_TEMP, targetTemperature));
+    }
+
+    /**
+     * Create update message to change several control values at once.
+     *
+     * @param fieldValues Values by the field they change; decimals are written with one fraction digit
+     */
+    @Nonnull
+    ByteSequence update(@Nonnull @NonNull final Map<DiagnosticField, Number> fieldValues) {
+        if (fieldValues.isEmpty()) {
+            throw new IllegalArgumentException("No control values to update.");
+        }
+        // Field sequence, the same for every message with these fields.
+        val values = fieldValues instanceof EnumMap || fieldValues.size() == 1 ? fieldValues : new EnumMap<>(fieldValues);
+        long key = 0;
+        for (DiagnosticField field : values.keySet()) {
+            key |= 1L << field.ordinal();
+        }
+        val template = updates.computeIfAbsent(key, ignored -> createUpdateTemplate(values));
+
+        val numbers = new double[values.size() + 1];
+        numbers[0] = nextSeqnr();
+        int i = 1;
+        for (Number value : values.values()) {
+            numbers[i++] = value.doubleValue();
+        }
+        return template.render(numbers);
+    }
+
+    /**
+     * Create pair message to request access.
+     */
+    @Nonnull
+    ByteSequence pair() {
+        return pair.render(nextSeqnr());
+    }
+
+    /**
+     * Template of an update message with one placeholder per value, in field sequence.
+     */
+    private PayloadTemplate createUpdateTemplate(final Map<DiagnosticField, Number> values) {
+        val builder = PayloadTemplate.builder()
+            .text("{\"update_message\":{\"seqnr\":").number(0)
+            .text("," + accountAuth + "\"control\":{");
+        String separator = "";
+        for (DiagnosticField field : values.keySet()) {
+            if (field.getJsonName() == null) {
+                throw new IllegalArgumentException("Field cannot be updated: " + field);
+            }
+            val fractionDigits = field.getType() == DiagnosticField.Type.DECIMAL ? 1 : 0;
+            builder.text(separator + "\"" + field.getJsonName() + "\":").number(fractionDigits);
+            separator = ",";
+        }
+        return builder.text("}}}\n").build();
+    }
+
+    /**
+     * @return Sequence number of the next message; wraps to 0 instead of going negative
+     */
+    int nextSeqnr() {
+        return seqnr.getAndIncrement() & Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,305 @@
+package org.juurlink.atagone;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.DeviceInfo;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.IOUtils;
+import org.juurlink.atagone.utils.NetworkUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Poll the diagnostics of many thermostats in the local network concurrently.
+ * <p/>
+ * Every thermostat has its own local connector, which logs in on the first poll. One cycle polls all thermostats on a bounded
+ * thread pool; a thermostat that does not answer within the timeout is cancelled and its connection is closed, so one
+ * unreachable thermostat cannot stall the cycle. A thermostat that is still busy from an earlier cycle is skipped.
+ * <p/>
+ * For applications that watch several thermostats; the command line app talks to one thermostat and does not use it.
+ */
+@Log
+public class MultiThermostatPoller implements Closeable {
+
+    /**
+     * Result of one thermostat in a cycle; either diagnostics or an error.
+     */
+    @Value
+    @Builder
+    public static class Result {
+        @Nonnull
+        AtagOneInfo device;
+        @Nullable
+        Diagnostics diagnostics;
+        @Nullable
+        Exception error;
+        long durationMs;
+
+        public boolean isSuccess() {
+            return diagnostics != null;
+        }
+    }
+
+    /**
+     * Results of all thermostats of one cycle, in the sequence the thermostats were given.
+     */
+    @Value
+    @Builder
+    public static class Cycle {
+        long startTime;
+        long durationMs;
+        @Nonnull
+        List<Result> results;
+    }
+
+    /**
+     * One thermostat and its connector.
+     */
+    private static class Target {
+        private final AtagOneInfo device;
+        private final AtagOneConnectorInterface connector;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile boolean loggedIn;
+
+        private Target(final AtagOneInfo device, final AtagOneConnectorInterface connector) {
+            this.device = device;
+            this.connector = connector;
+        }
+    }
+
+    private final List<Target> targets;
+    private final long timeoutMs;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Create poller for the given thermostats.
+     *
+     * @param configuration  Shared configuration; MAC override, version and skip-auth-request
+     * @param devices        Thermostats to poll, for example found by discovery
+     * @param maxConcurrency Max number of thermostats polled at the same time
+     * @param timeoutMs      Max time for one thermostat to answer, measured from the start of its poll
+     * @throws IOException When error getting local device address
+     */
+    public MultiThermostatPoller(@Nonnull @NonNull final Configuration configuration,
+                                 @Nonnull @NonNull final List<AtagOneInfo> devices,
+                                 final int maxConcurrency,
+                                 final long timeoutMs) throws IOException {
+        this(devices, createConnectors(configuration, devices), maxConcurrency, timeoutMs);
+    }
+
+    /**
+     * @param connectors Connector of every thermostat, in the same sequence
+     */
+    MultiThermostatPoller(@Nonnull @NonNull final List<AtagOneInfo> devices,
+                          @Nonnull @NonNull final List<? extends AtagOneConnectorInterface> connectors,
+                          final int maxConcurrency,
+                          final long timeoutMs) {
+        if (devices.isEmpty()) {
+            throw new IllegalArgumentException("No thermostats to poll.");
+        }
+        if (connectors.size() != devices.size()) {
+            throw new IllegalArgumentException("Expected " + devices.size() + " connectors, but got " + connectors.size() + ".");
+        }
+        if (maxConcurrency <= 0 || timeoutMs <= 0) {
+            throw new IllegalArgumentException("Both 'maxConcurrency' and 'timeoutMs' should be positive.");
+        }
+
+        val newTargets = new ArrayList<Target>(devices.size());
+        for (int i = 0; i < devices.size(); i++) {
+            newTargets.add(new Target(devices.get(i), connectors.get(i)));
+        }
+        this.targets = Collections.unmodifiableList(newTargets);
+        this.timeoutMs = timeoutMs;
+
+        val threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.min(maxConcurrency, devices.size()), runnable -> {
+            final Thread thread = new Thread(runnable, AtagOneApp.EXECUTABLE_NAME + "-poller-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, AtagOneApp.EXECUTABLE_NAME + "-poller-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Nonnull
+    private static List<AtagOneLocalConnector> createConnectors(final Configuration configuration,
+                                                                final List<AtagOneInfo> devices) throws IOException {
+
+        // Lookup local device info only once for all connectors.
+        final DeviceInfo localDeviceInfo = NetworkUtils.getDeviceInfo();
+        val connectors = new ArrayList<AtagOneLocalConnector>(devices.size());
+        for (AtagOneInfo device : devices) {
+            connectors.add(new AtagOneLocalConnector(configuration, localDeviceInfo, device));
+        }
+        return connectors;
+    }
+
+    /**
+     * Create poller for thermostats with the given host names or IP addresses.
+     *
+     * @see #MultiThermostatPoller(Configuration, List, int, long)
+     */
+    @Nonnull
+    public static MultiThermostatPoller forHosts(@Nonnull @NonNull final Configuration configuration,
+                                                 @Nonnull @NonNull final List<String> hostNames,
+                                                 final int maxConcurrency,
+                                                 final long timeoutMs) throws IOException {
+        val devices = new ArrayList<AtagOneInfo>(hostNames.size());
+        for (String hostName : hostNames) {
+            devices.add(AtagOneInfo.builder().deviceAddress(InetAddress.getByName(hostName)).build());
+        }
+        return new MultiThermostatPoller(configuration, devices, maxConcurrency, timeoutMs);
+    }
+
+    /**
+     * Poll all thermostats once and wait for all results. The cycle takes about as long as the slowest thermostat, bounded
+     * by the timeout.
+     *
+     * @return Results of all thermostats
+     * @throws InterruptedException When interrupted while waiting
+     */
+    @Nonnull
+    public Cycle poll() throws InterruptedException {
+        val startTime = System.currentTimeMillis();
+
+        val futures = new ArrayList<Future<Diagnostics>>(targets.size());
+        val started = new AtomicLongArray(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            val target = targets.get(i);
+            if (!target.busy.compareAndSet(false, true)) {
+                // Still busy from an earlier cycle.
+                futures.add(null);
+                continue;
+            }
+            val index = i;
+            futures.add(executor.submit(() -> {
+                started.set(index, System.currentTimeMillis());
+                try {
+                    return pollTarget(target);
+                } finally {
+                    target.busy.set(false);
+                }
+            }));
+        }
+
+        // Each thermostat gets its own timeout, but waiting in the queue does not count.
+        for (int i = 0; i < futures.size(); i++) {
+            val future = futures.get(i);
+            if (future != null) {
+                val index = i;
+                timer.schedule(() -> cancelWhenRunningTooLong(future, started, index), timeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        val results = new ArrayList<Result>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            results.add(collect(targets.get(i), futures.get(i), startTime));
+        }
+
+        return Cycle.builder()
+            .startTime(startTime)
+            .durationMs(System.currentTimeMillis() - startTime)
+            .results(Collections.unmodifiableList(results))
+            .build();
+    }
+
+    /**
+     * Stop polling and close all connections.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+        for (Target target : targets) {
+            if (target.connector instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) target.connector);
+            }
+        }
+    }
+
+    @Nonnull
+    private Diagnostics pollTarget(@Nonnull final Target target) throws IOException {
+        if (!target.loggedIn) {
+            target.connector.login();
+            target.loggedIn = true;
+        }
+        return target.connector.readDiagnostics();
+    }
+
+    /**
+     * Cancel the poll when it did not finish within the timeout after it started; reschedule when it is still in the queue.
+     */
+    private void cancelWhenRunningTooLong(final Future<Diagnostics> future, final AtomicLongArray started, final int index) {
+        if (future.isDone()) {
+            return;
+        }
+        val startedAt = started.get(index);
+        val now = System.currentTimeMillis();
+        if (startedAt == 0 || now - startedAt < timeoutMs) {
+            val delay = startedAt == 0 ? timeoutMs : timeoutMs - (now - startedAt);
+            timer.schedule(() -> cancelWhenRunningTooLong(future, started, index), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        future.cancel(true);
+        // Closing the connection unblocks a thread waiting for the thermostat.
+        targets.get(index).connector.abort();
+    }
+
+    @Nonnull
+    private Result collect(@Nonnull final Target target, @Nullable final Future<Diagnostics> future, final long startTime)
+        throws InterruptedException {
+
+        val result = Result.builder().device(target.device);
+        if (future == null) {
+            return result
+                .error(new IllegalStateException("Thermostat " + describe(target) + " is still busy with an earlier poll."))
+                .build();
+        }
+        try {
+            result.diagnostics(future.get());
+        } catch (CancellationException e) {
+            val timeout = new TimeoutException("Thermostat " + describe(target) + " did not answer within " + timeoutMs + " ms.");
+            log.fine(timeout.getMessage());
+            result.error(timeout);
+        } catch (ExecutionException e) {
+            val cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            log.fine("Error polling thermostat " + describe(target) + ": " + cause);
+            result.error(cause);
+        }
+        return result.durationMs(System.currentTimeMillis() - startTime).build();
+    }
+
+    @Nonnull
+    private static String describe(@Nonnull final Target target) {
+        val deviceId = target.device.getDeviceId();
+        val address = target.device.getDeviceAddress().getHostAddress();
+        return deviceId != null ? deviceId + " (" + address + ")" : address;
+    }
+}
@@ -0,0 +1,295 @@
+package org.juurlink.atagone;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.StringUtils;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.juurlink.atagone.domain.DiagnosticField.BURNING_HOURS;
+
+/**
+ * Serve the latest diagnostics of every polled thermostat on GET /metrics in OpenMetrics text format, for Prometheus and other
+ * scrapers.
+ * <p/>
+ * Every numeric value is a gauge, labeled by device id, for example {@code atag_one_room_temperature{device_id="..."} 20.6}; the
+ * burning hours are a counter. Booleans are 1 or 0. Text values are left out.
+ * <p/>
+ * The text is rendered when a sample arrives, not when it is scraped: a scrape only writes the bytes rendered last, so
+ * frequent scrapes cost next to nothing and never wait for a thermostat. Feed it from a {@link FleetRunner}, it is a listener,
+ * or call {@link #update(String, Diagnostics)}.
+ */
+@Log
+public class OpenMetricsExporter implements FleetRunner.Listener, Closeable {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String PREFIX = "atag_one_";
+    private static final String LABEL_DEVICE_ID = "device_id";
+    private static final String SAMPLE_TIMESTAMP = PREFIX + "sample_timestamp_seconds";
+    private static final String EOF = "# EOF\n";
+    private static final String UNKNOWN_DEVICE = "unknown";
+
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int THREADS = 2;
+
+    /**
+     * Numeric fields in output sequence, with their metric family name and metadata lines.
+     */
+    private static final DiagnosticField[] FIELDS;
+    private static final String[] SAMPLE_NAMES;
+    private static final String[] HEADERS;
+
+    static {
+        val fields = new ArrayList<DiagnosticField>();
+        for (DiagnosticField field : DiagnosticField.values()) {
+            if (field.isNumeric()) {
+                fields.add(field);
+            }
+        }
+        FIELDS = fields.toArray(new DiagnosticField[0]);
+        SAMPLE_NAMES = new String[FIELDS.length];
+        HEADERS = new String[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            val field = FIELDS[i];
+            val family = PREFIX + toSnakeCase(field.getKey());
+            val counter = field == BURNING_HOURS;
+            SAMPLE_NAMES[i] = counter ? family + "_total" : family;
+            HEADERS[i] = "# TYPE " + family + (counter ? " counter\n" : " gauge\n") +
+                "# HELP " + family + " ATAG One " + field.getKey() + (field.getType() == DiagnosticField.Type.BOOLEAN ? ", 1 or 0" : "") + ".\n";
+        }
+    }
+
+    /**
+     * Latest sample by device id, ordered; guarded by the lock.
+     */
+    private final Map<String, Diagnostics> latest = new TreeMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Reused while rendering; guarded by the lock.
+     */
+    private final StringBuilder text = new StringBuilder(4096);
+
+    /**
+     * Bytes served to the scrapers, replaced after every sample.
+     */
+    private volatile byte[] exposition = EOF.getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Store sample of a thermostat polled by a {@link FleetRunner}.
+     */
+    @Override
+    public void onSample(@Nonnull final AtagOneInfo device, @Nonnull final Diagnostics diagnostics) {
+        String deviceId = diagnostics.getDeviceId();
+        if (StringUtils.isBlank(deviceId)) {
+            deviceId = StringUtils.isNotBlank(device.getDeviceId()) ? device.getDeviceId() : device.getDeviceAddress().getHostAddress();
+        }
+        update(deviceId, diagnostics);
+    }
+
+    /**
+     * Store sample, labeled by the device id in the sample.
+     */
+    public void update(@Nonnull @NonNull final Diagnostics diagnostics) {
+        val deviceId = diagnostics.getDeviceId();
+        update(StringUtils.isNotBlank(deviceId) ? deviceId : UNKNOWN_DEVICE, diagnostics);
+    }
+
+    /**
+     * Store sample and render the text served from now on.
+     *
+     * @param deviceId    Device id label
+     * @param diagnostics Latest sample of the device
+     */
+    public void update(@Nonnull @NonNull final String deviceId, @Nonnull @NonNull final Diagnostics diagnostics) {
+        lock.lock();
+        try {
+            latest.put(deviceId, diagnostics);
+            render();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Text served to the scrapers
+     */
+    @Nonnull
+    public String getExposition() {
+        return new String(exposition, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Start serving GET /metrics.
+     *
+     * @param address Address and port to listen on
+     * @throws IOException When the port cannot be bound
+     */
+    public void start(@Nonnull @NonNull final InetSocketAddress address) throws IOException {
+        val threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, AtagOneApp.EXECUTABLE_NAME + "-exporter-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handle);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(STATUS_NOT_FOUND, -1);
+            exchange.close();
+        });
+        server.start();
+        log.fine("Exporter listening on " + getAddress());
+    }
+
+    /**
+     * @return Address and port the exporter listens on
+     * @throws IllegalStateException When not started
+     */
+    @Nonnull
+    public InetSocketAddress getAddress() {
+        if (server == null) {
+            throw new IllegalStateException("Exporter not started.");
+        }
+        return server.getAddress();
+    }
+
+    /**
+     * Wait until the exporter is closed.
+     *
+     * @throws InterruptedException When interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop serving; scrapes in progress get one second to finish.
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+        }
+        stopped.countDown();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(STATUS_METHOD_NOT_ALLOWED, -1);
+                return;
+            }
+            val bytes = exposition;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(STATUS_OK, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render all samples; one family per field, with a sample per device that has the field.
+     */
+    private void render() {
+        text.setLength(0);
+        for (int i = 0; i < FIELDS.length; i++) {
+            val field = FIELDS[i];
+            boolean headerWritten = false;
+            for (val sample : latest.entrySet()) {
+                val diagnostics = sample.getValue();
+                if (!diagnostics.isPresent(field)) {
+                    continue;
+                }
+                if (!headerWritten) {
+                    text.append(HEADERS[i]);
+                    headerWritten = true;
+                }
+                appendSample(SAMPLE_NAMES[i], sample.getKey(), diagnostics.getDouble(field));
+            }
+        }
+
+        text.append("# TYPE ").append(SAMPLE_TIMESTAMP).append(" gauge\n")
+            .append("# HELP ").append(SAMPLE_TIMESTAMP).append(" Time of the latest sample.\n");
+        for (val sample : latest.entrySet()) {
+            appendSample(SAMPLE_TIMESTAMP, sample.getKey(), sample.getValue().getTimestamp() / 1000d);
+        }
+        text.append(EOF);
+
+        exposition = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendSample(final String name, final String deviceId, final double value) {
+        text.append(name).append('{').append(LABEL_DEVICE_ID).append("=\"");
+        for (int i = 0; i < deviceId.length(); i++) {
+            val c = deviceId.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+        text.append("\"} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    /**
+     * @return Key as metric name part, for example roomTemperature as room_temperature
+     */
+    @Nonnull
+    static String toSnakeCase(@Nonnull final String key) {
+        val result = new StringBuilder(key.length() + 4);
+        for (int i = 0; i < key.length(); i++) {
+            val c = key.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (result.length() > 0 && result.charAt(result.length() - 1) != '_') {
+                    result.append('_');
+                }
+                result.append(Character.toLowerCase(c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString().toLowerCase(Locale.US);
+    }
+}
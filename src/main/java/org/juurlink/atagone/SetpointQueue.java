@@ -0,0 +1,235 @@
+package org.juurlink.atagone;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.ControlUpdate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for setpoint and control changes of one thermostat.
+ * <p/>
+ * Callers do not wait for the thermostat: {@link #submit(ControlUpdate)} returns at once. Changes submitted while a write is
+ * waiting are merged into it, the latest value of every field wins, so a burst of setpoints from a slider or a controller
+ * becomes one write. Writes are sent one at a time, at most one per interval. The result of a submit completes when the
+ * thermostat accepted the write that carries it, with the room temperature when the connector knows it.
+ */
+@Log
+public class SetpointQueue implements Closeable {
+
+    /**
+     * Default time between the starts of two writes.
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MS = 5000;
+
+    private final AtagOneConnectorInterface connector;
+    private final long minIntervalNanos;
+    private final ScheduledExecutorService writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Merged changes not sent yet, or null.
+     */
+    @Nullable
+    private ControlUpdate pending;
+    private List<CompletableFuture<BigDecimal>> waiting = new ArrayList<>();
+
+    /**
+     * True while a write is scheduled or running.
+     */
+    private boolean writing;
+    private long lastWriteNanos;
+    private boolean closed;
+
+    private final AtomicLong submits = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * @param connector     Connector of the thermostat
+     * @param minIntervalMs Minimum time between the starts of two writes
+     */
+    public SetpointQueue(@Nonnull @NonNull final AtagOneConnectorInterface connector, final long minIntervalMs) {
+        if (minIntervalMs < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative, but is " + minIntervalMs + ".");
+        }
+        this.connector = connector;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "setpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastWriteNanos = System.nanoTime() - minIntervalNanos;
+    }
+
+    /**
+     * Set temperature, see {@link #submit(ControlUpdate)}.
+     *
+     * @param temperature Target temperature, between 4 and 27 (inclusive) and round by a half
+     */
+    @Nonnull
+    public CompletableFuture<BigDecimal> submit(@Nonnull @NonNull final BigDecimal temperature) {
+        return submit(ControlUpdate.builder().chModeTemp(temperature).build());
+    }
+
+    /**
+     * Queue control changes. When a write is waiting, the changes are merged into it.
+     *
+     * @param update Values to change
+     * @return Current room temperature or null when unknown; completes when the thermostat accepted the write, or with the
+     * error of the write, or at once with an IllegalArgumentException for invalid values
+     */
+    @Nonnull
+    public CompletableFuture<BigDecimal> submit(@Nonnull @NonNull final ControlUpdate update) {
+        val result = new CompletableFuture<BigDecimal>();
+        try {
+            // Rejected before it can replace a valid value.
+            AtagOneLocalConnector.getControlValues(update);
+        } catch (IllegalArgumentException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                result.completeExceptionally(new IllegalStateException("Setpoint queue closed."));
+                return result;
+            }
+            submits.incrementAndGet();
+            pending = pending != null ? pending.merge(update) : update;
+            waiting.add(result);
+            if (!writing) {
+                writing = true;
+                scheduleWrite();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Schedule the next write, an interval after the previous one started. Called with the lock held.
+     */
+    private void scheduleWrite() {
+        val delayNanos = Math.max(0, lastWriteNanos + minIntervalNanos - System.nanoTime());
+        try {
+            writer.schedule(this::write, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed.
+            writing = false;
+        }
+    }
+
+    /**
+     * Send the merged changes and complete the results of all submits they carry.
+     */
+    private void write() {
+        final ControlUpdate update;
+        final List<CompletableFuture<BigDecimal>> results;
+        lock.lock();
+        try {
+            update = pending;
+            results = waiting;
+            pending = null;
+            waiting = new ArrayList<>();
+            lastWriteNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (update != null) {
+                writes.incrementAndGet();
+                send(update, results);
+            }
+        } finally {
+            // Also after an error, otherwise the queue never writes again.
+            lock.lock();
+            try {
+                if (pending != null && !closed) {
+                    scheduleWrite();
+                } else {
+                    writing = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void send(final ControlUpdate update, final List<CompletableFuture<BigDecimal>> results) {
+        try {
+            val roomTemperature = connector.updateControl(update);
+            log.fine("Control update accepted for " + results.size() + " submits: " + update);
+            for (CompletableFuture<BigDecimal> result : results) {
+                result.complete(roomTemperature);
+            }
+        } catch (IOException | RuntimeException e) {
+            failAll(results, e);
+        } catch (Error e) {
+            // The submits must not wait forever.
+            failAll(results, e);
+            throw e;
+        }
+    }
+
+    private static void failAll(final List<CompletableFuture<BigDecimal>> results, final Throwable e) {
+        log.warning("Control update failed: " + e);
+        for (CompletableFuture<BigDecimal> result : results) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return Number of submits
+     */
+    public long getSubmits() {
+        return submits.get();
+    }
+
+    /**
+     * @return Number of writes sent to the thermostat
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * Stop writing; changes not sent yet fail. A write in progress completes.
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<BigDecimal>> results;
+        lock.lock();
+        try {
+            closed = true;
+            results = waiting;
+            pending = null;
+            waiting = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        writer.shutdown();
+        for (CompletableFuture<BigDecimal> result : results) {
+            result.completeExceptionally(new IllegalStateException("Setpoint queue closed before the change was written."));
+        }
+        log.fine("Setpoint submits: " + submits.get() + ", writes: " + writes.get());
+    }
+}
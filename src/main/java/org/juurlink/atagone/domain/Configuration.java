@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 
 import javax.annotation.Nullable;
 
+import org.juurlink.atagone.utils.RetryPolicy;
 import org.juurlink.atagone.utils.StringUtils;
 
 import lombok.Builder;
@@ -67,6 +68,64 @@ public class Configuration {
     @Nullable
     String mac;
 
+    /**
+     * When true, keep running and poll the diagnostics every {@link #interval} seconds.
+     */
+    boolean daemon;
+
+    /**
+     * Number of seconds between two samples in daemon mode.
+     */
+    int interval;
+
+    /**
+     * File to append the samples to in daemon mode, null for standard out.
+     */
+    @Nullable
+    String outputFile;
+
+    /**
+     * Fields to read, null for all fields.
+     */
+    @Nullable
+    DiagnosticField[] fields;
+
+    /**
+     * Also store the samples in the history in daemon mode.
+     */
+    boolean history;
+
+    /**
+     * Publish the request metrics over JMX and print them when the application stops.
+     */
+    boolean metrics;
+
+    /**
+     * When positive, print the samples in the history of this number of hours.
+     */
+    int showHistory;
+
+    /**
+     * When positive, serve the thermostat state over HTTP on this port.
+     */
+    int serverPort;
+
+    /**
+     * When positive, poll and serve the latest samples in OpenMetrics text format on this port.
+     */
+    int exporterPort;
+
+    /**
+     * Max age in seconds of the thermostat state served by the gateway.
+     */
+    int maxAge;
+
+    /**
+     * Retry policy for requests to the local thermostat, null for {@link RetryPolicy#defaults()}.
+     */
+    @Nullable
+    RetryPolicy retryPolicy;
+
     /**
      * API library version.
      * (Used for HTTP request header).
@@ -0,0 +1,87 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.juurlink.atagone.domain.DiagnosticField.*;
+
+/**
+ * Control values to change on the thermostat in one update; values not set stay as they are.
+ */
+@Value
+@Builder
+public class ControlUpdate {
+    /**
+     * Room temperature setpoint in degrees celsius, rounded by a half.
+     */
+    @Nullable
+    BigDecimal chModeTemp;
+    /**
+     * Domestic hot water setpoint in degrees celsius, between 40 and 65 (inclusive).
+     */
+    @Nullable
+    BigDecimal dhwSetpoint;
+    /**
+     * Heating mode: 1 manual, 2 auto, 3 vacation, 4 extend or 5 fireplace.
+     */
+    @Nullable
+    Integer chMode;
+    @Nullable
+    Integer vacationDuration;
+    @Nullable
+    Integer extendDuration;
+    @Nullable
+    Integer fireplaceDuration;
+
+    /**
+     * @return Values set, by the field they change, in field sequence
+     */
+    @Nonnull
+    public Map<DiagnosticField, Number> getValues() {
+        final Map<DiagnosticField, Number> values = new EnumMap<>(DiagnosticField.class);
+        put(values, CH_MODE_TEMP, chModeTemp);
+        put(values, DHW_SETPOINT, dhwSetpoint);
+        put(values, CH_MODE, chMode);
+        put(values, VACATION_DURATION, vacationDuration);
+        put(values, EXTEND_DURATION, extendDuration);
+        put(values, FIREPLACE_DURATION, fireplaceDuration);
+        return values;
+    }
+
+    /**
+     * Combine with a later update; values set in the later update win.
+     *
+     * @param later Update made after this one
+     * @return Update with the values of both
+     */
+    @Nonnull
+    public ControlUpdate merge(@Nonnull final ControlUpdate later) {
+        return ControlUpdate.builder()
+            .chModeTemp(later.chModeTemp != null ? later.chModeTemp : chModeTemp)
+            .dhwSetpoint(later.dhwSetpoint != null ? later.dhwSetpoint : dhwSetpoint)
+            .chMode(later.chMode != null ? later.chMode : chMode)
+            .vacationDuration(later.vacationDuration != null ? later.vacationDuration : vacationDuration)
+            .extendDuration(later.extendDuration != null ? later.extendDuration : extendDuration)
+            .fireplaceDuration(later.fireplaceDuration != null ? later.fireplaceDuration : fireplaceDuration)
+            .build();
+    }
+
+    /**
+     * @return True when only the room temperature setpoint is set
+     */
+    public boolean isSetpointOnly() {
+        return chModeTemp != null && getValues().size() == 1;
+    }
+
+    private static void put(final Map<DiagnosticField, Number> values, final DiagnosticField field, @Nullable final Number value) {
+        if (value != null) {
+            values.put(field, value);
+        }
+    }
+}
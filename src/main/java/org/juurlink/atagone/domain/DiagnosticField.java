@@ -0,0 +1,127 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All diagnostic values known by the local thermostat or the portal.
+ * <p/>
+ * Every field has a key, used in the map representation and the JSON output, a value type and, when available, the name of
+ * the value in the JSON reply of the local thermostat.
+ */
+@Getter
+public enum DiagnosticField {
+
+    DEVICE_ID("deviceId", Type.TEXT, "device_id"),
+    DEVICE_IP("deviceIP", Type.TEXT, null),
+    DEVICE_ALIAS("deviceAlias", Type.TEXT, null),
+    LATEST_REPORT_TIME("latestReportTime", Type.TEXT, null),
+    CONNECTED_TO("connectedTo", Type.TEXT, null),
+    BURNING_HOURS("burningHours", Type.DECIMAL, "burning_hours"),
+    BOILER_HEATING_FOR("boilerHeatingFor", Type.TEXT, null),
+    FLAME_STATUS("flameStatus", Type.BOOLEAN, null),
+    ROOM_TEMPERATURE("roomTemperature", Type.DECIMAL, "room_temp"),
+    OUTSIDE_TEMPERATURE("outsideTemperature", Type.DECIMAL, "outside_temp"),
+    DHW_SETPOINT("dhwSetpoint", Type.DECIMAL, "dhw_temp_setp"),
+    DHW_WATER_TEMPERATURE("dhwWaterTemperature", Type.DECIMAL, "dhw_water_temp"),
+    CH_SETPOINT("chSetpoint", Type.DECIMAL, "ch_setpoint"),
+    CH_WATER_TEMPERATURE("chWaterTemperature", Type.DECIMAL, "ch_water_temp"),
+    CH_WATER_PRESSURE("chWaterPressure", Type.DECIMAL, "ch_water_pres"),
+    CH_RETURN_TEMPERATURE("chReturnTemperature", Type.DECIMAL, "ch_return_temp"),
+    TARGET_TEMPERATURE("targetTemperature", Type.DECIMAL, "shown_set_temp"),
+    CURRENT_MODE("currentMode", Type.TEXT, null),
+    VACATION_PLANNED("vacationPlanned", Type.BOOLEAN, null),
+
+    // Values only local available.
+    DEVICE_STATUS("deviceStatus", Type.INTEGER, "device_status"),
+    CONNECTION_STATUS("connectionStatus", Type.INTEGER, "connection_status"),
+    DEVICE_ERRORS("deviceErrors", Type.TEXT, "device_errors"),
+    BOILER_ERRORS("boilerErrors", Type.TEXT, "boiler_errors"),
+    DBG_OUTSIDE_TEMP("dbgOutsideTemp", Type.DECIMAL, "dbg_outside_temp"),
+    PCB_TEMP("pcbTemp", Type.DECIMAL, "pcb_temp"),
+    DHW_WATER_TEMP("dhwWaterTemp", Type.DECIMAL, "dhw_water_temp"),
+    DHW_WATER_PRES("dhwWaterPres", Type.DECIMAL, "dhw_water_pres"),
+    BOILER_STATUS("boilerStatus", Type.INTEGER, "boiler_status"),
+    BOILER_CONFIG("boilerConfig", Type.INTEGER, "boiler_config"),
+    CH_TIME_TO_TEMP("chTimeToTemp", Type.INTEGER, "ch_time_to_temp"),
+    POWER_CONS("powerCons", Type.INTEGER, "power_cons"),
+    RSSI("rssi", Type.INTEGER, "rssi"),
+    CURRENT("current", Type.INTEGER, "current"),
+    VOLTAGE("voltage", Type.INTEGER, "voltage"),
+    RESETS("resets", Type.INTEGER, "resets"),
+    MEMORY_ALLOCATION("memoryAllocation", Type.INTEGER, "memory_allocation"),
+    CH_STATUS("chStatus", Type.INTEGER, "ch_status"),
+    CH_CONTROL_MODE("chControl_mode", Type.INTEGER, "ch_control_mode"),
+    CH_MODE("chMode", Type.INTEGER, "ch_mode"),
+    CH_MODE_DURATION("chModeDuration", Type.DECIMAL, "ch_mode_duration"),
+    CH_MODE_TEMP("chModeTemp", Type.DECIMAL, "ch_mode_temp"),
+    DHW_STATUS("dhwStatus", Type.INTEGER, "dhw_status"),
+    DHW_MODE("dhwMode", Type.INTEGER, "dhw_mode"),
+    WEATHER_TEMP("weatherTemp", Type.DECIMAL, "weather_temp"),
+    WEATHER_STATUS("weatherStatus", Type.INTEGER, "weather_status"),
+    VACATION_DURATION("vacationDuration", Type.INTEGER, "vacation_duration"),
+    EXTEND_DURATION("extendDuration", Type.INTEGER, "extend_duration"),
+    FIREPLACE_DURATION("fireplaceDuration", Type.INTEGER, "fireplace_duration"),
+    ATAG_ONE_VERSION("atagOneVersion", Type.TEXT, null),
+    MAC_ADDRESS("macAddress", Type.TEXT, null);
+
+    /**
+     * Value types.
+     */
+    public enum Type {
+        TEXT,
+        DECIMAL,
+        INTEGER,
+        BOOLEAN
+    }
+
+    private static final Map<String, DiagnosticField> BY_KEY = new HashMap<>();
+
+    static {
+        for (DiagnosticField field : values()) {
+            BY_KEY.put(field.key, field);
+        }
+    }
+
+    /**
+     * Key in map representation and JSON output.
+     */
+    @Nonnull
+    private final String key;
+
+    @Nonnull
+    private final Type type;
+
+    /**
+     * Name of the value in the local thermostat reply, null when not directly available.
+     */
+    @Nullable
+    private final String jsonName;
+
+    DiagnosticField(@Nonnull final String key, @Nonnull final Type type, @Nullable final String jsonName) {
+        this.key = key;
+        this.type = type;
+        this.jsonName = jsonName;
+    }
+
+    /**
+     * Get field by its key.
+     *
+     * @return Field or null when key unknown
+     */
+    @Nullable
+    public static DiagnosticField byKey(@Nullable final String key) {
+        return BY_KEY.get(key);
+    }
+
+    /**
+     * @return True when the value is stored as a number (decimals, integers and booleans)
+     */
+    public boolean isNumeric() {
+        return type != Type.TEXT;
+    }
+}
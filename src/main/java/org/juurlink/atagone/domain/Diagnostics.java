@@ -0,0 +1,440 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Diagnostic values of one thermostat sample.
+ * <p/>
+ * Numeric values (decimals, integers and booleans) are kept as primitive doubles and text values as strings, both indexed by
+ * {@link DiagnosticField#ordinal()}. A bitset records which fields have a value. The layout defines which fields the connector
+ * reports and in which sequence, it is only used for the map representation.
+ * <p/>
+ * The number of digits after the decimal point of a decimal is kept as well, when known, so the BigDecimal that is built on
+ * access prints the value as the thermostat wrote it.
+ */
+public final class Diagnostics {
+
+    private static final double TRUE = 1;
+    private static final double FALSE = 0;
+
+    private static final int FIELD_COUNT = DiagnosticField.values().length;
+
+    /**
+     * Scale of a decimal given as double without scale.
+     */
+    private static final byte NO_SCALE = -1;
+
+    static {
+        // The presence bitset is a long.
+        if (FIELD_COUNT > Long.SIZE) {
+            throw new IllegalStateException("Too many diagnostic fields: " + FIELD_COUNT);
+        }
+    }
+
+    /**
+     * Fields reported by the connector, in sequence.
+     */
+    @Nonnull
+    private final DiagnosticField[] layout;
+
+    /**
+     * Sample time in milliseconds since epoch.
+     */
+    @Getter
+    private final long timestamp;
+
+    private final long present;
+    private final double[] numbers;
+    private final String[] texts;
+    /**
+     * Digits after the decimal point of each decimal, or {@link #NO_SCALE}.
+     */
+    private final byte[] scales;
+
+    @Nullable
+    private Map<String, Object> mapView;
+
+    private Diagnostics(final Builder builder) {
+        this.layout = builder.layout;
+        this.timestamp = builder.timestamp;
+        this.present = builder.present;
+        this.numbers = builder.numbers.clone();
+        this.texts = builder.texts.clone();
+        this.scales = builder.scales.clone();
+    }
+
+    /**
+     * Start building a sample.
+     *
+     * @param layout Fields reported by the connector, in sequence
+     */
+    @Nonnull
+    public static Builder builder(@Nonnull @NonNull final DiagnosticField... layout) {
+        return new Builder(layout);
+    }
+
+    /**
+     * @return Fields reported by the connector, in sequence
+     */
+    @Nonnull
+    public DiagnosticField[] getLayout() {
+        return layout.clone();
+    }
+
+    /**
+     * @return True when the field has a value
+     */
+    public boolean isPresent(@Nonnull @NonNull final DiagnosticField field) {
+        return (present & bit(field)) != 0;
+    }
+
+    /**
+     * Get numeric value.
+     *
+     * @param field Decimal, integer or boolean field
+     * @return Value or NaN when not present
+     * @throws IllegalArgumentException When the field is a text field
+     */
+    public double getDouble(@Nonnull @NonNull final DiagnosticField field) {
+        assertNumeric(field);
+        return isPresent(field) ? numbers[field.ordinal()] : Double.NaN;
+    }
+
+    /**
+     * Get integer value.
+     *
+     * @param field        Decimal, integer or boolean field
+     * @param defaultValue Value to return when not present
+     * @return Value or default value
+     * @throws IllegalArgumentException When the field is a text field
+     */
+    public int getInt(@Nonnull @NonNull final DiagnosticField field, final int defaultValue) {
+        assertNumeric(field);
+        return isPresent(field) ? (int) numbers[field.ordinal()] : defaultValue;
+    }
+
+    /**
+     * Get boolean value.
+     *
+     * @param field Boolean field
+     * @return Value, false when not present
+     * @throws IllegalArgumentException When the field is a text field
+     */
+    public boolean getBoolean(@Nonnull @NonNull final DiagnosticField field) {
+        assertNumeric(field);
+        return isPresent(field) && numbers[field.ordinal()] != FALSE;
+    }
+
+    /**
+     * Get text value.
+     *
+     * @param field Text field
+     * @return Value or null when not present
+     * @throws IllegalArgumentException When the field is not a text field
+     */
+    @Nullable
+    public String getText(@Nonnull @NonNull final DiagnosticField field) {
+        if (field.isNumeric()) {
+            throw new IllegalArgumentException("Field " + field + " is not a text field.");
+        }
+        return texts[field.ordinal()];
+    }
+
+    /**
+     * Get decimal value as BigDecimal.
+     *
+     * @param field Decimal or integer field
+     * @return Value with the scale given to the builder, or null when not present
+     */
+    @Nullable
+    public BigDecimal getDecimal(@Nonnull @NonNull final DiagnosticField field) {
+        assertNumeric(field);
+        return isPresent(field) ? toDecimal(field) : null;
+    }
+
+    /**
+     * Get value as it appears in the map representation; BigDecimal, Integer, Boolean or String.
+     *
+     * @return Value or null when not present
+     */
+    @Nullable
+    public Object getValue(@Nonnull @NonNull final DiagnosticField field) {
+        if (!isPresent(field)) {
+            return null;
+        }
+        val value = numbers[field.ordinal()];
+        switch (field.getType()) {
+            case DECIMAL:
+                return toDecimal(field);
+            case INTEGER:
+                // Not an integer, like a reply that cannot be parsed as one.
+                return value == Math.rint(value) ? (Integer) (int) value : null;
+            case BOOLEAN:
+                return value != FALSE;
+            default:
+                return texts[field.ordinal()];
+        }
+    }
+
+    @Nullable
+    public String getDeviceId() {
+        return getText(DiagnosticField.DEVICE_ID);
+    }
+
+    public double getRoomTemperature() {
+        return getDouble(DiagnosticField.ROOM_TEMPERATURE);
+    }
+
+    public double getOutsideTemperature() {
+        return getDouble(DiagnosticField.OUTSIDE_TEMPERATURE);
+    }
+
+    public double getTargetTemperature() {
+        return getDouble(DiagnosticField.TARGET_TEMPERATURE);
+    }
+
+    public double getChWaterPressure() {
+        return getDouble(DiagnosticField.CH_WATER_PRESSURE);
+    }
+
+    public boolean isFlameOn() {
+        return getBoolean(DiagnosticField.FLAME_STATUS);
+    }
+
+    /**
+     * Read-only map view of this sample, in layout sequence. Values are converted on access; fields without a value are
+     * listed with value null.
+     *
+     * @return Map of diagnostic info
+     */
+    @Nonnull
+    public Map<String, Object> asMap() {
+        if (mapView == null) {
+            mapView = new MapView();
+        }
+        return mapView;
+    }
+
+    /**
+     * Mutable copy of the map view, as returned by the connectors before the typed diagnostics existed.
+     *
+     * @return Map of diagnostic info
+     */
+    @Nonnull
+    public Map<String, Object> toMap() {
+        return new LinkedHashMap<>(asMap());
+    }
+
+    @Override
+    public String toString() {
+        return "Diagnostics" + asMap();
+    }
+
+    /**
+     * @return Decimal with the scale given, otherwise the double without exponent
+     */
+    @Nonnull
+    private BigDecimal toDecimal(final DiagnosticField field) {
+        val value = BigDecimal.valueOf(numbers[field.ordinal()]);
+        val scale = scales[field.ordinal()];
+        if (scale != NO_SCALE) {
+            return value.setScale(scale, RoundingMode.HALF_UP);
+        }
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    private void assertNumeric(final DiagnosticField field) {
+        if (!field.isNumeric()) {
+            throw new IllegalArgumentException("Field " + field + " is not numeric.");
+        }
+    }
+
+    private static long bit(final DiagnosticField field) {
+        return 1L << field.ordinal();
+    }
+
+    /**
+     * Lazy map adapter, converts values on access.
+     */
+    private final class MapView extends AbstractMap<String, Object> {
+
+        @Override
+        public int size() {
+            return layout.length;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return inLayout(key instanceof String ? DiagnosticField.byKey((String) key) : null);
+        }
+
+        @Override
+        public Object get(final Object key) {
+            val field = key instanceof String ? DiagnosticField.byKey((String) key) : null;
+            return inLayout(field) ? getValue(field) : null;
+        }
+
+        @Nonnull
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return layout.length;
+                }
+
+                @Nonnull
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < layout.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            val field = layout[next++];
+                            return new SimpleImmutableEntry<>(field.getKey(), getValue(field));
+                        }
+                    };
+                }
+            };
+        }
+
+        private boolean inLayout(@Nullable final DiagnosticField field) {
+            if (field == null) {
+                return false;
+            }
+            for (DiagnosticField layoutField : layout) {
+                if (layoutField == field) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fills a sample; connectors set values directly, without boxing.
+     */
+    public static final class Builder {
+
+        private final DiagnosticField[] layout;
+        private final double[] numbers = new double[FIELD_COUNT];
+        private final String[] texts = new String[FIELD_COUNT];
+        private final byte[] scales = new byte[FIELD_COUNT];
+        private long present;
+        private long timestamp = System.currentTimeMillis();
+
+        private Builder(final DiagnosticField[] layout) {
+            this.layout = layout;
+            Arrays.fill(scales, NO_SCALE);
+        }
+
+        /**
+         * @param timestamp Sample time in milliseconds since epoch, defaults to now
+         */
+        @Nonnull
+        public Builder timestamp(final long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        @Nonnull
+        public Builder number(@Nonnull @NonNull final DiagnosticField field, final double value) {
+            return number(field, value, NO_SCALE);
+        }
+
+        /**
+         * @param value Value
+         * @param scale Digits after the decimal point to print the value with, or a negative number when not known
+         */
+        @Nonnull
+        public Builder number(@Nonnull @NonNull final DiagnosticField field, final double value, final int scale) {
+            if (!field.isNumeric()) {
+                throw new IllegalArgumentException("Field " + field + " is not numeric.");
+            }
+            numbers[field.ordinal()] = value;
+            scales[field.ordinal()] = scale >= 0 && scale <= Byte.MAX_VALUE ? (byte) scale : NO_SCALE;
+            present |= bit(field);
+            return this;
+        }
+
+        /**
+         * @param value Value, the scale of a BigDecimal is kept
+         */
+        @Nonnull
+        public Builder number(@Nonnull @NonNull final DiagnosticField field, @Nullable final Number value) {
+            if (value == null) {
+                return remove(field);
+            }
+            val scale = value instanceof BigDecimal ? ((BigDecimal) value).scale() : NO_SCALE;
+            return number(field, value.doubleValue(), scale);
+        }
+
+        @Nonnull
+        public Builder flag(@Nonnull @NonNull final DiagnosticField field, final boolean value) {
+            return number(field, value ? TRUE : FALSE);
+        }
+
+        @Nonnull
+        public Builder flag(@Nonnull @NonNull final DiagnosticField field, @Nullable final Boolean value) {
+            return value != null ? flag(field, value.booleanValue()) : remove(field);
+        }
+
+        @Nonnull
+        public Builder text(@Nonnull @NonNull final DiagnosticField field, @Nullable final String value) {
+            if (field.isNumeric()) {
+                throw new IllegalArgumentException("Field " + field + " is not a text field.");
+            }
+            if (value == null) {
+                return remove(field);
+            }
+            texts[field.ordinal()] = value;
+            present |= bit(field);
+            return this;
+        }
+
+        @Nonnull
+        public Builder remove(@Nonnull @NonNull final DiagnosticField field) {
+            numbers[field.ordinal()] = 0;
+            texts[field.ordinal()] = null;
+            scales[field.ordinal()] = NO_SCALE;
+            present &= ~bit(field);
+            return this;
+        }
+
+        /**
+         * @return True when the field has a value
+         */
+        public boolean isPresent(@Nonnull @NonNull final DiagnosticField field) {
+            return (present & bit(field)) != 0;
+        }
+
+        @Nonnull
+        public Diagnostics build() {
+            return new Diagnostics(this);
+        }
+    }
+}
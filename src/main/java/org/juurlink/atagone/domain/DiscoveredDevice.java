@@ -0,0 +1,38 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.annotation.Nonnull;
+import java.net.InetAddress;
+
+/**
+ * Thermostat seen in the local network.
+ */
+@Value
+@Builder
+public class DiscoveredDevice {
+    @Nonnull
+    String deviceId;
+    @Nonnull
+    InetAddress deviceAddress;
+    /**
+     * Time the first broadcast was received, in milliseconds since epoch.
+     */
+    long firstSeen;
+    /**
+     * Time the latest broadcast was received, in milliseconds since epoch.
+     */
+    long lastSeen;
+
+    /**
+     * @return Info to connect to this thermostat
+     */
+    @Nonnull
+    public AtagOneInfo toAtagOneInfo() {
+        return AtagOneInfo.builder()
+            .deviceAddress(deviceAddress)
+            .deviceId(deviceId)
+            .build();
+    }
+}
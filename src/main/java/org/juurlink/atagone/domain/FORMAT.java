@@ -5,5 +5,9 @@ package org.juurlink.atagone.domain;
  */
 public enum FORMAT {
     JSON,
-    CSV
+    CSV,
+    /**
+     * JSON with only the values changed since the previous sample, see {@link org.juurlink.atagone.utils.DeltaEncoder}.
+     */
+    DELTA
 }
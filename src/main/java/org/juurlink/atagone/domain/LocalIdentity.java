@@ -0,0 +1,42 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.annotation.Nonnull;
+import java.net.InetAddress;
+
+/**
+ * Network identity of this computer found on an earlier run; the interface with its address and MAC address.
+ */
+@Value
+@Builder
+public class LocalIdentity {
+    /**
+     * Short interface name, like eth0.
+     */
+    @Nonnull
+    String interfaceName;
+    /**
+     * Host name, as resolved when the identity was found.
+     */
+    @Nonnull
+    String name;
+    @Nonnull
+    InetAddress ip;
+    @Nonnull
+    String mac;
+    /**
+     * Time the identity was found, in milliseconds since epoch.
+     */
+    long timestamp;
+
+    @Nonnull
+    public DeviceInfo toDeviceInfo() {
+        return DeviceInfo.builder()
+            .name(name)
+            .ip(ip)
+            .mac(mac)
+            .build();
+    }
+}
@@ -0,0 +1,29 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Accepted pairing of this computer with a thermostat.
+ */
+@Value
+@Builder
+public class Pairing {
+    /**
+     * Thermostat device id, or its address when the device id is not known.
+     */
+    @Nonnull
+    String device;
+    /**
+     * MAC address of this computer, as sent in the pair request.
+     */
+    @Nonnull
+    String mac;
+    int accStatus;
+    /**
+     * Time the pairing was accepted, in milliseconds since epoch.
+     */
+    long timestamp;
+}
@@ -0,0 +1,42 @@
+package org.juurlink.atagone.domain;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.HttpCookie;
+import java.util.List;
+
+/**
+ * Logged in ATAG One portal session, kept between runs.
+ */
+@Value
+@Builder
+public class PortalSession {
+    /**
+     * Account the session belongs to.
+     */
+    @Nonnull
+    String emailAddress;
+    /**
+     * Device selected after login.
+     */
+    @Nonnull
+    String deviceId;
+    /**
+     * Last request verification token received after login, null when none received yet.
+     */
+    @Nullable
+    String requestVerificationToken;
+    /**
+     * Portal cookies; the session cookie included.
+     */
+    @Singular("cookie")
+    List<HttpCookie> cookies;
+    /**
+     * Time after which the session is not used anymore, in milliseconds since epoch.
+     */
+    long expires;
+}
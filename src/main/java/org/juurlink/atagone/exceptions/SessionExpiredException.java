@@ -0,0 +1,19 @@
+package org.juurlink.atagone.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Portal answered with its login page; the session is no longer valid.
+ */
+public class SessionExpiredException extends IOException {
+
+    /**
+     * Constructs an {@code IOException} with the specified detail message.
+     *
+     * @param message The detail message (which is saved for later retrieval by the {@link #getMessage()} method)
+     */
+    public SessionExpiredException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,408 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal non-blocking HTTP/1.1 client, no thread waits for the thermostat.
+ * <p/>
+ * Every request uses its own connection on a shared asynchronous channel group; a few threads handle the I/O of any number
+ * of requests. The scheduler of the client runs timeouts and can run delayed retries of its users.
+ * <p/>
+ * Requests and responses use buffers of the {@link ByteBufferPool}. They are returned to the pool when the response is
+ * complete; after a failure a late read may still write into them, so they are left to the garbage collector. A response
+ * larger than {@link #MAX_RESPONSE_SIZE} fails.
+ * <p/>
+ * Only plain HTTP is supported; the thermostat in the local network does not use TLS.
+ */
+@Log
+public class AsyncHttpClient implements Closeable {
+
+    private static final int HTTP_DEFAULT_PORT = 80;
+    private static final long CONNECT_TIMEOUT_MS = 10000;
+    private static final long READ_TIMEOUT_MS = 10000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] END_OF_HEADERS = {'\r', '\n', '\r', '\n'};
+
+    /**
+     * Largest response, headers included; the largest buffer the pool keeps.
+     */
+    static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+
+    /**
+     * I/O threads of the shared client.
+     */
+    private static final int DEFAULT_THREADS = 2;
+
+    @Nullable
+    private static AsyncHttpClient defaultInstance;
+
+    private final AsynchronousChannelGroup group;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufferPool pool = ByteBufferPool.getDefault();
+
+    /**
+     * @param threads Number of I/O threads
+     * @throws IOException When the channel group cannot be created
+     */
+    public AsyncHttpClient(final int threads) throws IOException {
+        group = AsynchronousChannelGroup.withFixedThreadPool(threads, daemonThreads("atag-one-io-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("atag-one-scheduler-"));
+    }
+
+    /**
+     * Get the client shared by all users in this process. It is started on first use and runs until the process ends.
+     *
+     * @throws IOException When the channel group cannot be created
+     */
+    @Nonnull
+    public static synchronized AsyncHttpClient getDefault() throws IOException {
+        if (defaultInstance == null || defaultInstance.group.isShutdown()) {
+            defaultInstance = new AsyncHttpClient(DEFAULT_THREADS);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * @return Scheduler for timeouts and delayed retries; its tasks must not block
+     */
+    @Nonnull
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * POST payload and read the full response.
+     *
+     * @param url           URL to connect to, only http
+     * @param payload       Request payload, sent UTF-8 encoded
+     * @param versionString Optional version string, will be used in request header
+     * @return Response content and headers; completes with an IOException in case of connection error or HTTP error status
+     */
+    @Nonnull
+    public CompletableFuture<PageContent> post(@Nonnull @NonNull final String url,
+                                               @Nonnull @NonNull final CharSequence payload,
+                                               @Nullable final String versionString) {
+        val result = new CompletableFuture<PageContent>();
+        try {
+            val parsedUrl = new URL(url);
+            if (!"http".equalsIgnoreCase(parsedUrl.getProtocol())) {
+                throw new IllegalArgumentException("Only http is supported: " + url);
+            }
+            val host = parsedUrl.getHost();
+            val port = parsedUrl.getPort() != -1 ? parsedUrl.getPort() : HTTP_DEFAULT_PORT;
+            val request = HttpMessages.createRequest(pool, host, port, parsedUrl.getFile(), payload, versionString, false);
+
+            new Exchange(url, AsynchronousSocketChannel.open(group), request, result)
+                .connect(new InetSocketAddress(host, port));
+
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Stop the I/O threads and the scheduler; requests in progress fail.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            group.shutdownNow();
+        } catch (IOException e) {
+            log.fine("Error closing channel group: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One request on its own connection: connect, write the request, read until the response is complete.
+     */
+    private class Exchange {
+        private final String url;
+        private final AsynchronousSocketChannel channel;
+        private final ByteBuffer request;
+        private final CompletableFuture<PageContent> result;
+        /**
+         * Response bytes received so far, in write mode.
+         */
+        private ByteBuffer received = pool.acquire(BUFFER_SIZE);
+        /**
+         * Index of the status line of the response; after an informational response, that of the next one.
+         */
+        private int headerStart;
+        /**
+         * Index where the search for the end of the headers continues.
+         */
+        private int scanned;
+        /**
+         * Index of the first body byte, or -1 while the headers are not complete.
+         */
+        private int bodyStart = -1;
+        /**
+         * Size of the complete response, or -1 when the headers do not tell.
+         */
+        private long responseSize = -1;
+        private boolean chunked;
+
+        Exchange(final String url, final AsynchronousSocketChannel channel, final ByteBuffer request,
+                 final CompletableFuture<PageContent> result) {
+            this.url = url;
+            this.channel = channel;
+            this.request = request;
+            this.result = result;
+        }
+
+        void connect(final InetSocketAddress address) {
+            // Connect has no timeout of its own.
+            final ScheduledFuture<?> timeout = scheduler.schedule(
+                () -> fail(new SocketTimeoutException("Connect timed out: " + address)), CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            channel.connect(address, null, new Handler<Void>() {
+                @Override
+                public void completed(final Void ignored, final Object attachment) {
+                    timeout.cancel(false);
+                    write();
+                }
+            });
+        }
+
+        private void write() {
+            channel.write(request, null, new Handler<Integer>() {
+                @Override
+                public void completed(final Integer written, final Object attachment) {
+                    if (request.hasRemaining()) {
+                        write();
+                    } else {
+                        read();
+                    }
+                }
+            });
+        }
+
+        private void read() {
+            received = pool.ensureRemaining(received, BUFFER_SIZE);
+            channel.read(received, READ_TIMEOUT_MS, TimeUnit.MILLISECONDS, null, new Handler<Integer>() {
+                @Override
+                public void completed(final Integer read, final Object attachment) {
+                    if (read < 0) {
+                        parse(true);
+                        return;
+                    }
+                    if (received.position() > MAX_RESPONSE_SIZE) {
+                        fail(new IOException("Response larger than " + MAX_RESPONSE_SIZE + " bytes: " + url));
+                        return;
+                    }
+                    if (!isComplete() || !parse(false)) {
+                        read();
+                    }
+                }
+            });
+        }
+
+        /**
+         * @param endOfStream True when the server closed the connection
+         * @return True when the response is complete
+         */
+        private boolean parse(final boolean endOfStream) {
+            if (result.isDone()) {
+                return true;
+            }
+            try {
+                if (received.position() == 0) {
+                    throw new EOFException("Connection closed before response");
+                }
+                val response = HttpMessages.readResponse(
+                    new ByteArrayInputStream(received.array(), received.arrayOffset(), received.position()), endOfStream, pool);
+                IOUtils.closeQuietly(channel);
+                try {
+                    result.complete(HttpMessages.toPageContent(url, response));
+                } finally {
+                    // Nothing reads or writes anymore.
+                    pool.release(response.getBody());
+                    pool.release(received);
+                    pool.release(request);
+                }
+                return true;
+
+            } catch (EOFException e) {
+                if (endOfStream) {
+                    fail(e);
+                    return true;
+                }
+                // Not all of the response received yet.
+                return false;
+
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return true;
+            }
+        }
+
+        /**
+         * Look at the bytes received since the previous read only, so a response is parsed once when it is complete instead of
+         * after every read.
+         *
+         * @return True when the response looks complete, or the headers are invalid, so it is time to parse it
+         */
+        private boolean isComplete() {
+            if (bodyStart < 0 && !findEndOfHeaders()) {
+                return false;
+            }
+            if (responseSize >= 0) {
+                return received.position() >= responseSize;
+            }
+            if (chunked) {
+                // The last chunk and the trailers end with an empty line; chunk data may too, then parsing continues reading.
+                return received.position() - bodyStart >= END_OF_HEADERS.length && endsWith(received.position(), END_OF_HEADERS);
+            }
+            // Body ends when the server closes the connection.
+            return false;
+        }
+
+        /**
+         * Search the end of the headers from where the previous search stopped; informational responses are skipped.
+         *
+         * @return True when the headers of the final response are complete
+         */
+        private boolean findEndOfHeaders() {
+            val end = received.position();
+            while (scanned + END_OF_HEADERS.length <= end) {
+                val headerEnd = scanned + END_OF_HEADERS.length;
+                if (!endsWith(headerEnd, END_OF_HEADERS)) {
+                    scanned++;
+                    continue;
+                }
+                scanned = headerEnd;
+                if (readHeaders(headerEnd)) {
+                    bodyStart = headerEnd;
+                    return true;
+                }
+                headerStart = headerEnd;
+            }
+            return false;
+        }
+
+        /**
+         * Find out when the response ends from the status line and headers.
+         *
+         * @param headerEnd Index of the first byte after the empty line that ends the headers
+         * @return False for an informational response, the final response follows it
+         */
+        private boolean readHeaders(final int headerEnd) {
+            val head = new String(received.array(), received.arrayOffset() + headerStart, headerEnd - headerStart,
+                StandardCharsets.ISO_8859_1);
+            val lines = head.split("\r\n");
+            val parts = lines[0].split(" ", 3);
+            final int status;
+            try {
+                status = parts.length >= 2 ? Integer.parseInt(parts[1]) : -1;
+            } catch (NumberFormatException e) {
+                // Invalid, parse now to fail.
+                responseSize = headerEnd;
+                return true;
+            }
+            if (status >= 100 && status < 200) {
+                return false;
+            }
+            if (status == 204 || status == 304) {
+                responseSize = headerEnd;
+                return true;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                val colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                val name = lines[i].substring(0, colon).trim();
+                val value = lines[i].substring(colon + 1).trim();
+                if ("Transfer-Encoding".equalsIgnoreCase(name) && value.toLowerCase().contains("chunked")) {
+                    // Wins over a Content-Length.
+                    chunked = true;
+                    responseSize = -1;
+                    return true;
+                }
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    try {
+                        responseSize = headerEnd + Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        // Invalid, parse now to fail.
+                        responseSize = headerEnd;
+                    }
+                    if (responseSize > MAX_RESPONSE_SIZE) {
+                        fail(new IOException("Response larger than " + MAX_RESPONSE_SIZE + " bytes: " + url));
+                        // Parsing a failed response does nothing, so no more reads.
+                        responseSize = headerEnd;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return True when the received bytes before index end with the given bytes
+         */
+        private boolean endsWith(final int index, final byte[] suffix) {
+            val bytes = received.array();
+            val start = received.arrayOffset() + index - suffix.length;
+            for (int j = 0; j < suffix.length; j++) {
+                if (bytes[start + j] != suffix[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void fail(final Throwable e) {
+            IOUtils.closeQuietly(channel);
+            result.completeExceptionally(e);
+        }
+
+        /**
+         * Fails the exchange on any error; a timeout as a {@link SocketTimeoutException}, like the blocking client.
+         */
+        private abstract class Handler<V> implements CompletionHandler<V, Object> {
+            @Override
+            public void failed(final Throwable e, final Object attachment) {
+                if (e instanceof InterruptedByTimeoutException) {
+                    fail(new SocketTimeoutException("Read timed out: " + url));
+                } else {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private static ThreadFactory daemonThreads(final String prefix) {
+        val count = new AtomicInteger();
+        return runnable -> {
+            val thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package org.juurlink.atagone.utils;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by {@link BitWriter}.
+ */
+final class BitReader {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final long limit;
+    private long position;
+
+    /**
+     * @param buffer Buffer to read from, absolute positions are used
+     * @param offset Byte offset of bit 0
+     * @param limit  Number of valid bits
+     */
+    BitReader(final ByteBuffer buffer, final int offset, final long limit) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * @return Number of bits read
+     */
+    long getPosition() {
+        return position;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    boolean readBit() {
+        if (position >= limit) {
+            throw new IllegalStateException("Read beyond the end of the data, at bit " + position + ".");
+        }
+        val value = buffer.get(offset + (int) (position >>> 3)) & (0x80 >>> (int) (position & 7));
+        position++;
+        return value != 0;
+    }
+
+    /**
+     * @param bits Number of bits, 0 to 64
+     * @return Bits as the lowest bits of a long
+     */
+    long readBits(final int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package org.juurlink.atagone.utils;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes bits, most significant bit first, to a buffer from a byte offset on.
+ */
+final class BitWriter {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private long position;
+
+    /**
+     * @param buffer   Buffer to write in, absolute positions are used
+     * @param offset   Byte offset of bit 0
+     * @param position Bit position to continue at
+     */
+    BitWriter(final ByteBuffer buffer, final int offset, final long position) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.position = position;
+    }
+
+    /**
+     * @return Number of bits written from the offset on
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Number of bits that still fit in the buffer
+     */
+    long remaining() {
+        return (buffer.capacity() - offset) * 8L - position;
+    }
+
+    void writeBit(final boolean bit) {
+        val index = offset + (int) (position >>> 3);
+        val mask = 0x80 >>> (int) (position & 7);
+        val current = buffer.get(index);
+        // Clear as well as set; the buffer may hold bits of an interrupted earlier write.
+        buffer.put(index, (byte) (bit ? current | mask : current & ~mask));
+        position++;
+    }
+
+    /**
+     * Write the lowest bits of value.
+     *
+     * @param value Value
+     * @param bits  Number of bits, 0 to 64
+     */
+    void writeBits(final long value, final int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            writeBit(((value >>> i) & 1) != 0);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pool of heap byte buffers for requests and responses, so polling a thermostat does not allocate new arrays for every request.
+ * <p/>
+ * Capacities are powers of two, from {@value #MIN_CAPACITY} bytes. A few buffers per capacity are kept; larger buffers and
+ * buffers beyond that number are left to the garbage collector. A buffer must not be used after it is released.
+ */
+public class ByteBufferPool {
+
+    public static final int MIN_CAPACITY = 1024;
+
+    private static final int MIN_CAPACITY_BITS = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    private static final int MAX_POOLED_CAPACITY = 1 << 20;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY) - MIN_CAPACITY_BITS + 1;
+    private static final int MAX_POOLED_PER_CLASS = 8;
+
+    private static final ByteBufferPool DEFAULT = new ByteBufferPool();
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free = new ArrayList<>(SIZE_CLASSES);
+    private final AtomicIntegerArray freeCounts = new AtomicIntegerArray(SIZE_CLASSES);
+
+    public ByteBufferPool() {
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * @return Pool shared by the HTTP clients in this process
+     */
+    @Nonnull
+    public static ByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one.
+     *
+     * @param minCapacity Number of bytes needed
+     * @return Cleared buffer with at least the requested capacity
+     */
+    @Nonnull
+    public ByteBuffer acquire(final int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + minCapacity);
+        }
+        val sizeClass = sizeClass(minCapacity);
+        if (sizeClass >= SIZE_CLASSES) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        val buffer = free.get(sizeClass).poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(1 << (sizeClass + MIN_CAPACITY_BITS));
+        }
+        freeCounts.decrementAndGet(sizeClass);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool.
+     *
+     * @param buffer Buffer taken from this pool, or null
+     */
+    public void release(@Nullable final ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || buffer.isReadOnly()) {
+            return;
+        }
+        val capacity = buffer.capacity();
+        if (capacity < MIN_CAPACITY || capacity > MAX_POOLED_CAPACITY || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        val sizeClass = sizeClass(capacity);
+        if (freeCounts.incrementAndGet(sizeClass) > MAX_POOLED_PER_CLASS) {
+            freeCounts.decrementAndGet(sizeClass);
+            return;
+        }
+        free.get(sizeClass).offer(buffer);
+    }
+
+    /**
+     * Make sure the buffer has room for more bytes; when it has not, its content is copied to a larger buffer and the
+     * buffer itself is released.
+     *
+     * @param buffer Buffer in write mode, taken from this pool
+     * @param needed Number of bytes to be written
+     * @return The buffer itself or a larger one with the same content and position
+     */
+    @Nonnull
+    public ByteBuffer ensureRemaining(@Nonnull @NonNull final ByteBuffer buffer, final int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        val larger = acquire(Math.max(buffer.position() + needed, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * @return Index of the smallest power of two capacity of at least the given capacity
+     */
+    private static int sizeClass(final int capacity) {
+        if (capacity <= MIN_CAPACITY) {
+            return 0;
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CAPACITY_BITS;
+    }
+}
@@ -0,0 +1,95 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoded bytes as a CharSequence with one char per byte, without copying them; for parsers that only look at ASCII,
+ * like {@link JSONFields}.
+ * <p/>
+ * A character of more than one byte shows as chars 0x80 to 0xFF. {@link #toString()} decodes the bytes as UTF-8, so the text
+ * between two ASCII delimiters comes out right. The view is only valid as long as the bytes are not reused.
+ */
+public final class ByteSequence implements CharSequence {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param bytes  Bytes to view
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     */
+    public ByteSequence(@Nonnull @NonNull final byte[] bytes, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + ", length " + length + ", size " + bytes.length);
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param buffer Heap buffer in read mode; the view covers its remaining bytes
+     */
+    @Nonnull
+    public static ByteSequence of(@Nonnull @NonNull final ByteBuffer buffer) {
+        return new ByteSequence(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+        }
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    @Nonnull
+    public ByteSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteSequence(bytes, offset + start, end - start);
+    }
+
+    /**
+     * @return True when there are only whitespace and control characters
+     */
+    public boolean isBlank() {
+        for (int i = offset; i < offset + length; i++) {
+            if ((bytes[i] & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the bytes to a buffer.
+     *
+     * @param buffer Buffer in write mode with enough room
+     */
+    public void writeTo(@Nonnull @NonNull final ByteBuffer buffer) {
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * @return Bytes decoded as UTF-8
+     */
+    @Override
+    @Nonnull
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,28 @@
+package org.juurlink.atagone.utils;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Connection reuse statistics of a keep-alive HTTP client.
+ */
+@Value
+@Builder
+public class ConnectionStatistics {
+    /**
+     * Number of requests sent.
+     */
+    long requests;
+    /**
+     * Number of TCP connections opened.
+     */
+    long connectionsOpened;
+    /**
+     * Number of requests sent over an already open connection.
+     */
+    long connectionsReused;
+    /**
+     * Number of requests repeated on a new connection because the server had closed the reused connection.
+     */
+    long staleConnectionRetries;
+}
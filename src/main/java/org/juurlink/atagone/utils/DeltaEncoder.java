@@ -0,0 +1,129 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reduces a stream of samples to the values that changed.
+ * <p/>
+ * The last sample of every thermostat is kept. A sample is encoded as a map with the device id, the timestamp, the keyframe
+ * flag and only the fields with a different value than in the previous sample; a field that no longer has a value is listed
+ * with value null. Every keyframe interval samples, and whenever the layout changes, all fields are listed, so a reader can
+ * start at any keyframe.
+ */
+public class DeltaEncoder {
+
+    /**
+     * Keyframe every 60 samples; every 10 minutes at a 10 second interval.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_KEYFRAME = "keyframe";
+
+    private static final String UNKNOWN_DEVICE = "";
+
+    /**
+     * Last sample and number of samples since the last keyframe.
+     */
+    private static class State {
+        Diagnostics last;
+        int sinceKeyframe;
+    }
+
+    private final int keyframeInterval;
+    private final Map<String, State> devices = new HashMap<>();
+
+    public DeltaEncoder() {
+        this(DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * @param keyframeInterval Number of samples from one keyframe to the next, 1 for keyframes only
+     */
+    public DeltaEncoder(final int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval has to be positive, but is " + keyframeInterval + ".");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Encode sample against the previous sample of the same thermostat.
+     *
+     * @return Device id, timestamp, keyframe flag and changed values
+     */
+    @Nonnull
+    public synchronized Map<String, Object> encode(@Nonnull @NonNull final Diagnostics diagnostics) {
+        val device = StringUtils.defaultString(diagnostics.getDeviceId(), UNKNOWN_DEVICE);
+        State state = devices.get(device);
+        if (state == null) {
+            state = new State();
+            devices.put(device, state);
+        }
+
+        val previous = state.last;
+        state.last = diagnostics;
+        if (previous == null || ++state.sinceKeyframe >= keyframeInterval
+            || !Arrays.equals(previous.getLayout(), diagnostics.getLayout())) {
+            state.sinceKeyframe = 0;
+            return keyframe(diagnostics);
+        }
+
+        val result = createHeader(diagnostics, false);
+        for (DiagnosticField field : diagnostics.getLayout()) {
+            if (isChanged(previous, diagnostics, field)) {
+                result.put(field.getKey(), diagnostics.getValue(field));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forget all previous samples; the next sample of every thermostat is a keyframe.
+     */
+    public synchronized void reset() {
+        devices.clear();
+    }
+
+    /**
+     * @return Device id, timestamp, keyframe flag and all values of the sample
+     */
+    @Nonnull
+    public static Map<String, Object> keyframe(@Nonnull @NonNull final Diagnostics diagnostics) {
+        val result = createHeader(diagnostics, true);
+        result.putAll(diagnostics.asMap());
+        return result;
+    }
+
+    private static Map<String, Object> createHeader(final Diagnostics diagnostics, final boolean keyframe) {
+        val result = new LinkedHashMap<String, Object>();
+        result.put(DiagnosticField.DEVICE_ID.getKey(), diagnostics.getDeviceId());
+        result.put(KEY_TIMESTAMP, diagnostics.getTimestamp());
+        result.put(KEY_KEYFRAME, keyframe);
+        return result;
+    }
+
+    private static boolean isChanged(final Diagnostics previous, final Diagnostics current, final DiagnosticField field) {
+        val present = current.isPresent(field);
+        if (present != previous.isPresent(field)) {
+            return true;
+        }
+        if (!present) {
+            return false;
+        }
+        if (field.isNumeric()) {
+            return Double.compare(previous.getDouble(field), current.getDouble(field)) != 0;
+        }
+        return !Objects.equals(previous.getText(field), current.getText(field));
+    }
+}
@@ -0,0 +1,45 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads that each serve one thermostat.
+ * <p/>
+ * This version uses platform threads. The multi-release jar has a Java 21 version in src/main/java21 that uses virtual threads,
+ * so thousands of blocking connectors need no sized thread pool.
+ * <p/>
+ * Code that can block while it holds a lock, on file or network I/O, uses a ReentrantLock instead of synchronized: before
+ * Java 24 a virtual thread that blocks in a synchronized block pins its carrier thread.
+ */
+@UtilityClass
+public class DeviceThreads {
+
+    /**
+     * @return True when {@link #newThreadPerTaskExecutor(String)} starts virtual threads
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Create executor that starts a new daemon thread for every task.
+     *
+     * @param namePrefix Thread name prefix, followed by a sequence number
+     */
+    @Nonnull
+    public static ExecutorService newThreadPerTaskExecutor(@Nonnull @NonNull final String namePrefix) {
+        val threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
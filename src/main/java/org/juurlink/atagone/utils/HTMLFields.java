@@ -0,0 +1,142 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Table of all label/value pairs of an ATAG One portal page.
+ * <p/>
+ * The page is walked once; every value is the text of the first paragraph after a label:
+ * <pre>
+ *     &lt;label class="col-xs-6 control-label"&gt;Apparaat alias&lt;/label&gt;
+ *     &lt;div class="col-xs-6"&gt;
+ *         &lt;p class="form-control-static"&gt;CV-ketel&lt;/p&gt;
+ *     &lt;/div&gt;
+ * </pre>
+ * Labels are case insensitive and when a label occurs more than once, the first value found wins, just like
+ * {@link HTMLUtils#getValueByLabel(String, Class, String...)}.
+ */
+public final class HTMLFields {
+
+    private static final String LABEL_END = "</label>";
+    private static final String PARAGRAPH_START = "<p";
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private HTMLFields() {
+    }
+
+    /**
+     * Walk the page and collect all label/value pairs.
+     *
+     * @param html Full html of page
+     * @return Field table, never null
+     */
+    @Nonnull
+    public static HTMLFields parse(@Nonnull @NonNull final String html) {
+        val fields = new HTMLFields();
+        int position = 0;
+        while (true) {
+            val labelEnd = indexOfIgnoreCase(html, LABEL_END, position);
+            if (labelEnd < 0) {
+                break;
+            }
+            position = labelEnd + LABEL_END.length();
+
+            // The label text directly follows the closing '>' of the opening tag.
+            val labelStart = html.lastIndexOf('>', labelEnd - 1);
+            if (labelStart < 0) {
+                continue;
+            }
+
+            // Value is the text of the first paragraph after the label.
+            val paragraph = indexOfIgnoreCase(html, PARAGRAPH_START, position);
+            if (paragraph < 0) {
+                break;
+            }
+            val valueStart = html.indexOf('>', paragraph);
+            if (valueStart < 0) {
+                break;
+            }
+            val valueEnd = html.indexOf('<', valueStart + 1);
+            if (valueEnd < 0) {
+                break;
+            }
+
+            val label = html.substring(labelStart + 1, labelEnd).toLowerCase(Locale.ROOT);
+            fields.values.putIfAbsent(label, html.substring(valueStart + 1, valueEnd));
+        }
+        return fields;
+    }
+
+    /**
+     * @return Number of labels found
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return Trimmed value of the first label with a non blank value, or null
+     */
+    @Nullable
+    public String getString(final String... labels) {
+        for (String label : labels) {
+            val value = values.get(label.toLowerCase(Locale.ROOT));
+            if (StringUtils.isNotBlank(value)) {
+                return value.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return True when the value is "Aan" or "On", null when not found
+     */
+    @Nullable
+    public Boolean getBoolean(final String... labels) {
+        val value = getString(labels);
+        return value != null ? HTMLUtils.toBoolean(value) : null;
+    }
+
+    /**
+     * @return Number in value, zero when the value contains no valid number, null when not found
+     */
+    @Nullable
+    public BigDecimal getBigDecimal(final String... labels) {
+        val value = getString(labels);
+        return value != null ? HTMLUtils.toBigDecimal(value) : null;
+    }
+
+    /**
+     * Get value converted to given class.
+     *
+     * @param clazz  Class type of value; [String, BigDecimal, Boolean]
+     * @param labels Labels to search for, one or more
+     * @return Value or null when not found
+     * @throws IllegalStateException When requested value class not supported
+     */
+    @Nullable
+    public <T> T get(@Nonnull @NonNull final Class<T> clazz, final String... labels) {
+        val value = getString(labels);
+        return value != null ? HTMLUtils.convert(value, clazz) : null;
+    }
+
+    private static int indexOfIgnoreCase(final String html, final String tag, final int from) {
+        val first = tag.charAt(0);
+        val last = html.length() - tag.length();
+        for (int i = html.indexOf(first, from); i >= 0 && i <= last; i = html.indexOf(first, i + 1)) {
+            if (html.regionMatches(true, i, tag, 0, tag.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -2,10 +2,13 @@ package org.juurlink.atagone.utils;
 
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
+import lombok.val;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,9 +22,18 @@ public class HTMLUtils {
         .compile("name=\"__RequestVerificationToken\"[^>]+ value=\"(.*?)\"", Pattern.DOTALL);
     private static final Pattern PATTERN_DEVICE_ID = Pattern
         .compile("[0-9]{4}-[0-9]{4}-[0-9]{4}_[0-9]{2}-[0-9]{2}-[0-9]{3}-[0-9]{3}", Pattern.DOTALL);
+    private static final Pattern PATTERN_LOGIN_FORM = Pattern
+        .compile("<form[^>]+action=\"[^\"]*/Account/Login", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Compiled label patterns, by label. Labels are constants in the code, so the cache stays small.
+     */
+    private static final Map<String, Pattern> LABEL_PATTERNS = new ConcurrentHashMap<>();
 
     /**
      * Get value from Atag portal diagnostic screen.
+     * <p/>
+     * To read more than one value from the same page, use {@link HTMLFields#parse(String)}; it walks the page only once.
      *
      * @param html   Full html of page
      * @param clazz  Class type of value; [String, BigInteger, Boolean]
@@ -40,43 +52,100 @@ public class HTMLUtils {
         //         <p class="form-control-static">CV-ketel</p>
         //     </div>
         for (final String label : labels) {
-            final Pattern pattern = Pattern.compile(">" + label + "</label>.*?<p[^>]*>(.*?)<", Pattern.DOTALL + Pattern.CASE_INSENSITIVE);
+            final Pattern pattern = LABEL_PATTERNS.computeIfAbsent(label,
+                key -> Pattern.compile(">" + key + "</label>.*?<p[^>]*>(.*?)<", Pattern.DOTALL + Pattern.CASE_INSENSITIVE));
             final Matcher matcher = pattern.matcher(html);
             if (matcher.find()) {
                 final String value = matcher.group(1);
                 if (StringUtils.isNotBlank(value)) {
+                    return convert(value.trim(), clazz);
+                }
+            }
+        }
+        return null;
+    }
 
-                    String valueString = value.trim();
-
-                    if (clazz == String.class) {
-                        return clazz.cast(valueString);
-                    }
-                    if (clazz == Boolean.class) {
-                        return clazz.cast("aan".equalsIgnoreCase(valueString) || "on".equalsIgnoreCase(valueString));
-                    }
-                    if (clazz == BigDecimal.class) {
-
-                        // Replace Dutch decimal separator.
-                        valueString = valueString.replace(",", ".");
+    /**
+     * Convert trimmed portal value.
+     *
+     * @throws IllegalStateException When requested value class not supported
+     */
+    @Nonnull
+    static <T> T convert(@Nonnull final String value, @Nonnull final Class<T> clazz) {
+        if (clazz == String.class) {
+            return clazz.cast(value);
+        }
+        if (clazz == Boolean.class) {
+            return clazz.cast(toBoolean(value));
+        }
+        if (clazz == BigDecimal.class) {
+            return clazz.cast(toBigDecimal(value));
+        }
+        throw new IllegalStateException("Unknown return type requested: '" + clazz + "'");
+    }
 
-                        valueString = valueString
-                                // Remove HTML encoded characters.
-                                .replaceAll("&#x?[0-9]{2,4};", "")
-                                // Keep numbers, dots and dash (negative value) and remove everything else.
-                                .replaceAll("[^0-9.-]", "");
+    static boolean toBoolean(@Nonnull final String value) {
+        return "aan".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value);
+    }
 
-                        try {
-                            return clazz.cast(new BigDecimal(valueString.replace(",", ".")));
-                        } catch (NumberFormatException e) {
-                            // Return 0 in case of number format exception.
-                            return clazz.cast(BigDecimal.ZERO);
-                        }
-                    }
-                    throw new IllegalStateException("Unknown return type requested: '" + clazz + "'");
+    /**
+     * Get number from portal value like "1,5 bar" or "-2.5&amp;#176;". Dutch decimal separators are replaced, HTML encoded
+     * characters are removed and then everything except digits, dots and dashes.
+     *
+     * @return Number, zero in case the value contains no valid number
+     */
+    @Nonnull
+    static BigDecimal toBigDecimal(@Nonnull final String value) {
+        val number = new StringBuilder(value.length());
+        val length = value.length();
+        int i = 0;
+        while (i < length) {
+            val c = value.charAt(i);
+            if (c == '&') {
+                val entityEnd = numericEntityEnd(value, i);
+                if (entityEnd > 0) {
+                    i = entityEnd;
+                    continue;
                 }
             }
+            if (c == ',') {
+                number.append('.');
+            } else if ((c >= '0' && c <= '9') || c == '.' || c == '-') {
+                number.append(c);
+            }
+            i++;
         }
-        return null;
+        try {
+            return new BigDecimal(number.toString());
+        } catch (NumberFormatException e) {
+            // Return 0 in case of number format exception.
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Match "&amp;#176;" or "&amp;#x0B0;"; an ampersand, hash, optional x, two to four digits and a semicolon.
+     *
+     * @return Position after the entity, or -1 when no entity starts at the given position
+     */
+    private static int numericEntityEnd(final String value, final int start) {
+        int i = start + 1;
+        if (i >= value.length() || value.charAt(i) != '#') {
+            return -1;
+        }
+        i++;
+        if (i < value.length() && value.charAt(i) == 'x') {
+            i++;
+        }
+        val digitsStart = i;
+        while (i < value.length() && i - digitsStart < 4 && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            i++;
+        }
+        val digits = i - digitsStart;
+        if (digits < 2 || i >= value.length() || value.charAt(i) != ';') {
+            return -1;
+        }
+        return i + 1;
     }
 
     /**
@@ -113,4 +182,14 @@ public class HTMLUtils {
         }
         return result;
     }
+
+    /**
+     * Is this the portal login page? The portal redirects to the login page when the session is not valid.
+     *
+     * @param html HTML
+     * @return True when the page contains the login form
+     */
+    public static boolean isLoginPage(@Nonnull @NonNull final String html) {
+        return PATTERN_LOGIN_FORM.matcher(html).find();
+    }
 }
@@ -0,0 +1,302 @@
+package org.juurlink.atagone.utils;
+
+import lombok.val;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Compresses a stream of samples with one layout, after "Gorilla: A Fast, Scalable, In-Memory Time Series Database".
+ * <p/>
+ * Every sample is encoded against the previous one:
+ * <ul>
+ * <li>Timestamp; delta of the delta, in 1 to 69 bits. A constant poll interval costs 1 bit.</li>
+ * <li>Present fields; 1 bit when unchanged, else 1 bit plus 1 bit per layout field.</li>
+ * <li>Number; XOR with the previous value of the field, 1 bit when unchanged, else the meaningful bits of the XOR.</li>
+ * <li>Text; 1 bit when unchanged, else 1 bit, 16 bits length and the UTF-8 bytes.</li>
+ * </ul>
+ * The encoder and the decoder keep the same state, so the state after decoding a stream can be used to append to it.
+ */
+final class HistoryCodec {
+
+    private static final int MAX_TEXT_LENGTH = 0xFFFF;
+
+    private final DiagnosticField[] fields;
+    private final boolean[] numeric;
+    private final DiagnosticField[] layout;
+
+    private int count;
+    private long timestamp;
+    private long delta;
+    private long present;
+    private final long[] values;
+    private final int[] leading;
+    private final int[] trailing;
+    private final String[] texts;
+
+    /**
+     * @param fields  Fields in stream sequence, null for a field unknown to this version; it is decoded and skipped
+     * @param numeric Per field, true when stored as number
+     */
+    HistoryCodec(@Nonnull final DiagnosticField[] fields, @Nonnull final boolean[] numeric) {
+        if (fields.length > Long.SIZE || fields.length != numeric.length) {
+            throw new IllegalArgumentException("Invalid layout of " + fields.length + " fields.");
+        }
+        this.fields = fields;
+        this.numeric = numeric;
+        this.values = new long[fields.length];
+        this.leading = new int[fields.length];
+        this.trailing = new int[fields.length];
+        this.texts = new String[fields.length];
+        Arrays.fill(leading, -1);
+
+        val known = new ArrayList<DiagnosticField>();
+        for (DiagnosticField field : fields) {
+            if (field != null) {
+                known.add(field);
+            }
+        }
+        this.layout = known.toArray(new DiagnosticField[0]);
+    }
+
+    /**
+     * @param layout Layout of the samples to encode
+     */
+    HistoryCodec(@Nonnull final DiagnosticField[] layout) {
+        this(layout, isNumeric(layout));
+    }
+
+    /**
+     * @return Number of samples encoded or decoded
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Upper bound of the number of bits of the encoded sample
+     */
+    long getMaxBits(@Nonnull final Diagnostics diagnostics) {
+        long bits = 5 + Long.SIZE + 1 + fields.length;
+        for (int i = 0; i < fields.length; i++) {
+            if (numeric[i]) {
+                bits += 2 + 5 + 6 + Long.SIZE;
+            } else {
+                val text = diagnostics.getText(fields[i]);
+                bits += 1 + 16 + (text != null ? 8L * text.getBytes(StandardCharsets.UTF_8).length : 0);
+            }
+        }
+        return bits;
+    }
+
+    void encode(@Nonnull final BitWriter out, @Nonnull final Diagnostics diagnostics) {
+        encodeTimestamp(out, diagnostics.getTimestamp());
+
+        long mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (diagnostics.isPresent(fields[i])) {
+                mask |= 1L << i;
+            }
+        }
+        if (mask == present && count > 0) {
+            out.writeBit(false);
+        } else {
+            out.writeBit(true);
+            out.writeBits(mask, fields.length);
+            present = mask;
+        }
+
+        for (int i = 0; i < fields.length; i++) {
+            if ((mask & (1L << i)) == 0) {
+                continue;
+            }
+            if (numeric[i]) {
+                encodeNumber(out, i, Double.doubleToRawLongBits(diagnostics.getDouble(fields[i])));
+            } else {
+                encodeText(out, i, diagnostics.getText(fields[i]));
+            }
+        }
+        count++;
+    }
+
+    @Nonnull
+    Diagnostics decode(@Nonnull final BitReader in) {
+        decodeTimestamp(in);
+
+        if (in.readBit() || count == 0) {
+            present = in.readBits(fields.length);
+        }
+
+        val builder = Diagnostics.builder(layout).timestamp(timestamp);
+        for (int i = 0; i < fields.length; i++) {
+            if ((present & (1L << i)) == 0) {
+                continue;
+            }
+            if (numeric[i]) {
+                val value = Double.longBitsToDouble(decodeNumber(in, i));
+                if (fields[i] != null) {
+                    builder.number(fields[i], value);
+                }
+            } else {
+                val text = decodeText(in, i);
+                if (fields[i] != null) {
+                    builder.text(fields[i], text);
+                }
+            }
+        }
+        count++;
+        return builder.build();
+    }
+
+    private void encodeTimestamp(final BitWriter out, final long value) {
+        if (count == 0) {
+            out.writeBits(value, Long.SIZE);
+        } else {
+            val newDelta = value - timestamp;
+            val deltaOfDelta = newDelta - delta;
+            if (deltaOfDelta == 0) {
+                out.writeBit(false);
+            } else if (fits(deltaOfDelta, 7)) {
+                out.writeBits(0b10, 2);
+                out.writeBits(deltaOfDelta, 7);
+            } else if (fits(deltaOfDelta, 9)) {
+                out.writeBits(0b110, 3);
+                out.writeBits(deltaOfDelta, 9);
+            } else if (fits(deltaOfDelta, 12)) {
+                out.writeBits(0b1110, 4);
+                out.writeBits(deltaOfDelta, 12);
+            } else if (fits(deltaOfDelta, 32)) {
+                out.writeBits(0b11110, 5);
+                out.writeBits(deltaOfDelta, 32);
+            } else {
+                out.writeBits(0b11111, 5);
+                out.writeBits(deltaOfDelta, Long.SIZE);
+            }
+            delta = newDelta;
+        }
+        timestamp = value;
+    }
+
+    private void decodeTimestamp(final BitReader in) {
+        if (count == 0) {
+            timestamp = in.readBits(Long.SIZE);
+            return;
+        }
+        int prefix = 0;
+        while (prefix < 5 && in.readBit()) {
+            prefix++;
+        }
+        final long deltaOfDelta;
+        switch (prefix) {
+            case 0:
+                deltaOfDelta = 0;
+                break;
+            case 1:
+                deltaOfDelta = signExtend(in.readBits(7), 7);
+                break;
+            case 2:
+                deltaOfDelta = signExtend(in.readBits(9), 9);
+                break;
+            case 3:
+                deltaOfDelta = signExtend(in.readBits(12), 12);
+                break;
+            case 4:
+                deltaOfDelta = signExtend(in.readBits(32), 32);
+                break;
+            default:
+                deltaOfDelta = in.readBits(Long.SIZE);
+        }
+        delta += deltaOfDelta;
+        timestamp += delta;
+    }
+
+    private void encodeNumber(final BitWriter out, final int i, final long bits) {
+        val xor = bits ^ values[i];
+        values[i] = bits;
+        if (xor == 0) {
+            out.writeBit(false);
+            return;
+        }
+        out.writeBit(true);
+
+        val lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        val trail = Long.numberOfTrailingZeros(xor);
+        if (leading[i] >= 0 && lead >= leading[i] && trail >= trailing[i]) {
+            // Meaningful bits fit in the window of the previous change.
+            out.writeBit(false);
+            out.writeBits(xor >>> trailing[i], Long.SIZE - leading[i] - trailing[i]);
+        } else {
+            val meaningful = Long.SIZE - lead - trail;
+            out.writeBit(true);
+            out.writeBits(lead, 5);
+            out.writeBits(meaningful - 1, 6);
+            out.writeBits(xor >>> trail, meaningful);
+            leading[i] = lead;
+            trailing[i] = trail;
+        }
+    }
+
+    private long decodeNumber(final BitReader in, final int i) {
+        if (in.readBit()) {
+            if (in.readBit()) {
+                leading[i] = (int) in.readBits(5);
+                val meaningful = (int) in.readBits(6) + 1;
+                trailing[i] = Long.SIZE - leading[i] - meaningful;
+            }
+            val meaningful = Long.SIZE - leading[i] - trailing[i];
+            values[i] ^= in.readBits(meaningful) << trailing[i];
+        }
+        return values[i];
+    }
+
+    private void encodeText(final BitWriter out, final int i, @Nullable final String text) {
+        if (Objects.equals(text, texts[i])) {
+            out.writeBit(false);
+            return;
+        }
+        val bytes = (text != null ? text : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Text of " + fields[i] + " too long: " + bytes.length + " bytes.");
+        }
+        out.writeBit(true);
+        out.writeBits(bytes.length, 16);
+        for (byte b : bytes) {
+            out.writeBits(b, 8);
+        }
+        texts[i] = text;
+    }
+
+    @Nullable
+    private String decodeText(final BitReader in, final int i) {
+        if (in.readBit()) {
+            val bytes = new byte[(int) in.readBits(16)];
+            for (int b = 0; b < bytes.length; b++) {
+                bytes[b] = (byte) in.readBits(8);
+            }
+            texts[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return texts[i];
+    }
+
+    private static boolean fits(final long value, final int bits) {
+        return value >= -(1L << (bits - 1)) && value < (1L << (bits - 1));
+    }
+
+    private static long signExtend(final long value, final int bits) {
+        return (value << (Long.SIZE - bits)) >> (Long.SIZE - bits);
+    }
+
+    private static boolean[] isNumeric(final DiagnosticField[] layout) {
+        val numeric = new boolean[layout.length];
+        for (int i = 0; i < layout.length; i++) {
+            numeric[i] = layout[i].isNumeric();
+        }
+        return numeric;
+    }
+}
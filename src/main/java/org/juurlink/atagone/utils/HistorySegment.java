@@ -0,0 +1,261 @@
+package org.juurlink.atagone.utils;
+
+import lombok.val;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One memory-mapped history file with samples of one thermostat and one layout.
+ * <p/>
+ * File layout, big endian:
+ * <pre>
+ *  0  int   magic "AOH1"
+ *  4  int   number of samples
+ *  8  long  lowest timestamp
+ * 16  long  highest timestamp
+ * 24  long  number of data bits
+ * 32  int   number of layout bytes
+ * 36  ...   layout; comma separated field keys with ':N' for numbers and ':T' for texts, in UTF-8
+ * ..  ...   data, starting at the next multiple of 8; samples encoded by {@link HistoryCodec}
+ * </pre>
+ * The header is updated after the data of a sample is written, so an interrupted write loses at most that sample.
+ */
+final class HistorySegment implements Closeable {
+
+    private static final int MAGIC = 0x414F4831;
+
+    private static final int COUNT_OFFSET = 4;
+    private static final int MIN_TIMESTAMP_OFFSET = 8;
+    private static final int MAX_TIMESTAMP_OFFSET = 16;
+    private static final int BIT_LENGTH_OFFSET = 24;
+    private static final int LAYOUT_LENGTH_OFFSET = 32;
+    private static final int LAYOUT_OFFSET = 36;
+
+    private static final char NUMBER = 'N';
+    private static final char TEXT = 'T';
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final DiagnosticField[] fields;
+    private final boolean[] numeric;
+    private final int dataOffset;
+
+    private HistoryCodec writeCodec;
+    private int count;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private long bitLength;
+
+    private HistorySegment(final FileChannel channel, final MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < LAYOUT_OFFSET || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a history file.");
+        }
+        count = buffer.getInt(COUNT_OFFSET);
+        minTimestamp = buffer.getLong(MIN_TIMESTAMP_OFFSET);
+        maxTimestamp = buffer.getLong(MAX_TIMESTAMP_OFFSET);
+        bitLength = buffer.getLong(BIT_LENGTH_OFFSET);
+
+        val layoutLength = buffer.getInt(LAYOUT_LENGTH_OFFSET);
+        if (layoutLength < 0 || LAYOUT_OFFSET + layoutLength > buffer.capacity()) {
+            throw new IOException("Invalid history file layout length " + layoutLength + ".");
+        }
+        val layoutBytes = new byte[layoutLength];
+        for (int i = 0; i < layoutLength; i++) {
+            layoutBytes[i] = buffer.get(LAYOUT_OFFSET + i);
+        }
+        val entries = layoutLength > 0 ? new String(layoutBytes, StandardCharsets.UTF_8).split(",") : new String[0];
+        fields = new DiagnosticField[entries.length];
+        numeric = new boolean[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            val separator = entries[i].lastIndexOf(':');
+            if (separator < 0) {
+                throw new IOException("Invalid history file layout entry '" + entries[i] + "'.");
+            }
+            // Unknown fields are skipped.
+            fields[i] = DiagnosticField.byKey(entries[i].substring(0, separator));
+            numeric[i] = entries[i].charAt(separator + 1) == NUMBER;
+        }
+
+        dataOffset = (LAYOUT_OFFSET + layoutLength + 7) & ~7;
+        if (dataOffset * 8L + bitLength > buffer.capacity() * 8L) {
+            throw new IOException("Invalid history file data length " + bitLength + ".");
+        }
+    }
+
+    /**
+     * Create file for samples with given layout.
+     *
+     * @param file   File to create
+     * @param layout Layout of the samples
+     * @param size   File size in bytes
+     */
+    @Nonnull
+    static HistorySegment create(@Nonnull final Path file, @Nonnull final DiagnosticField[] layout, final int size) throws IOException {
+        val description = new StringBuilder();
+        for (DiagnosticField field : layout) {
+            if (description.length() > 0) {
+                description.append(',');
+            }
+            description.append(field.getKey()).append(':').append(field.isNumeric() ? NUMBER : TEXT);
+        }
+        val layoutBytes = description.toString().getBytes(StandardCharsets.UTF_8);
+        if (LAYOUT_OFFSET + layoutBytes.length + 8 >= size) {
+            throw new IllegalArgumentException("History file size " + size + " too small.");
+        }
+
+        val channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            val buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(LAYOUT_LENGTH_OFFSET, layoutBytes.length);
+            for (int i = 0; i < layoutBytes.length; i++) {
+                buffer.put(LAYOUT_OFFSET + i, layoutBytes[i]);
+            }
+            buffer.putLong(MIN_TIMESTAMP_OFFSET, Long.MAX_VALUE);
+            buffer.putLong(MAX_TIMESTAMP_OFFSET, Long.MIN_VALUE);
+            // Magic last; a file without it is not used.
+            buffer.putInt(0, MAGIC);
+
+            val segment = new HistorySegment(channel, buffer);
+            segment.writeCodec = new HistoryCodec(segment.fields, segment.numeric);
+            return segment;
+
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Open existing file.
+     *
+     * @param file     File to open
+     * @param writable True to append samples
+     */
+    @Nonnull
+    static HistorySegment open(@Nonnull final Path file, final boolean writable) throws IOException {
+        val channel = writable ?
+            FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+            FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            val buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            val segment = new HistorySegment(channel, buffer);
+            if (writable) {
+                // Decode all samples to continue with the state of the last one.
+                val codec = new HistoryCodec(segment.fields, segment.numeric);
+                val in = new BitReader(buffer, segment.dataOffset, segment.bitLength);
+                for (int i = 0; i < segment.count; i++) {
+                    codec.decode(in);
+                }
+                // Continue after the last counted sample; a write interrupted before the count was updated leaves data after it.
+                segment.bitLength = in.getPosition();
+                buffer.putLong(BIT_LENGTH_OFFSET, segment.bitLength);
+                segment.writeCodec = codec;
+            }
+            return segment;
+
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * @return True when samples with this layout can be appended
+     */
+    boolean hasLayout(@Nonnull final DiagnosticField[] layout) {
+        return Arrays.equals(fields, layout);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * @return Number of bytes used
+     */
+    long getSize() {
+        return dataOffset + (bitLength + 7) / 8;
+    }
+
+    /**
+     * Append sample.
+     *
+     * @return False when the sample does not fit
+     */
+    boolean append(@Nonnull final Diagnostics diagnostics) {
+        if (writeCodec == null) {
+            throw new IllegalStateException("History file not opened for writing.");
+        }
+        val out = new BitWriter(buffer, dataOffset, bitLength);
+        if (out.remaining() < writeCodec.getMaxBits(diagnostics)) {
+            return false;
+        }
+        writeCodec.encode(out, diagnostics);
+
+        val timestamp = diagnostics.getTimestamp();
+        bitLength = out.getPosition();
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        count++;
+
+        buffer.putLong(BIT_LENGTH_OFFSET, bitLength);
+        buffer.putLong(MIN_TIMESTAMP_OFFSET, minTimestamp);
+        buffer.putLong(MAX_TIMESTAMP_OFFSET, maxTimestamp);
+        buffer.putInt(COUNT_OFFSET, count);
+        return true;
+    }
+
+    /**
+     * Add samples with a timestamp from (inclusive) until (exclusive) to result.
+     */
+    void read(final long from, final long until, @Nonnull final List<Diagnostics> result) {
+        if (count == 0 || maxTimestamp < from || minTimestamp >= until) {
+            return;
+        }
+        val codec = new HistoryCodec(fields, numeric);
+        val in = new BitReader(buffer, dataOffset, bitLength);
+        for (int i = 0; i < count; i++) {
+            val diagnostics = codec.decode(in);
+            if (diagnostics.getTimestamp() >= from && diagnostics.getTimestamp() < until) {
+                result.add(diagnostics);
+            }
+        }
+    }
+
+    /**
+     * Write changes to disk.
+     */
+    void force() {
+        if (writeCodec != null) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,255 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.Diagnostics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Append-only history of diagnostics samples, without external database.
+ * <p/>
+ * Every thermostat has a directory with memory-mapped segment files, named after the timestamp of their first sample. Samples
+ * are compressed against the previous sample in the segment, see {@link HistoryCodec}; a sample with mostly unchanged values
+ * takes a few bytes. A new segment is started when the current one is full or when the layout of the samples changes.
+ */
+@Log
+public class HistoryStore implements Closeable {
+
+    /**
+     * Segment size, holds roughly a week of samples at a 10 second interval.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final String DIRECTORY_NAME = "history";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String UNKNOWN_DEVICE = "unknown";
+
+    private final Path directory;
+    private final int segmentSize;
+
+    /**
+     * Segment appended to, per device.
+     */
+    private final Map<String, HistorySegment> writers = new HashMap<>();
+
+    /**
+     * Guards the writers and their files.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param directory Directory of the history, created on first append
+     */
+    public HistoryStore(@Nonnull @NonNull final Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory   Directory of the history, created on first append
+     * @param segmentSize Size of a segment file in bytes
+     */
+    public HistoryStore(@Nonnull @NonNull final Path directory, final int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return Store in the state directory
+     * @see StateUtils#getStateDirectory()
+     */
+    @Nonnull
+    public static HistoryStore getDefault() {
+        return new HistoryStore(StateUtils.getStateDirectory().resolve(DIRECTORY_NAME));
+    }
+
+    /**
+     * Append sample to the history of its thermostat.
+     */
+    public void append(@Nonnull @NonNull final Diagnostics diagnostics) throws IOException {
+        lock.lock();
+        try {
+            val device = getDevice(diagnostics);
+            val layout = diagnostics.getLayout();
+
+            HistorySegment writer = writers.get(device);
+            if (writer == null) {
+                writer = openLastSegment(device);
+            }
+            if (writer != null && writer.hasLayout(layout) && writer.append(diagnostics)) {
+                writers.put(device, writer);
+                return;
+            }
+            if (writer != null) {
+                writers.remove(device);
+                writer.close();
+            }
+
+            // Start new segment.
+            val deviceDirectory = directory.resolve(device);
+            Files.createDirectories(deviceDirectory);
+            long first = diagnostics.getTimestamp();
+            Path file;
+            while (Files.exists(file = deviceDirectory.resolve(getSegmentName(first)))) {
+                first++;
+            }
+            writer = HistorySegment.create(file, layout, segmentSize);
+            if (!writer.append(diagnostics)) {
+                writer.close();
+                throw new IllegalArgumentException("Sample does not fit in a history segment of " + segmentSize + " bytes.");
+            }
+            writers.put(device, writer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read samples of a thermostat.
+     *
+     * @param device Device id of the thermostat
+     * @param from   Lowest timestamp, inclusive
+     * @param until  Highest timestamp, exclusive
+     * @return Samples in the sequence they were stored
+     */
+    @Nonnull
+    public List<Diagnostics> read(@Nonnull @NonNull final String device, final long from, final long until) throws IOException {
+        lock.lock();
+        try {
+            val result = new ArrayList<Diagnostics>();
+            for (Path file : getSegmentFiles(toDirectoryName(device))) {
+                try (HistorySegment segment = HistorySegment.open(file, false)) {
+                    segment.read(from, until, result);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Device ids of the thermostats with history
+     */
+    @Nonnull
+    public List<String> getDevices() throws IOException {
+        val devices = new ArrayList<String>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path path : stream) {
+                    devices.add(path.getFileName().toString());
+                }
+            }
+        }
+        Collections.sort(devices);
+        return devices;
+    }
+
+    /**
+     * @return Bytes used by the history of a thermostat
+     */
+    public long getSize(@Nonnull @NonNull final String device) throws IOException {
+        lock.lock();
+        try {
+            long size = 0;
+            for (Path file : getSegmentFiles(toDirectoryName(device))) {
+                try (HistorySegment segment = HistorySegment.open(file, false)) {
+                    size += segment.getSize();
+                }
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write all appended samples to disk.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            for (HistorySegment writer : writers.values()) {
+                writer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (HistorySegment writer : writers.values()) {
+                IOUtils.closeQuietly(writer);
+            }
+            writers.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nullable
+    private HistorySegment openLastSegment(final String device) throws IOException {
+        val files = getSegmentFiles(device);
+        if (files.isEmpty()) {
+            return null;
+        }
+        val last = files.get(files.size() - 1);
+        try {
+            return HistorySegment.open(last, true);
+        } catch (IOException | RuntimeException e) {
+            // Keep the damaged file for inspection, continue in a new segment.
+            log.log(Level.WARNING, "Cannot continue history file " + last + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Nonnull
+    private List<Path> getSegmentFiles(final String device) throws IOException {
+        val files = new ArrayList<Path>();
+        val deviceDirectory = directory.resolve(device);
+        if (Files.isDirectory(deviceDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(deviceDirectory, "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    files.add(path);
+                }
+            }
+        }
+        // Names are zero padded timestamps.
+        Collections.sort(files);
+        return files;
+    }
+
+    @Nonnull
+    private static String getSegmentName(final long timestamp) {
+        return String.format("%019d", timestamp) + SEGMENT_SUFFIX;
+    }
+
+    @Nonnull
+    private static String getDevice(final Diagnostics diagnostics) {
+        val deviceId = diagnostics.getDeviceId();
+        return toDirectoryName(StringUtils.isNotBlank(deviceId) ? deviceId : UNKNOWN_DEVICE);
+    }
+
+    @Nonnull
+    private static String toDirectoryName(final String device) {
+        // No path separators and no names like "..".
+        return device.trim().replaceAll("[^A-Za-z0-9._-]", "_").replaceFirst("^\\.", "_");
+    }
+}
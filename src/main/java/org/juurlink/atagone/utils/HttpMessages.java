@@ -0,0 +1,483 @@
+package org.juurlink.atagone.utils;
+
+import lombok.Value;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP/1.1 request formatting and response parsing, shared by the blocking and the non-blocking client.
+ * <p/>
+ * Requests are written to and response bodies read into buffers of a {@link ByteBufferPool}; the caller releases them.
+ */
+@Log
+final class HttpMessages {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * Room for the header lines besides the path, host, user agent and version.
+     */
+    private static final int HEADER_SIZE = 256;
+    private static final int READ_SIZE = 1024;
+
+    /**
+     * Largest response body; replies of the thermostat are a few kilobytes.
+     */
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    /**
+     * Longest status, header, chunk size or trailer line.
+     */
+    static final int MAX_LINE_LENGTH = 8192;
+
+    private HttpMessages() {
+    }
+
+    /**
+     * The server closed the connection before sending any part of the response.
+     */
+    static class StaleConnectionException extends IOException {
+        StaleConnectionException(final String message, @Nullable final Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Complete response.
+     */
+    @Value
+    static class Response {
+        String statusLine;
+        int status;
+        Map<String, List<String>> headers;
+        /**
+         * Body in read mode, taken from the pool.
+         */
+        ByteBuffer body;
+    }
+
+    /**
+     * Create POST request with header and payload.
+     *
+     * @param pool      Pool to take the buffer from
+     * @param payload   Payload, UTF-8 encoded into the buffer
+     * @param keepAlive True to ask the server to keep the connection open
+     * @return Request in read mode, to be released to the pool
+     */
+    @Nonnull
+    static ByteBuffer createRequest(final ByteBufferPool pool, final String host, final int port, final String path,
+                                    final CharSequence payload, @Nullable final String versionString, final boolean keepAlive) {
+        val userAgent = NetworkUtils.getUserAgent(versionString);
+        val payloadLength = utf8Length(payload);
+        ByteBuffer request = pool.acquire(HEADER_SIZE + path.length() + host.length() + userAgent.length() +
+            (versionString != null ? versionString.length() : 0) + payloadLength);
+        request = putAscii(pool, request, "POST ");
+        request = putAscii(pool, request, path.isEmpty() ? "/" : path);
+        request = putAscii(pool, request, " HTTP/1.1\r\nHost: ");
+        request = putAscii(pool, request, host);
+        request = putAscii(pool, request, ":");
+        request = putInt(pool, request, port);
+        request = putAscii(pool, request, "\r\nUser-Agent: ");
+        request = putAscii(pool, request, userAgent);
+        request = putAscii(pool, request, "\r\n");
+        if (versionString != null) {
+            request = putAscii(pool, request, "X-OneApp-Version: ");
+            request = putAscii(pool, request, versionString);
+            request = putAscii(pool, request, "\r\n");
+        }
+        request = putAscii(pool, request, "Accept-Charset: UTF-8\r\n" +
+            "Accept: */*\r\n" +
+            "Content-Type: application/x-www-form-urlencoded; UTF-8\r\n" +
+            "Content-Length: ");
+        request = putInt(pool, request, payloadLength);
+        request = putAscii(pool, request, keepAlive ? "\r\nConnection: keep-alive\r\n\r\n" : "\r\nConnection: close\r\n\r\n");
+        request = pool.ensureRemaining(request, payloadLength);
+        putUtf8(request, payload);
+        request.flip();
+        return request;
+    }
+
+    /**
+     * @return Number of bytes of the text, UTF-8 encoded
+     */
+    static int utf8Length(final CharSequence text) {
+        if (text instanceof ByteSequence) {
+            return text.length();
+        }
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            val c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write the text UTF-8 encoded; a lone surrogate is written as question mark, like {@link String#getBytes}.
+     *
+     * @param buffer Buffer with room for {@link #utf8Length} bytes
+     */
+    static void putUtf8(final ByteBuffer buffer, final CharSequence text) {
+        if (text instanceof ByteSequence) {
+            // Already encoded.
+            ((ByteSequence) text).writeTo(buffer);
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            val c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                val codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Three bytes counted, like any other char of the basic plane.
+                buffer.put((byte) '?');
+                buffer.put((byte) '?');
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    @Nonnull
+    private static ByteBuffer putAscii(final ByteBufferPool pool, final ByteBuffer buffer, final String text) {
+        val result = pool.ensureRemaining(buffer, text.length());
+        for (int i = 0; i < text.length(); i++) {
+            result.put((byte) text.charAt(i));
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static ByteBuffer putInt(final ByteBufferPool pool, final ByteBuffer buffer, final int value) {
+        // Ports and content lengths; at most 10 digits.
+        val result = pool.ensureRemaining(buffer, 10);
+        if (value == 0) {
+            return result.put((byte) '0');
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            result.put((byte) ('0' + value / divisor % 10));
+        }
+        return result;
+    }
+
+    /**
+     * Read complete response, informational responses like "100 Continue" are skipped.
+     *
+     * @param in          Stream positioned at the start of the response
+     * @param endOfStream True when the end of the stream is the end of the connection; a body without length ends there.
+     *                    When false, such a body throws EOFException
+     * @param pool        Pool to take the body buffer from
+     * @throws StaleConnectionException When the stream ends before the response starts
+     * @throws EOFException             When the stream ends before the response is complete
+     */
+    @Nonnull
+    static Response readResponse(final InputStream in, final boolean endOfStream, final ByteBufferPool pool) throws IOException {
+        int status;
+        String statusLine;
+        Map<String, List<String>> headers;
+        boolean first = true;
+        do {
+            statusLine = readStatusLine(in, first);
+            first = false;
+            status = parseStatus(statusLine);
+            headers = readHeaders(in);
+        } while (status >= 100 && status < 200);
+
+        val body = readBody(in, status, headers, endOfStream, pool);
+        body.flip();
+        return new Response(statusLine, status, headers, body);
+    }
+
+    /**
+     * @throws IOException For an error status
+     */
+    static void assertSuccess(final String url, final Response response) throws IOException {
+        if (response.getStatus() >= 400) {
+            val content = ByteSequence.of(response.getBody()).toString();
+            if (StringUtils.isNotBlank(content)) {
+                log.fine(content);
+                throw new IOException(content);
+            }
+            throw new IOException("Server returned HTTP response code: " + response.getStatus() + " for URL: " + url);
+        }
+    }
+
+    /**
+     * @return Response content and headers
+     * @throws IOException For an error status
+     */
+    @Nonnull
+    static PageContent toPageContent(final String url, final Response response) throws IOException {
+        assertSuccess(url, response);
+        return PageContent.builder()
+            .content(ByteSequence.of(response.getBody()).toString())
+            .headers(Collections.unmodifiableMap(response.getHeaders()))
+            .build();
+    }
+
+    /**
+     * @return True when the server keeps the connection open after the response
+     */
+    static boolean isKeepAlive(final Response response) {
+        val connection = firstHeader(response.getHeaders(), "Connection");
+        if (connection != null) {
+            return !"close".equalsIgnoreCase(connection);
+        }
+        // HTTP/1.0 closes by default.
+        return !response.getStatusLine().startsWith("HTTP/1.0");
+    }
+
+    @Nonnull
+    private static String readStatusLine(final InputStream in, final boolean first) throws IOException {
+        final String line;
+        try {
+            line = readLine(in);
+        } catch (SocketException e) {
+            // Connection reset. Not a timeout: the server may have handled the request already.
+            if (first) {
+                throw new StaleConnectionException("Error reading status line", e);
+            }
+            throw e;
+        }
+        if (line == null) {
+            if (first) {
+                throw new StaleConnectionException("Connection closed before response", null);
+            }
+            throw new EOFException("Connection closed before response");
+        }
+        return line;
+    }
+
+    private static int parseStatus(final String statusLine) throws IOException {
+        // HTTP/1.1 200 OK
+        val parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+    }
+
+    @Nonnull
+    private static Map<String, List<String>> readHeaders(final InputStream in) throws IOException {
+        val headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            val colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            val name = line.substring(0, colon).trim();
+            val value = line.substring(colon + 1).trim();
+            headers.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading headers");
+        }
+        return headers;
+    }
+
+    /**
+     * @return Body in write mode, taken from the pool; released when reading fails
+     */
+    @Nonnull
+    private static ByteBuffer readBody(final InputStream in, final int status, final Map<String, List<String>> headers,
+                                       final boolean endOfStream, final ByteBufferPool pool) throws IOException {
+        // No content.
+        if (status == 204 || status == 304) {
+            return pool.acquire(0);
+        }
+
+        val transferEncoding = firstHeader(headers, "Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            return readChunked(in, pool);
+        }
+
+        val contentLength = firstHeader(headers, "Content-Length");
+        if (contentLength != null) {
+            final int length;
+            try {
+                length = Integer.parseInt(contentLength);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (length < 0) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            assertBodySize(length);
+            val body = pool.acquire(length);
+            try {
+                readFully(in, body, length);
+            } catch (IOException | RuntimeException e) {
+                pool.release(body);
+                throw e;
+            }
+            return body;
+        }
+
+        if (!endOfStream) {
+            throw new EOFException("Body without length not complete before the connection is closed");
+        }
+
+        // Body ends when the server closes the connection; cannot be reused.
+        ByteBuffer body = pool.acquire(READ_SIZE);
+        try {
+            int read;
+            do {
+                body = pool.ensureRemaining(body, READ_SIZE);
+                read = in.read(body.array(), body.arrayOffset() + body.position(), body.remaining());
+                if (read > 0) {
+                    body.position(body.position() + read);
+                    assertBodySize(body.position());
+                }
+            } while (read != -1);
+        } catch (IOException | RuntimeException e) {
+            pool.release(body);
+            throw e;
+        }
+        headers.put("Connection", Collections.singletonList("close"));
+        return body;
+    }
+
+    @Nonnull
+    private static ByteBuffer readChunked(final InputStream in, final ByteBufferPool pool) throws IOException {
+        ByteBuffer body = pool.acquire(READ_SIZE);
+        try {
+            while (true) {
+                val sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    throw new EOFException("Connection closed while reading chunk size");
+                }
+                // Ignore chunk extensions.
+                val semicolon = sizeLine.indexOf(';');
+                val sizeString = (semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim();
+                final int size;
+                try {
+                    size = Integer.parseInt(sizeString, 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (size < 0) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (size == 0) {
+                    break;
+                }
+                assertBodySize((long) body.position() + size);
+                body = pool.ensureRemaining(body, size);
+                readFully(in, body, size);
+                // CRLF after chunk data.
+                readLine(in);
+            }
+            // Skip trailers.
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                log.finest("Skip trailer: " + line);
+            }
+            return body;
+        } catch (IOException | RuntimeException e) {
+            pool.release(body);
+            throw e;
+        }
+    }
+
+    /**
+     * @throws ProtocolException When the body is larger than {@link #MAX_BODY_SIZE}
+     */
+    private static void assertBodySize(final long size) throws IOException {
+        if (size > MAX_BODY_SIZE) {
+            throw new ProtocolException("Response body larger than " + MAX_BODY_SIZE + " bytes.");
+        }
+    }
+
+    /**
+     * Read exactly length bytes into the buffer, which has room for them.
+     */
+    private static void readFully(final InputStream in, final ByteBuffer buffer, final int length) throws IOException {
+        val data = buffer.array();
+        val start = buffer.arrayOffset() + buffer.position();
+        int offset = 0;
+        while (offset < length) {
+            val read = in.read(data, start + offset, length - offset);
+            if (read == -1) {
+                throw new EOFException("Connection closed after " + offset + " of " + length + " bytes");
+            }
+            offset += read;
+        }
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Read line terminated by CRLF (or LF), as ISO-8859-1.
+     *
+     * @return Line without terminator, or null at end of stream before any character
+     * @throws ProtocolException When the line is longer than {@link #MAX_LINE_LENGTH}
+     */
+    @Nullable
+    private static String readLine(final InputStream in) throws IOException {
+        val line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == CRLF[1]) {
+                val length = line.length();
+                if (length > 0 && line.charAt(length - 1) == CRLF[0]) {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            // One more for the CR.
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new ProtocolException("Line longer than " + MAX_LINE_LENGTH + " characters.");
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    @Nullable
+    private static String firstHeader(final Map<String, List<String>> headers, final String name) {
+        val values = headers.get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+}
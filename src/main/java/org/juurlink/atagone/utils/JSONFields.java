@@ -0,0 +1,603 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexed table of all primitive values in a JSON document.
+ * <p/>
+ * The document is walked once by a small tokenizer; every name/value pair at any level is recorded by position, the values
+ * themselves are only converted when requested. When a name occurs more than once, the first value found wins, just like
+ * {@link JSONUtils#getJSONValueByName(String, Class, String)}.
+ * <p/>
+ * The ATAG One portal sometimes returns a JSON document wrapped in a JSON string (escaped JSON). In that case the string is
+ * unescaped and its content is indexed instead.
+ */
+@Log
+public final class JSONFields {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte KIND_STRING = 1;
+    private static final byte KIND_ESCAPED_STRING = 2;
+    private static final byte KIND_LITERAL = 3;
+
+    /**
+     * Max number of significant digits a long mantissa can hold without losing precision when converted to double.
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final CharSequence json;
+    private final Map<String, Integer> index = new HashMap<>(INITIAL_CAPACITY);
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Parse position, only used while tokenizing.
+     */
+    private int position;
+
+    /**
+     * Content of root value, when root value is a string.
+     */
+    @Nullable
+    private String rootString;
+
+    private JSONFields(@Nonnull final CharSequence json) {
+        this.json = json;
+    }
+
+    /**
+     * Tokenize JSON document and index all name/value pairs.
+     * <p/>
+     * Parsing is lenient; in case of malformed JSON, all values found until the error are kept.
+     * <p/>
+     * Values are converted from the document when requested, so a {@link ByteSequence} has to stay valid while the fields are
+     * read.
+     *
+     * @param json Full JSON as String, or its UTF-8 bytes as {@link ByteSequence}
+     * @return Field table, never null
+     */
+    @Nonnull
+    public static JSONFields parse(@Nonnull @NonNull final CharSequence json) {
+        JSONFields fields = new JSONFields(json);
+        fields.tokenize();
+
+        // Escaped JSON document; index the content of the string instead.
+        if (fields.size == 0 && fields.rootString != null) {
+            val unescaped = fields.rootString;
+            if (unescaped.startsWith("{") || unescaped.startsWith("[")) {
+                fields = new JSONFields(unescaped);
+                fields.tokenize();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return Number of name/value pairs found
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True when the name is found at any level
+     */
+    public boolean contains(@Nonnull @NonNull final String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * Get string value. Values not surrounded by quotes (numbers, booleans, null) are not strings.
+     *
+     * @param name Variable name
+     * @return Value or null when not found or not a string
+     */
+    @Nullable
+    public String getString(@Nonnull @NonNull final String name) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] == KIND_LITERAL) {
+            return null;
+        }
+        return text(slot);
+    }
+
+    /**
+     * Get integer value.
+     *
+     * @param name Variable name
+     * @return Value or null when not found or not an integer
+     */
+    @Nullable
+    public Integer getInteger(@Nonnull @NonNull final String name) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] != KIND_LITERAL) {
+            return null;
+        }
+        try {
+            return parseInt(starts[slot], ends[slot]);
+        } catch (NumberFormatException e) {
+            log.fine("Error parsing value '" + text(slot) + "' as Integer.");
+            return null;
+        }
+    }
+
+    /**
+     * Get integer value without boxing.
+     *
+     * @param name         Variable name
+     * @param defaultValue Value to return when not found or not an integer
+     * @return Value or default value
+     */
+    public int getInt(@Nonnull @NonNull final String name, final int defaultValue) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] != KIND_LITERAL) {
+            return defaultValue;
+        }
+        try {
+            return parseInt(starts[slot], ends[slot]);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get number value without boxing.
+     *
+     * @param name         Variable name
+     * @param defaultValue Value to return when not found or not a number
+     * @return Value or default value
+     */
+    public double getDouble(@Nonnull @NonNull final String name, final double defaultValue) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] != KIND_LITERAL) {
+            return defaultValue;
+        }
+        try {
+            return parseDouble(starts[slot], ends[slot]);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get the number of digits after the decimal point of a number value, so it can be printed as written; nothing is
+     * allocated.
+     *
+     * @param name Variable name
+     * @return Digits after the decimal point, 0 for an integer, or -1 when not found or not a plain decimal
+     */
+    public int getScale(@Nonnull @NonNull final String name) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] != KIND_LITERAL) {
+            return -1;
+        }
+        int i = starts[slot];
+        val end = ends[slot];
+        if (i < end && (json.charAt(i) == '-' || json.charAt(i) == '+')) {
+            i++;
+        }
+        if (i >= end) {
+            return -1;
+        }
+        int scale = -1;
+        for (; i < end; i++) {
+            val c = json.charAt(i);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return scale < 0 ? 0 : scale;
+    }
+
+    /**
+     * Get decimal value.
+     *
+     * @param name Variable name
+     * @return Value or null when not found or not a number
+     */
+    @Nullable
+    public BigDecimal getBigDecimal(@Nonnull @NonNull final String name) {
+        val slot = index.get(name);
+        if (slot == null || kinds[slot] != KIND_LITERAL) {
+            return null;
+        }
+        val value = text(slot);
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            log.fine("Error parsing value '" + value + "' as BigDecimal.");
+            return null;
+        }
+    }
+
+    /**
+     * Get boolean value. Everything except "true" is false.
+     *
+     * @param name Variable name
+     * @return Value or null when not found or JSON null
+     */
+    @Nullable
+    public Boolean getBoolean(@Nonnull @NonNull final String name) {
+        val slot = index.get(name);
+        if (slot == null || isNull(slot)) {
+            return null;
+        }
+        return Boolean.valueOf(text(slot));
+    }
+
+    /**
+     * Get value as requested type.
+     *
+     * @param name  Variable name to search for at any level
+     * @param clazz Class type of value; [String, Integer, BigDecimal, Boolean]
+     * @return Value or null when not found
+     * @throws IllegalStateException When requested value class not supported
+     */
+    @Nullable
+    public <T> T get(@Nonnull @NonNull final String name, @Nonnull @NonNull final Class<T> clazz) {
+        if (clazz == String.class) {
+            return clazz.cast(getString(name));
+        }
+        if (clazz == Integer.class) {
+            return clazz.cast(getInteger(name));
+        }
+        if (clazz == BigDecimal.class) {
+            return clazz.cast(getBigDecimal(name));
+        }
+        if (clazz == Boolean.class) {
+            return clazz.cast(getBoolean(name));
+        }
+        throw new IllegalStateException("Unknown return type requested: '" + clazz + "'");
+    }
+
+    @Override
+    public String toString() {
+        return "JSONFields(size=" + size + ", names=" + index.keySet() + ")";
+    }
+
+    // ----- Value conversion.
+
+    private boolean isNull(final int slot) {
+        return kinds[slot] == KIND_LITERAL && ends[slot] - starts[slot] == 4 && regionMatches(starts[slot], "null");
+    }
+
+    private boolean regionMatches(final int start, final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (json.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private String text(final int slot) {
+        if (kinds[slot] == KIND_ESCAPED_STRING) {
+            return unescape(json, starts[slot], ends[slot]);
+        }
+        return json.subSequence(starts[slot], ends[slot]).toString();
+    }
+
+    private int parseInt(final int start, final int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty value");
+        }
+        int i = start;
+        boolean negative = false;
+        if (json.charAt(i) == '-' || json.charAt(i) == '+') {
+            negative = json.charAt(i) == '-';
+            i++;
+        }
+        if (i >= end || end - i > 10) {
+            // Empty or possibly out of range; let the JDK decide.
+            return Integer.parseInt(json.subSequence(start, end).toString(), 10);
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            val digit = json.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + json.subSequence(start, end) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        result = negative ? -result : result;
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range: \"" + json.subSequence(start, end) + "\"");
+        }
+        return (int) result;
+    }
+
+    private double parseDouble(final int start, final int end) {
+        // Fast path for plain decimals like "-12.5"; exact because both mantissa and power of ten are exact doubles.
+        int i = start;
+        boolean negative = false;
+        if (i < end && (json.charAt(i) == '-' || json.charAt(i) == '+')) {
+            negative = json.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        boolean fast = i < end;
+        for (; i < end && fast; i++) {
+            val c = json.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0 || digits > 0) {
+                    digits++;
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                fast = false;
+            }
+        }
+        if (fast && digits <= MAX_FAST_DIGITS && scale < POWERS_OF_TEN.length) {
+            val value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : (double) mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(json.subSequence(start, end).toString());
+    }
+
+    /**
+     * Unescape JSON string content.
+     */
+    @Nonnull
+    static String unescape(@Nonnull final CharSequence text, final int start, final int end) {
+        if (text instanceof ByteSequence) {
+            // Decode characters of more than one byte first.
+            val decoded = text.subSequence(start, end).toString();
+            return unescape(decoded, 0, decoded.length());
+        }
+        val result = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            val c = text.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                result.append(c);
+                continue;
+            }
+            val next = text.charAt(++i);
+            switch (next) {
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    val code = i + 4 < end ? parseHex(text, i + 1, i + 5) : -1;
+                    if (code >= 0) {
+                        result.append((char) code);
+                        i += 4;
+                    } else {
+                        // Malformed, keep as written.
+                        result.append(c).append(next);
+                    }
+                    break;
+                default:
+                    // Quote, backslash, slash.
+                    result.append(next);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return Value of the hexadecimal digits, or -1 when not all are hexadecimal digits
+     */
+    private static int parseHex(final CharSequence text, final int start, final int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            val digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+        // ----- Tokenizer.
+
+    private void tokenize() {
+        position = 0;
+        try {
+            skipWhitespace();
+            if (position >= json.length()) {
+                return;
+            }
+            if (json.charAt(position) == '"') {
+                val start = position + 1;
+                val escaped = skipString();
+                rootString = escaped ? unescape(json, start, position - 1) : json.subSequence(start, position - 1).toString();
+                return;
+            }
+            parseValue(null, 0);
+        } catch (IllegalArgumentException e) {
+            // Keep what has been found so far.
+            log.fine("Error parsing JSON, " + size + " values found: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse value at current position and record it under the given name, when primitive.
+     */
+    private void parseValue(@Nullable final String name, final int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("JSON nested too deep at position " + position);
+        }
+        skipWhitespace();
+        if (position >= json.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        val c = json.charAt(position);
+        if (c == '{') {
+            parseObject(depth);
+        } else if (c == '[') {
+            parseArray(depth);
+        } else if (c == '"') {
+            val start = position + 1;
+            val escaped = skipString();
+            record(name, start, position - 1, escaped ? KIND_ESCAPED_STRING : KIND_STRING);
+        } else {
+            val start = position;
+            while (position < json.length() && !isLiteralEnd(json.charAt(position))) {
+                position++;
+            }
+            if (position == start) {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + position);
+            }
+            record(name, start, position, KIND_LITERAL);
+        }
+    }
+
+    private void parseObject(final int depth) {
+        // Skip '{'.
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw new IllegalArgumentException("Expected name at position " + position);
+            }
+            val nameStart = position + 1;
+            val escaped = skipString();
+            val name = escaped ? unescape(json, nameStart, position - 1) : json.subSequence(nameStart, position - 1).toString();
+            skipWhitespace();
+            expect(':');
+            parseValue(name, depth + 1);
+            skipWhitespace();
+            val c = peek();
+            position++;
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected ',' or '}' at position " + (position - 1));
+            }
+        }
+    }
+
+    private void parseArray(final int depth) {
+        // Skip '['.
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        while (true) {
+            parseValue(null, depth + 1);
+            skipWhitespace();
+            val c = peek();
+            position++;
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected ',' or ']' at position " + (position - 1));
+            }
+        }
+    }
+
+    /**
+     * Skip string at current position, including the quotes.
+     *
+     * @return true when the string contains escape characters
+     */
+    private boolean skipString() {
+        // Skip opening quote.
+        position++;
+        boolean escaped = false;
+        val length = json.length();
+        while (position < length) {
+            val c = json.charAt(position++);
+            if (c == '"') {
+                return escaped;
+            }
+            if (c == '\\') {
+                escaped = true;
+                position++;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    private void record(@Nullable final String name, final int start, final int end, final byte kind) {
+        // Array elements have no name; first value found wins.
+        if (name == null || index.containsKey(name)) {
+            return;
+        }
+        if (size == starts.length) {
+            val capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        kinds[size] = kind;
+        index.put(name, size);
+        size++;
+    }
+
+    private void expect(final char expected) {
+        if (peek() != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at position " + position);
+        }
+        position++;
+    }
+
+    private char peek() {
+        if (position >= json.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return json.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isLiteralEnd(final char c) {
+        return c == ',' || c == '}' || c == ']' || Character.isWhitespace(c);
+    }
+}
@@ -53,6 +53,8 @@ public class JSONUtils {
 
     /**
      * Get value from JSON data blob. Only get primitive values like strings and numbers at any level. First value found is returned.
+     * <p/>
+     * To read more than one value from the same document, use {@link JSONFields#parse(CharSequence)}; it walks the document only once.
      *
      * @param json  Full JSON as String
      * @param clazz Class type of value; [String, BigInteger, Boolean]
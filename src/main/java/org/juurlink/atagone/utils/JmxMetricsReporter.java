@@ -0,0 +1,174 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Publish the metrics as attributes of one MBean, {@value #OBJECT_NAME}, so JConsole or a JMX agent can read the live values.
+ * <p/>
+ * A counter is one attribute, named like the metric. A histogram has the attributes count, meanMs, p50Ms, p90Ms, p99Ms and maxMs,
+ * after the metric name and a dot. Metrics created later show up the next time the MBean info is read.
+ */
+@Log
+public class JmxMetricsReporter implements MetricsReporter {
+
+    public static final String OBJECT_NAME = "org.juurlink.atagone:type=Metrics";
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final MetricsRegistry registry;
+    private final MBeanServer server;
+    private final ObjectName objectName;
+    private boolean registered;
+
+    /**
+     * Reporter for the platform MBean server.
+     *
+     * @param registry Metrics to publish
+     */
+    public JmxMetricsReporter(@Nonnull @NonNull final MetricsRegistry registry) {
+        this(registry, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param registry Metrics to publish
+     * @param server   MBean server to register at
+     */
+    public JmxMetricsReporter(@Nonnull @NonNull final MetricsRegistry registry, @Nonnull @NonNull final MBeanServer server) {
+        this.registry = registry;
+        this.server = server;
+        try {
+            this.objectName = new ObjectName(OBJECT_NAME);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Register the MBean, the values are live from then on.
+     *
+     * @throws IOException When the MBean cannot be registered, for example because another reporter registered it already
+     */
+    @Override
+    public void report() throws IOException {
+        if (registered) {
+            return;
+        }
+        try {
+            server.registerMBean(new MetricsMBean(), objectName);
+            registered = true;
+            log.fine("Metrics published as MBean " + objectName);
+        } catch (JMException e) {
+            throw new IOException("Cannot register MBean " + objectName + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!registered) {
+            return;
+        }
+        try {
+            server.unregisterMBean(objectName);
+            registered = false;
+        } catch (JMException e) {
+            throw new IOException("Cannot unregister MBean " + objectName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Current attribute values by attribute name
+     */
+    @Nonnull
+    private Map<String, Supplier<Object>> getValues() {
+        val attributes = new TreeMap<String, Supplier<Object>>();
+        for (val histogram : registry.getHistograms().entrySet()) {
+            val name = histogram.getKey().toString();
+            val values = histogram.getValue();
+            attributes.put(name + ".count", values::getCount);
+            attributes.put(name + ".meanMs", () -> values.getMean() / NANOS_PER_MILLI);
+            attributes.put(name + ".p50Ms", () -> values.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            attributes.put(name + ".p90Ms", () -> values.getValueAtPercentile(90) / NANOS_PER_MILLI);
+            attributes.put(name + ".p99Ms", () -> values.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            attributes.put(name + ".maxMs", () -> values.getMax() / NANOS_PER_MILLI);
+        }
+        for (val counter : registry.getCounters().entrySet()) {
+            val value = counter.getValue();
+            attributes.put(counter.getKey().toString(), () -> value);
+        }
+        return attributes;
+    }
+
+    /**
+     * Read only MBean with an attribute per value.
+     */
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+            final Supplier<Object> value = getValues().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.get();
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read only.");
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] names) {
+            val attributes = getValues();
+            val result = new AttributeList();
+            for (String name : names) {
+                final Supplier<Object> value = attributes.get(name);
+                if (value != null) {
+                    result.add(new Attribute(name, value.get()));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes) {
+            // Read only.
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+            throw new UnsupportedOperationException("No operations, metrics are read only.");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            val attributeInfos = new ArrayList<MBeanAttributeInfo>();
+            for (val attribute : getValues().entrySet()) {
+                val type = attribute.getKey().endsWith("Ms") ? Double.class.getName() : Long.class.getName();
+                attributeInfos.add(new MBeanAttributeInfo(attribute.getKey(), type, attribute.getKey(), true, false, false));
+            }
+            return new MBeanInfo(JmxMetricsReporter.class.getName(), "ATAG One connector metrics",
+                attributeInfos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Minimal HTTP/1.1 client that keeps one TCP connection open to the thermostat.
+ * <p/>
+ * Every response is read to its end (content length or chunked encoding), so the next request can reuse the connection. When
+ * the server closed a reused connection before it answered, the request is sent once more over a new connection.
+ * <p/>
+ * Requests are encoded into and responses read into buffers of the {@link ByteBufferPool}; with a {@link BodyHandler} the
+ * response body is parsed straight from its buffer, without decoding it to a String first.
+ * <p/>
+ * Only plain HTTP is supported; the thermostat in the local network does not use TLS.
+ */
+@Log
+public class KeepAliveHttpClient implements Closeable {
+
+    private static final int HTTP_DEFAULT_PORT = 80;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    /**
+     * Close connections unused for this long instead of risking the server closed it already.
+     */
+    private static final long MAX_IDLE_MS = 20000;
+
+    /**
+     * One request at a time.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ByteBufferPool pool = ByteBufferPool.getDefault();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+    private final AtomicLong staleConnectionRetries = new AtomicLong();
+
+    @Nullable
+    private volatile Socket socket;
+    @Nullable
+    private InputStream inputStream;
+    @Nullable
+    private OutputStream outputStream;
+    @Nullable
+    private String connectedAuthority;
+    private long lastUsedMs;
+
+    /**
+     * Reads a response body while it is in its pooled buffer.
+     */
+    public interface BodyHandler<T> {
+
+        /**
+         * @param headers Response headers
+         * @param body    Response body; only valid until this method returns
+         * @return Result of the request
+         */
+        @Nullable
+        T handle(@Nonnull Map<String, List<String>> headers, @Nonnull ByteSequence body) throws IOException;
+    }
+
+    /**
+     * POST payload and read the full response.
+     *
+     * @param url           URL to connect to, only http
+     * @param payload       Request payload, sent UTF-8 encoded
+     * @param versionString Optional version string, will be used in request header
+     * @return Response content and headers
+     * @throws IOException in case of connection error or HTTP error status
+     */
+    @Nonnull
+    public PageContent post(@Nonnull @NonNull final String url,
+                            @Nonnull @NonNull final String payload,
+                            @Nullable final String versionString) throws IOException {
+        return post(url, payload, versionString, (headers, body) -> PageContent.builder()
+            .content(body.toString())
+            .headers(Collections.unmodifiableMap(headers))
+            .build());
+    }
+
+    /**
+     * POST payload and hand the full response to the handler, before its buffer is reused.
+     *
+     * @param url           URL to connect to, only http
+     * @param payload       Request payload, sent UTF-8 encoded
+     * @param versionString Optional version string, will be used in request header
+     * @param handler       Reads the response, not called for an HTTP error status
+     * @return Result of the handler
+     * @throws IOException in case of connection error, HTTP error status or when thrown by the handler
+     */
+    @Nullable
+    public <T> T post(@Nonnull @NonNull final String url,
+                      @Nonnull @NonNull final CharSequence payload,
+                      @Nullable final String versionString,
+                      @Nonnull @NonNull final BodyHandler<T> handler) throws IOException {
+        lock.lock();
+        ByteBuffer request = null;
+        try {
+            val parsedUrl = new URL(url);
+            if (!"http".equalsIgnoreCase(parsedUrl.getProtocol())) {
+                throw new IllegalArgumentException("Only http is supported: " + url);
+            }
+            val host = parsedUrl.getHost();
+            val port = parsedUrl.getPort() != -1 ? parsedUrl.getPort() : HTTP_DEFAULT_PORT;
+            request = HttpMessages.createRequest(pool, host, port, parsedUrl.getFile(), payload, versionString, true);
+
+            requests.incrementAndGet();
+            val reused = connect(host, port);
+            HttpMessages.Response response;
+            try {
+                response = exchange(request);
+
+            } catch (HttpMessages.StaleConnectionException e) {
+                closeConnection();
+                if (!reused) {
+                    throw e;
+                }
+                // The server closed the idle connection, it never saw the request.
+                log.fine("Reused connection closed by server, retry on new connection: " + e.getMessage());
+                staleConnectionRetries.incrementAndGet();
+                connect(host, port);
+                try {
+                    response = exchange(request);
+                } catch (IOException e2) {
+                    closeConnection();
+                    throw e2;
+                }
+
+            } catch (IOException | RuntimeException e) {
+                closeConnection();
+                throw e;
+            }
+
+            try {
+                HttpMessages.assertSuccess(url, response);
+                return handler.handle(response.getHeaders(), ByteSequence.of(response.getBody()));
+            } finally {
+                pool.release(response.getBody());
+            }
+        } finally {
+            pool.release(request);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Connection reuse statistics
+     */
+    @Nonnull
+    public ConnectionStatistics getStatistics() {
+        return ConnectionStatistics.builder()
+            .requests(requests.get())
+            .connectionsOpened(connectionsOpened.get())
+            .connectionsReused(connectionsReused.get())
+            .staleConnectionRetries(staleConnectionRetries.get())
+            .build();
+    }
+
+    /**
+     * Close the open connection, if any. The client can still be used afterwards.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closeConnection();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the open connection without waiting for a request in progress; that request fails with an IOException. The
+     * client can still be used afterwards.
+     */
+    public void abort() {
+        IOUtils.closeQuietly(socket);
+    }
+
+    /**
+     * Make sure a connection to host and port is open.
+     *
+     * @return true when an existing connection is reused
+     */
+    private boolean connect(final String host, final int port) throws IOException {
+        val authority = host + ":" + port;
+        val now = System.currentTimeMillis();
+        if (socket != null && authority.equals(connectedAuthority) && !socket.isClosed() && now - lastUsedMs < MAX_IDLE_MS) {
+            connectionsReused.incrementAndGet();
+            return true;
+        }
+        closeConnection();
+
+        log.fine("Open connection to " + authority);
+        val startNanos = System.nanoTime();
+        val newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            newSocket.setKeepAlive(true);
+            newSocket.setSoTimeout(READ_TIMEOUT_MS);
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(newSocket);
+            throw e;
+        }
+        connectionsOpened.incrementAndGet();
+        MetricsRegistry.getDefault().histogram(MetricsRegistry.CONNECT_DURATION, MetricsRegistry.LABEL_DEVICE, host).recordSince(startNanos);
+        socket = newSocket;
+        inputStream = new BufferedInputStream(newSocket.getInputStream());
+        outputStream = new BufferedOutputStream(newSocket.getOutputStream());
+        connectedAuthority = authority;
+        return false;
+    }
+
+    private void closeConnection() {
+        IOUtils.closeQuietly(socket);
+        socket = null;
+        inputStream = null;
+        outputStream = null;
+        connectedAuthority = null;
+    }
+
+    /**
+     * Send request and read the complete response.
+     *
+     * @param request Request in read mode; left as it is, so it can be sent again
+     * @return Response, its body taken from the pool
+     */
+    @Nonnull
+    private HttpMessages.Response exchange(final ByteBuffer request) throws IOException {
+        val in = inputStream;
+        val out = outputStream;
+        if (in == null || out == null) {
+            throw new IllegalStateException("Not connected");
+        }
+
+        try {
+            out.write(request.array(), request.arrayOffset() + request.position(), request.remaining());
+            out.flush();
+        } catch (IOException e) {
+            throw new HttpMessages.StaleConnectionException("Error writing request", e);
+        }
+
+        val response = HttpMessages.readResponse(in, true, pool);
+        lastUsedMs = System.currentTimeMillis();
+
+        // Server does not want to keep the connection.
+        if (!HttpMessages.isKeepAlive(response)) {
+            closeConnection();
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,150 @@
+package org.juurlink.atagone.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with log-linear buckets, like HdrHistogram: every power of two is split in {@value #SUB_BUCKETS} buckets,
+ * so a recorded value is kept with a relative error of at most about 3%, from nanoseconds up to years.
+ * <p/>
+ * Recording is lock-free and does not allocate; the percentiles read while recording goes on are approximate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value, negative values are recorded as zero.
+     *
+     * @param value Value, in nanoseconds for durations
+     */
+    public void record(final long value) {
+        final long nonNegative = Math.max(value, 0);
+        counts.incrementAndGet(index(nonNegative));
+        sum.add(nonNegative);
+        long currentMax;
+        while (nonNegative > (currentMax = max.get()) && !max.compareAndSet(currentMax, nonNegative)) {
+            // Another thread recorded a value at the same time, try again.
+        }
+    }
+
+    /**
+     * Record the time passed since the start time.
+     *
+     * @param startNanos Start time from {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return Sum of all recorded values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return Highest recorded value, zero when nothing recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return Mean of the recorded values, zero when nothing recorded
+     */
+    public double getMean() {
+        final long count = getCount();
+        return count > 0 ? (double) getSum() / count : 0;
+    }
+
+    /**
+     * Get value at percentile; the highest value of its bucket, but never above the highest recorded value.
+     *
+     * @param percentile Percentile, between 0 and 100
+     * @return Value, zero when nothing recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Get number of recorded values up to and including a value. Values in the same bucket as the limit are counted when the
+     * lowest value of that bucket is not above the limit.
+     *
+     * @param limit Upper limit, inclusive
+     * @return Number of values
+     */
+    public long getCountAtOrBelow(final long limit) {
+        if (limit < 0) {
+            return 0;
+        }
+        final int lastIndex = index(limit);
+        long count = 0;
+        for (int i = 0; i <= lastIndex; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return Bucket of the value; values below 2 * {@value #SUB_BUCKETS} have a bucket each
+     */
+    static int index(final long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return Highest value in the bucket
+     */
+    static long highestValue(final int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        final long lowest = subBucket << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.LocalIdentity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Local network identity, kept in a properties file so startup does not need to search the network interfaces again.
+ * <p/>
+ * Errors reading or writing the file are logged and otherwise ignored; without the file, the interfaces are searched as before.
+ */
+@Log
+public class LocalIdentityStore {
+
+    private static final String FILE_NAME = "local-identity.properties";
+
+    private static final String INTERFACE = "interface";
+    private static final String NAME = "name";
+    private static final String IP = "ip";
+    private static final String MAC = "mac";
+    private static final String TIMESTAMP = "timestamp";
+
+    private final Path file;
+
+    /**
+     * @param file Properties file, created on first store
+     */
+    public LocalIdentityStore(@Nonnull @NonNull final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return Store in the state directory
+     * @see StateUtils#getStateDirectory()
+     */
+    @Nonnull
+    public static LocalIdentityStore getDefault() {
+        return new LocalIdentityStore(StateUtils.getStateDirectory().resolve(FILE_NAME));
+    }
+
+    /**
+     * @return Stored identity, or null when nothing (valid) stored
+     */
+    @Nullable
+    public LocalIdentity get() {
+        final Properties properties;
+        try {
+            properties = StateUtils.loadProperties(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot read local identity from " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+
+        val interfaceName = properties.getProperty(INTERFACE);
+        val name = properties.getProperty(NAME);
+        val ip = properties.getProperty(IP);
+        val mac = properties.getProperty(MAC);
+        if (StringUtils.isBlank(interfaceName) || StringUtils.isBlank(name) || StringUtils.isBlank(ip) || StringUtils.isBlank(mac)) {
+            return null;
+        }
+        try {
+            return LocalIdentity.builder()
+                .interfaceName(interfaceName)
+                .name(name)
+                // Stored as literal address, no name lookup.
+                .ip(InetAddress.getByName(ip))
+                .mac(mac)
+                .timestamp(parseLong(properties.getProperty(TIMESTAMP)))
+                .build();
+        } catch (UnknownHostException e) {
+            log.fine("Ignore invalid local identity address: " + ip);
+            return null;
+        }
+    }
+
+    /**
+     * Store identity, replaces the earlier one.
+     */
+    public void put(@Nonnull @NonNull final LocalIdentity identity) {
+        val properties = new Properties();
+        properties.setProperty(INTERFACE, identity.getInterfaceName());
+        properties.setProperty(NAME, identity.getName());
+        properties.setProperty(IP, identity.getIp().getHostAddress());
+        properties.setProperty(MAC, identity.getMac());
+        properties.setProperty(TIMESTAMP, String.valueOf(identity.getTimestamp()));
+        try {
+            StateUtils.storeProperties(file, properties, "ATAG One local identity");
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot store local identity in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long parseLong(@Nullable final String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
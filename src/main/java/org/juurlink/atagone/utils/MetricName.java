@@ -0,0 +1,67 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Name of a metric with its labels, for example the device and the endpoint of a request.
+ */
+@Value
+public class MetricName implements Comparable<MetricName> {
+
+    @Nonnull
+    String name;
+    /**
+     * Labels by label name.
+     */
+    @Nonnull
+    SortedMap<String, String> labels;
+
+    /**
+     * @param name   Metric name
+     * @param labels Label names and values, alternating
+     * @throws IllegalArgumentException When a label has no value
+     */
+    @Nonnull
+    public static MetricName of(@Nonnull @NonNull final String name, @Nonnull @NonNull final String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Label without value for metric " + name + ".");
+        }
+        val labelMap = new TreeMap<String, String>();
+        for (int i = 0; i < labels.length; i += 2) {
+            labelMap.put(labels[i], StringUtils.defaultString(labels[i + 1]));
+        }
+        return new MetricName(name, Collections.unmodifiableSortedMap(labelMap));
+    }
+
+    /**
+     * @return Name followed by the labels, for example request_duration{device="10.0.1.12",endpoint="retrieve"}
+     */
+    @Override
+    public String toString() {
+        if (labels.isEmpty()) {
+            return name;
+        }
+        val result = new StringBuilder(name).append('{');
+        for (val label : labels.entrySet()) {
+            if (result.charAt(result.length() - 1) != '{') {
+                result.append(',');
+            }
+            result.append(label.getKey()).append("=\"")
+                .append(label.getValue().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return result.append('}').toString();
+    }
+
+    @Override
+    public int compareTo(@Nonnull final MetricName other) {
+        return toString().compareTo(other.toString());
+    }
+}
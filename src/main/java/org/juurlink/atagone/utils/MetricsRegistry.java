@@ -0,0 +1,129 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the connectors, read by a {@link MetricsReporter}.
+ * <p/>
+ * Metrics are created on first use. Counting and recording are lock-free, so the connectors update them on every request.
+ * Durations are recorded in nanoseconds.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Time to find a thermostat in the local network.
+     */
+    public static final String DISCOVERY_DURATION = "atag_one_discovery_duration";
+    /**
+     * Pair requests sent, by device.
+     */
+    public static final String PAIR_ATTEMPTS = "atag_one_pair_attempts_total";
+    /**
+     * Duration of a single request to a thermostat, retries recorded separately; by device and endpoint.
+     */
+    public static final String REQUEST_DURATION = "atag_one_request_duration";
+    /**
+     * Requests sent again, by device and endpoint.
+     */
+    public static final String REQUEST_RETRIES = "atag_one_request_retries_total";
+    /**
+     * Empty responses, by device and endpoint.
+     */
+    public static final String EMPTY_RESPONSES = "atag_one_empty_responses_total";
+    /**
+     * Requests that failed after the retries, by device and endpoint.
+     */
+    public static final String REQUEST_FAILURES = "atag_one_request_failures_total";
+    /**
+     * Time to open a connection to a thermostat, by device.
+     */
+    public static final String CONNECT_DURATION = "atag_one_connect_duration";
+    /**
+     * Time to parse a response, by endpoint.
+     */
+    public static final String PARSE_DURATION = "atag_one_parse_duration";
+    /**
+     * Duration of a request to the portal, by endpoint.
+     */
+    public static final String PORTAL_REQUEST_DURATION = "atag_one_portal_request_duration";
+
+    public static final String LABEL_DEVICE = "device";
+    public static final String LABEL_ENDPOINT = "endpoint";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<MetricName, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricName, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @return Registry shared by all connectors
+     */
+    @Nonnull
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get counter, created on first use.
+     *
+     * @param name   Metric name
+     * @param labels Label names and values, alternating
+     */
+    @Nonnull
+    public LongAdder counter(@Nonnull @NonNull final String name, @Nonnull @NonNull final String... labels) {
+        val metricName = MetricName.of(name, labels);
+        // Look up first, computeIfAbsent locks even when the counter exists.
+        val counter = counters.get(metricName);
+        return counter != null ? counter : counters.computeIfAbsent(metricName, key -> new LongAdder());
+    }
+
+    /**
+     * Get histogram, created on first use.
+     *
+     * @param name   Metric name
+     * @param labels Label names and values, alternating
+     */
+    @Nonnull
+    public LatencyHistogram histogram(@Nonnull @NonNull final String name, @Nonnull @NonNull final String... labels) {
+        val metricName = MetricName.of(name, labels);
+        val histogram = histograms.get(metricName);
+        return histogram != null ? histogram : histograms.computeIfAbsent(metricName, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return Current counter values, ordered by name
+     */
+    @Nonnull
+    public SortedMap<MetricName, Long> getCounters() {
+        val result = new TreeMap<MetricName, Long>();
+        for (val counter : counters.entrySet()) {
+            result.put(counter.getKey(), counter.getValue().sum());
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    /**
+     * @return Histograms, ordered by name; they keep recording
+     */
+    @Nonnull
+    public SortedMap<MetricName, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+    }
+
+    /**
+     * Remove all metrics.
+     */
+    public void clear() {
+        counters.clear();
+        histograms.clear();
+    }
+}
@@ -0,0 +1,25 @@
+package org.juurlink.atagone.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Publishes the metrics of a {@link MetricsRegistry}, for example as text or over JMX.
+ */
+public interface MetricsReporter extends Closeable {
+
+    /**
+     * Report the current values. Reporters that publish live values only need to be called once.
+     *
+     * @throws IOException When the values cannot be published
+     */
+    void report() throws IOException;
+
+    /**
+     * Stop publishing.
+     */
+    @Override
+    default void close() throws IOException {
+        // Nothing to release.
+    }
+}
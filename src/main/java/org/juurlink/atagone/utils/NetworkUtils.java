@@ -5,7 +5,7 @@ import lombok.experimental.UtilityClass;
 import lombok.extern.java.Log;
 import lombok.val;
 import org.juurlink.atagone.domain.DeviceInfo;
-import org.juurlink.atagone.domain.UdpMessage;
+import org.juurlink.atagone.domain.LocalIdentity;
 import org.juurlink.atagone.exceptions.AtagPageErrorException;
 
 import javax.annotation.Nonnull;
@@ -18,6 +18,11 @@ import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,6 +49,11 @@ public class NetworkUtils {
     private static final Pattern PATTERN_PAGE_ERROR = Pattern.compile("<li class=\"text-error\"><span>(.*?)</span>", Pattern.DOTALL);
 
     private static final int TIMEOUT_REACHABLE_MS = 1000;
+    /**
+     * Extra time for all parallel reachability checks together, on top of the timeout of a single check.
+     */
+    private static final int TIMEOUT_REACHABLE_MARGIN_MS = 250;
+    private static final ReentrantLock LOCAL_HOSTS_LOCK = new ReentrantLock();
     /**
      * HTTP Connect timeout in milliseconds.
      */
@@ -52,14 +62,20 @@ public class NetworkUtils {
      * HTTP Read timeout in milliseconds.
      */
     private static final int HTTP_READ_TIMEOUT_MS = 10000;
-    /**
-     * Connection timeout in milliseconds.
-     */
-    private static final int MAX_CONNECTION_TIMEOUT_MS = 60000;
+
+    private static final CookieManager COOKIE_MANAGER = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
 
     static {
         // Configure default in-memory cookie store.
-        CookieHandler.setDefault(new CookieManager(null, CookiePolicy.ACCEPT_ALL));
+        CookieHandler.setDefault(COOKIE_MANAGER);
+    }
+
+    /**
+     * @return In-memory cookie store used by all HTTP(S) requests, to save or restore a session
+     */
+    @Nonnull
+    public static CookieStore getCookieStore() {
+        return COOKIE_MANAGER.getCookieStore();
     }
 
     /**
@@ -74,9 +90,14 @@ public class NetworkUtils {
     public static String getPageContent(final @NonNull String url, final @Nullable String versionString) throws IOException {
 
         // HTTP(S) Connect.
-        HttpURLConnection httpConnection = post(url, versionString);
+        val startNanos = System.nanoTime();
+        try {
+            HttpURLConnection httpConnection = post(url, versionString);
 
-        return toPageResponse(httpConnection);
+            return toPageResponse(httpConnection);
+        } finally {
+            recordPortalRequest(url, startNanos);
+        }
     }
 
     /**
@@ -93,7 +114,12 @@ public class NetworkUtils {
                                             final @Nonnull @NonNull Map<String, String> parameters,
                                             final @Nullable String versionString) throws IOException {
 
-        return toPageResponse(post(url, createPostBody(parameters), versionString));
+        val startNanos = System.nanoTime();
+        try {
+            return toPageResponse(post(url, createPostBody(parameters), versionString));
+        } finally {
+            recordPortalRequest(url, startNanos);
+        }
     }
 
     /**
@@ -112,10 +138,16 @@ public class NetworkUtils {
                                                  final @Nullable String versionString) throws IOException {
 
         byte[] postData = json.getBytes(StandardCharsets.UTF_8);
+        val startNanos = System.nanoTime();
         HttpURLConnection httpConnection = post(url, postData, versionString);
 
         // Get raw page contents.
-        final String content = toPageResponse(httpConnection);
+        final String content;
+        try {
+            content = toPageResponse(httpConnection);
+        } finally {
+            recordPortalRequest(url, startNanos);
+        }
 
         // Return both contents and headers.
         return PageContent.builder()
@@ -124,34 +156,76 @@ public class NetworkUtils {
                 .build();
     }
 
+    /**
+     * Record duration of a request, by endpoint.
+     */
+    private static void recordPortalRequest(@Nonnull final String url, final long startNanos) {
+        MetricsRegistry.getDefault()
+            .histogram(MetricsRegistry.PORTAL_REQUEST_DURATION, MetricsRegistry.LABEL_ENDPOINT, RequestMetrics.getEndpoint(URI.create(url)))
+            .recordSince(startNanos);
+    }
+
     /**
      * Get system Hostname, IP - and MAC address.
+     * <p/>
+     * The identity found is stored in the state directory; on the next run it is used without searching the network interfaces
+     * again, as long as its interface is still up with the same IP - and MAC address.
      *
      * @return DeviceInfo Hostname, IP - and MAC address
      * @throws IllegalStateException When no network interfaces found
      * @throws SocketException       When not able to get network interface
+     * @see LocalIdentityStore
      */
     public static DeviceInfo getDeviceInfo() throws IllegalStateException, SocketException {
+        LOCAL_HOSTS_LOCK.lock();
+        try {
+            val identityStore = LocalIdentityStore.getDefault();
+            val cached = identityStore.get();
+            if (cached != null && isCurrent(cached)) {
+                log.fine("Use local identity " + cached.getInterfaceName() + " " + cached.getIp().getHostAddress() + ".");
+                return cached.toDeviceInfo();
+            }
 
-        // Search for network interfaces.
-        final List<InetAddress> localHosts = getLocalHosts();
-        if (localHosts.isEmpty()) {
-            throw new IllegalStateException("Cannot determine local IP address.");
-        }
+            // Search for network interfaces.
+            final List<InetAddress> localHosts = getLocalHosts();
+            if (localHosts.isEmpty()) {
+                throw new IllegalStateException("Cannot determine local IP address.");
+            }
 
-        // Get the first one (in case of eth0 and eth1, get eth0).
-        InetAddress inetAddress = localHosts.get(0);
-        NetworkInterface network = NetworkInterface.getByInetAddress(inetAddress);
-        byte[] mac = network.getHardwareAddress();
+            // Get the first one (in case of eth0 and eth1, get eth0).
+            InetAddress inetAddress = localHosts.get(0);
+            NetworkInterface network = NetworkInterface.getByInetAddress(inetAddress);
+            byte[] mac = network.getHardwareAddress();
 
-        // Convert mac address to human readable string.
-        String macAddress = formatHardwareAddress(mac);
+            // Convert mac address to human readable string.
+            String macAddress = formatHardwareAddress(mac);
 
-        return DeviceInfo.builder()
+            val identity = LocalIdentity.builder()
+                .interfaceName(network.getName())
                 .name(inetAddress.getHostName())
                 .ip(inetAddress)
                 .mac(macAddress)
+                .timestamp(System.currentTimeMillis())
                 .build();
+            if (!inetAddress.isLoopbackAddress()) {
+                identityStore.put(identity);
+            }
+            return identity.toDeviceInfo();
+        } finally {
+            LOCAL_HOSTS_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Cheap check, without network traffic, whether an identity found earlier still belongs to this computer.
+     */
+    private static boolean isCurrent(@Nonnull final LocalIdentity identity) throws SocketException {
+        val iface = NetworkInterface.getByName(identity.getInterfaceName());
+        if (iface == null || !iface.isUp() || !Collections.list(iface.getInetAddresses()).contains(identity.getIp())) {
+            return false;
+        }
+        val mac = iface.getHardwareAddress();
+        return mac != null && formatHardwareAddress(mac).equals(identity.getMac());
     }
 
     /**
@@ -181,12 +255,23 @@ public class NetworkUtils {
      *
      * @return List of ip addresses found
      */
-    public static synchronized List<InetAddress> getLocalHosts() {
+    public static List<InetAddress> getLocalHosts() {
+        LOCAL_HOSTS_LOCK.lock();
+        try {
+            return findLocalHosts();
+        } finally {
+            LOCAL_HOSTS_LOCK.unlock();
+        }
+    }
+
+    @Nonnull
+    private static List<InetAddress> findLocalHosts() {
 
         val localHost = new ArrayList<InetAddress>();
 
         try {
             val addresses = new HashMap<String, InetAddress>();
+            val candidates = new ArrayList<Entry<String, InetAddress>>();
             val iFaces = NetworkInterface.getNetworkInterfaces();
             while (iFaces.hasMoreElements()) {
 
@@ -215,17 +300,18 @@ public class NetworkUtils {
                             continue;
                         }
 
-                        try {
-                            if (ip.isReachable(TIMEOUT_REACHABLE_MS)) {
-                                addresses.put(ifaceName, ip);
-                            }
-                        } catch (IOException e) {
-                            log.fine("Skip unreachable IP: " + ip);
-                        }
+                        candidates.add(new AbstractMap.SimpleImmutableEntry<>(ifaceName, ip));
                     }
                 }
             }
 
+            if (candidates.size() == 1) {
+                // Nothing to choose from.
+                addresses.put(candidates.get(0).getKey(), candidates.get(0).getValue());
+            } else if (candidates.size() > 1) {
+                probeReachable(candidates, addresses);
+            }
+
             // Cache addresses found.
             if (addresses.size() == 1) {
                 localHost.addAll(addresses.values());
@@ -262,57 +348,36 @@ public class NetworkUtils {
     }
 
     /**
-     * Receive UDP broadcast message.
+     * Check reachability of all candidate addresses in parallel; addresses not checked before the deadline are skipped.
      *
-     * @param port              UDP port to listen on
-     * @param maxTimeoutSeconds Max number of seconds to wait for message
-     * @param messageTag        Message identification tag
-     * @return Message found or null in case no message
-     * @throws IOException in case of technical error
+     * @param candidates Interface names with their address
+     * @param addresses  Receives the reachable addresses by interface name
      */
-    @Nullable
-    public static UdpMessage getUdpBroadcastMessage(final int port, final int maxTimeoutSeconds, final String messageTag) throws IOException {
-
-        if (maxTimeoutSeconds < 0) {
-            throw new IllegalArgumentException("'maxTimeoutSeconds' value cannot be smaller than zero.");
+    private static void probeReachable(@Nonnull final List<Entry<String, InetAddress>> candidates,
+                                       @Nonnull final Map<String, InetAddress> addresses) {
+        val probes = new ArrayList<Callable<Boolean>>(candidates.size());
+        for (Entry<String, InetAddress> candidate : candidates) {
+            probes.add(() -> candidate.getValue().isReachable(TIMEOUT_REACHABLE_MS));
         }
 
-        DatagramSocket datagramSocket = null;
-        long endTimeMs = System.currentTimeMillis() + maxTimeoutSeconds * 1000L;
-
+        val executor = DeviceThreads.newThreadPerTaskExecutor("atag-one-probe-");
         try {
-            // Listen to all UDP packets to any interface to port 'port'.
-            datagramSocket = new DatagramSocket(port);
-            datagramSocket.setBroadcast(true);
-            datagramSocket.setSoTimeout(MAX_CONNECTION_TIMEOUT_MS);
-
-            // ATAG One message size is 37 bytes and that is the only message we are interested in.
-            byte[] receiveData = new byte[37];
-
-            // Keep reading received messages until time runs out.
-            while (System.currentTimeMillis() < endTimeMs) {
-
-                val datagramPacket = new DatagramPacket(receiveData, receiveData.length);
-                datagramSocket.receive(datagramPacket);
-
-                val senderAddress = datagramPacket.getAddress();
-                val receivedMessage = new String(datagramPacket.getData(), StandardCharsets.UTF_8);
-
-                // Found message
-                if (receivedMessage.startsWith(messageTag)) {
-                    return UdpMessage.builder()
-                            .senderAddress(senderAddress)
-                            .message(receivedMessage)
-                            .build();
+            // Overall deadline; unfinished probes are cancelled.
+            val results = executor.invokeAll(probes, TIMEOUT_REACHABLE_MS + TIMEOUT_REACHABLE_MARGIN_MS, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < candidates.size(); i++) {
+                val ip = candidates.get(i).getValue();
+                try {
+                    if (results.get(i).get()) {
+                        addresses.put(candidates.get(i).getKey(), ip);
+                    }
+                } catch (CancellationException | ExecutionException e) {
+                    log.fine("Skip unreachable IP: " + ip);
                 }
             }
-            return null;
-
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
-            if (datagramSocket != null) {
-                datagramSocket.disconnect();
-                IOUtils.closeQuietly(datagramSocket);
-            }
+            executor.shutdownNow();
         }
     }
 
@@ -424,18 +489,26 @@ public class NetworkUtils {
         // https://en.wikipedia.org/wiki/List_of_HTTP_header_fields
         httpConnection.setRequestProperty(REQUEST_HEADER_ACCEPT_CHARSET, StandardCharsets.UTF_8.name());
         httpConnection.setRequestProperty(REQUEST_HEADER_ACCEPT, "*/*");
+        httpConnection.setRequestProperty(REQUEST_HEADER_USER_AGENT, getUserAgent(versionString));
         if (versionString != null) {
-            httpConnection.setRequestProperty(REQUEST_HEADER_USER_AGENT, USER_AGENT.replace("$0", versionString));
             httpConnection.setRequestProperty(REQUEST_HEADER_X_ONEAPP_VERSION, versionString);
-        } else {
-            // Version not set.
-            httpConnection.setRequestProperty(REQUEST_HEADER_USER_AGENT, USER_AGENT.replace("$0", "x"));
         }
         httpConnection.setConnectTimeout(HTTP_CONNECT_TIMEOUT_MS);
         httpConnection.setReadTimeout(HTTP_READ_TIMEOUT_MS);
         return httpConnection;
     }
 
+    /**
+     * User agent request header value.
+     *
+     * @param versionString Optional version string
+     */
+    @Nonnull
+    protected static String getUserAgent(final @Nullable String versionString) {
+        // Version not set.
+        return USER_AGENT.replace("$0", versionString != null ? versionString : "x");
+    }
+
     /**
      * Extract page error message from HTML.
      *
@@ -0,0 +1,153 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.Pairing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Accepted pairings, kept in a properties file so a login does not need to pair again.
+ * <p/>
+ * Errors reading or writing the file are logged and otherwise ignored; without the file, every login pairs as before.
+ */
+@Log
+public class PairingStore {
+
+    /**
+     * Access granted.
+     */
+    public static final int ACC_STATUS_ACCEPTED = 2;
+
+    private static final String FILE_NAME = "pairings.properties";
+
+    private static final String MAC = ".mac";
+    private static final String ACC_STATUS = ".accStatus";
+    private static final String TIMESTAMP = ".timestamp";
+
+    /**
+     * Lock per file, shared by all stores of that file; every connector has a store of its own.
+     */
+    private static final ConcurrentMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+
+    /**
+     * Guards the file.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * @param file Properties file, created on first store
+     */
+    public PairingStore(@Nonnull @NonNull final Path file) {
+        this.file = file;
+        this.lock = LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), path -> new ReentrantLock());
+    }
+
+    /**
+     * @return Store in the state directory
+     * @see StateUtils#getStateDirectory()
+     */
+    @Nonnull
+    public static PairingStore getDefault() {
+        return new PairingStore(StateUtils.getStateDirectory().resolve(FILE_NAME));
+    }
+
+    /**
+     * Get pairing that can be used instead of pairing again.
+     *
+     * @param device Thermostat device id or address
+     * @param mac    MAC address of this computer
+     * @return Accepted pairing or null when not paired with this MAC address
+     */
+    @Nullable
+    public Pairing getAccepted(@Nonnull @NonNull final String device, @Nonnull @NonNull final String mac) {
+        lock.lock();
+        try {
+            val properties = load();
+            val storedMac = properties.getProperty(device + MAC);
+            val accStatus = parseLong(properties.getProperty(device + ACC_STATUS));
+            if (!mac.equals(storedMac) || accStatus != ACC_STATUS_ACCEPTED) {
+                return null;
+            }
+            return Pairing.builder()
+                .device(device)
+                .mac(storedMac)
+                .accStatus(ACC_STATUS_ACCEPTED)
+                .timestamp(parseLong(properties.getProperty(device + TIMESTAMP)))
+                .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Store pairing, replaces an earlier pairing with the same device.
+     */
+    public void put(@Nonnull @NonNull final Pairing pairing) {
+        lock.lock();
+        try {
+            val properties = load();
+            properties.setProperty(pairing.getDevice() + MAC, pairing.getMac());
+            properties.setProperty(pairing.getDevice() + ACC_STATUS, String.valueOf(pairing.getAccStatus()));
+            properties.setProperty(pairing.getDevice() + TIMESTAMP, String.valueOf(pairing.getTimestamp()));
+            store(properties);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget pairing, for example after the thermostat no longer accepts it.
+     */
+    public void remove(@Nonnull @NonNull final String device) {
+        lock.lock();
+        try {
+            val properties = load();
+            val removed = properties.remove(device + MAC);
+            properties.remove(device + ACC_STATUS);
+            properties.remove(device + TIMESTAMP);
+            if (removed != null) {
+                store(properties);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nonnull
+    private Properties load() {
+        try {
+            return StateUtils.loadProperties(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot read pairings from " + file + ": " + e.getMessage(), e);
+            return new Properties();
+        }
+    }
+
+    private void store(final Properties properties) {
+        try {
+            StateUtils.storeProperties(file, properties, "ATAG One pairings");
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot store pairings in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long parseLong(@Nullable final String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
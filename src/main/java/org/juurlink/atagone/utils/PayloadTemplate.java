@@ -0,0 +1,173 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request payload of constant text with a few numbers in between, UTF-8 encoded once. Rendering copies the constant parts and
+ * writes the numbers in place, into one new array, without building strings.
+ * <p/>
+ * For example:
+ * <pre>
+ * PayloadTemplate template = PayloadTemplate.builder()
+ *     .text("{\"seqnr\":").number(0)
+ *     .text(",\"ch_mode_temp\":").number(1)
+ *     .text("}")
+ *     .build();
+ * template.render(12, 20.5); // {"seqnr":12,"ch_mode_temp":20.5}
+ * </pre>
+ */
+public final class PayloadTemplate {
+
+    /**
+     * Max number of digits of a long, sign included.
+     */
+    private static final int MAX_NUMBER_LENGTH = 20;
+    private static final int MAX_FRACTION_DIGITS = 6;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    /**
+     * Constant parts; one more than there are numbers.
+     */
+    private final byte[][] parts;
+    private final int[] fractionDigits;
+    private final int constantLength;
+
+    private PayloadTemplate(final byte[][] parts, final int[] fractionDigits) {
+        this.parts = parts;
+        this.fractionDigits = fractionDigits;
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        this.constantLength = length;
+    }
+
+    /**
+     * Start building a template.
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Number of numbers to render
+     */
+    public int getNumberCount() {
+        return fractionDigits.length;
+    }
+
+    /**
+     * Render the payload.
+     *
+     * @param values Numbers, in template sequence; rounded half up to the fraction digits of the number
+     * @return UTF-8 encoded payload
+     * @throws IllegalArgumentException When the number of values does not match the template
+     */
+    @Nonnull
+    public ByteSequence render(@Nonnull @NonNull final double... values) {
+        if (values.length != fractionDigits.length) {
+            throw new IllegalArgumentException("Expected " + fractionDigits.length + " values, got " + values.length);
+        }
+        val result = new byte[constantLength + values.length * (MAX_NUMBER_LENGTH + 1 + MAX_FRACTION_DIGITS)];
+        int position = 0;
+        for (int i = 0; i < values.length; i++) {
+            System.arraycopy(parts[i], 0, result, position, parts[i].length);
+            position += parts[i].length;
+            position = writeNumber(result, position, values[i], fractionDigits[i]);
+        }
+        val last = parts[values.length];
+        System.arraycopy(last, 0, result, position, last.length);
+        position += last.length;
+        return new ByteSequence(result, 0, position);
+    }
+
+    /**
+     * Write number with exactly the given number of fraction digits, like 20.5 or 9.
+     *
+     * @return Position after the number
+     */
+    private static int writeNumber(final byte[] target, final int start, final double value, final int fractionDigits) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+        long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[fractionDigits]);
+        int position = start;
+        if (value < 0 && scaled != 0) {
+            target[position++] = '-';
+        }
+
+        // Digits from right to left, at the end of the free space; then moved into place.
+        val end = target.length;
+        int digitStart = end;
+        int digits = 0;
+        do {
+            if (digits == fractionDigits && fractionDigits > 0) {
+                target[--digitStart] = '.';
+            }
+            target[--digitStart] = (byte) ('0' + scaled % 10);
+            scaled /= 10;
+            digits++;
+        } while (scaled != 0 || digits <= fractionDigits);
+
+        val length = end - digitStart;
+        System.arraycopy(target, digitStart, target, position, length);
+        return position + length;
+    }
+
+    /**
+     * Collects the parts of a template.
+     */
+    public static final class Builder {
+        private final List<byte[]> parts = new ArrayList<>();
+        private final List<Integer> fractionDigits = new ArrayList<>();
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+
+        private Builder() {
+        }
+
+        /**
+         * Add constant text.
+         */
+        @Nonnull
+        public Builder text(@Nonnull @NonNull final String constant) {
+            val bytes = constant.getBytes(StandardCharsets.UTF_8);
+            text.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /**
+         * Add a number.
+         *
+         * @param digits Number of fraction digits, 0 for integers
+         */
+        @Nonnull
+        public Builder number(final int digits) {
+            if (digits < 0 || digits > MAX_FRACTION_DIGITS) {
+                throw new IllegalArgumentException("Fraction digits not between 0 and " + MAX_FRACTION_DIGITS + ": " + digits);
+            }
+            parts.add(text.toByteArray());
+            text.reset();
+            fractionDigits.add(digits);
+            return this;
+        }
+
+        @Nonnull
+        public PayloadTemplate build() {
+            val allParts = new ArrayList<byte[]>(parts);
+            allParts.add(text.toByteArray());
+            val digits = new int[fractionDigits.size()];
+            for (int i = 0; i < digits.length; i++) {
+                digits[i] = fractionDigits.get(i);
+            }
+            return new PayloadTemplate(allParts.toArray(new byte[0][]), digits);
+        }
+    }
+}
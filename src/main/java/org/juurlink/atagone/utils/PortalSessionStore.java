@@ -0,0 +1,162 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+import org.juurlink.atagone.domain.PortalSession;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Logged in portal session, kept in a properties file so a run does not need to log in again.
+ * <p/>
+ * The file holds the session cookie; it is only readable by its owner, see {@link StateUtils#storeProperties}. Errors reading or
+ * writing the file are logged and otherwise ignored; without the file, every run logs in as before.
+ */
+@Log
+public class PortalSessionStore {
+
+    private static final String FILE_NAME = "portal-session.properties";
+
+    private static final String EMAIL = "email";
+    private static final String DEVICE_ID = "deviceId";
+    private static final String TOKEN = "requestVerificationToken";
+    private static final String EXPIRES = "expires";
+    private static final String COOKIE = "cookie.";
+    private static final String NAME = ".name";
+    private static final String VALUE = ".value";
+    private static final String DOMAIN = ".domain";
+    private static final String PATH = ".path";
+    private static final String SECURE = ".secure";
+    private static final String HTTP_ONLY = ".httpOnly";
+
+    private final Path file;
+
+    /**
+     * @param file Properties file, created on first store
+     */
+    public PortalSessionStore(@Nonnull @NonNull final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return Store in the state directory
+     * @see StateUtils#getStateDirectory()
+     */
+    @Nonnull
+    public static PortalSessionStore getDefault() {
+        return new PortalSessionStore(StateUtils.getStateDirectory().resolve(FILE_NAME));
+    }
+
+    /**
+     * Get session that can be used instead of logging in again.
+     *
+     * @param emailAddress Account to get the session of
+     * @param now          Current time in milliseconds since epoch
+     * @return Session or null when there is no session of this account, or it has expired
+     */
+    @Nullable
+    public PortalSession get(@Nonnull @NonNull final String emailAddress, final long now) {
+        final Properties properties;
+        try {
+            properties = StateUtils.loadProperties(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot read portal session from " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+
+        val deviceId = properties.getProperty(DEVICE_ID);
+        val expires = parseLong(properties.getProperty(EXPIRES));
+        if (!emailAddress.equalsIgnoreCase(properties.getProperty(EMAIL, "")) || StringUtils.isBlank(deviceId) || expires <= now) {
+            return null;
+        }
+
+        val session = PortalSession.builder()
+            .emailAddress(emailAddress)
+            .deviceId(deviceId)
+            .requestVerificationToken(properties.getProperty(TOKEN))
+            .expires(expires);
+        for (int i = 0; properties.containsKey(COOKIE + i + NAME); i++) {
+            val prefix = COOKIE + i;
+            val cookie = new HttpCookie(properties.getProperty(prefix + NAME), properties.getProperty(prefix + VALUE, ""));
+            cookie.setDomain(properties.getProperty(prefix + DOMAIN));
+            cookie.setPath(properties.getProperty(prefix + PATH));
+            cookie.setSecure(Boolean.parseBoolean(properties.getProperty(prefix + SECURE)));
+            cookie.setHttpOnly(Boolean.parseBoolean(properties.getProperty(prefix + HTTP_ONLY)));
+            // Remaining lifetime; session cookies live as long as the session.
+            val cookieExpires = parseLong(properties.getProperty(prefix + EXPIRES));
+            if (cookieExpires > 0) {
+                if (cookieExpires <= now) {
+                    continue;
+                }
+                cookie.setMaxAge((cookieExpires - now) / 1000);
+            }
+            session.cookie(cookie);
+        }
+        return session.build();
+    }
+
+    /**
+     * Store session, replaces the earlier one.
+     *
+     * @param session Session to store
+     * @param now     Current time in milliseconds since epoch, to convert the cookie max age to an expiry time
+     */
+    public void put(@Nonnull @NonNull final PortalSession session, final long now) {
+        val properties = new Properties();
+        properties.setProperty(EMAIL, session.getEmailAddress());
+        properties.setProperty(DEVICE_ID, session.getDeviceId());
+        if (session.getRequestVerificationToken() != null) {
+            properties.setProperty(TOKEN, session.getRequestVerificationToken());
+        }
+        properties.setProperty(EXPIRES, String.valueOf(session.getExpires()));
+
+        int i = 0;
+        for (HttpCookie cookie : session.getCookies()) {
+            val prefix = COOKIE + i++;
+            properties.setProperty(prefix + NAME, cookie.getName());
+            properties.setProperty(prefix + VALUE, StringUtils.defaultString(cookie.getValue()));
+            if (cookie.getDomain() != null) {
+                properties.setProperty(prefix + DOMAIN, cookie.getDomain());
+            }
+            if (cookie.getPath() != null) {
+                properties.setProperty(prefix + PATH, cookie.getPath());
+            }
+            properties.setProperty(prefix + SECURE, String.valueOf(cookie.getSecure()));
+            properties.setProperty(prefix + HTTP_ONLY, String.valueOf(cookie.isHttpOnly()));
+            properties.setProperty(prefix + EXPIRES, String.valueOf(cookie.getMaxAge() >= 0 ? now + cookie.getMaxAge() * 1000 : -1));
+        }
+
+        try {
+            StateUtils.storeProperties(file, properties, "ATAG One portal session");
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot store portal session in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Forget session, for example after the portal no longer accepts it.
+     */
+    public void remove() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot remove portal session " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long parseLong(@Nullable final String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.net.URI;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.juurlink.atagone.utils.MetricsRegistry.*;
+
+/**
+ * Metrics of the requests to one endpoint of one thermostat.
+ */
+@Value
+public class RequestMetrics {
+
+    @Nonnull
+    LatencyHistogram duration;
+    @Nonnull
+    LongAdder retries;
+    @Nonnull
+    LongAdder emptyResponses;
+    @Nonnull
+    LongAdder failures;
+    /**
+     * Time to parse the responses of the endpoint, of all devices.
+     */
+    @Nonnull
+    LatencyHistogram parseDuration;
+
+    /**
+     * @param registry Registry to take the metrics from
+     * @param url      Request URL; its host is the device and its path the endpoint
+     */
+    @Nonnull
+    public static RequestMetrics of(@Nonnull @NonNull final MetricsRegistry registry, @Nonnull @NonNull final String url) {
+        val uri = URI.create(url);
+        val device = StringUtils.defaultString(uri.getHost());
+        val endpoint = getEndpoint(uri);
+        return new RequestMetrics(
+            registry.histogram(REQUEST_DURATION, LABEL_DEVICE, device, LABEL_ENDPOINT, endpoint),
+            registry.counter(REQUEST_RETRIES, LABEL_DEVICE, device, LABEL_ENDPOINT, endpoint),
+            registry.counter(EMPTY_RESPONSES, LABEL_DEVICE, device, LABEL_ENDPOINT, endpoint),
+            registry.counter(REQUEST_FAILURES, LABEL_DEVICE, device, LABEL_ENDPOINT, endpoint),
+            registry.histogram(PARSE_DURATION, LABEL_ENDPOINT, endpoint));
+    }
+
+    /**
+     * @return Path of the URI without leading slash and query, for example "retrieve". A last path part with digits is a
+     * device id and left out, to keep the number of endpoints small.
+     */
+    @Nonnull
+    public static String getEndpoint(@Nonnull @NonNull final URI uri) {
+        String path = StringUtils.defaultString(uri.getPath());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        val lastSlash = path.lastIndexOf('/');
+        if (lastSlash > 0) {
+            for (int i = lastSlash + 1; i < path.length(); i++) {
+                if (Character.isDigit(path.charAt(i))) {
+                    path = path.substring(0, lastSlash);
+                    break;
+                }
+            }
+        }
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+}
@@ -0,0 +1,150 @@
+package org.juurlink.atagone.utils;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.Value;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+/**
+ * When and how long to wait before a failed request to the thermostat is sent again.
+ * <p/>
+ * Every kind of failure has its own rule. The delay grows exponentially per retry of that kind and is shortened by a random
+ * part, so pollers that fail at the same moment do not retry at the same moment. No retry is started after the deadline.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RetryPolicy {
+
+    /**
+     * Kind of failure.
+     */
+    public enum Failure {
+        /**
+         * Thermostat answered with an empty body; it is busy.
+         */
+        EMPTY_RESPONSE,
+        /**
+         * Connection closed or reset by the thermostat.
+         */
+        CONNECTION_RESET,
+        /**
+         * Cannot connect to the thermostat.
+         */
+        CONNECTION_REFUSED,
+        /**
+         * No answer in time.
+         */
+        TIMEOUT,
+        /**
+         * Any other IO error, including error status codes.
+         */
+        IO_ERROR;
+
+        @Nonnull
+        public static Failure of(@Nonnull @NonNull final IOException e) {
+            if (e instanceof SocketTimeoutException) {
+                return TIMEOUT;
+            }
+            if (e instanceof ConnectException || e instanceof NoRouteToHostException) {
+                return CONNECTION_REFUSED;
+            }
+            if (e instanceof EOFException || e instanceof SocketException) {
+                return CONNECTION_RESET;
+            }
+            return IO_ERROR;
+        }
+    }
+
+    /**
+     * Retries for one kind of failure.
+     */
+    @Value
+    @Builder
+    public static class Rule {
+        /**
+         * Max number of retries after this kind of failure.
+         */
+        int maxRetries;
+        /**
+         * Delay before the first retry.
+         */
+        long initialDelayMs;
+        /**
+         * Upper bound of the delay.
+         */
+        long maxDelayMs;
+    }
+
+    /**
+     * Max total time of all attempts; no retry starts after it.
+     */
+    long deadlineMs;
+
+    /**
+     * Factor the delay grows with on every retry.
+     */
+    double multiplier;
+
+    /**
+     * Max part of the delay taken off at random, between 0 and 1.
+     */
+    double jitter;
+
+    /**
+     * Rules per kind of failure; a failure without a rule is not retried.
+     */
+    @Nonnull
+    @Singular
+    Map<Failure, Rule> rules;
+
+    /**
+     * Policy for the local thermostat: retry an empty response or a reset connection quickly, back off when the thermostat
+     * cannot be reached, give up after 20 seconds.
+     */
+    @Nonnull
+    public static RetryPolicy defaults() {
+        return RetryPolicy.builder()
+            .deadlineMs(20000)
+            .multiplier(2)
+            .jitter(0.5)
+            .rule(Failure.EMPTY_RESPONSE, Rule.builder().maxRetries(6).initialDelayMs(250).maxDelayMs(2000).build())
+            .rule(Failure.CONNECTION_RESET, Rule.builder().maxRetries(3).initialDelayMs(50).maxDelayMs(1000).build())
+            .rule(Failure.CONNECTION_REFUSED, Rule.builder().maxRetries(3).initialDelayMs(1000).maxDelayMs(4000).build())
+            .rule(Failure.TIMEOUT, Rule.builder().maxRetries(2).initialDelayMs(500).maxDelayMs(2000).build())
+            .rule(Failure.IO_ERROR, Rule.builder().maxRetries(3).initialDelayMs(250).maxDelayMs(2000).build())
+            .build();
+    }
+
+    /**
+     * Get delay before the next attempt.
+     *
+     * @param failure   Kind of the last failure
+     * @param retries   Number of retries already done after this kind of failure
+     * @param elapsedMs Time since the first attempt started
+     * @param random    Random value between 0 (inclusive) and 1 (exclusive), takes jitter off the delay
+     * @return Delay in milliseconds, or -1 to give up
+     */
+    public long getDelayMs(@Nonnull @NonNull final Failure failure, final int retries, final long elapsedMs, final double random) {
+        val rule = rules.get(failure);
+        if (rule == null || retries >= rule.getMaxRetries()) {
+            return -1;
+        }
+
+        val backoff = Math.min(rule.getInitialDelayMs() * Math.pow(multiplier, retries), rule.getMaxDelayMs());
+        val delay = Math.round(backoff * (1 - jitter * random));
+        if (elapsedMs + delay >= deadlineMs) {
+            return -1;
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,32 @@
+package org.juurlink.atagone.utils;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * Retry counters of a connector.
+ */
+@Value
+@Builder
+public class RetryStatistics {
+    /**
+     * Number of requests executed.
+     */
+    long requests;
+    /**
+     * Number of times a request was sent again.
+     */
+    long retries;
+    /**
+     * Number of requests that failed after the retries.
+     */
+    long gaveUp;
+    /**
+     * Number of failed attempts per kind of failure.
+     */
+    @Singular
+    Map<RetryPolicy.Failure, Long> failures;
+}
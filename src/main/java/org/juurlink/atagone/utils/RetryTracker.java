@@ -0,0 +1,110 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Retry decisions of one connector: applies the retry policy to the failed attempts of its requests and counts them. Used by
+ * the blocking and the non-blocking connector, which only differ in how they wait for the next attempt.
+ */
+@Log
+public class RetryTracker {
+
+    private final RetryPolicy retryPolicy;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong gaveUp = new AtomicLong();
+    private final AtomicLongArray failures = new AtomicLongArray(RetryPolicy.Failure.values().length);
+
+    /**
+     * @param retryPolicy When to send a failed request again
+     */
+    public RetryTracker(@Nonnull @NonNull final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Start a request.
+     *
+     * @param metrics Metrics of the endpoint
+     * @return Attempts of the request
+     */
+    @Nonnull
+    public Attempts start(@Nonnull @NonNull final RequestMetrics metrics) {
+        requests.incrementAndGet();
+        return new Attempts(metrics);
+    }
+
+    /**
+     * @return Retry counters
+     */
+    @Nonnull
+    public RetryStatistics getStatistics() {
+        val statistics = RetryStatistics.builder()
+            .requests(requests.get())
+            .retries(retries.get())
+            .gaveUp(gaveUp.get());
+        for (RetryPolicy.Failure failure : RetryPolicy.Failure.values()) {
+            statistics.failure(failure, failures.get(failure.ordinal()));
+        }
+        return statistics.build();
+    }
+
+    /**
+     * Attempts of one request.
+     */
+    public class Attempts {
+        private final RequestMetrics metrics;
+        private final long startTimeMs = System.currentTimeMillis();
+        private final int[] retriesPerFailure = new int[RetryPolicy.Failure.values().length];
+
+        private Attempts(final RequestMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Nonnull
+        public RequestMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Count a failed attempt and decide about the next one.
+         *
+         * @param error Error of the attempt, or null when the response was empty
+         * @return Delay before the next attempt in milliseconds, or -1 to give up
+         */
+        public long failed(@Nullable final IOException error) {
+            final RetryPolicy.Failure failure;
+            if (error != null) {
+                failure = RetryPolicy.Failure.of(error);
+            } else {
+                // Sometimes the response is empty.
+                failure = RetryPolicy.Failure.EMPTY_RESPONSE;
+                metrics.getEmptyResponses().increment();
+            }
+            failures.incrementAndGet(failure.ordinal());
+
+            val delayMs = retryPolicy.getDelayMs(failure, retriesPerFailure[failure.ordinal()]++,
+                System.currentTimeMillis() - startTimeMs, ThreadLocalRandom.current().nextDouble());
+            if (delayMs < 0) {
+                gaveUp.incrementAndGet();
+                metrics.getFailures().increment();
+                return -1;
+            }
+
+            log.fine((error != null ? error.toString() : "Empty response") + ", try again in " + delayMs + " ms.");
+            retries.incrementAndGet();
+            metrics.getRetries().increment();
+            return delayMs;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Small state files, kept between runs.
+ */
+@UtilityClass
+public class StateUtils {
+
+    /**
+     * System property to override the state directory.
+     */
+    public static final String STATE_DIRECTORY_PROPERTY = "atagone.stateDirectory";
+
+    private static final String STATE_DIRECTORY_NAME = ".atag-one";
+
+    /**
+     * @return Directory for state files; ~/.atag-one unless overridden by system property {@value #STATE_DIRECTORY_PROPERTY}
+     */
+    @Nonnull
+    public static Path getStateDirectory() {
+        val override = System.getProperty(STATE_DIRECTORY_PROPERTY);
+        if (StringUtils.isNotBlank(override)) {
+            return Paths.get(override);
+        }
+        return Paths.get(System.getProperty("user.home"), STATE_DIRECTORY_NAME);
+    }
+
+    /**
+     * Load properties file.
+     *
+     * @return Properties, empty when the file does not exist
+     */
+    @Nonnull
+    public static Properties loadProperties(@Nonnull @NonNull final Path file) throws IOException {
+        val properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            // Nothing stored yet.
+        }
+        return properties;
+    }
+
+    /**
+     * Store properties file. The file is written next to the target and then moved in place, so a reader never sees a
+     * half written file.
+     */
+    public static void storeProperties(@Nonnull @NonNull final Path file,
+                                       @Nonnull @NonNull final Properties properties,
+                                       @Nonnull @NonNull final String comment) throws IOException {
+        val directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        val tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                properties.store(out, comment);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
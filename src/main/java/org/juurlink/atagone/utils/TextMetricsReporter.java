@@ -0,0 +1,62 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.annotation.Nonnull;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Print the metrics as text, one metric per line; durations in milliseconds. For example:
+ * <pre>
+ * atag_one_request_duration{device="10.0.1.12",endpoint="retrieve"} count=12 mean=15.2ms p50=14.8ms p90=20.1ms p99=35.0ms max=35.2ms
+ * atag_one_request_retries_total{device="10.0.1.12",endpoint="retrieve"} 1
+ * </pre>
+ */
+public class TextMetricsReporter implements MetricsReporter {
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final MetricsRegistry registry;
+    private final PrintStream out;
+
+    /**
+     * @param registry Metrics to print
+     * @param out      Stream to print to
+     */
+    public TextMetricsReporter(@Nonnull @NonNull final MetricsRegistry registry, @Nonnull @NonNull final PrintStream out) {
+        this.registry = registry;
+        this.out = out;
+    }
+
+    @Override
+    public void report() {
+        out.print(format(registry));
+        out.flush();
+    }
+
+    /**
+     * @return All metrics as text, empty when there are no metrics
+     */
+    @Nonnull
+    public static String format(@Nonnull @NonNull final MetricsRegistry registry) {
+        val result = new StringBuilder();
+        for (val histogram : registry.getHistograms().entrySet()) {
+            val values = histogram.getValue();
+            result.append(histogram.getKey())
+                .append(String.format(Locale.US, " count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                    values.getCount(),
+                    values.getMean() / NANOS_PER_MILLI,
+                    values.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    values.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                    values.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    values.getMax() / NANOS_PER_MILLI))
+                .append(System.lineSeparator());
+        }
+        for (val counter : registry.getCounters().entrySet()) {
+            result.append(counter.getKey()).append(' ').append(counter.getValue()).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package org.juurlink.atagone.utils;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads that each serve one thermostat.
+ * <p/>
+ * Java 21 version; virtual threads. A connector blocked on its thermostat releases its carrier thread, so thousands of
+ * blocking connectors share a few platform threads.
+ */
+@UtilityClass
+public class DeviceThreads {
+
+    /**
+     * @return True when {@link #newThreadPerTaskExecutor(String)} starts virtual threads
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Create executor that starts a new virtual thread for every task.
+     *
+     * @param namePrefix Thread name prefix, followed by a sequence number
+     */
+    @Nonnull
+    public static ExecutorService newThreadPerTaskExecutor(@Nonnull @NonNull final String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
@@ -0,0 +1,183 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.juurlink.atagone.domain.DiagnosticField.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.Configuration;
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.DeviceInfo;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.exceptions.AccessDeniedException;
+import org.juurlink.atagone.utils.AsyncHttpClient;
+import org.juurlink.atagone.utils.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class AsyncAtagOneConnectorTest {
+
+	private static final String REPLY = "{\"retrieve_reply\":{\"seqnr\":0,\"status\":{\"device_id\":\"6808-1401-3109_15-30-001-123\"}," +
+		"\"report\":{\"room_temp\":20.6,\"boiler_status\":770},\"acc_status\":2}}";
+
+	private HttpServer server;
+	private AsyncHttpClient client;
+	private final AtomicInteger emptyResponses = new AtomicInteger();
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private volatile String reply = REPLY;
+	private volatile String updateReply = REPLY;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			// Busy thermostat; first answer of every request empty.
+			String text = "/update".equals(exchange.getRequestURI().getPath()) ? updateReply : reply;
+			byte[] body = emptyResponses.getAndDecrement() > 0 ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("X-One-Ver", "1.2.3");
+			exchange.sendResponseHeaders(200, body.length > 0 ? body.length : -1);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		client = new AsyncHttpClient(1);
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop(0);
+	}
+
+	@Test(timeout = 10000)
+	public void testDiagnosticsAfterEmptyResponse() throws Exception {
+		emptyResponses.set(1);
+		AsyncAtagOneConnector connector = createConnector();
+		connector.loginAsync().get();
+
+		Diagnostics diagnostics = connector.getDiagnosticsAsync(ROOM_TEMPERATURE, FLAME_STATUS, ATAG_ONE_VERSION).get();
+		assertEquals(20.6, diagnostics.getDouble(ROOM_TEMPERATURE), 0.001);
+		assertFalse(diagnostics.getBoolean(FLAME_STATUS));
+		assertEquals("1.2.3", diagnostics.getText(ATAG_ONE_VERSION));
+
+		assertEquals(2, requests.size());
+		assertEquals(1, connector.getRetryStatistics().getRetries());
+		assertEquals("6808-1401-3109_15-30-001-123", connector.getSelectedDevice().getDeviceId());
+	}
+
+	@Test(timeout = 10000)
+	public void testSetTemperatureRoomTemperatureFromReply() throws Exception {
+		AsyncAtagOneConnector connector = createConnector();
+		connector.loginAsync().get();
+
+		assertEquals(new BigDecimal("20.6"), connector.setTemperatureAsync(new BigDecimal("20.5")).get());
+		assertEquals(1, requests.size());
+		assertEquals("/update", requests.get(0));
+		assertEquals(REPLY, connector.dumpAsync().get());
+	}
+
+	@Test(timeout = 10000)
+	public void testSetTemperatureReadsRoomTemperature() throws Exception {
+		updateReply = "{\"update_reply\":{\"seqnr\":0,\"status\":{\"device_id\":\"6808-1401-3109_15-30-001-123\"},\"acc_status\":2}}";
+		AsyncAtagOneConnector connector = createConnector();
+		connector.loginAsync().get();
+
+		assertEquals(new BigDecimal("20.6"), connector.setTemperatureAsync(new BigDecimal("20.5")).get());
+		assertEquals("/update", requests.get(0));
+		assertEquals("/retrieve", requests.get(1));
+	}
+
+	@Test(timeout = 10000)
+	public void testUpdateControl() throws Exception {
+		updateReply = "{\"update_reply\":{\"seqnr\":0,\"status\":{\"device_id\":\"6808-1401-3109_15-30-001-123\"},\"acc_status\":2}}";
+		AsyncAtagOneConnector connector = createConnector();
+		connector.loginAsync().get();
+
+		ControlUpdate update = ControlUpdate.builder()
+			.chModeTemp(new BigDecimal("19.4"))
+			.dhwSetpoint(new BigDecimal("55"))
+			.fireplaceDuration(3600)
+			.build();
+		assertNull(connector.updateControlAsync(update).get());
+		assertEquals(1, requests.size());
+		assertEquals("6808-1401-3109_15-30-001-123", connector.getSelectedDevice().getDeviceId());
+
+		try {
+			connector.updateControlAsync(ControlUpdate.builder().build()).get();
+			fail("IllegalArgumentException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(1, requests.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testAccessDenied() throws Exception {
+		reply = "{\"retrieve_reply\":{\"seqnr\":0,\"acc_status\":3}}";
+		AsyncAtagOneConnector connector = createConnector();
+		connector.loginAsync().get();
+		try {
+			connector.getDiagnosticsAsync().get();
+			fail("AccessDeniedException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof AccessDeniedException);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testInvalidTemperature() throws Exception {
+		AsyncAtagOneConnector connector = createConnector();
+		try {
+			connector.setTemperatureAsync(new BigDecimal("50")).get();
+			fail("IllegalArgumentException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertTrue(requests.isEmpty());
+	}
+
+	@Nonnull
+	private AsyncAtagOneConnector createConnector() throws IOException {
+		Configuration configuration = Configuration.builder()
+			.skipAuthRequest(true)
+			.retryPolicy(RetryPolicy.defaults().toBuilder()
+				.rule(RetryPolicy.Failure.EMPTY_RESPONSE, RetryPolicy.Rule.builder().maxRetries(3).initialDelayMs(10).maxDelayMs(10).build())
+				.build())
+			.build();
+		DeviceInfo computer = DeviceInfo.builder()
+			.name("computer.local")
+			.ip(InetAddress.getLoopbackAddress())
+			.mac("6C:42:98:B6:B2:90")
+			.build();
+		AtagOneInfo device = AtagOneInfo.builder().deviceAddress(InetAddress.getLoopbackAddress()).build();
+
+		return new AsyncAtagOneConnector(configuration, computer, device, client) {
+			@Nonnull
+			@Override
+			protected String getUrl(@Nonnull AtagOneInfo device, @Nonnull String path) {
+				return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+			}
+		};
+	}
+}
@@ -0,0 +1,141 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AtagOneGatewayTest {
+
+	private final AtomicInteger reads = new AtomicInteger();
+	private volatile BigDecimal targetTemperature = new BigDecimal("20.0");
+
+	private AtagOneGateway gateway;
+
+	@Before
+	public void setUp() throws Exception {
+		gateway = new AtagOneGateway(new FakeConnector(), new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 60000);
+		gateway.start();
+	}
+
+	@After
+	public void tearDown() {
+		gateway.close();
+	}
+
+	@Test
+	public void testDiagnosticsServedFromSnapshot() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			String body = request("GET", "/diagnostics", null, 200);
+			assertTrue(body, body.contains("\"roomTemperature\": 19.5"));
+		}
+		assertEquals(1, reads.get());
+	}
+
+	@Test
+	public void testDiagnosticsAsCsv() throws Exception {
+		String body = request("GET", "/diagnostics?format=csv", null, 200);
+		assertTrue(body, body.contains("19.5"));
+		assertTrue(body, !body.contains("{"));
+	}
+
+	@Test
+	public void testSetpoint() throws Exception {
+		request("GET", "/diagnostics", null, 200);
+
+		String body = request("POST", "/setpoint", "{\"temperature\":21.5}", 200);
+		assertTrue(body, body.contains("\"targetTemperature\": 21.5"));
+		assertEquals(new BigDecimal("21.5"), targetTemperature);
+
+		// Snapshot is refreshed after a setpoint change.
+		body = request("GET", "/diagnostics", null, 200);
+		assertTrue(body, body.contains("\"targetTemperature\": 21.5"));
+		assertEquals(2, reads.get());
+
+		request("POST", "/setpoint?temperature=19", null, 200);
+		assertEquals(new BigDecimal("19"), targetTemperature);
+	}
+
+	@Test
+	public void testBadRequests() throws Exception {
+		request("POST", "/setpoint", "warm", 400);
+		request("POST", "/setpoint", "{\"temperature\":40}", 400);
+		assertEquals(new BigDecimal("20.0"), targetTemperature);
+		request("POST", "/diagnostics", "", 405);
+		request("GET", "/setpoint", null, 405);
+		request("GET", "/unknown", null, 404);
+	}
+
+	@Test
+	public void testThermostatErrors() throws Exception {
+		String body = request("GET", "/dump", null, 502);
+		assertTrue(body, body.contains("No page content."));
+	}
+
+	private String request(final String method, final String path, @Nullable final String body, final int expectedStatus) throws IOException {
+		URL url = new URL("http", "127.0.0.1", gateway.getAddress().getPort(), path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod(method);
+			if (body != null) {
+				connection.setDoOutput(true);
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			assertEquals(path, expectedStatus, connection.getResponseCode());
+			InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream();
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private class FakeConnector implements AtagOneConnectorInterface {
+
+		@Override
+		public void login() {
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() {
+			reads.incrementAndGet();
+			return Diagnostics.builder(DiagnosticField.ROOM_TEMPERATURE, DiagnosticField.TARGET_TEMPERATURE)
+				.number(DiagnosticField.ROOM_TEMPERATURE, new BigDecimal("19.5"))
+				.number(DiagnosticField.TARGET_TEMPERATURE, targetTemperature)
+				.build();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			targetTemperature = temperature;
+			return new BigDecimal("19.5");
+		}
+
+		@Override
+		public String dump() {
+			throw new IllegalStateException("No page content.");
+		}
+	}
+}
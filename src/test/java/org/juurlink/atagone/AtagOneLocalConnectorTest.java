@@ -0,0 +1,122 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.juurlink.atagone.domain.DiagnosticField.*;
+
+import java.math.BigDecimal;
+
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.JSONFields;
+import org.junit.Test;
+
+public class AtagOneLocalConnectorTest {
+
+	private static final int INFO_CONTROL = 1;
+	private static final int INFO_REPORT = 8;
+
+	@Test
+	public void testSelectLayout() {
+		// Layout sequence, duplicates and fields not known locally removed.
+		assertArrayEquals(new DiagnosticField[] {DEVICE_ID, ROOM_TEMPERATURE, FLAME_STATUS},
+			AtagOneLocalConnector.selectLayout(FLAME_STATUS, ROOM_TEMPERATURE, DEVICE_ALIAS, DEVICE_ID, ROOM_TEMPERATURE));
+		assertEquals(0, AtagOneLocalConnector.selectLayout().length);
+	}
+
+	@Test
+	public void testGetInfo() {
+		assertEquals(INFO_REPORT, AtagOneLocalConnector.getInfo(ROOM_TEMPERATURE, FLAME_STATUS));
+		assertEquals(INFO_CONTROL, AtagOneLocalConnector.getInfo(DHW_SETPOINT, CH_MODE));
+		assertEquals(INFO_CONTROL + INFO_REPORT, AtagOneLocalConnector.getInfo(ROOM_TEMPERATURE, CH_MODE, DEVICE_ID));
+
+		// Status section and local values only.
+		assertEquals(INFO_CONTROL, AtagOneLocalConnector.getInfo(DEVICE_ID, MAC_ADDRESS));
+	}
+
+	@Test
+	public void testFullLayoutNeedsControlAndReport() {
+		assertEquals(INFO_CONTROL + INFO_REPORT, AtagOneLocalConnector.getInfo(DiagnosticField.values()));
+	}
+
+	@Test
+	public void testMessageTemplates() {
+		MessageTemplates messages = new MessageTemplates("6C-42-98-B6-B2-90", "host atag-one API");
+
+		assertEquals("{\"retrieve_message\":{\"seqnr\":0,\"account_auth\":{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\"}," +
+				"\"info\":9}}\n",
+			messages.retrieve(9).toString());
+		assertEquals("{\"update_message\":{\"seqnr\":1,\"account_auth\":{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\"}," +
+				"\"control\":{\"ch_mode_temp\":20.5}}}\n",
+			messages.update(20.5f).toString());
+		assertEquals("{\"update_message\":{\"seqnr\":2,\"account_auth\":{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\"}," +
+				"\"control\":{\"ch_mode_temp\":20.0}}}\n",
+			messages.update(20f).toString());
+		assertEquals("{\"pair_message\":{\"seqnr\":3,\"account_auth\":{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\"}," +
+				"\"accounts\":{\"entries\":[{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\",\"device_name\":\"host atag-one API\",\"account_type\":0}]}}}",
+			messages.pair().toString());
+
+		String next = messages.retrieve(AtagOneLocalConnector.MESSAGE_INFO_ALL).toString();
+		assertTrue(next, next.startsWith("{\"retrieve_message\":{\"seqnr\":4,"));
+	}
+
+	@Test
+	public void testBatchedUpdateMessage() {
+		MessageTemplates messages = new MessageTemplates("6C-42-98-B6-B2-90", "host atag-one API");
+		ControlUpdate update = ControlUpdate.builder()
+			.fireplaceDuration(3600)
+			.chModeTemp(new BigDecimal("19.4"))
+			.dhwSetpoint(new BigDecimal("55"))
+			.build();
+
+		assertEquals("{\"update_message\":{\"seqnr\":0,\"account_auth\":{\"user_account\":\"\",\"mac_address\":\"6C-42-98-B6-B2-90\"}," +
+				"\"control\":{\"dhw_temp_setp\":55.0,\"ch_mode_temp\":19.5,\"fireplace_duration\":3600}}}\n",
+			messages.update(AtagOneLocalConnector.getControlValues(update)).toString());
+	}
+
+	@Test
+	public void testReadFieldKeepsReplyFormat() {
+		JSONFields fields = JSONFields.parse("{\"retrieve_reply\":{\"report\":{\"burning_hours\":12345678.90,\"rssi\":26.5," +
+			"\"resets\":11},\"control\":{\"dhw_temp_setp\":60}}}");
+		Diagnostics.Builder builder = Diagnostics.builder(BURNING_HOURS, RSSI, RESETS, DHW_SETPOINT);
+		for (DiagnosticField field : new DiagnosticField[] {BURNING_HOURS, RSSI, RESETS, DHW_SETPOINT}) {
+			AtagOneLocalConnector.readField(fields, field, builder);
+		}
+		Diagnostics diagnostics = builder.build();
+
+		assertEquals("12345678.90", diagnostics.getValue(BURNING_HOURS).toString());
+		assertEquals("60", diagnostics.getValue(DHW_SETPOINT).toString());
+		assertEquals(11, diagnostics.getValue(RESETS));
+		// Not an integer.
+		assertNull(diagnostics.getValue(RSSI));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testControlValuesOutOfBounds() {
+		AtagOneLocalConnector.getControlValues(ControlUpdate.builder().chModeTemp(new BigDecimal("30")).build());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeControlValue() {
+		AtagOneLocalConnector.getControlValues(ControlUpdate.builder().vacationDuration(-1).build());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHotWaterSetpointOutOfBounds() {
+		AtagOneLocalConnector.getControlValues(ControlUpdate.builder().dhwSetpoint(new BigDecimal("80")).build());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownHeatingMode() {
+		AtagOneLocalConnector.getControlValues(ControlUpdate.builder().chMode(9).build());
+	}
+
+	@Test
+	public void testControlValuesWithinBounds() {
+		ControlUpdate update = ControlUpdate.builder().dhwSetpoint(new BigDecimal("65")).chMode(2).build();
+		assertEquals(2, AtagOneLocalConnector.getControlValues(update).size());
+	}
+}
@@ -0,0 +1,200 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.After;
+import org.junit.Test;
+
+public class CoalescingConnectorTest {
+
+	private static final int CALLERS = 8;
+
+	private final AtomicInteger reads = new AtomicInteger();
+	private final CountDownLatch readStarted = new CountDownLatch(1);
+	private final CountDownLatch releaseRead = new CountDownLatch(1);
+	private volatile boolean fail;
+	private volatile boolean error;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentCallersShareOneRead() throws Exception {
+		CoalescingConnector connector = new CoalescingConnector(new BlockingConnector());
+
+		List<Future<Diagnostics>> results = startCallers(connector);
+		readStarted.await();
+		waitForWaitingCallers(connector);
+		releaseRead.countDown();
+
+		Diagnostics first = results.get(0).get();
+		for (Future<Diagnostics> result : results) {
+			assertSame(first, result.get());
+		}
+		assertEquals(1, reads.get());
+		assertEquals(CALLERS, connector.getRequests());
+
+		// Without time to live, the next call reads again.
+		connector.readDiagnostics();
+		assertEquals(2, reads.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentCallersShareFailure() throws Exception {
+		fail = true;
+		CoalescingConnector connector = new CoalescingConnector(new BlockingConnector());
+
+		List<Future<Diagnostics>> results = startCallers(connector);
+		readStarted.await();
+		waitForWaitingCallers(connector);
+		releaseRead.countDown();
+
+		for (Future<Diagnostics> result : results) {
+			try {
+				result.get();
+				fail("Read should fail");
+			} catch (ExecutionException e) {
+				// Same exception type as the reading caller.
+				assertTrue(e.getCause().toString(), e.getCause() instanceof SocketTimeoutException);
+			}
+		}
+		assertEquals(1, reads.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentCallersShareError() throws Exception {
+		error = true;
+		CoalescingConnector connector = new CoalescingConnector(new BlockingConnector());
+
+		List<Future<Diagnostics>> results = startCallers(connector);
+		readStarted.await();
+		waitForWaitingCallers(connector);
+		releaseRead.countDown();
+
+		// No caller keeps waiting for a read that ended with an error.
+		for (Future<Diagnostics> result : results) {
+			try {
+				result.get();
+				fail("Read should fail");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause().toString(), e.getCause() instanceof LinkageError);
+			}
+		}
+		assertEquals(1, reads.get());
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		releaseRead.countDown();
+		CoalescingConnector connector = new CoalescingConnector(new BlockingConnector(), TimeUnit.MINUTES.toMillis(1));
+
+		Diagnostics first = connector.readDiagnostics();
+		assertSame(first, connector.readDiagnostics());
+		assertEquals(1, reads.get());
+
+		// Setpoint change invalidates the result.
+		connector.setTemperature(new BigDecimal("20.5"));
+		connector.readDiagnostics();
+		assertEquals(2, reads.get());
+		assertEquals(3, connector.getRequests());
+		assertEquals(2, connector.getReads());
+	}
+
+	@Test(timeout = 10000)
+	public void testSetpointChangeStartsNewRead() throws Exception {
+		CoalescingConnector connector = new CoalescingConnector(new BlockingConnector());
+
+		Future<Diagnostics> before = executor.submit(() -> connector.readDiagnostics());
+		readStarted.await();
+		connector.setTemperature(new BigDecimal("20.5"));
+
+		// Does not join the read that started before the change.
+		Future<Diagnostics> after = executor.submit(() -> connector.readDiagnostics());
+		while (reads.get() < 2) {
+			Thread.sleep(5);
+		}
+		releaseRead.countDown();
+		assertNotSame(before.get(), after.get());
+	}
+
+	private List<Future<Diagnostics>> startCallers(final CoalescingConnector connector) {
+		List<Future<Diagnostics>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> connector.readDiagnostics()));
+		}
+		return results;
+	}
+
+	private static void waitForWaitingCallers(final CoalescingConnector connector) throws InterruptedException {
+		while (connector.getRequests() < CALLERS) {
+			Thread.sleep(5);
+		}
+		// Give the last callers time to find the read in progress.
+		Thread.sleep(100);
+	}
+
+	private class BlockingConnector implements AtagOneConnectorInterface {
+
+		@Override
+		public void login() {
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() throws IOException {
+			reads.incrementAndGet();
+			readStarted.countDown();
+			try {
+				releaseRead.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (fail) {
+				throw new SocketTimeoutException("Read timed out");
+			}
+			if (error) {
+				throw new LinkageError("Class not found");
+			}
+			return Diagnostics.builder(DiagnosticField.ROOM_TEMPERATURE)
+				.number(DiagnosticField.ROOM_TEMPERATURE, 19.5)
+				.build();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			return null;
+		}
+
+		@Override
+		public String dump() {
+			return "{}";
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.Test;
+
+public class DiagnosticsPollerTest {
+
+	private final List<Diagnostics> samples = new CopyOnWriteArrayList<>();
+	private final AtomicInteger reads = new AtomicInteger();
+
+	@Test
+	public void testErrorDoesNotStopPolling() {
+		DiagnosticsPoller poller = new DiagnosticsPoller(new FailingOnceConnector(), 1, samples::add);
+		try {
+			// Never throws, otherwise the schedule is cancelled.
+			poller.poll();
+			poller.poll();
+		} finally {
+			poller.close();
+		}
+		assertEquals(2, reads.get());
+		assertEquals(1, samples.size());
+	}
+
+	private class FailingOnceConnector implements AtagOneConnectorInterface {
+
+		@Override
+		public void login() {
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() {
+			if (reads.incrementAndGet() == 1) {
+				throw new LinkageError("Class not found");
+			}
+			return Diagnostics.builder(DiagnosticField.ROOM_TEMPERATURE)
+				.number(DiagnosticField.ROOM_TEMPERATURE, 19.5)
+				.build();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			return null;
+		}
+
+		@Override
+		public String dump() {
+			return "{}";
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.juurlink.atagone.domain.DiscoveredDevice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiscoveryServiceTest {
+
+	private DiscoveryService discoveryService;
+
+	@Before
+	public void setUp() throws Exception {
+		discoveryService = new DiscoveryService(0);
+	}
+
+	@After
+	public void tearDown() {
+		discoveryService.close();
+	}
+
+	@Test
+	public void testRegisterEveryThermostat() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		discoveryService.register(localhost, "ONE 6808-1401-3109_15-30-001-544");
+		discoveryService.register(localhost, "OTHER message");
+		discoveryService.register(localhost, "ONE 6808-1401-3109_15-30-001-545");
+		discoveryService.register(localhost, "ONE 6808-1401-3109_15-30-001-544");
+
+		assertEquals(2, discoveryService.getDevices().size());
+		assertEquals("6808-1401-3109_15-30-001-544", discoveryService.getDevices().get(0).getDeviceId());
+		assertNotNull(discoveryService.getDevice("6808-1401-3109_15-30-001-545"));
+		assertNull(discoveryService.getDevice("unknown"));
+	}
+
+	@Test
+	public void testDeviceIdIsFirstToken() throws Exception {
+		discoveryService.register(InetAddress.getByName("127.0.0.1"), "ONE 6808-1401-3109_15-30-001-544 1 \u0000\u0000");
+
+		assertEquals(1, discoveryService.getDevices().size());
+		assertNotNull(discoveryService.getDevice("6808-1401-3109_15-30-001-544"));
+	}
+
+	@Test(timeout = 5000)
+	public void testReceiveBroadcast() throws Exception {
+		byte[] message = "ONE 6808-1401-3109_15-30-001-544\u0000\u0000\u0000\u0000\u0000".getBytes(StandardCharsets.UTF_8);
+		try (DatagramSocket sender = new DatagramSocket()) {
+			sender.send(new DatagramPacket(message, message.length, InetAddress.getByName("127.0.0.1"), discoveryService.getPort()));
+		}
+
+		DiscoveredDevice device = discoveryService.awaitDevice(4000);
+		assertNotNull(device);
+		assertEquals("6808-1401-3109_15-30-001-544", device.getDeviceId());
+		assertTrue(device.getDeviceAddress().isLoopbackAddress());
+	}
+
+	@Test
+	public void testAwaitDeviceTimeout() throws Exception {
+		assertNull(discoveryService.awaitDevice(50));
+	}
+}
@@ -0,0 +1,179 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.After;
+import org.junit.Test;
+
+public class FleetRunnerTest {
+
+	private final List<String> samples = new CopyOnWriteArrayList<>();
+	private final List<String> errors = new CopyOnWriteArrayList<>();
+	private final CountDownLatch enoughSamples = new CountDownLatch(6);
+
+	private FleetRunner runner;
+
+	@After
+	public void tearDown() {
+		if (runner != null) {
+			runner.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testPollsEveryThermostat() throws Exception {
+		AtagOneInfo first = device("192.168.1.10");
+		AtagOneInfo second = device("192.168.1.11");
+		FakeConnector firstConnector = new FakeConnector();
+		FakeConnector secondConnector = new FakeConnector();
+		runner = new FleetRunner(Arrays.asList(first, second), Arrays.asList(firstConnector, secondConnector), 20, new Recorder());
+
+		runner.start();
+		enoughSamples.await();
+
+		assertTrue(samples.contains("192.168.1.10"));
+		assertTrue(samples.contains("192.168.1.11"));
+		// Login once, then sample at the interval.
+		assertEquals(1, firstConnector.logins.get());
+		assertEquals(1, secondConnector.logins.get());
+		assertTrue(firstConnector.reads.get() >= 2);
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void testFailingThermostatDoesNotStopOthers() throws Exception {
+		FakeConnector failing = new FakeConnector();
+		failing.failLogin = true;
+		FakeConnector working = new FakeConnector();
+		runner = new FleetRunner(Arrays.asList(device("192.168.1.10"), device("192.168.1.11")), Arrays.asList(failing, working), 20,
+			new Recorder());
+
+		runner.start();
+		enoughSamples.await();
+
+		assertTrue(samples.stream().allMatch("192.168.1.11"::equals));
+		assertTrue(errors.contains("192.168.1.10"));
+		// Login is tried again every interval.
+		assertTrue(failing.logins.get() >= 2);
+		assertEquals(0, failing.reads.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testCloseAbortsAndStops() throws Exception {
+		FakeConnector blocking = new FakeConnector();
+		blocking.block = true;
+		runner = new FleetRunner(Arrays.asList(device("192.168.1.10")), Arrays.asList(blocking), 20, new Recorder());
+
+		runner.start();
+		blocking.readStarted.await();
+		runner.close();
+
+		runner.awaitTermination();
+		assertEquals(1, blocking.aborts.get());
+		assertEquals(1, blocking.closes.get());
+		// A request that fails because of the close is no error.
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConnectorPerThermostat() throws Exception {
+		new FleetRunner(Arrays.asList(device("192.168.1.10"), device("192.168.1.11")), Arrays.asList(new FakeConnector()), 20,
+			new Recorder());
+	}
+
+	private static AtagOneInfo device(String address) throws IOException {
+		return AtagOneInfo.builder().deviceAddress(InetAddress.getByName(address)).build();
+	}
+
+	private class Recorder implements FleetRunner.Listener {
+
+		@Override
+		public void onSample(@Nonnull AtagOneInfo device, @Nonnull Diagnostics diagnostics) {
+			samples.add(device.getDeviceAddress().getHostAddress());
+			enoughSamples.countDown();
+		}
+
+		@Override
+		public void onError(@Nonnull AtagOneInfo device, @Nonnull Exception e) {
+			errors.add(device.getDeviceAddress().getHostAddress());
+		}
+	}
+
+	private static class FakeConnector implements AtagOneConnectorInterface, Closeable {
+
+		private final AtomicInteger logins = new AtomicInteger();
+		private final AtomicInteger reads = new AtomicInteger();
+		private final AtomicInteger aborts = new AtomicInteger();
+		private final AtomicInteger closes = new AtomicInteger();
+		private final CountDownLatch readStarted = new CountDownLatch(1);
+		private final CountDownLatch aborted = new CountDownLatch(1);
+		private volatile boolean failLogin;
+		private volatile boolean block;
+
+		@Override
+		public void login() throws IOException {
+			logins.incrementAndGet();
+			if (failLogin) {
+				throw new IOException("Connection refused");
+			}
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() throws IOException {
+			reads.incrementAndGet();
+			readStarted.countDown();
+			if (block) {
+				try {
+					aborted.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// Closing interrupts too.
+				}
+				throw new IOException("Socket closed");
+			}
+			return Diagnostics.builder(DiagnosticField.ROOM_TEMPERATURE)
+				.number(DiagnosticField.ROOM_TEMPERATURE, 19.5)
+				.build();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			return null;
+		}
+
+		@Override
+		public String dump() {
+			return "{}";
+		}
+
+		@Override
+		public void abort() {
+			aborts.incrementAndGet();
+			aborted.countDown();
+		}
+
+		@Override
+		public void close() {
+			closes.incrementAndGet();
+		}
+	}
+}
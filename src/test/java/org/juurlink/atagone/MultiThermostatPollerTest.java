@@ -0,0 +1,205 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.AtagOneInfo;
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.After;
+import org.junit.Test;
+
+public class MultiThermostatPollerTest {
+
+	private final FakeConnector first = new FakeConnector();
+	private final FakeConnector second = new FakeConnector();
+
+	private MultiThermostatPoller poller;
+
+	@After
+	public void tearDown() {
+		first.release.countDown();
+		second.release.countDown();
+		if (poller != null) {
+			poller.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testPollAll() throws Exception {
+		poller = createPoller(2, 5000);
+
+		MultiThermostatPoller.Cycle cycle = poller.poll();
+		assertEquals(2, cycle.getResults().size());
+		assertEquals("192.168.1.10", cycle.getResults().get(0).getDevice().getDeviceAddress().getHostAddress());
+		assertTrue(cycle.getResults().get(0).isSuccess());
+		assertTrue(cycle.getResults().get(1).isSuccess());
+
+		// Login on the first poll only.
+		poller.poll();
+		assertEquals(1, first.logins.get());
+		assertEquals(2, first.reads.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testFailureOfOneThermostat() throws Exception {
+		first.fail = true;
+		poller = createPoller(2, 5000);
+
+		MultiThermostatPoller.Cycle cycle = poller.poll();
+		MultiThermostatPoller.Result failed = cycle.getResults().get(0);
+		assertNull(failed.getDiagnostics());
+		assertTrue(failed.getError() instanceof IOException);
+		assertTrue(cycle.getResults().get(1).isSuccess());
+	}
+
+	@Test(timeout = 10000)
+	public void testTimeoutAbortsThermostat() throws Exception {
+		first.block = true;
+		poller = createPoller(2, 200);
+
+		long start = System.currentTimeMillis();
+		MultiThermostatPoller.Cycle cycle = poller.poll();
+		assertTrue(System.currentTimeMillis() - start < 5000);
+
+		assertTrue(cycle.getResults().get(0).getError() instanceof TimeoutException);
+		assertTrue(cycle.getResults().get(1).isSuccess());
+		// Aborted just after the poll is cancelled.
+		first.aborted.await();
+		assertEquals(1, first.aborts.get());
+		assertEquals(0, second.aborts.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testBusyThermostatSkipped() throws Exception {
+		// Does not stop when aborted, so it is still busy in the next cycle.
+		first.block = true;
+		first.ignoreAbort = true;
+		poller = createPoller(2, 200);
+
+		assertTrue(poller.poll().getResults().get(0).getError() instanceof TimeoutException);
+
+		MultiThermostatPoller.Cycle cycle = poller.poll();
+		assertTrue(cycle.getResults().get(0).getError() instanceof IllegalStateException);
+		assertTrue(cycle.getResults().get(1).isSuccess());
+		assertEquals(1, first.reads.get());
+
+		// Polled again once it is done; it is marked free just after the read returns.
+		first.block = false;
+		first.release.countDown();
+		first.done.await();
+		while (!poller.poll().getResults().get(0).isSuccess()) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConnectorPerThermostat() throws Exception {
+		new MultiThermostatPoller(Arrays.asList(device("192.168.1.10"), device("192.168.1.11")), Arrays.asList(first), 2, 200);
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		poller = createPoller(1, 200);
+		poller.close();
+		assertEquals(1, first.closes.get());
+		assertEquals(1, second.closes.get());
+	}
+
+	private MultiThermostatPoller createPoller(int maxConcurrency, long timeoutMs) throws IOException {
+		return new MultiThermostatPoller(Arrays.asList(device("192.168.1.10"), device("192.168.1.11")), Arrays.asList(first, second),
+			maxConcurrency, timeoutMs);
+	}
+
+	private static AtagOneInfo device(String address) throws IOException {
+		return AtagOneInfo.builder().deviceAddress(InetAddress.getByName(address)).build();
+	}
+
+	private static class FakeConnector implements AtagOneConnectorInterface, Closeable {
+
+		private final AtomicInteger logins = new AtomicInteger();
+		private final AtomicInteger reads = new AtomicInteger();
+		private final AtomicInteger aborts = new AtomicInteger();
+		private final AtomicInteger closes = new AtomicInteger();
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final CountDownLatch aborted = new CountDownLatch(1);
+		private volatile boolean fail;
+		private volatile boolean block;
+		private volatile boolean ignoreAbort;
+
+		@Override
+		public void login() {
+			logins.incrementAndGet();
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() throws IOException {
+			reads.incrementAndGet();
+			try {
+				if (fail) {
+					throw new IOException("Connection refused");
+				}
+				if (block) {
+					waitForRelease();
+				}
+				return Diagnostics.builder(DiagnosticField.ROOM_TEMPERATURE)
+					.number(DiagnosticField.ROOM_TEMPERATURE, 19.5)
+					.build();
+			} finally {
+				done.countDown();
+			}
+		}
+
+		private void waitForRelease() throws IOException {
+			while (true) {
+				try {
+					if (release.await(5, TimeUnit.SECONDS) || !ignoreAbort) {
+						return;
+					}
+				} catch (InterruptedException e) {
+					if (!ignoreAbort) {
+						throw new IOException("Socket closed");
+					}
+				}
+			}
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			return null;
+		}
+
+		@Override
+		public String dump() {
+			return "{}";
+		}
+
+		@Override
+		public void abort() {
+			aborts.incrementAndGet();
+			aborted.countDown();
+		}
+
+		@Override
+		public void close() {
+			closes.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.juurlink.atagone.utils.IOUtils;
+import org.junit.Test;
+
+public class OpenMetricsExporterTest {
+
+	private static Diagnostics sample(String deviceId, double roomTemperature, double burningHours) {
+		return Diagnostics.builder(DiagnosticField.values())
+			.timestamp(1500000000000L)
+			.text(DiagnosticField.DEVICE_ID, deviceId)
+			.number(DiagnosticField.ROOM_TEMPERATURE, roomTemperature)
+			.number(DiagnosticField.CH_WATER_PRESSURE, 1.6)
+			.number(DiagnosticField.BURNING_HOURS, burningHours)
+			.flag(DiagnosticField.FLAME_STATUS, true)
+			.build();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals("# EOF\n", new OpenMetricsExporter().getExposition());
+	}
+
+	@Test
+	public void testExposition() {
+		OpenMetricsExporter exporter = new OpenMetricsExporter();
+		exporter.update(sample("6808-1401-3109_15-30-001-555", 20.5, 1000));
+		exporter.update("living \"room\"", sample(null, 19, 12.5));
+
+		String text = exporter.getExposition();
+		assertTrue(text, text.contains("# TYPE atag_one_room_temperature gauge\n"));
+		assertTrue(text, text.contains("atag_one_room_temperature{device_id=\"6808-1401-3109_15-30-001-555\"} 20.5\n"));
+		assertTrue(text, text.contains("atag_one_room_temperature{device_id=\"living \\\"room\\\"\"} 19\n"));
+		assertTrue(text, text.contains("atag_one_ch_water_pressure{device_id=\"6808-1401-3109_15-30-001-555\"} 1.6\n"));
+		assertTrue(text, text.contains("# TYPE atag_one_burning_hours counter\n"));
+		assertTrue(text, text.contains("atag_one_burning_hours_total{device_id=\"living \\\"room\\\"\"} 12.5\n"));
+		assertTrue(text, text.contains("atag_one_flame_status{device_id=\"6808-1401-3109_15-30-001-555\"} 1\n"));
+		assertTrue(text, text.contains("atag_one_sample_timestamp_seconds{device_id=\"6808-1401-3109_15-30-001-555\"} 1500000000\n"));
+		assertTrue(text, text.endsWith("# EOF\n"));
+
+		// Fields not present and text fields are left out.
+		assertFalse(text, text.contains("outside_temperature"));
+		assertFalse(text, text.contains("atag_one_device_id"));
+
+		// Every family once.
+		assertEquals(text.indexOf("# TYPE atag_one_room_temperature"), text.lastIndexOf("# TYPE atag_one_room_temperature"));
+	}
+
+	@Test
+	public void testLatestSampleReplaces() {
+		OpenMetricsExporter exporter = new OpenMetricsExporter();
+		exporter.update(sample("a", 20, 1));
+		exporter.update(sample("a", 21, 2));
+
+		String text = exporter.getExposition();
+		assertTrue(text, text.contains("atag_one_room_temperature{device_id=\"a\"} 21\n"));
+		assertFalse(text, text.contains("atag_one_room_temperature{device_id=\"a\"} 20\n"));
+	}
+
+	@Test
+	public void testToSnakeCase() {
+		assertEquals("room_temperature", OpenMetricsExporter.toSnakeCase("roomTemperature"));
+		assertEquals("ch_control_mode", OpenMetricsExporter.toSnakeCase("chControl_mode"));
+		assertEquals("rssi", OpenMetricsExporter.toSnakeCase("rssi"));
+	}
+
+	@Test
+	public void testScrape() throws Exception {
+		OpenMetricsExporter exporter = new OpenMetricsExporter();
+		exporter.start(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		try {
+			exporter.update(sample("a", 20.5, 1));
+			URL url = new URL("http://127.0.0.1:" + exporter.getAddress().getPort() + "/metrics");
+
+			for (int i = 0; i < 3; i++) {
+				HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+				assertEquals(200, connection.getResponseCode());
+				assertEquals(OpenMetricsExporter.CONTENT_TYPE, connection.getContentType());
+				try (InputStream in = connection.getInputStream()) {
+					// Line by line, without the line ends.
+					assertEquals(exporter.getExposition().replace("\n", ""), IOUtils.toString(in, StandardCharsets.UTF_8));
+				}
+			}
+
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setRequestMethod("POST");
+			assertEquals(405, connection.getResponseCode());
+
+			connection = (HttpURLConnection) new URL("http://127.0.0.1:" + exporter.getAddress().getPort() + "/other").openConnection();
+			assertEquals(404, connection.getResponseCode());
+		} finally {
+			exporter.close();
+		}
+	}
+}
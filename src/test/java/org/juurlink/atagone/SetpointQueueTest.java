@@ -0,0 +1,206 @@
+package org.juurlink.atagone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.juurlink.atagone.domain.ControlUpdate;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.After;
+import org.junit.Test;
+
+public class SetpointQueueTest {
+
+	private final List<ControlUpdate> updates = new CopyOnWriteArrayList<>();
+	private final CountDownLatch writeStarted = new CountDownLatch(1);
+	private final CountDownLatch releaseWrite = new CountDownLatch(1);
+	private volatile boolean fail;
+	private volatile Error error;
+
+	private SetpointQueue queue;
+
+	@After
+	public void tearDown() {
+		if (queue != null) {
+			queue.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testPendingWritesCollapse() throws Exception {
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+
+		CompletableFuture<BigDecimal> first = queue.submit(new BigDecimal("18"));
+		writeStarted.await();
+
+		// While the first write is in progress, later changes are merged into one write.
+		CompletableFuture<BigDecimal> second = queue.submit(new BigDecimal("19"));
+		CompletableFuture<BigDecimal> third = queue.submit(ControlUpdate.builder().dhwSetpoint(new BigDecimal("55")).build());
+		CompletableFuture<BigDecimal> fourth = queue.submit(new BigDecimal("20.5"));
+		releaseWrite.countDown();
+
+		assertEquals(new BigDecimal("19.5"), first.get());
+		assertEquals(new BigDecimal("19.5"), second.get());
+		assertEquals(new BigDecimal("19.5"), third.get());
+		assertEquals(new BigDecimal("19.5"), fourth.get());
+
+		assertEquals(2, updates.size());
+		assertEquals(new BigDecimal("18"), updates.get(0).getChModeTemp());
+		assertEquals(new BigDecimal("20.5"), updates.get(1).getChModeTemp());
+		assertEquals(new BigDecimal("55"), updates.get(1).getDhwSetpoint());
+		assertEquals(4, queue.getSubmits());
+		assertEquals(2, queue.getWrites());
+	}
+
+	@Test(timeout = 10000)
+	public void testMinimumInterval() throws Exception {
+		releaseWrite.countDown();
+		queue = new SetpointQueue(new BlockingConnector(), 200);
+
+		queue.submit(new BigDecimal("18")).get();
+		long start = System.nanoTime();
+		queue.submit(new BigDecimal("19")).get();
+		assertTrue((System.nanoTime() - start) / 1000000 >= 150);
+		assertEquals(2, updates.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testInvalidValueDoesNotReplacePending() throws Exception {
+		releaseWrite.countDown();
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+
+		try {
+			queue.submit(new BigDecimal("50")).get();
+			fail("IllegalArgumentException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(0, queue.getSubmits());
+		assertTrue(updates.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void testUnknownHeatingModeRejected() throws Exception {
+		releaseWrite.countDown();
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+
+		try {
+			queue.submit(ControlUpdate.builder().chMode(0).build()).get();
+			fail("IllegalArgumentException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(0, queue.getSubmits());
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteError() throws Exception {
+		fail = true;
+		releaseWrite.countDown();
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+
+		try {
+			queue.submit(new BigDecimal("20")).get();
+			fail("IOException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		// Next change is written again.
+		fail = false;
+		assertEquals(new BigDecimal("19.5"), queue.submit(new BigDecimal("21")).get());
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteThrowsError() throws Exception {
+		error = new AssertionError("Connector broken");
+		releaseWrite.countDown();
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+
+		try {
+			queue.submit(new BigDecimal("20")).get();
+			fail("AssertionError expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+
+		// The queue still writes.
+		error = null;
+		assertEquals(new BigDecimal("19.5"), queue.submit(new BigDecimal("21")).get());
+	}
+
+	@Test(timeout = 10000)
+	public void testClose() throws Exception {
+		queue = new SetpointQueue(new BlockingConnector(), 0);
+		CompletableFuture<BigDecimal> first = queue.submit(new BigDecimal("18"));
+		writeStarted.await();
+		CompletableFuture<BigDecimal> second = queue.submit(new BigDecimal("19"));
+
+		queue.close();
+		releaseWrite.countDown();
+
+		// Write in progress completes, the pending one fails.
+		assertEquals(new BigDecimal("19.5"), first.get());
+		try {
+			second.get();
+			fail("IllegalStateException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(1, updates.size());
+	}
+
+	private class BlockingConnector implements AtagOneConnectorInterface {
+
+		@Override
+		public void login() {
+		}
+
+		@Nonnull
+		@Override
+		public Diagnostics readDiagnostics() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal setTemperature(final BigDecimal temperature) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Nullable
+		@Override
+		public BigDecimal updateControl(@Nonnull final ControlUpdate update) throws IOException {
+			writeStarted.countDown();
+			try {
+				releaseWrite.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (fail) {
+				throw new IOException("Empty response");
+			}
+			if (error != null) {
+				throw error;
+			}
+			updates.add(update);
+			return new BigDecimal("19.5");
+		}
+
+		@Override
+		public String dump() {
+			return "{}";
+		}
+	}
+}
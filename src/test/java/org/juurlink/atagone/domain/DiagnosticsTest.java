@@ -0,0 +1,91 @@
+package org.juurlink.atagone.domain;
+
+import static org.juurlink.atagone.domain.DiagnosticField.BURNING_HOURS;
+import static org.juurlink.atagone.domain.DiagnosticField.CH_WATER_PRESSURE;
+import static org.juurlink.atagone.domain.DiagnosticField.DEVICE_ID;
+import static org.juurlink.atagone.domain.DiagnosticField.FLAME_STATUS;
+import static org.juurlink.atagone.domain.DiagnosticField.RSSI;
+import static org.juurlink.atagone.domain.DiagnosticField.ROOM_TEMPERATURE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DiagnosticsTest {
+
+	@Test
+	public void testTypedAccess() {
+		Diagnostics diagnostics = Diagnostics.builder(DEVICE_ID, ROOM_TEMPERATURE, RSSI, FLAME_STATUS)
+			.text(DEVICE_ID, "6808-1401-3109_15-30-001-123")
+			.number(ROOM_TEMPERATURE, 20.6)
+			.number(RSSI, 26)
+			.build();
+
+		assertEquals("6808-1401-3109_15-30-001-123", diagnostics.getDeviceId());
+		assertEquals(20.6, diagnostics.getRoomTemperature(), 0.0);
+		assertEquals(26, diagnostics.getInt(RSSI, -1));
+		assertTrue(diagnostics.isPresent(RSSI));
+		assertFalse(diagnostics.isPresent(FLAME_STATUS));
+		assertFalse(diagnostics.isFlameOn());
+		assertTrue(Double.isNaN(diagnostics.getOutsideTemperature()));
+	}
+
+	@Test
+	public void testMapView() {
+		Diagnostics diagnostics = Diagnostics.builder(DEVICE_ID, ROOM_TEMPERATURE, RSSI, FLAME_STATUS)
+			.number(ROOM_TEMPERATURE, new BigDecimal("60.0"))
+			.number(RSSI, 26)
+			.flag(FLAME_STATUS, true)
+			.build();
+
+		Map<String, Object> map = diagnostics.asMap();
+		assertEquals(Arrays.asList("deviceId", "roomTemperature", "rssi", "flameStatus"), Arrays.asList(map.keySet().toArray()));
+		assertNull(map.get("deviceId"));
+		assertTrue(map.containsKey("deviceId"));
+		assertEquals(new BigDecimal("60.0"), map.get("roomTemperature"));
+		assertEquals(26, map.get("rssi"));
+		assertEquals(Boolean.TRUE, map.get("flameStatus"));
+		assertFalse(map.containsKey("outsideTemperature"));
+
+		// Copy is mutable.
+		Map<String, Object> copy = diagnostics.toMap();
+		copy.put("flameStatus", "On");
+		assertEquals(Boolean.TRUE, map.get("flameStatus"));
+	}
+
+	@Test
+	public void testDecimalsAsGiven() {
+		Diagnostics diagnostics = Diagnostics.builder(ROOM_TEMPERATURE, BURNING_HOURS, CH_WATER_PRESSURE)
+			.number(ROOM_TEMPERATURE, new BigDecimal("60"))
+			.number(BURNING_HOURS, new BigDecimal("12345678.90"))
+			.number(CH_WATER_PRESSURE, 1.5E7)
+			.build();
+
+		assertEquals("60", diagnostics.getDecimal(ROOM_TEMPERATURE).toString());
+		assertEquals("12345678.90", diagnostics.getValue(BURNING_HOURS).toString());
+		assertEquals(12345678.9, diagnostics.getDouble(BURNING_HOURS), 0.0);
+		// Given as double; no exponent.
+		assertEquals("15000000", diagnostics.getDecimal(CH_WATER_PRESSURE).toString());
+	}
+
+	@Test
+	public void testFractionalInteger() {
+		Diagnostics diagnostics = Diagnostics.builder(RSSI)
+			.number(RSSI, 26.5)
+			.build();
+
+		assertNull(diagnostics.getValue(RSSI));
+		assertNull(diagnostics.asMap().get("rssi"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeMismatch() {
+		Diagnostics.builder(DEVICE_ID).number(DEVICE_ID, 1);
+	}
+}
@@ -0,0 +1,194 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncHttpClientTest {
+
+	private ServerSocket serverSocket;
+	private Thread serverThread;
+	private AsyncHttpClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		serverSocket = new ServerSocket(0);
+		client = new AsyncHttpClient(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		serverSocket.close();
+		if (serverThread != null) {
+			serverThread.join(5000);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testResponsesOfAllKinds() throws Exception {
+		// Content length, written in parts; chunked; body until the connection is closed.
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				OutputStream out = respond(socket, "HTTP/1.1 200 OK\r\nX-One-Ver: 1.2.3\r\nContent-Len");
+				Thread.sleep(100);
+				out.write("gth: 11\r\n\r\n{\"seqn".getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+				Thread.sleep(100);
+				out.write("r\":0}".getBytes(StandardCharsets.ISO_8859_1));
+			}
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\n{\"a\":\r\n2\r\n1}\r\n0\r\n\r\n");
+			}
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "HTTP/1.0 200 OK\r\n\r\n{}");
+			}
+			return null;
+		});
+
+		PageContent first = client.post(url("/retrieve"), "{}", "1.0").get();
+		assertEquals("{\"seqnr\":0}", first.getContent());
+		assertEquals("1.2.3", first.getHeaders().get("x-one-ver").get(0));
+		assertEquals("{\"a\":1}", client.post(url("/retrieve"), "{}", null).get().getContent());
+		assertEquals("{}", client.post(url("/update"), "{}", null).get().getContent());
+	}
+
+	@Test(timeout = 10000)
+	public void testErrorStatus() throws Exception {
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n");
+			}
+			return null;
+		});
+		assertIOException(url("/retrieve"));
+	}
+
+	@Test(timeout = 10000)
+	public void testConnectionClosedBeforeResponse() throws Exception {
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "");
+			}
+			return null;
+		});
+		assertIOException(url("/retrieve"));
+	}
+
+	@Test(timeout = 10000)
+	public void testManyRequestsOnOneThread() throws Exception {
+		int count = 20;
+		startServer(() -> {
+			for (int i = 0; i < count; i++) {
+				try (Socket socket = serverSocket.accept()) {
+					respond(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}");
+				}
+			}
+			return null;
+		});
+
+		List<CompletableFuture<PageContent>> results = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			results.add(client.post(url("/retrieve"), "{}", null));
+		}
+		for (CompletableFuture<PageContent> result : results) {
+			assertEquals("{}", result.get(5, TimeUnit.SECONDS).getContent());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testResponseTooLarge() throws Exception {
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2000000\r\n\r\n{");
+			}
+			try (Socket socket = serverSocket.accept()) {
+				OutputStream out = respond(socket, "HTTP/1.1 200 OK\r\n\r\n");
+				byte[] block = new byte[65536];
+				Arrays.fill(block, (byte) ' ');
+				for (int i = 0; i < 32; i++) {
+					out.write(block);
+				}
+			}
+			return null;
+		});
+		assertIOException(url("/retrieve"));
+		assertIOException(url("/retrieve"));
+	}
+
+	@Test(timeout = 10000)
+	public void testInformationalResponseSkipped() throws Exception {
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				respond(socket, "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}");
+			}
+			return null;
+		});
+		assertEquals("{}", client.post(url("/retrieve"), "{}", null).get().getContent());
+	}
+
+	private void assertIOException(String url) throws InterruptedException {
+		try {
+			client.post(url, "{}", null).get();
+			fail("IOException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof IOException);
+		}
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+	}
+
+	private void startServer(Callable<Void> server) {
+		serverThread = new Thread(() -> {
+			try {
+				server.call();
+			} catch (Exception e) {
+				// Test ends.
+			}
+		});
+		serverThread.start();
+	}
+
+	/**
+	 * Read one request and write the response.
+	 */
+	private static OutputStream respond(Socket socket, String response) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+		int contentLength = 0;
+		String line;
+		while ((line = reader.readLine()) != null && !line.isEmpty()) {
+			if (line.toLowerCase(Locale.US).startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		for (int i = 0; i < contentLength; i++) {
+			reader.read();
+		}
+		OutputStream out = socket.getOutputStream();
+		out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+		return out;
+	}
+}
@@ -0,0 +1,63 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteBuffer buffer = pool.acquire(100);
+		assertEquals(ByteBufferPool.MIN_CAPACITY, buffer.capacity());
+		buffer.put((byte) 1);
+		pool.release(buffer);
+
+		ByteBuffer again = pool.acquire(ByteBufferPool.MIN_CAPACITY);
+		assertSame(buffer, again);
+		assertEquals(0, again.position());
+		assertEquals(again.capacity(), again.limit());
+
+		// Rounded up to the next power of two.
+		assertEquals(4096, pool.acquire(ByteBufferPool.MIN_CAPACITY * 2 + 1).capacity());
+		assertNotSame(buffer, pool.acquire(ByteBufferPool.MIN_CAPACITY));
+	}
+
+	@Test
+	public void testForeignBuffersNotKept() {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteBuffer foreign = ByteBuffer.allocate(1000);
+		pool.release(foreign);
+		pool.release(null);
+		assertNotSame(foreign, pool.acquire(1000));
+
+		// Too large to keep.
+		ByteBuffer large = pool.acquire(4 << 20);
+		assertEquals(4 << 20, large.capacity());
+		pool.release(large);
+		assertNotSame(large, pool.acquire(4 << 20));
+	}
+
+	@Test
+	public void testEnsureRemaining() {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteBuffer buffer = pool.acquire(0);
+		for (int i = 0; i < 1000; i++) {
+			buffer.put((byte) i);
+		}
+		assertSame(buffer, pool.ensureRemaining(buffer, 24));
+
+		ByteBuffer larger = pool.ensureRemaining(buffer, 100);
+		assertEquals(2048, larger.capacity());
+		assertEquals(1000, larger.position());
+		assertEquals((byte) 999, larger.get(999));
+
+		// The small buffer went back to the pool.
+		assertSame(buffer, pool.acquire(1));
+	}
+}
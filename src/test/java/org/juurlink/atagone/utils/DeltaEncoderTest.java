@@ -0,0 +1,99 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.Test;
+
+public class DeltaEncoderTest {
+
+	private static final DiagnosticField[] LAYOUT = {
+		DiagnosticField.DEVICE_ID,
+		DiagnosticField.ROOM_TEMPERATURE,
+		DiagnosticField.RSSI,
+		DiagnosticField.FLAME_STATUS
+	};
+
+	@Test
+	public void testOnlyChangedValues() {
+		DeltaEncoder deltaEncoder = new DeltaEncoder();
+
+		Map<String, Object> first = deltaEncoder.encode(sample("one", 1000, 19.5, true));
+		assertEquals(Arrays.asList("deviceId", "timestamp", "keyframe", "roomTemperature", "rssi", "flameStatus"),
+			Arrays.asList(first.keySet().toArray()));
+		assertEquals(true, first.get(DeltaEncoder.KEY_KEYFRAME));
+
+		Map<String, Object> unchanged = deltaEncoder.encode(sample("one", 2000, 19.5, true));
+		assertEquals(Arrays.asList("deviceId", "timestamp", "keyframe"), Arrays.asList(unchanged.keySet().toArray()));
+		assertEquals(2000L, unchanged.get(DeltaEncoder.KEY_TIMESTAMP));
+		assertEquals(false, unchanged.get(DeltaEncoder.KEY_KEYFRAME));
+
+		Map<String, Object> changed = deltaEncoder.encode(sample("one", 3000, 19.6, false));
+		assertEquals(5, changed.size());
+		assertEquals(BigDecimal.valueOf(19.6), changed.get("roomTemperature"));
+		assertEquals(false, changed.get("flameStatus"));
+	}
+
+	@Test
+	public void testRemovedValue() {
+		DeltaEncoder deltaEncoder = new DeltaEncoder();
+		deltaEncoder.encode(sample("one", 1000, 19.5, true));
+
+		Diagnostics withoutRoomTemperature = Diagnostics.builder(LAYOUT)
+			.timestamp(2000)
+			.text(DiagnosticField.DEVICE_ID, "one")
+			.number(DiagnosticField.RSSI, 38)
+			.flag(DiagnosticField.FLAME_STATUS, true)
+			.build();
+		Map<String, Object> delta = deltaEncoder.encode(withoutRoomTemperature);
+		assertTrue(delta.containsKey("roomTemperature"));
+		assertNull(delta.get("roomTemperature"));
+	}
+
+	@Test
+	public void testKeyframeInterval() {
+		DeltaEncoder deltaEncoder = new DeltaEncoder(3);
+		StringBuilder keyframes = new StringBuilder();
+		for (int i = 0; i < 7; i++) {
+			keyframes.append(deltaEncoder.encode(sample("one", i * 1000, 19.5, true)).get(DeltaEncoder.KEY_KEYFRAME) == Boolean.TRUE ? 'K' : 'D');
+		}
+		assertEquals("KDDKDDK", keyframes.toString());
+
+		deltaEncoder.reset();
+		assertEquals(true, deltaEncoder.encode(sample("one", 8000, 19.5, true)).get(DeltaEncoder.KEY_KEYFRAME));
+	}
+
+	@Test
+	public void testPerDevice() {
+		DeltaEncoder deltaEncoder = new DeltaEncoder();
+		deltaEncoder.encode(sample("one", 1000, 19.5, true));
+
+		Map<String, Object> other = deltaEncoder.encode(sample("two", 1000, 21.0, false));
+		assertEquals(true, other.get(DeltaEncoder.KEY_KEYFRAME));
+		assertEquals("two", other.get("deviceId"));
+
+		assertEquals(3, deltaEncoder.encode(sample("one", 2000, 19.5, true)).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidKeyframeInterval() {
+		new DeltaEncoder(0);
+	}
+
+	private static Diagnostics sample(final String deviceId, final long timestamp, final double roomTemperature, final boolean flame) {
+		return Diagnostics.builder(LAYOUT)
+			.timestamp(timestamp)
+			.text(DiagnosticField.DEVICE_ID, deviceId)
+			.number(DiagnosticField.ROOM_TEMPERATURE, roomTemperature)
+			.number(DiagnosticField.RSSI, 38)
+			.flag(DiagnosticField.FLAME_STATUS, flame)
+			.build();
+	}
+}
@@ -0,0 +1,88 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class HTMLFieldsTest {
+
+	private static final String HTML = "<fieldset>\n" +
+		"            <div class=\"form-group no-border-top\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Apparaat alias</label>\n" +
+		"                <div class=\"col-xs-6\">\n" +
+		"                    <p class=\"form-control-static\">CV-ketel</p>\n" +
+		"                </div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Laatste rapportagetijd</label>\n" +
+		"                <div class=\"col-xs-6\">\n" +
+		"                    <p class=\"form-control-static\">\n" +
+		"  2015-11-18 00:07:48</p>\n" +
+		"                </div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Branduren</label>\n" +
+		"                <div class=\"col-xs-6\">\n" +
+		"                    <p class=\"form-control-static\">34,95</p>\n" +
+		"                </div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group no-border-top\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Ketel in bedrijf voor</label>\n" +
+		"                <div class=\"col-xs-6\">\n" +
+		"                </div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Brander status</label>\n" +
+		"                <div class=\"col-xs-6\">\n" +
+		"                        <P class=\"form-control-static\">Aan</P>\n" +
+		"                </div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group\">\n" +
+		"                <label class=\"col-xs-6 control-label\">Buitentemperatuur</label>\n" +
+		"                <div class=\"col-xs-6\"><p class=\"form-control-static\">\n" +
+		"-2.5&#176;                    </p></div>\n" +
+		"            </div>\n" +
+		"            <div class=\"form-group\">\n" +
+		"                <label class=\"col-xs-6 control-label\">CV-waterdruk</label>\n" +
+		"                <div class=\"col-xs-6\"><p class=\"form-control-static\">1,5 bar</p></div>\n" +
+		"            </div>\n" +
+		"    </fieldset>";
+
+	@Test
+	public void testParse() {
+		HTMLFields fields = HTMLFields.parse(HTML);
+
+		assertEquals("CV-ketel", fields.getString("Device alias", "Apparaat alias"));
+		assertEquals("CV-ketel", fields.getString("apparaat ALIAS"));
+		assertEquals("2015-11-18 00:07:48", fields.getString("Laatste rapportagetijd"));
+		assertEquals(new BigDecimal("34.95"), fields.getBigDecimal("Branduren"));
+		assertTrue(fields.getBoolean("Brander status"));
+		assertEquals(new BigDecimal("-2.5"), fields.getBigDecimal("Buitentemperatuur", "Outside temperature"));
+		assertEquals(new BigDecimal("1.5"), fields.get(BigDecimal.class, "CV-waterdruk"));
+		assertNull(fields.getString("Kamertemperatuur", "Room temperature"));
+		assertNull(fields.getBoolean("Flame status"));
+	}
+
+	@Test
+	public void testSameAsGetValueByLabel() {
+		HTMLFields fields = HTMLFields.parse(HTML);
+		String[] labels = {"Apparaat alias", "Laatste rapportagetijd", "Branduren", "Ketel in bedrijf voor", "Brander status",
+			"Buitentemperatuur", "CV-waterdruk", "Kamertemperatuur"};
+		for (String label : labels) {
+			assertEquals(label, HTMLUtils.getValueByLabel(HTML, String.class, label), fields.getString(label));
+			assertEquals(label, HTMLUtils.getValueByLabel(HTML, BigDecimal.class, label), fields.getBigDecimal(label));
+		}
+	}
+
+	@Test
+	public void testEmptyPage() {
+		HTMLFields fields = HTMLFields.parse("<html><label>Label without value</label></html>");
+		assertEquals(0, fields.size());
+		assertFalse(fields.getString("Label without value") != null);
+	}
+}
@@ -186,6 +186,17 @@ public class HTMLUtilsTest {
 		assertEquals("-2.1", actual.toString());
 	}
 
+	@Test
+	public void testToBigDecimal() {
+		assertEquals(new BigDecimal("20.5"), HTMLUtils.toBigDecimal("20,5&#176;"));
+		assertEquals(new BigDecimal("-2.1"), HTMLUtils.toBigDecimal("-2.1°"));
+		assertEquals(new BigDecimal("1.5"), HTMLUtils.toBigDecimal("1.5 bar"));
+		assertEquals(new BigDecimal("60.0"), HTMLUtils.toBigDecimal("60.0&#x176;"));
+		// Not an entity, only the digits are kept.
+		assertEquals(new BigDecimal("513"), HTMLUtils.toBigDecimal("5&#1;3"));
+		assertEquals(BigDecimal.ZERO, HTMLUtils.toBigDecimal("unknown"));
+	}
+
 	@Test
     public void testGetRequestVerificationToken() {
 		final String html = "<div id=\"content\" class=\"col-xs-offset-0 col-xs-12 col-sm-offset-1 col-sm-6\">\n" +
@@ -206,4 +217,11 @@ public class HTMLUtilsTest {
 		final String actual = HTMLUtils.extractDeviceId(html);
 		assertEquals("6808-1401-3109_15-30-001-555", actual);
 	}
+
+	@Test
+	public void testIsLoginPage() {
+		assertTrue(HTMLUtils.isLoginPage("<form action=\"/Account/Login?ReturnUrl=%2FHome\" autocomplete=\"off\" method=\"post\">"));
+		assertFalse(HTMLUtils.isLoginPage("<form action=\"/Home/DeviceSetSetpoint\" method=\"post\">"));
+		assertFalse(HTMLUtils.isLoginPage("{\"room_temp\":18.0}"));
+	}
 }
@@ -0,0 +1,207 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.juurlink.atagone.domain.DiagnosticField;
+import org.juurlink.atagone.domain.Diagnostics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryStoreTest {
+
+	private static final String DEVICE_ID = "6808-1401-3109_15-30-001-544";
+	private static final long START = 1500000000000L;
+	private static final long INTERVAL = 10000;
+
+	private static final DiagnosticField[] LAYOUT = {
+		DiagnosticField.DEVICE_ID,
+		DiagnosticField.ROOM_TEMPERATURE,
+		DiagnosticField.OUTSIDE_TEMPERATURE,
+		DiagnosticField.CH_WATER_PRESSURE,
+		DiagnosticField.TARGET_TEMPERATURE,
+		DiagnosticField.FLAME_STATUS,
+		DiagnosticField.BOILER_STATUS,
+		DiagnosticField.CURRENT_MODE
+	};
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path directory;
+	private HistoryStore historyStore;
+
+	@Before
+	public void setUp() {
+		directory = temporaryFolder.getRoot().toPath().resolve("history");
+		historyStore = new HistoryStore(directory);
+	}
+
+	@After
+	public void tearDown() {
+		historyStore.close();
+	}
+
+	@Test
+	public void testAppendAndRead() throws Exception {
+		List<Diagnostics> samples = createSamples(1000, new Random(1));
+		for (Diagnostics sample : samples) {
+			historyStore.append(sample);
+		}
+
+		assertEquals(Arrays.asList(DEVICE_ID), historyStore.getDevices());
+		assertSamples(samples, historyStore.read(DEVICE_ID, Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testReadRange() throws Exception {
+		List<Diagnostics> samples = createSamples(100, new Random(2));
+		for (Diagnostics sample : samples) {
+			historyStore.append(sample);
+		}
+
+		List<Diagnostics> range = historyStore.read(DEVICE_ID, samples.get(10).getTimestamp(), samples.get(20).getTimestamp());
+		assertSamples(samples.subList(10, 20), range);
+		assertTrue(historyStore.read(DEVICE_ID, 0, START).isEmpty());
+		assertTrue(historyStore.read("other", Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+	}
+
+	@Test
+	public void testContinueAfterReopen() throws Exception {
+		List<Diagnostics> samples = createSamples(200, new Random(3));
+		for (Diagnostics sample : samples.subList(0, 100)) {
+			historyStore.append(sample);
+		}
+		historyStore.close();
+
+		historyStore = new HistoryStore(directory);
+		for (Diagnostics sample : samples.subList(100, 200)) {
+			historyStore.append(sample);
+		}
+
+		assertEquals(1, segmentCount());
+		assertSamples(samples, historyStore.read(DEVICE_ID, Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testContinueAfterTornHeader() throws Exception {
+		List<Diagnostics> samples = createSamples(200, new Random(6));
+		for (Diagnostics sample : samples.subList(0, 100)) {
+			historyStore.append(sample);
+		}
+		historyStore.close();
+
+		// Interrupted after the data length of the last sample was written, before its count.
+		try (Stream<Path> files = Files.list(directory.resolve(DEVICE_ID));
+			 FileChannel channel = FileChannel.open(files.findFirst().get(), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+		}
+
+		historyStore = new HistoryStore(directory);
+		for (Diagnostics sample : samples.subList(100, 200)) {
+			historyStore.append(sample);
+		}
+
+		List<Diagnostics> expected = new ArrayList<>(samples.subList(0, 99));
+		expected.addAll(samples.subList(100, 200));
+		assertSamples(expected, historyStore.read(DEVICE_ID, Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testNewSegmentWhenFullOrLayoutChanges() throws Exception {
+		historyStore = new HistoryStore(directory, 4096);
+		List<Diagnostics> samples = createSamples(2000, new Random(4));
+		Diagnostics other = Diagnostics.builder(DiagnosticField.DEVICE_ID, DiagnosticField.RSSI)
+			.timestamp(START + 2000 * INTERVAL)
+			.text(DiagnosticField.DEVICE_ID, DEVICE_ID)
+			.number(DiagnosticField.RSSI, 38)
+			.build();
+		samples.add(other);
+		for (Diagnostics sample : samples) {
+			historyStore.append(sample);
+		}
+
+		assertTrue(segmentCount() > 2);
+		assertSamples(samples, historyStore.read(DEVICE_ID, Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		// One day of samples at a 10 second interval.
+		List<Diagnostics> samples = createSamples(8640, new Random(5));
+		for (Diagnostics sample : samples) {
+			historyStore.append(sample);
+		}
+
+		// Less than 10 bytes per sample, the JSON output takes about 200.
+		long size = historyStore.getSize(DEVICE_ID);
+		assertTrue("Size " + size, size < 8640 * 10);
+	}
+
+	private int segmentCount() throws Exception {
+		try (Stream<Path> files = Files.list(directory.resolve(DEVICE_ID))) {
+			return (int) files.count();
+		}
+	}
+
+	private static void assertSamples(final List<Diagnostics> expected, final List<Diagnostics> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			assertEquals(expected.get(i).toMap(), actual.get(i).toMap());
+		}
+	}
+
+	/**
+	 * Samples like a real thermostat; slowly changing temperatures and a poll interval with a little jitter.
+	 */
+	private static List<Diagnostics> createSamples(final int count, final Random random) {
+		List<Diagnostics> samples = new ArrayList<>();
+		long timestamp = START;
+		double roomTemperature = 19.5;
+		double outsideTemperature = 8.2;
+		boolean flame = false;
+		for (int i = 0; i < count; i++) {
+			timestamp += INTERVAL + random.nextInt(50) - 25;
+			if (random.nextInt(30) == 0) {
+				roomTemperature += random.nextBoolean() ? 0.1 : -0.1;
+			}
+			if (random.nextInt(60) == 0) {
+				outsideTemperature += random.nextBoolean() ? 0.5 : -0.5;
+			}
+			if (random.nextInt(20) == 0) {
+				flame = !flame;
+			}
+			Diagnostics.Builder builder = Diagnostics.builder(LAYOUT)
+				.timestamp(timestamp)
+				.text(DiagnosticField.DEVICE_ID, DEVICE_ID)
+				.number(DiagnosticField.ROOM_TEMPERATURE, Math.round(roomTemperature * 10) / 10.0)
+				.number(DiagnosticField.OUTSIDE_TEMPERATURE, outsideTemperature)
+				.number(DiagnosticField.CH_WATER_PRESSURE, 1.6)
+				.number(DiagnosticField.TARGET_TEMPERATURE, i < count / 2 ? 20 : 18.5)
+				.flag(DiagnosticField.FLAME_STATUS, flame)
+				.number(DiagnosticField.BOILER_STATUS, flame ? 10 : 8)
+				.text(DiagnosticField.CURRENT_MODE, i % 500 < 250 ? "manual" : "schedule");
+			if (i % 100 == 99) {
+				// Value missing in some replies.
+				builder.remove(DiagnosticField.OUTSIDE_TEMPERATURE);
+			}
+			samples.add(builder.build());
+		}
+		return samples;
+	}
+}
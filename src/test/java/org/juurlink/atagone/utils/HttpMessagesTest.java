@@ -0,0 +1,104 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class HttpMessagesTest {
+
+	private final ByteBufferPool pool = new ByteBufferPool();
+
+	@Test
+	public void testReadResponse() throws IOException {
+		HttpMessages.Response response = read("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}", false);
+		assertEquals(200, response.getStatus());
+		assertEquals("{}", ByteSequence.of(response.getBody()).toString());
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testContentLengthTooLarge() throws IOException {
+		read("HTTP/1.1 200 OK\r\nContent-Length: " + (HttpMessages.MAX_BODY_SIZE + 1) + "\r\n\r\n{}", false);
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testChunkTooLarge() throws IOException {
+		read("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" + Integer.toHexString(HttpMessages.MAX_BODY_SIZE + 1) + "\r\n{}",
+			false);
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testChunkSizeOverflow() throws IOException {
+		// The first chunks fit, together they do not.
+		String chunk = Integer.toHexString(HttpMessages.MAX_BODY_SIZE / 2 + 1) + "\r\n";
+		byte[] data = new byte[HttpMessages.MAX_BODY_SIZE / 2 + 1];
+		Arrays.fill(data, (byte) ' ');
+		InputStream in = concat("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" + chunk, data, "\r\n" + chunk);
+		HttpMessages.readResponse(in, false, pool);
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testBodyUntilCloseTooLarge() throws IOException {
+		byte[] data = new byte[HttpMessages.MAX_BODY_SIZE + 1];
+		Arrays.fill(data, (byte) ' ');
+		HttpMessages.readResponse(concat("HTTP/1.0 200 OK\r\n\r\n", data, ""), true, pool);
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testHeaderLineTooLong() throws IOException {
+		char[] value = new char[HttpMessages.MAX_LINE_LENGTH];
+		Arrays.fill(value, 'a');
+		read("HTTP/1.1 200 OK\r\nX-Long: " + new String(value) + "\r\nContent-Length: 2\r\n\r\n{}", false);
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void testStatusLineTooLong() throws IOException {
+		// Not a stale connection.
+		char[] line = new char[HttpMessages.MAX_LINE_LENGTH + 10];
+		Arrays.fill(line, 'H');
+		read(new String(line), true);
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void testTimeoutIsNoStaleConnection() throws IOException {
+		// The request may have been handled; sending it again is not safe.
+		InputStream in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new SocketTimeoutException("Read timed out");
+			}
+		};
+		HttpMessages.readResponse(in, false, pool);
+	}
+
+	@Test(expected = HttpMessages.StaleConnectionException.class)
+	public void testResetIsStaleConnection() throws IOException {
+		InputStream in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new SocketException("Connection reset");
+			}
+		};
+		HttpMessages.readResponse(in, false, pool);
+	}
+
+	private HttpMessages.Response read(String response, boolean endOfStream) throws IOException {
+		return HttpMessages.readResponse(new ByteArrayInputStream(response.getBytes(StandardCharsets.ISO_8859_1)), endOfStream,
+			pool);
+	}
+
+	private static InputStream concat(String head, byte[] data, String tail) {
+		return new SequenceInputStream(new SequenceInputStream(
+			new ByteArrayInputStream(head.getBytes(StandardCharsets.ISO_8859_1)), new ByteArrayInputStream(data)),
+			new ByteArrayInputStream(tail.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+}
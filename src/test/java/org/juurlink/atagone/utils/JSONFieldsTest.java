@@ -0,0 +1,127 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JSONFieldsTest {
+
+	private static final String RETRIEVE_REPLY = "{ \"retrieve_reply\":{ \"seqnr\":0,\n" +
+		"\"status\":{\"device_id\":\"6808-1401-3109_15-30-001-123\",\"device_status\":16385,\"connection_status\":23,\"date_time\":503187998},\n" +
+		"\"report\":{\"report_time\":503187998,\"burning_hours\":257.09,\"device_errors\":\"\",\"room_temp\":20.6,\"outside_temp\":-5.1,\n" +
+		"\"ch_water_pres\":1.5,\"current\":-155,\"voltage\":3846},\n" +
+		"\"control\": {\"ch_mode_temp\":20.5,\"dhw_temp_setp\":60.0,\"fireplace_duration\":10800} ,\n" +
+		"\"acc_status\":2} }";
+
+	@Test
+	public void testParseRetrieveReply() {
+		JSONFields fields = JSONFields.parse(RETRIEVE_REPLY);
+
+		assertEquals("6808-1401-3109_15-30-001-123", fields.getString("device_id"));
+		assertEquals(Integer.valueOf(2), fields.getInteger("acc_status"));
+		assertEquals(Integer.valueOf(-155), fields.getInteger("current"));
+		assertEquals(new BigDecimal("257.09"), fields.getBigDecimal("burning_hours"));
+		assertEquals(new BigDecimal("-5.1"), fields.getBigDecimal("outside_temp"));
+		assertEquals("", fields.getString("device_errors"));
+		assertEquals(20.6, fields.getDouble("room_temp", Double.NaN), 0.0);
+		assertEquals(60.0, fields.getDouble("dhw_temp_setp", Double.NaN), 0.0);
+		assertEquals(10800, fields.getInt("fireplace_duration", -1));
+		assertEquals(-1, fields.getInt("unknown", -1));
+
+		// Objects are not values.
+		assertFalse(fields.contains("report"));
+		assertTrue(fields.contains("ch_water_pres"));
+	}
+
+	@Test
+	public void testParseUtf8Bytes() {
+		byte[] bytes = (" " + RETRIEVE_REPLY.replace("\"device_errors\":\"\"", "\"device_errors\":\"Störung \\\"€\\\"\",\"alias\":\"Wohnzimmer ☀\"") + " ")
+			.getBytes(StandardCharsets.UTF_8);
+		JSONFields fields = JSONFields.parse(new ByteSequence(bytes, 1, bytes.length - 2));
+
+		assertEquals("6808-1401-3109_15-30-001-123", fields.getString("device_id"));
+		assertEquals(Integer.valueOf(2), fields.getInteger("acc_status"));
+		assertEquals(20.6, fields.getDouble("room_temp", Double.NaN), 0.0);
+		assertEquals("Störung \"€\"", fields.getString("device_errors"));
+		assertEquals("Wohnzimmer ☀", fields.getString("alias"));
+	}
+
+	@Test
+	public void testTypeMismatch() {
+		JSONFields fields = JSONFields.parse(RETRIEVE_REPLY);
+
+		assertNull(fields.getString("room_temp"));
+		assertNull(fields.getInteger("device_id"));
+		assertNull(fields.getInteger("room_temp"));
+		assertNull(fields.getBigDecimal("device_id"));
+		assertEquals(-1.0, fields.getDouble("device_id", -1.0), 0.0);
+	}
+
+	@Test
+	public void testScale() {
+		JSONFields fields = JSONFields.parse("{\"a\":257.09,\"b\":-5.10,\"c\":60,\"d\":1.5E7,\"e\":\"6.5\"}");
+		assertEquals(2, fields.getScale("a"));
+		assertEquals(2, fields.getScale("b"));
+		assertEquals(0, fields.getScale("c"));
+		// Not a plain decimal, not a number, not found.
+		assertEquals(-1, fields.getScale("d"));
+		assertEquals(-1, fields.getScale("e"));
+		assertEquals(-1, fields.getScale("f"));
+	}
+
+	@Test
+	public void testFirstValueWins() {
+		JSONFields fields = JSONFields.parse("{\"a\":{\"value\":1},\"b\":[{\"value\":2}],\"value\":3}");
+		assertEquals(Integer.valueOf(1), fields.getInteger("value"));
+		assertEquals(1, fields.size());
+	}
+
+	@Test
+	public void testEscapedJSON() {
+		String html = "\"{\\\"ch_control_mode\\\":0,\\\"room_temp\\\":18.6,\\\"is_heating\\\":false,\\\"temp_increment\\\":null}\"";
+		JSONFields fields = JSONFields.parse(html);
+		assertEquals(new BigDecimal("18.6"), fields.getBigDecimal("room_temp"));
+		assertEquals(Boolean.FALSE, fields.getBoolean("is_heating"));
+		assertNull(fields.getBoolean("temp_increment"));
+		assertNull(fields.getBigDecimal("temp_increment"));
+	}
+
+	@Test
+	public void testEscapedString() {
+		JSONFields fields = JSONFields.parse("{\"name\":\"say \\\"hi\\\"\\n\\u0041\"}");
+		assertEquals("say \"hi\"\nA", fields.getString("name"));
+	}
+
+	@Test
+	public void testMalformedUnicodeEscape() {
+		// Kept as written, like other malformed input.
+		JSONFields fields = JSONFields.parse("{\"a\":\"x\\uZZ12y\",\"b\":\"x\\u12\"}");
+		assertEquals("x\\uZZ12y", fields.getString("a"));
+		assertEquals("x\\u12", fields.getString("b"));
+	}
+
+	@Test
+	public void testMalformedKeepsValuesFound() {
+		JSONFields fields = JSONFields.parse("{\"a\":1,\"b\":\"two\",\"c\":");
+		assertEquals(Integer.valueOf(1), fields.getInteger("a"));
+		assertEquals("two", fields.getString("b"));
+		assertFalse(fields.contains("c"));
+	}
+
+	@Test
+	public void testSameResultsAsGetJSONValueByName() {
+		String json = "{\"isHeating\":false,\"targetTemp\":17.0,\"currentTemp\":16.9,\"vacationPlanned\":false,\"currentMode\":\"manual\", \"errors\":\"\", \"errors2\" : \"whatever\" , \"errors3\" : \"whatever 2 \" }";
+		JSONFields fields = JSONFields.parse(json);
+		for (String name : new String[]{"isHeating", "targetTemp", "currentTemp", "vacationPlanned", "currentMode", "errors", "errors2", "errors3"}) {
+			assertEquals(name, JSONUtils.getJSONValueByName(json, String.class, name), fields.get(name, String.class));
+			assertEquals(name, JSONUtils.getJSONValueByName(json, BigDecimal.class, name), fields.get(name, BigDecimal.class));
+			assertEquals(name, JSONUtils.getJSONValueByName(json, Boolean.class, name), fields.get(name, Boolean.class));
+		}
+	}
+}
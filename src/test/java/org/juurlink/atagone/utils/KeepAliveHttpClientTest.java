@@ -0,0 +1,187 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeepAliveHttpClientTest {
+
+	private ServerSocket serverSocket;
+	private Thread serverThread;
+	private KeepAliveHttpClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		serverSocket = new ServerSocket(0);
+		client = new KeepAliveHttpClient();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		serverSocket.close();
+		if (serverThread != null) {
+			serverThread.join(5000);
+		}
+	}
+
+	@Test
+	public void testReuseConnection() throws Exception {
+		// Answer three requests on one connection; the second one chunked.
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+				OutputStream out = socket.getOutputStream();
+				respond(reader, out, "HTTP/1.1 200 OK\r\nX-One-Ver: 1.2.3\r\nContent-Length: 11\r\n\r\n{\"seqnr\":0}");
+				respond(reader, out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\n{\"a\":\r\n2\r\n1}\r\n0\r\n\r\n");
+				respond(reader, out, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}");
+			}
+			return null;
+		});
+
+		PageContent first = client.post(url("/retrieve"), "{}", "1.0");
+		assertEquals("{\"seqnr\":0}", first.getContent());
+		assertEquals("1.2.3", first.getHeaders().get("x-one-ver").get(0));
+		assertEquals("{\"a\":1}", client.post(url("/retrieve"), "{}", null).getContent());
+		assertEquals("{}", client.post(url("/update"), "{}", null).getContent());
+
+		ConnectionStatistics statistics = client.getStatistics();
+		assertEquals(3, statistics.getRequests());
+		assertEquals(1, statistics.getConnectionsOpened());
+		assertEquals(2, statistics.getConnectionsReused());
+	}
+
+	@Test
+	public void testBodyHandler() throws Exception {
+		AtomicReference<String> request = new AtomicReference<>();
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				StringBuilder received = new StringBuilder();
+				String line;
+				while (!(line = reader.readLine()).isEmpty()) {
+					received.append(line).append('\n');
+				}
+				// Nine characters, eleven bytes.
+				for (int i = 0; i < 9; i++) {
+					received.append((char) reader.read());
+				}
+				request.set(received.toString());
+				OutputStream out = socket.getOutputStream();
+				byte[] body = "{\"alias\":\"Küche\"}".getBytes(StandardCharsets.UTF_8);
+				out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				out.write(body);
+				out.flush();
+			}
+			return null;
+		});
+
+		String alias = client.post(url("/retrieve"), "{\"a\":\"€\"}", "1.0",
+			(headers, body) -> JSONFields.parse(body).getString("alias"));
+		assertEquals("Küche", alias);
+		assertTrue(request.get(), request.get().contains("Content-Length: 11\n"));
+		assertTrue(request.get(), request.get().endsWith("{\"a\":\"€\"}"));
+	}
+
+	@Test
+	public void testRetryWhenServerClosedConnection() throws Exception {
+		// Close the connection after the first response, without telling the client.
+		startServer(() -> {
+			for (int i = 0; i < 2; i++) {
+				try (Socket socket = serverSocket.accept()) {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+					respond(reader, socket.getOutputStream(), "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\n\"" + i + "\"");
+				}
+			}
+			return null;
+		});
+
+		assertEquals("\"0\"", client.post(url("/retrieve"), "{}", null).getContent());
+		assertEquals("\"1\"", client.post(url("/retrieve"), "{}", null).getContent());
+
+		ConnectionStatistics statistics = client.getStatistics();
+		assertEquals(2, statistics.getConnectionsOpened());
+		assertEquals(1, statistics.getStaleConnectionRetries());
+	}
+
+	@Test(expected = IOException.class)
+	public void testErrorStatus() throws Exception {
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+				respond(reader, socket.getOutputStream(), "HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n");
+			}
+			return null;
+		});
+		client.post(url("/retrieve"), "{}", null);
+	}
+
+	@Test(expected = IOException.class, timeout = 5000)
+	public void testAbort() throws Exception {
+		// Read the request but never answer.
+		startServer(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				while (socket.getInputStream().read() != -1) {
+					// Wait for the client to close.
+				}
+			}
+			return null;
+		});
+		Thread aborter = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				return;
+			}
+			client.abort();
+		});
+		aborter.start();
+		client.post(url("/retrieve"), "{}", null);
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+	}
+
+	private void startServer(java.util.concurrent.Callable<Void> server) {
+		serverThread = new Thread(() -> {
+			try {
+				server.call();
+			} catch (Exception e) {
+				// Test ends.
+			}
+		});
+		serverThread.start();
+	}
+
+	/**
+	 * Read one request and write the response.
+	 */
+	private static void respond(BufferedReader reader, OutputStream out, String response) throws IOException {
+		int contentLength = 0;
+		String line;
+		while ((line = reader.readLine()) != null && !line.isEmpty()) {
+			if (line.toLowerCase(Locale.US).startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		for (int i = 0; i < contentLength; i++) {
+			reader.read();
+		}
+		out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+}
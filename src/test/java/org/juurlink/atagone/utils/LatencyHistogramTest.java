@@ -0,0 +1,71 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		// Every value has a bucket, the buckets are ordered and the value is within 1/32 of the highest value of its bucket.
+		long[] values = {0, 1, 63, 64, 65, 127, 128, 1000, 1_000_000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+		int previousIndex = -1;
+		for (long value : values) {
+			int index = LatencyHistogram.index(value);
+			assertTrue(index >= previousIndex);
+			long highest = LatencyHistogram.highestValue(index);
+			assertTrue(value + " <= " + highest, value <= highest);
+			assertTrue(value + " ~ " + highest, highest - value <= Math.max(value / 32, 0));
+			previousIndex = index;
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		histogram.record(-5);
+
+		assertEquals(1001, histogram.getCount());
+		assertEquals(1000_000L, histogram.getMax());
+		assertEquals(500_500_000L, histogram.getSum());
+		assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 32);
+		assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 32);
+		assertEquals(1000_000L, histogram.getValueAtPercentile(100));
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(1, histogram.getCountAtOrBelow(0));
+		assertEquals(1001, histogram.getCountAtOrBelow(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final long offset = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					histogram.record(i + offset);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40_000, histogram.getCount());
+		assertEquals(10_002, histogram.getMax());
+	}
+}
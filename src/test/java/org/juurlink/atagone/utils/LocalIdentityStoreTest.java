@@ -0,0 +1,58 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.juurlink.atagone.domain.LocalIdentity;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalIdentityStoreTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path file;
+	private LocalIdentityStore identityStore;
+
+	@Before
+	public void setUp() {
+		file = temporaryFolder.getRoot().toPath().resolve("state").resolve("local-identity.properties");
+		identityStore = new LocalIdentityStore(file);
+	}
+
+	@Test
+	public void testNothingStored() {
+		assertNull(identityStore.get());
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		LocalIdentity identity = LocalIdentity.builder()
+			.interfaceName("eth0")
+			.name("computer.local")
+			.ip(InetAddress.getByName("192.168.1.20"))
+			.mac("6C-42-98-B6-B2-90")
+			.timestamp(1234L)
+			.build();
+		identityStore.put(identity);
+
+		// Read back by a new instance, from the file.
+		assertEquals(identity, new LocalIdentityStore(file).get());
+		assertEquals("computer.local", identity.toDeviceInfo().getName());
+	}
+
+	@Test
+	public void testIncomplete() throws Exception {
+		Files.createDirectories(file.getParent());
+		Files.write(file, Collections.singletonList("interface=eth0\nip=192.168.1.20"));
+		assertNull(identityStore.get());
+	}
+}
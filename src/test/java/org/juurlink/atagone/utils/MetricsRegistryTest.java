@@ -0,0 +1,91 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+
+	@Test
+	public void testMetricName() {
+		assertEquals("requests", MetricName.of("requests").toString());
+		assertEquals("requests{device=\"10.0.1.12\",endpoint=\"re\\\"trieve\"}",
+			MetricName.of("requests", "endpoint", "re\"trieve", "device", "10.0.1.12").toString());
+		assertEquals(MetricName.of("requests", "a", "1", "b", "2"), MetricName.of("requests", "b", "2", "a", "1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLabelWithoutValue() {
+		MetricName.of("requests", "device");
+	}
+
+	@Test
+	public void testCountersAndHistograms() {
+		registry.counter(MetricsRegistry.REQUEST_RETRIES, "device", "10.0.1.12").increment();
+		registry.counter(MetricsRegistry.REQUEST_RETRIES, "device", "10.0.1.12").add(2);
+		registry.counter(MetricsRegistry.REQUEST_RETRIES, "device", "10.0.1.13").increment();
+		assertSame(registry.histogram(MetricsRegistry.DISCOVERY_DURATION), registry.histogram(MetricsRegistry.DISCOVERY_DURATION));
+		registry.histogram(MetricsRegistry.DISCOVERY_DURATION).record(2_000_000);
+
+		assertEquals(Long.valueOf(3), registry.getCounters().get(MetricName.of(MetricsRegistry.REQUEST_RETRIES, "device", "10.0.1.12")));
+		assertEquals(2, registry.getCounters().size());
+
+		String text = TextMetricsReporter.format(registry);
+		assertTrue(text, text.startsWith("atag_one_discovery_duration count=1 mean=2.0ms p50=2.0ms p90=2.0ms p99=2.0ms max=2.0ms"));
+		assertTrue(text, text.contains("atag_one_request_retries_total{device=\"10.0.1.12\"} 3"));
+
+		registry.clear();
+		assertEquals("", TextMetricsReporter.format(registry));
+	}
+
+	@Test
+	public void testRequestMetrics() {
+		assertEquals("retrieve", RequestMetrics.getEndpoint(URI.create("http://10.0.1.12:10000/retrieve")));
+		assertEquals("Home/DeviceSetSetpoint", RequestMetrics.getEndpoint(
+			URI.create("https://portal.atag-one.com/Home/DeviceSetSetpoint/6808-1401-3109_15-30-001-544?temperature=18.5")));
+		assertEquals("Home/UpdateDeviceControl", RequestMetrics.getEndpoint(
+			URI.create("https://portal.atag-one.com/Home/UpdateDeviceControl/?deviceId=6808-1401-3109_15-30-001-544")));
+
+		RequestMetrics requestMetrics = RequestMetrics.of(registry, "http://10.0.1.12:10000/retrieve");
+		requestMetrics.getEmptyResponses().increment();
+		assertEquals(Long.valueOf(1), registry.getCounters().get(
+			MetricName.of(MetricsRegistry.EMPTY_RESPONSES, "device", "10.0.1.12", "endpoint", "retrieve")));
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		ObjectName objectName = new ObjectName(JmxMetricsReporter.OBJECT_NAME);
+		try (JmxMetricsReporter reporter = new JmxMetricsReporter(registry, server)) {
+			reporter.report();
+			reporter.report();
+
+			// Metrics created after registration are published too.
+			registry.counter(MetricsRegistry.PAIR_ATTEMPTS, "device", "10.0.1.12").increment();
+			registry.histogram(MetricsRegistry.CONNECT_DURATION, "device", "10.0.1.12").record(1_500_000);
+
+			String counter = "atag_one_pair_attempts_total{device=\"10.0.1.12\"}";
+			String histogram = "atag_one_connect_duration{device=\"10.0.1.12\"}";
+			assertEquals(1L, server.getAttribute(objectName, counter));
+			assertEquals(1L, server.getAttribute(objectName, histogram + ".count"));
+			assertEquals(1.5, (Double) server.getAttribute(objectName, histogram + ".maxMs"), 0.001);
+			assertTrue(Arrays.stream(server.getMBeanInfo(objectName).getAttributes())
+				.map(MBeanAttributeInfo::getName)
+				.anyMatch((histogram + ".p99Ms")::equals));
+		}
+		assertFalse(server.isRegistered(objectName));
+	}
+}
@@ -0,0 +1,93 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.juurlink.atagone.domain.Pairing;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PairingStoreTest {
+
+	private static final String DEVICE_ID = "6808-1401-3109_15-30-001-544";
+	private static final String MAC = "6C-42-98-B6-B2-90";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path file;
+	private PairingStore pairingStore;
+
+	@Before
+	public void setUp() {
+		file = temporaryFolder.getRoot().toPath().resolve("state").resolve("pairings.properties");
+		pairingStore = new PairingStore(file);
+	}
+
+	@Test
+	public void testNotPaired() {
+		assertNull(pairingStore.getAccepted(DEVICE_ID, MAC));
+	}
+
+	@Test
+	public void testPutAndGet() {
+		pairingStore.put(Pairing.builder().device(DEVICE_ID).mac(MAC).accStatus(2).timestamp(1234L).build());
+
+		// Read back by a new instance, from the file.
+		Pairing pairing = new PairingStore(file).getAccepted(DEVICE_ID, MAC);
+		assertNotNull(pairing);
+		assertEquals(1234L, pairing.getTimestamp());
+
+		// Other computer MAC address.
+		assertNull(pairingStore.getAccepted(DEVICE_ID, "00-00-00-00-00-00"));
+	}
+
+	@Test
+	public void testNotAccepted() {
+		pairingStore.put(Pairing.builder().device(DEVICE_ID).mac(MAC).accStatus(1).timestamp(1234L).build());
+		assertNull(pairingStore.getAccepted(DEVICE_ID, MAC));
+	}
+
+	@Test
+	public void testRemove() {
+		pairingStore.put(Pairing.builder().device(DEVICE_ID).mac(MAC).accStatus(2).timestamp(1234L).build());
+		pairingStore.put(Pairing.builder().device("192.168.1.10").mac(MAC).accStatus(2).timestamp(1234L).build());
+		pairingStore.remove(DEVICE_ID);
+
+		assertNull(pairingStore.getAccepted(DEVICE_ID, MAC));
+		assertNotNull(pairingStore.getAccepted("192.168.1.10", MAC));
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentPairings() throws Exception {
+		// A store per connector, all on the same file.
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++) {
+				String device = "192.168.1." + i;
+				results.add(executor.submit(() ->
+					new PairingStore(file).put(Pairing.builder().device(device).mac(MAC).accStatus(2).timestamp(1234L).build())));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < 32; i++) {
+			assertNotNull("192.168.1." + i, pairingStore.getAccepted("192.168.1." + i, MAC));
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PayloadTemplateTest {
+
+	private static final PayloadTemplate TEMPLATE = PayloadTemplate.builder()
+		.text("{\"seqnr\":").number(0)
+		.text(",\"name\":\"€\",\"temp\":").number(1)
+		.text("}")
+		.build();
+
+	@Test
+	public void testRender() {
+		assertEquals(2, TEMPLATE.getNumberCount());
+		assertEquals("{\"seqnr\":12,\"name\":\"€\",\"temp\":20.5}", TEMPLATE.render(12, 20.5).toString());
+		assertEquals("{\"seqnr\":0,\"name\":\"€\",\"temp\":20.0}", TEMPLATE.render(0, 20).toString());
+		assertEquals("{\"seqnr\":2147483647,\"name\":\"€\",\"temp\":0.1}", TEMPLATE.render(Integer.MAX_VALUE, 0.05).toString());
+	}
+
+	@Test
+	public void testRenderNegative() {
+		assertEquals("{\"seqnr\":-3,\"name\":\"€\",\"temp\":-0.5}", TEMPLATE.render(-3, -0.5).toString());
+		// No negative zero.
+		assertEquals("{\"seqnr\":0,\"name\":\"€\",\"temp\":0.0}", TEMPLATE.render(-0.2, -0.04).toString());
+	}
+
+	@Test
+	public void testTextOnly() {
+		PayloadTemplate template = PayloadTemplate.builder().text("{}").text("\n").build();
+		assertEquals(0, template.getNumberCount());
+		assertEquals("{}\n", template.render().toString());
+	}
+
+	@Test
+	public void testRenderedBytes() {
+		ByteSequence payload = TEMPLATE.render(1, 4);
+		// The euro sign is three bytes.
+		assertEquals("{\"seqnr\":1,\"name\":\"€\",\"temp\":4.0}".length() + 2, payload.length());
+
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		payload.writeTo(buffer);
+		assertEquals(payload.length(), buffer.position());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongNumberOfValues() {
+		TEMPLATE.render(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotANumber() {
+		TEMPLATE.render(1, Double.NaN);
+	}
+}
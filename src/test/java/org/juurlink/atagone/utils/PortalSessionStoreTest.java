@@ -0,0 +1,89 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpCookie;
+import java.nio.file.Path;
+
+import org.juurlink.atagone.domain.PortalSession;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PortalSessionStoreTest {
+
+	private static final String EMAIL = "user@example.com";
+	private static final String DEVICE_ID = "6808-1401-3109_15-30-001-544";
+	private static final long NOW = 1_500_000_000_000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path file;
+	private PortalSessionStore sessionStore;
+
+	@Before
+	public void setUp() {
+		file = temporaryFolder.getRoot().toPath().resolve("state").resolve("portal-session.properties");
+		sessionStore = new PortalSessionStore(file);
+	}
+
+	@Test
+	public void testNoSession() {
+		assertNull(sessionStore.get(EMAIL, NOW));
+	}
+
+	@Test
+	public void testPutAndGet() {
+		HttpCookie sessionCookie = new HttpCookie(".AspNet.ApplicationCookie", "abc");
+		sessionCookie.setPath("/");
+		sessionCookie.setSecure(true);
+		sessionCookie.setHttpOnly(true);
+		HttpCookie persistentCookie = new HttpCookie("__RequestVerificationToken", "def");
+		persistentCookie.setMaxAge(600);
+		HttpCookie expiringCookie = new HttpCookie("short", "ghi");
+		expiringCookie.setMaxAge(10);
+
+		sessionStore.put(PortalSession.builder()
+			.emailAddress(EMAIL)
+			.deviceId(DEVICE_ID)
+			.requestVerificationToken("token")
+			.cookie(sessionCookie)
+			.cookie(persistentCookie)
+			.cookie(expiringCookie)
+			.expires(NOW + 3600_000L)
+			.build(), NOW);
+
+		// Read back by a new instance, one minute later.
+		PortalSession session = new PortalSessionStore(file).get("User@Example.com", NOW + 60_000L);
+		assertNotNull(session);
+		assertEquals(DEVICE_ID, session.getDeviceId());
+		assertEquals("token", session.getRequestVerificationToken());
+		assertEquals(2, session.getCookies().size());
+
+		HttpCookie cookie = session.getCookies().get(0);
+		assertEquals(".AspNet.ApplicationCookie", cookie.getName());
+		assertEquals("abc", cookie.getValue());
+		assertEquals("/", cookie.getPath());
+		assertTrue(cookie.getSecure());
+		assertTrue(cookie.isHttpOnly());
+		assertEquals(-1, cookie.getMaxAge());
+		assertEquals(540, session.getCookies().get(1).getMaxAge());
+	}
+
+	@Test
+	public void testOtherAccountOrExpired() {
+		sessionStore.put(PortalSession.builder().emailAddress(EMAIL).deviceId(DEVICE_ID).expires(NOW + 1000L).build(), NOW);
+
+		assertNull(sessionStore.get("other@example.com", NOW));
+		assertNull(sessionStore.get(EMAIL, NOW + 1000L));
+		assertNotNull(sessionStore.get(EMAIL, NOW));
+
+		sessionStore.remove();
+		assertNull(sessionStore.get(EMAIL, NOW));
+	}
+}
@@ -0,0 +1,58 @@
+package org.juurlink.atagone.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import org.juurlink.atagone.utils.RetryPolicy.Failure;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+	private final RetryPolicy policy = RetryPolicy.builder()
+		.deadlineMs(5000)
+		.multiplier(2)
+		.jitter(0.5)
+		.rule(Failure.EMPTY_RESPONSE, RetryPolicy.Rule.builder().maxRetries(4).initialDelayMs(100).maxDelayMs(500).build())
+		.build();
+
+	@Test
+	public void testExponentialBackoff() {
+		assertEquals(100, policy.getDelayMs(Failure.EMPTY_RESPONSE, 0, 0, 0));
+		assertEquals(200, policy.getDelayMs(Failure.EMPTY_RESPONSE, 1, 0, 0));
+		assertEquals(400, policy.getDelayMs(Failure.EMPTY_RESPONSE, 2, 0, 0));
+		// Capped.
+		assertEquals(500, policy.getDelayMs(Failure.EMPTY_RESPONSE, 3, 0, 0));
+		// Max retries reached.
+		assertEquals(-1, policy.getDelayMs(Failure.EMPTY_RESPONSE, 4, 0, 0));
+	}
+
+	@Test
+	public void testJitter() {
+		assertEquals(50, policy.getDelayMs(Failure.EMPTY_RESPONSE, 0, 0, 1.0));
+		assertEquals(75, policy.getDelayMs(Failure.EMPTY_RESPONSE, 0, 0, 0.5));
+	}
+
+	@Test
+	public void testDeadline() {
+		assertEquals(-1, policy.getDelayMs(Failure.EMPTY_RESPONSE, 0, 4950, 0));
+	}
+
+	@Test
+	public void testNoRule() {
+		assertEquals(-1, policy.getDelayMs(Failure.TIMEOUT, 0, 0, 0));
+	}
+
+	@Test
+	public void testFailureOf() {
+		assertEquals(Failure.TIMEOUT, Failure.of(new SocketTimeoutException()));
+		assertEquals(Failure.CONNECTION_REFUSED, Failure.of(new ConnectException()));
+		assertEquals(Failure.CONNECTION_RESET, Failure.of(new SocketException("Connection reset")));
+		assertEquals(Failure.CONNECTION_RESET, Failure.of(new EOFException()));
+		assertEquals(Failure.IO_ERROR, Failure.of(new IOException("Server returned HTTP response code: 500")));
+	}
+}